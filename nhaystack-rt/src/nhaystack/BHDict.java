@@ -8,9 +8,14 @@
 
 package nhaystack;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.baja.nre.annotations.NiagaraType;
 import javax.baja.sys.BComponent;
 import javax.baja.sys.BIcon;
@@ -25,6 +30,14 @@ import org.projecthaystack.io.HZincReader;
 
 /**
  *  BHDict wraps a Haystack HDict
+ *  <p>
+ *  The dict is encoded as zinc, both in bogs and over fox, so that peers
+ *  running older versions of this module can still read it.  There is
+ *  also a compact binary form (see HDictCodec), which is only written by
+ *  encodeBinary() for callers that know the reader supports it, and
+ *  decode() reads either one.  A decoded BHDict keeps what it was
+ *  decoded from, and only decodes the dict when it is first needed, so
+ *  a station's haystack slots are not parsed until they are used.
  */
 @NiagaraType
 public final class BHDict
@@ -60,7 +73,9 @@ public final class BHDict
     public static BHDict make(String s) 
     { 
         HZincReader zr = new HZincReader(s);
-        return new BHDict(zr.readDict());
+        BHDict result = new BHDict(zr.readDict());
+        result.zinc = s;
+        return result;
     }
 
     private BHDict(HDict dict) 
@@ -68,13 +83,19 @@ public final class BHDict
         this.dict = dict;
     }
 
+    private BHDict(String zinc, byte[] bin)
+    {
+        this.zinc = zinc;
+        this.bin = bin;
+    }
+
 ////////////////////////////////////////////////////////////////
 // Object
 ////////////////////////////////////////////////////////////////
 
     public int hashCode() 
     { 
-        return dict.hashCode(); 
+        return getDict().hashCode(); 
     }
 
     public boolean equals(Object obj)
@@ -83,7 +104,12 @@ public final class BHDict
 
         if (!(obj instanceof BHDict)) return false;
         BHDict that = (BHDict) obj;
-        return dict.equals(that.dict);
+
+        // the same encoding is the same dict
+        if (bin != null && that.bin != null && Arrays.equals(bin, that.bin)) return true;
+        if (zinc != null && zinc.equals(that.zinc)) return true;
+
+        return getDict().equals(that.getDict());
     }
 
 ////////////////////////////////////////////////////////////////
@@ -93,7 +119,7 @@ public final class BHDict
     @Override
     public String toString(Context context)
     {
-        return dict.toZinc();
+        return toZinc();
     }
 
     /**
@@ -102,17 +128,56 @@ public final class BHDict
     @Override
     public void encode(DataOutput encoder) throws IOException
     { 
-        encoder.writeUTF(dict.toZinc()); 
+        encoder.writeUTF(toZinc());
     }
 
     /**
-      * Decode from ZINC format
+      * Encode to the compact binary format.  Only versions of this module
+      * which have the binary format can decode it, so this must only be
+      * used when the reader is known to support it.
+      */
+    public void encodeBinary(DataOutput encoder) throws IOException
+    { 
+        byte[] b = bin;
+        if (b == null)
+        {
+            b = HDictCodec.encode(getDict());
+            bin = b;
+        }
+
+        encoder.writeShort(BINARY);
+        encoder.writeByte(VERSION);
+        encoder.writeInt(b.length);
+        encoder.write(b);
+    }
+
+    /**
+      * Decode from binary or ZINC format
       */
     @Override
     public BObject decode(DataInput decoder) throws IOException
     { 
-        HZincReader zr = new HZincReader(decoder.readUTF());
-        return new BHDict(zr.readDict());
+        int len = decoder.readUnsignedShort();
+
+        // before the binary format the zinc was written with writeUTF,
+        // which starts with its length.  A zinc dict of exactly BINARY
+        // bytes is told apart by its first byte, which is never VERSION.
+        int first = len == BINARY ? decoder.readUnsignedByte() : -1;
+        if (first != VERSION)
+        {
+            byte[] utf = new byte[len + 2];
+            utf[0] = (byte) (len >>> 8);
+            utf[1] = (byte) len;
+            int off = 2;
+            if (first != -1) utf[off++] = (byte) first;
+            decoder.readFully(utf, off, len + 2 - off);
+            return new BHDict(DataInputStream.readUTF(
+                new DataInputStream(new ByteArrayInputStream(utf))), null);
+        }
+
+        byte[] b = new byte[decoder.readInt()];
+        decoder.readFully(b);
+        return new BHDict(null, b);
     }  
 
     /**
@@ -121,7 +186,7 @@ public final class BHDict
     @Override
     public String encodeToString() throws IOException
     { 
-        return dict.toZinc(); 
+        return toZinc(); 
     }
 
     /**
@@ -130,8 +195,7 @@ public final class BHDict
     @Override
     public BObject decodeFromString(String s) throws IOException
     { 
-        HZincReader zr = new HZincReader(s);
-        return new BHDict(zr.readDict());
+        return new BHDict(s, null);
     }
 
 ////////////////////////////////////////////////////////////////
@@ -162,7 +226,46 @@ public final class BHDict
     /**
       * Return the underlying HDict.
       */
-    public HDict getDict() { return dict; }
+    public HDict getDict()
+    {
+        HDict d = dict;
+        if (d == null)
+        {
+            d = decodeDict();
+            dict = d;
+        }
+        return d;
+    }
+
+    /**
+      * Return the dict as ZINC.
+      */
+    public String toZinc()
+    {
+        String z = zinc;
+        if (z == null)
+        {
+            z = getDict().toZinc();
+            zinc = z;
+        }
+        return z;
+    }
+
+    private HDict decodeDict()
+    {
+        try
+        {
+            if (zinc != null)
+                return new HZincReader(zinc).readDict();
+            return HDictCodec.decode(bin);
+        }
+        catch (Exception e)
+        {
+            // keep what was decoded, so that it is not lost when it is saved again
+            LOG.log(Level.WARNING, "Cannot decode haystack tags: " + (zinc != null ? zinc : "binary"), e);
+            return HDict.EMPTY;
+        }
+    }
 
 ////////////////////////////////////////////////////////////////
 // Attributes
@@ -172,6 +275,16 @@ public final class BHDict
     public BIcon getIcon() { return ICON; }
     private static final BIcon ICON = BIcon.make("module://nhaystack/nhaystack/icons/tag.png");
 
-    private final HDict dict;
+    private static final Logger LOG = Logger.getLogger("nhaystack");
+
+    // written in place of the length of the zinc
+    private static final int BINARY = 0xFFFF;
+    private static final int VERSION = 1;
+
+    // at least one of these is always set, and the others are filled in as needed
+    private volatile HDict dict;
+    private volatile String zinc;
+    private volatile byte[] bin;
+
     public static final String HAYSTACK_IDENTIFIER = "haystack";
 }
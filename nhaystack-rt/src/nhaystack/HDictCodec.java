@@ -0,0 +1,294 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.projecthaystack.HBool;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HDictBuilder;
+import org.projecthaystack.HMarker;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HRef;
+import org.projecthaystack.HStr;
+import org.projecthaystack.HUri;
+import org.projecthaystack.HVal;
+import org.projecthaystack.io.HZincReader;
+
+/**
+  * HDictCodec is the compact binary encoding of the dicts in BHDicts.
+  * <p>
+  * A dict is encoded as the number of its tags, and then the name and
+  * value of each tag.  Names are written as an index into a table of
+  * strings: the well known tag names below, followed by the strings that
+  * have already been written in the same dict.  A string that is not in
+  * the table is written out in full, as UTF-8 after its length, and added
+  * to it.  Markers, bools, numbers, strings, refs and uris each have their
+  * own type code, and any other value is written as zinc.  Whole numbers
+  * and lengths are written as varints.
+  */
+final class HDictCodec
+{
+    private HDictCodec() {}
+
+////////////////////////////////////////////////////////////////
+// encode
+////////////////////////////////////////////////////////////////
+
+    static byte[] encode(HDict dict) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * dict.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        Map<String, Integer> table = new HashMap<>();
+
+        writeVarInt(out, dict.size());
+        Iterator<Map.Entry<String, HVal>> it = dict.iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<String, HVal> e = it.next();
+            writeStr(out, table, e.getKey());
+            writeVal(out, table, e.getValue());
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeVal(DataOutputStream out, Map<String, Integer> table, HVal val) throws IOException
+    {
+        if (val instanceof HMarker)
+        {
+            out.writeByte(MARKER);
+        }
+        else if (val instanceof HBool)
+        {
+            out.writeByte(((HBool) val).val ? TRUE : FALSE);
+        }
+        else if (val instanceof HNum)
+        {
+            HNum num = (HNum) val;
+            int n = (int) num.val;
+
+            // whole numbers, which most are, take a byte or two rather than eight
+            boolean whole = n == num.val && (n != 0 || 1 / num.val > 0);
+            if (whole)
+            {
+                out.writeByte(num.unit == null ? INT : INT_UNIT);
+                writeVarInt(out, (n << 1) ^ (n >> 31));
+            }
+            else
+            {
+                out.writeByte(num.unit == null ? NUM : NUM_UNIT);
+                out.writeDouble(num.val);
+            }
+            if (num.unit != null)
+                writeStr(out, table, num.unit);
+        }
+        else if (val instanceof HStr)
+        {
+            out.writeByte(STR);
+            writeChars(out, ((HStr) val).val);
+        }
+        else if (val instanceof HRef)
+        {
+            HRef ref = (HRef) val;
+            if (ref.dis == null)
+            {
+                out.writeByte(REF);
+                writeStr(out, table, ref.val);
+            }
+            else
+            {
+                out.writeByte(REF_DIS);
+                writeStr(out, table, ref.val);
+                writeChars(out, ref.dis);
+            }
+        }
+        else if (val instanceof HUri)
+        {
+            out.writeByte(URI);
+            writeChars(out, ((HUri) val).val);
+        }
+        else
+        {
+            out.writeByte(ZINC);
+            writeChars(out, val.toZinc());
+        }
+    }
+
+    private static void writeStr(DataOutputStream out, Map<String, Integer> table, String s) throws IOException
+    {
+        Integer index = WELL_KNOWN_INDEX.get(s);
+        if (index == null) index = table.get(s);
+        if (index != null)
+        {
+            // 0 is reserved for strings which are not in the table
+            writeVarInt(out, index + 1);
+            return;
+        }
+
+        writeVarInt(out, 0);
+        writeChars(out, s);
+        table.put(s, WELL_KNOWN.length + table.size());
+    }
+
+    private static void writeChars(DataOutputStream out, String s) throws IOException
+    {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, utf8.length);
+        out.write(utf8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int n) throws IOException
+    {
+        while ((n & ~0x7f) != 0)
+        {
+            out.writeByte((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.writeByte(n);
+    }
+
+////////////////////////////////////////////////////////////////
+// decode
+////////////////////////////////////////////////////////////////
+
+    static HDict decode(byte[] bytes) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        List<String> table = new ArrayList<>();
+
+        HDictBuilder hdb = new HDictBuilder();
+        int size = readVarInt(in);
+        for (int i = 0; i < size; i++)
+        {
+            String name = readStr(in, table);
+            hdb.add(name, readVal(in, table));
+        }
+        return hdb.toDict();
+    }
+
+    private static HVal readVal(DataInputStream in, List<String> table) throws IOException
+    {
+        int type = in.readUnsignedByte();
+        switch (type)
+        {
+            case MARKER:   return HMarker.VAL;
+            case TRUE:     return HBool.TRUE;
+            case FALSE:    return HBool.FALSE;
+            case INT:      return HNum.make(readZigZag(in));
+            case INT_UNIT: return HNum.make(readZigZag(in), readStr(in, table));
+            case NUM:      return HNum.make(in.readDouble());
+            case NUM_UNIT: return HNum.make(in.readDouble(), readStr(in, table));
+            case STR:      return HStr.make(readChars(in));
+            case REF:      return HRef.make(readStr(in, table));
+            case REF_DIS:  return HRef.make(readStr(in, table), readChars(in));
+            case URI:      return HUri.make(readChars(in));
+            case ZINC:     return new HZincReader(readChars(in)).readVal();
+            default:
+                throw new IOException("Invalid value type " + type);
+        }
+    }
+
+    private static String readStr(DataInputStream in, List<String> table) throws IOException
+    {
+        int index = readVarInt(in);
+        if (index == 0)
+        {
+            String s = readChars(in);
+            table.add(s);
+            return s;
+        }
+
+        index--;
+        if (index < WELL_KNOWN.length) return WELL_KNOWN[index];
+
+        index -= WELL_KNOWN.length;
+        if (index >= table.size())
+            throw new IOException("Invalid string index " + index);
+        return table.get(index);
+    }
+
+    private static String readChars(DataInputStream in) throws IOException
+    {
+        byte[] utf8 = new byte[readVarInt(in)];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static int readZigZag(DataInputStream in) throws IOException
+    {
+        int n = readVarInt(in);
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException
+    {
+        int n = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            n |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return n;
+        }
+        throw new IOException("Invalid varint");
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    // value types
+    private static final int MARKER   = 0;
+    private static final int TRUE     = 1;
+    private static final int FALSE    = 2;
+    private static final int NUM      = 3;
+    private static final int NUM_UNIT = 4;
+    private static final int STR      = 5;
+    private static final int REF      = 6;
+    private static final int REF_DIS  = 7;
+    private static final int URI      = 8;
+    private static final int INT      = 9;
+    private static final int INT_UNIT = 10;
+    private static final int ZINC     = 127;
+
+    // The strings that are common to all dicts.  Strings can be added to
+    // the end of the table, but never removed or reordered, since their
+    // index is what is saved.
+    private static final String[] WELL_KNOWN = {
+        "id", "dis", "navName", "navNameFormat",
+        "site", "equip", "point", "siteRef", "equipRef",
+        "his", "cur", "writable", "sensor", "cmd", "sp",
+        "kind", "unit", "tz", "axType", "axSlotPath", "axHistoryRef", "axPointRef",
+        "schedulable", "weeklySchedule", "hisInterpolate",
+        "air", "water", "temp", "humidity", "pressure", "flow", "co2",
+        "zone", "discharge", "return", "outside", "mixed", "exhaust",
+        "ahu", "vav", "fan", "damper", "valve", "fcu", "rtu", "chiller", "boiler",
+        "hvac", "heating", "cooling", "effective", "occupied", "enable", "run",
+        "elec", "meter", "power", "energy", "current", "volt",
+        "area", "geoAddr", "geoCity", "geoState", "geoCountry", "geoPostalCode",
+        "geoCoord", "geoStreet", "floor", "floorRef", "space", "spaceRef",
+        "\u00b0F", "\u00b0C", "%", "kW", "kWh", "Pa", "psi", "inH\u2082O", "cfm", "gpm", "ppm",
+    };
+
+    private static final Map<String, Integer> WELL_KNOWN_INDEX = new HashMap<>();
+    static
+    {
+        for (int i = 0; i < WELL_KNOWN.length; i++)
+            WELL_KNOWN_INDEX.put(WELL_KNOWN[i], i);
+    }
+}
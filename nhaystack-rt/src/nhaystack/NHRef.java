@@ -19,21 +19,30 @@ import org.projecthaystack.HRef;
 public class NHRef
 {
     /**
-      * Make an ID from an HRef.
+      * Make an ID from an HRef.  Any dis that the HRef has is dropped,
+      * since the ID may be kept and handed out to other clients.
       */
     public static NHRef make(HRef ref)
     {
         String val = ref.val;
+        if (ref.dis != null)
+            ref = HRef.make(val);
+
+        // every space is a single character, so the
+        // ref can be checked without splitting it
+        String space = val.length() > 1 && val.charAt(1) == '.' ?
+            toSpace(val.charAt(0)) : null;
+        if (space == null)
+        {
+            if (val.indexOf('.') == -1)
+                throw new BajaRuntimeException(
+                    "Could not parse HRef '" + ref + "'.");
 
-        int dot = val.indexOf('.');
-        if (dot == -1)
             throw new BajaRuntimeException(
-                "Could not parse HRef '" + ref + "'.");
-
-        String space = val.substring(0, dot);
-        String path  = val.substring(dot+1);
+                "Invalid space: '" + val.substring(0, val.indexOf('.')) + '\'');
+        }
 
-        return make(space, path);
+        return new NHRef(ref, space, null);
     }
 
     /**
@@ -41,25 +50,35 @@ public class NHRef
       */
     public static NHRef make(String space, String path)
     {
-        if (!(space.equals(COMP) || 
-              space.equals(HIS) ||
-              space.equals(COMP_BASE64) || 
-              space.equals(HIS_BASE64) ||
-              space.equals(SEP)))
+        String known = space.length() == 1 ? toSpace(space.charAt(0)) : null;
+        if (known == null)
         {
             throw new BajaRuntimeException(
                 "Invalid space: '" + space + '\'');
         }
 
-        return new NHRef(space, path);
+        return new NHRef(HRef.make(known + '.' + path), known, path);
+    }
+
+    private static String toSpace(char c)
+    {
+        switch (c)
+        {
+            case 'C': return COMP;
+            case 'H': return HIS;
+            case 'S': return SEP;
+            case 'c': return COMP_BASE64;
+            case 'h': return HIS_BASE64;
+            default:  return null;
+        }
     }
 
     /**
       * Constructor
       */
-    private NHRef(String space, String path)
+    private NHRef(HRef ref, String space, String path)
     {
-        this.ref   = HRef.make(space + '.' + path);
+        this.ref   = ref;
         this.space = space;
         this.path  = path;
     }
@@ -73,7 +92,7 @@ public class NHRef
         return "[NHRef " +
             "ref:" + ref + ", " +
             "space:" + space + ", " +
-            "path:" + path + ']';
+            "path:" + getPath() + ']';
     }
 
     public int hashCode() { return ref.hashCode(); }
@@ -96,6 +115,24 @@ public class NHRef
       */
     public HRef getHRef() { return ref; }
 
+    /**
+      * Return the ref along with a dis.  The last one that was made
+      * is kept, since the dis of a record seldom changes.
+      */
+    public HRef getHRef(String dis)
+    {
+        if (dis == null)
+            throw new NullPointerException("dis is null, use getHRef() for a ref without one");
+
+        HRef r = withDis;
+        if (r == null || !dis.equals(r.dis))
+        {
+            r = HRef.make(ref.val, dis);
+            withDis = r;
+        }
+        return r;
+    }
+
     /**
       * The space is always one of COMP, HIS, or SEP (or sometimes COMP_BASE64 or HIS_BASE64).
       */
@@ -104,7 +141,17 @@ public class NHRef
     /**
       * The path identifies an object within its space.
       */
-    public String getPath() { return path; }
+    public String getPath()
+    {
+        // the path is only split off the ref when it is needed
+        String p = path;
+        if (p == null)
+        {
+            p = ref.val.substring(2);
+            path = p;
+        }
+        return p;
+    }
 
 ////////////////////////////////////////////////////////////////
 // Attributes
@@ -120,5 +167,6 @@ public class NHRef
 
     private final HRef ref;
     private final String space; 
-    private final String path;
+    private String path;
+    private HRef withDis;
 }
@@ -0,0 +1,97 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import javax.baja.job.BSimpleJob;
+import javax.baja.nre.annotations.NiagaraProperty;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.Context;
+import javax.baja.sys.Flags;
+import javax.baja.sys.Property;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+import nhaystack.BHGrid;
+
+/**
+  * BNHaystackBulkTagJob applies the tag changes that a BulkTagger has
+  * planned, and reports its progress as it works through the batches.
+  * When it is done, its result holds the outcome of each change, since
+  * a change which fails does not stop the others from being applied.
+  */
+@NiagaraType
+@NiagaraProperty(
+    name = "result",
+    type = "BHGrid",
+    defaultValue = "BHGrid.DEFAULT",
+    flags = Flags.TRANSIENT|Flags.READONLY
+)
+public class BNHaystackBulkTagJob extends BSimpleJob
+{
+/*+ ------------ BEGIN BAJA AUTO GENERATED CODE ------------ +*/
+/*@ $nhaystack.server.BNHaystackBulkTagJob(1866346251)1.0$ @*/
+/* Generated Mon Oct 19 10:00:00 EDT 2026 by Slot-o-Matic (c) Tridium, Inc. 2012 */
+
+////////////////////////////////////////////////////////////////
+// Property "result"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code result} property.
+   * @see #getResult
+   * @see #setResult
+   */
+  public static final Property result = newProperty(Flags.TRANSIENT | Flags.READONLY, BHGrid.DEFAULT, null);
+  
+  /**
+   * Get the {@code result} property.
+   * @see #result
+   */
+  public BHGrid getResult() { return (BHGrid)get(result); }
+  
+  /**
+   * Set the {@code result} property.
+   * @see #result
+   */
+  public void setResult(BHGrid v) { set(result, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Type
+////////////////////////////////////////////////////////////////
+
+  @Override
+  public Type getType() { return TYPE; }
+  public static final Type TYPE = Sys.loadType(BNHaystackBulkTagJob.class);
+
+/*+ ------------ END BAJA AUTO GENERATED CODE -------------- +*/
+
+    public BNHaystackBulkTagJob() { }
+
+    BNHaystackBulkTagJob(BulkTagger tagger)
+    {
+        this.tagger = tagger;
+    }
+
+    @Override
+    public void run(Context cx) throws Exception
+    {
+        log().message("Applying " + tagger.size() + " tag changes.");
+        tagger.apply(this);
+        setResult(BHGrid.make(tagger.toResultGrid()));
+
+        if (tagger.failedCount() > 0)
+            log().message(tagger.failedCount() + " of " + tagger.size() + " tag changes could not be applied.");
+    }
+
+    void batchApplied(int done, int total)
+    {
+        progress(100 * done / total);
+        log().message("Applied " + done + " of " + total + " tag changes.");
+    }
+
+    private BulkTagger tagger;
+}
@@ -4,9 +4,22 @@
 //
 // History:
 //   09 Jul 2018  Andrew Saunders  Creation
+//   19 Oct 2026                   Convert the station in parallel parts, and resume an
+//                                 interrupted conversion from its last checkpoint
 //
 package nhaystack.server;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.baja.job.BJobState;
 import javax.baja.job.BSimpleJob;
 import javax.baja.nre.annotations.NiagaraType;
@@ -14,13 +27,28 @@ import javax.baja.space.BComponentSpace;
 import javax.baja.sys.BBoolean;
 import javax.baja.sys.BComponent;
 import javax.baja.sys.BString;
+import javax.baja.sys.BValue;
+import javax.baja.sys.BajaRuntimeException;
 import javax.baja.sys.Context;
 import javax.baja.sys.Flags;
 import javax.baja.sys.Property;
 import javax.baja.sys.Sys;
 import javax.baja.sys.Type;
 import javax.baja.util.Lexicon;
+import nhaystack.collection.ComponentTreeIterator;
 
+/**
+  * BNHaystackConvertHaystackSlotsJob migrates the tags in the haystack slot
+  * of every component in the station to Niagara tags and relations.
+  * <p>
+  * The station is split into parts the same way as when the cache is
+  * rebuilt, and the parts are converted on slotConversionThreads threads,
+  * walking the components of each part as they are converted rather than
+  * collecting them all first.  The parts that have been converted are
+  * saved on the service from time to time, so that if the conversion is
+  * interrupted, the next one (which runs when the station restarts)
+  * skips them.
+  */
 @NiagaraType
 public class BNHaystackConvertHaystackSlotsJob extends BSimpleJob
 {
@@ -57,25 +85,55 @@ public class BNHaystackConvertHaystackSlotsJob extends BSimpleJob
             return;
         }
 
+        ForkJoinPool pool = null;
         try
         {
             service.setSlotConversionInProgress(true);
 
-            final BComponent[] allComponents = componentSpace.getAllComponents();
-            log().message(LEX.getText("haystack.slot.conv.start",
-                new Object[] {allComponents.length}));
-            for (int i = 0; i < allComponents.length; ++i)
+            List<Part> parts = new ArrayList<>();
+            partition(componentSpace.getRootComponent(), PARTITION_DEPTH, parts);
+
+            // skip the parts that an interrupted conversion finished
+            converted.addAll(readCheckpoint());
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Part part : parts)
             {
-                HaystackSlotUtil.migrateHaystackTags(allComponents[i], this);
-                progress((100 * i) / allComponents.length);
+                if (!converted.contains(part.key))
+                    tasks.add(() -> convert(part));
             }
+            numParts = parts.size();
+            log().message(LEX.getText("haystack.slot.conv.startParts",
+                new Object[] {numParts, numParts - tasks.size()}));
+
+            int threads = service.getSlotConversionThreads();
+            if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+            if (threads > 1) pool = new ForkJoinPool(threads);
+            invokeAll(pool, tasks);
 
-            log().message(LEX.getText("haystack.slot.conv.end",
-                new Object[] {count, warningCount, errorCount}));
+            if (!isCanceling())
+            {
+                finished = true;
+                log().message(LEX.getText("haystack.slot.conv.end",
+                    new Object[] {count.get(), warningCount.get(), errorCount.get()}));
+            }
         }
         finally
         {
+            if (pool != null) pool.shutdown();
+
+            synchronized (checkpointLock)
+            {
+                if (finished)
+                    clearCheckpoint();
+                else
+                    writeCheckpoint();
+            }
+
             service.setSlotConversionInProgress(false);
+
+            NHServer server = service.getHaystackServer();
+            if (server != null)
+                server.getReadAllCache().invalidate();
         }
 
         // The conversion job sometimes runs at service started and, if it runs
@@ -89,15 +147,145 @@ public class BNHaystackConvertHaystackSlotsJob extends BSimpleJob
         }
     }
 
+////////////////////////////////////////////////////////////////
+// parts
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Split the tree into parts, in depth-first order.  The components
+      * above the given depth are each a part on their own, and the
+      * components at the given depth are a part along with all of
+      * their descendants.
+      */
+    private static void partition(BComponent comp, int depth, List<Part> parts)
+    {
+        if (depth == 0)
+        {
+            parts.add(new Part(comp, true));
+            return;
+        }
+
+        parts.add(new Part(comp, false));
+        for (BComponent kid : comp.getChildComponents())
+            partition(kid, depth - 1, parts);
+    }
+
+    private Void convert(Part part)
+    {
+        Iterator<BComponent> it = part.tree ?
+            new ComponentTreeIterator(part.root) :
+            Collections.singletonList(part.root).iterator();
+
+        while (it.hasNext())
+        {
+            if (isCanceling()) return null;
+            HaystackSlotUtil.migrateHaystackTags(it.next(), this, service);
+        }
+
+        synchronized (checkpointLock)
+        {
+            converted.add(part.key);
+            progress(100 * converted.size() / numParts);
+            if (++sinceCheckpoint >= CHECKPOINT_INTERVAL)
+                writeCheckpoint();
+        }
+        return null;
+    }
+
+    private static void invokeAll(ForkJoinPool pool, List<Callable<Void>> tasks) throws Exception
+    {
+        if (pool == null)
+        {
+            for (Callable<Void> task : tasks)
+                task.call();
+            return;
+        }
+
+        try
+        {
+            for (Future<Void> future : pool.invokeAll(tasks))
+                future.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new BajaRuntimeException("Haystack slot conversion failed", cause);
+        }
+    }
+
+    private boolean isCanceling()
+    {
+        BJobState state = getJobState();
+        return state == BJobState.canceling || state == BJobState.canceled;
+    }
+
+    private static final class Part
+    {
+        Part(BComponent root, boolean tree)
+        {
+            this.root = root;
+            this.tree = tree;
+            this.key = root.getSlotPath().toString();
+        }
+
+        final BComponent root;
+        final boolean tree;
+        final String key;
+    }
+
+////////////////////////////////////////////////////////////////
+// checkpoint
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Return the keys of the parts that the checkpoint on
+      * the service says have been converted.
+      */
+    private Set<String> readCheckpoint()
+    {
+        Set<String> keys = new HashSet<>();
+        BValue value = service.get(SLOT_CONVERSION_CHECKPOINT);
+        if (value instanceof BString)
+        {
+            for (String key : ((BString) value).getString().split("\n"))
+            {
+                if (!key.isEmpty()) keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private void writeCheckpoint()
+    {
+        sinceCheckpoint = 0;
+        if (converted.isEmpty()) return;
+
+        BString value = BString.make(String.join("\n", converted));
+        Property prop = service.getProperty(SLOT_CONVERSION_CHECKPOINT);
+        if (prop == null)
+            service.add(SLOT_CONVERSION_CHECKPOINT, value, Flags.HIDDEN | Flags.READONLY);
+        else
+            service.set(prop, value);
+    }
+
+    private void clearCheckpoint()
+    {
+        Property prop = service.getProperty(SLOT_CONVERSION_CHECKPOINT);
+        if (prop != null)
+            service.remove(prop);
+    }
+
     @Override
     public void success()
     {
-        if (errorCount > 0)
+        if (errorCount.get() > 0)
         {
             log().failed(LEX.getText("haystack.slot.conv.complete.errors"));
             complete(BJobState.failed);
         }
-        else if (warningCount > 0)
+        else if (warningCount.get() > 0)
         {
             log().success(LEX.getText("haystack.slot.conv.complete.warnings"));
             complete(BJobState.success);
@@ -115,7 +303,7 @@ public class BNHaystackConvertHaystackSlotsJob extends BSimpleJob
     // Access
     //////////////////////////////
 
-    public void setUpgradeFault(String fault)
+    public synchronized void setUpgradeFault(String fault)
     {
         Property upgradeProp = service.getProperty(UPGRADE_FAULT);
         if (upgradeProp == null)
@@ -155,26 +343,36 @@ public class BNHaystackConvertHaystackSlotsJob extends BSimpleJob
 
     public void incWarningCount()
     {
-        ++warningCount;
+        warningCount.incrementAndGet();
     }
 
     public void incErrorCount()
     {
-        ++errorCount;
+        errorCount.incrementAndGet();
     }
 
     public void incCount()
     {
-        ++count;
+        count.incrementAndGet();
     }
 
     private static final Lexicon LEX = Lexicon.make("nhaystack");
 
     public static final String UPGRADE_FAULT = "upgradeFault";
     public static final String RETRY_UPGRADE_ON_RESTART = "retryUpgradeOnRestart";
+    public static final String SLOT_CONVERSION_CHECKPOINT = "slotConversionCheckpoint";
+
+    private static final int PARTITION_DEPTH = 3;
+    private static final int CHECKPOINT_INTERVAL = 100;
 
     private final BNHaystackService service;
-    private long count;
-    private long warningCount;
-    private long errorCount;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong warningCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    private final Object checkpointLock = new Object();
+    private final Set<String> converted = new HashSet<>();
+    private int numParts;
+    private int sinceCheckpoint;
+    private boolean finished;
 }
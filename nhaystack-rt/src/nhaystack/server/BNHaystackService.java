@@ -19,6 +19,7 @@
 package nhaystack.server;
 
 import static nhaystack.server.BNHaystackConvertHaystackSlotsJob.RETRY_UPGRADE_ON_RESTART;
+import static nhaystack.server.BNHaystackConvertHaystackSlotsJob.SLOT_CONVERSION_CHECKPOINT;
 import static nhaystack.util.NHaystackConst.NAME_SPACE;
 
 import java.util.ArrayList;
@@ -35,6 +36,7 @@ import javax.baja.nre.annotations.NiagaraType;
 import javax.baja.nre.util.TextUtil;
 import javax.baja.spy.SpyWriter;
 import javax.baja.sys.Action;
+import javax.baja.sys.BAbsTime;
 import javax.baja.sys.BAbstractService;
 import javax.baja.sys.BBoolean;
 import javax.baja.sys.BComponent;
@@ -140,6 +142,134 @@ import com.tridium.haystack.BHsTagDictionary;
     defaultValue = "false",
     flags = Flags.HIDDEN
 )
+/**
+ * Whether aligned hisRollup queries on numeric and boolean histories are
+ * answered from hourly and daily aggregates which are maintained
+ * incrementally and saved when the station stops.
+ */
+@NiagaraProperty(
+    name = "hisRollupStoreEnabled",
+    type = "boolean",
+    defaultValue = "false"
+)
+/**
+ * How long the child rows of a navId are cached.  Zero disables the nav cache.
+ */
+@NiagaraProperty(
+    name = "navCacheLifetime",
+    type = "BRelTime",
+    defaultValue = "BRelTime.makeMinutes(1)",
+    flags = Flags.HIDDEN
+)
+/**
+ * The number of threads which rebuild the cache.  Zero uses one thread
+ * per available processor, and one rebuilds on the calling thread.
+ */
+@NiagaraProperty(
+    name = "cacheRebuildThreads",
+    type = "int",
+    defaultValue = "0"
+)
+/**
+ * If true, the cache is saved to a file after it is rebuilt, and is
+ * loaded from that file when the station starts, so requests can be
+ * served while the cache is rebuilt in the background.
+ */
+@NiagaraProperty(
+    name = "cacheSnapshotEnabled",
+    type = "boolean",
+    defaultValue = "false"
+)
+/**
+ * readAll requests which take longer than this are recorded in the slow query log.
+ * Zero records every request.
+ */
+@NiagaraProperty(
+    name = "slowQueryThreshold",
+    type = "BRelTime",
+    defaultValue = "BRelTime.make(500)"
+)
+/**
+ * The number of slow readAll requests which are kept.  Zero disables the log.
+ */
+@NiagaraProperty(
+    name = "slowQueryLogSize",
+    type = "int",
+    defaultValue = "100"
+)
+/**
+ * The number of readAll filters whose matching ids are cached.  Zero disables the cache.
+ * Components that are added or tagged outside of haystack ops are not seen by a
+ * cached filter until its entry expires, so the cache is off by default.
+ */
+@NiagaraProperty(
+    name = "readAllCacheSize",
+    type = "int",
+    defaultValue = "0"
+)
+/**
+ * How long the ids that matched a readAll filter are cached.
+ */
+@NiagaraProperty(
+    name = "readAllCacheLifetime",
+    type = "BRelTime",
+    defaultValue = "BRelTime.makeMinutes(1)"
+)
+/**
+ * The number of threads which scan the component space for readAll.  One
+ * scans on the calling thread, and zero uses one thread per available processor.
+ */
+@NiagaraProperty(
+    name = "readAllThreads",
+    type = "int",
+    defaultValue = "1"
+)
+/**
+ * The number of threads which apply the scheduled writes that are due at the
+ * same time.  One applies them on the worker thread, one after another.
+ */
+@NiagaraProperty(
+    name = "scheduleWriteThreads",
+    type = "int",
+    defaultValue = "4"
+)
+/**
+ * The number of components whose tags applyBatchTags and applyGridTags
+ * change between progress reports.
+ */
+@NiagaraProperty(
+    name = "bulkTagBatchSize",
+    type = "int",
+    defaultValue = "500"
+)
+/**
+ * The number of threads which convert haystack slots.  Zero uses one thread
+ * per available processor, and one converts on the job's thread.
+ */
+@NiagaraProperty(
+    name = "slotConversionThreads",
+    type = "int",
+    defaultValue = "0"
+)
+/**
+ * How long a watch stream waits after a change to a watch before it sends
+ * the change, so that the changes which follow it are sent along with it.
+ */
+@NiagaraProperty(
+    name = "watchPushWindow",
+    type = "BRelTime",
+    defaultValue = "BRelTime.make(100)"
+)
+/**
+ * The number of watch streams which can be open at once, each of which
+ * holds a web server thread.  A watch stream which is asked for when this
+ * many are open is refused with 503 Service Unavailable.
+ */
+@NiagaraProperty(
+    name = "watchStreamLimit",
+    type = "int",
+    defaultValue = "16"
+)
 @NiagaraProperty(
     name = "schemaVersion",
     type = "int",
@@ -218,6 +348,15 @@ import com.tridium.haystack.BHsTagDictionary;
     defaultValue = "new BHScheduleEvent()",
     flags = Flags.OPERATOR|Flags.ASYNC|Flags.HIDDEN
 )
+/**
+ * apply the scheduled writes that are due at the given time
+ */
+@NiagaraAction(
+    name = "applyScheduleBucket",
+    parameterType = "BAbsTime",
+    defaultValue = "BAbsTime.DEFAULT",
+    flags = Flags.OPERATOR|Flags.ASYNC|Flags.HIDDEN
+)
 /**
  * Initialize nhaystack
  */
@@ -259,6 +398,21 @@ import com.tridium.haystack.BHsTagDictionary;
     name = "initializeHaystackDictionary",
     flags = Flags.OPERATOR|Flags.ASYNC
 )
+/**
+ * Reset the request metrics in the stats
+ */
+@NiagaraAction(
+    name = "resetOpMetrics",
+    flags = Flags.OPERATOR
+)
+/**
+ * fetch the slow query log, most recent first.
+ */
+@NiagaraAction(
+    name = "fetchSlowQueries",
+    returnType = "BHGrid",
+    flags = Flags.OPERATOR|Flags.HIDDEN
+)
 public class BNHaystackService
     extends BAbstractService
     implements BINHaystackWorkerParent
@@ -535,6 +689,415 @@ public class BNHaystackService
    */
   public void setTranslateEnums(boolean v) { setBoolean(translateEnums, v, null); }
 
+////////////////////////////////////////////////////////////////
+// Property "hisRollupStoreEnabled"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code hisRollupStoreEnabled} property.
+   * Whether aligned hisRollup queries on numeric and boolean histories are
+   * answered from hourly and daily aggregates which are maintained
+   * incrementally and saved when the station stops.
+   * @see #getHisRollupStoreEnabled
+   * @see #setHisRollupStoreEnabled
+   */
+  public static final Property hisRollupStoreEnabled = newProperty(0, false, null);
+  
+  /**
+   * Get the {@code hisRollupStoreEnabled} property.
+   * Whether aligned hisRollup queries on numeric and boolean histories are
+   * answered from hourly and daily aggregates which are maintained
+   * incrementally and saved when the station stops.
+   * @see #hisRollupStoreEnabled
+   */
+  public boolean getHisRollupStoreEnabled() { return getBoolean(hisRollupStoreEnabled); }
+  
+  /**
+   * Set the {@code hisRollupStoreEnabled} property.
+   * Whether aligned hisRollup queries on numeric and boolean histories are
+   * answered from hourly and daily aggregates which are maintained
+   * incrementally and saved when the station stops.
+   * @see #hisRollupStoreEnabled
+   */
+  public void setHisRollupStoreEnabled(boolean v) { setBoolean(hisRollupStoreEnabled, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "navCacheLifetime"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code navCacheLifetime} property.
+   * How long the child rows of a navId are cached.  Zero disables the nav cache.
+   * @see #getNavCacheLifetime
+   * @see #setNavCacheLifetime
+   */
+  public static final Property navCacheLifetime = newProperty(Flags.HIDDEN, BRelTime.makeMinutes(1), null);
+  
+  /**
+   * Get the {@code navCacheLifetime} property.
+   * How long the child rows of a navId are cached.  Zero disables the nav cache.
+   * @see #navCacheLifetime
+   */
+  public BRelTime getNavCacheLifetime() { return (BRelTime)get(navCacheLifetime); }
+  
+  /**
+   * Set the {@code navCacheLifetime} property.
+   * How long the child rows of a navId are cached.  Zero disables the nav cache.
+   * @see #navCacheLifetime
+   */
+  public void setNavCacheLifetime(BRelTime v) { set(navCacheLifetime, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "cacheRebuildThreads"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code cacheRebuildThreads} property.
+   * The number of threads which rebuild the cache.  Zero uses one thread
+   * per available processor, and one rebuilds on the calling thread.
+   * @see #getCacheRebuildThreads
+   * @see #setCacheRebuildThreads
+   */
+  public static final Property cacheRebuildThreads = newProperty(0, 0, null);
+  
+  /**
+   * Get the {@code cacheRebuildThreads} property.
+   * The number of threads which rebuild the cache.  Zero uses one thread
+   * per available processor, and one rebuilds on the calling thread.
+   * @see #cacheRebuildThreads
+   */
+  public int getCacheRebuildThreads() { return getInt(cacheRebuildThreads); }
+  
+  /**
+   * Set the {@code cacheRebuildThreads} property.
+   * The number of threads which rebuild the cache.  Zero uses one thread
+   * per available processor, and one rebuilds on the calling thread.
+   * @see #cacheRebuildThreads
+   */
+  public void setCacheRebuildThreads(int v) { setInt(cacheRebuildThreads, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "cacheSnapshotEnabled"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code cacheSnapshotEnabled} property.
+   * If true, the cache is saved to a file after it is rebuilt, and is
+   * loaded from that file when the station starts, so requests can be
+   * served while the cache is rebuilt in the background.
+   * @see #getCacheSnapshotEnabled
+   * @see #setCacheSnapshotEnabled
+   */
+  public static final Property cacheSnapshotEnabled = newProperty(0, false, null);
+  
+  /**
+   * Get the {@code cacheSnapshotEnabled} property.
+   * If true, the cache is saved to a file after it is rebuilt, and is
+   * loaded from that file when the station starts, so requests can be
+   * served while the cache is rebuilt in the background.
+   * @see #cacheSnapshotEnabled
+   */
+  public boolean getCacheSnapshotEnabled() { return getBoolean(cacheSnapshotEnabled); }
+  
+  /**
+   * Set the {@code cacheSnapshotEnabled} property.
+   * If true, the cache is saved to a file after it is rebuilt, and is
+   * loaded from that file when the station starts, so requests can be
+   * served while the cache is rebuilt in the background.
+   * @see #cacheSnapshotEnabled
+   */
+  public void setCacheSnapshotEnabled(boolean v) { setBoolean(cacheSnapshotEnabled, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "slowQueryThreshold"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code slowQueryThreshold} property.
+   * readAll requests which take longer than this are recorded in the slow query log.
+   * Zero records every request.
+   * @see #getSlowQueryThreshold
+   * @see #setSlowQueryThreshold
+   */
+  public static final Property slowQueryThreshold = newProperty(0, BRelTime.make(500), null);
+  
+  /**
+   * Get the {@code slowQueryThreshold} property.
+   * readAll requests which take longer than this are recorded in the slow query log.
+   * Zero records every request.
+   * @see #slowQueryThreshold
+   */
+  public BRelTime getSlowQueryThreshold() { return (BRelTime)get(slowQueryThreshold); }
+  
+  /**
+   * Set the {@code slowQueryThreshold} property.
+   * readAll requests which take longer than this are recorded in the slow query log.
+   * Zero records every request.
+   * @see #slowQueryThreshold
+   */
+  public void setSlowQueryThreshold(BRelTime v) { set(slowQueryThreshold, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "slowQueryLogSize"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code slowQueryLogSize} property.
+   * The number of slow readAll requests which are kept.  Zero disables the log.
+   * @see #getSlowQueryLogSize
+   * @see #setSlowQueryLogSize
+   */
+  public static final Property slowQueryLogSize = newProperty(0, 100, null);
+  
+  /**
+   * Get the {@code slowQueryLogSize} property.
+   * The number of slow readAll requests which are kept.  Zero disables the log.
+   * @see #slowQueryLogSize
+   */
+  public int getSlowQueryLogSize() { return getInt(slowQueryLogSize); }
+  
+  /**
+   * Set the {@code slowQueryLogSize} property.
+   * The number of slow readAll requests which are kept.  Zero disables the log.
+   * @see #slowQueryLogSize
+   */
+  public void setSlowQueryLogSize(int v) { setInt(slowQueryLogSize, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "readAllCacheSize"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code readAllCacheSize} property.
+   * The number of readAll filters whose matching ids are cached.  Zero disables the cache.
+   * Components that are added or tagged outside of haystack ops are not seen by a
+   * cached filter until its entry expires, so the cache is off by default.
+   * @see #getReadAllCacheSize
+   * @see #setReadAllCacheSize
+   */
+  public static final Property readAllCacheSize = newProperty(0, 0, null);
+  
+  /**
+   * Get the {@code readAllCacheSize} property.
+   * The number of readAll filters whose matching ids are cached.  Zero disables the cache.
+   * Components that are added or tagged outside of haystack ops are not seen by a
+   * cached filter until its entry expires, so the cache is off by default.
+   * @see #readAllCacheSize
+   */
+  public int getReadAllCacheSize() { return getInt(readAllCacheSize); }
+  
+  /**
+   * Set the {@code readAllCacheSize} property.
+   * The number of readAll filters whose matching ids are cached.  Zero disables the cache.
+   * Components that are added or tagged outside of haystack ops are not seen by a
+   * cached filter until its entry expires, so the cache is off by default.
+   * @see #readAllCacheSize
+   */
+  public void setReadAllCacheSize(int v) { setInt(readAllCacheSize, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "readAllCacheLifetime"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code readAllCacheLifetime} property.
+   * How long the ids that matched a readAll filter are cached.
+   * @see #getReadAllCacheLifetime
+   * @see #setReadAllCacheLifetime
+   */
+  public static final Property readAllCacheLifetime = newProperty(0, BRelTime.makeMinutes(1), null);
+  
+  /**
+   * Get the {@code readAllCacheLifetime} property.
+   * How long the ids that matched a readAll filter are cached.
+   * @see #readAllCacheLifetime
+   */
+  public BRelTime getReadAllCacheLifetime() { return (BRelTime)get(readAllCacheLifetime); }
+  
+  /**
+   * Set the {@code readAllCacheLifetime} property.
+   * How long the ids that matched a readAll filter are cached.
+   * @see #readAllCacheLifetime
+   */
+  public void setReadAllCacheLifetime(BRelTime v) { set(readAllCacheLifetime, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "readAllThreads"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code readAllThreads} property.
+   * The number of threads which scan the component space for readAll.  One
+   * scans on the calling thread, and zero uses one thread per available processor.
+   * @see #getReadAllThreads
+   * @see #setReadAllThreads
+   */
+  public static final Property readAllThreads = newProperty(0, 1, null);
+  
+  /**
+   * Get the {@code readAllThreads} property.
+   * The number of threads which scan the component space for readAll.  One
+   * scans on the calling thread, and zero uses one thread per available processor.
+   * @see #readAllThreads
+   */
+  public int getReadAllThreads() { return getInt(readAllThreads); }
+  
+  /**
+   * Set the {@code readAllThreads} property.
+   * The number of threads which scan the component space for readAll.  One
+   * scans on the calling thread, and zero uses one thread per available processor.
+   * @see #readAllThreads
+   */
+  public void setReadAllThreads(int v) { setInt(readAllThreads, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "scheduleWriteThreads"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code scheduleWriteThreads} property.
+   * The number of threads which apply the scheduled writes that are due at the
+   * same time.  One applies them on the worker thread, one after another.
+   * @see #getScheduleWriteThreads
+   * @see #setScheduleWriteThreads
+   */
+  public static final Property scheduleWriteThreads = newProperty(0, 4, null);
+  
+  /**
+   * Get the {@code scheduleWriteThreads} property.
+   * The number of threads which apply the scheduled writes that are due at the
+   * same time.  One applies them on the worker thread, one after another.
+   * @see #scheduleWriteThreads
+   */
+  public int getScheduleWriteThreads() { return getInt(scheduleWriteThreads); }
+  
+  /**
+   * Set the {@code scheduleWriteThreads} property.
+   * The number of threads which apply the scheduled writes that are due at the
+   * same time.  One applies them on the worker thread, one after another.
+   * @see #scheduleWriteThreads
+   */
+  public void setScheduleWriteThreads(int v) { setInt(scheduleWriteThreads, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "bulkTagBatchSize"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code bulkTagBatchSize} property.
+   * The number of components whose tags applyBatchTags and applyGridTags
+   * change between progress reports.
+   * @see #getBulkTagBatchSize
+   * @see #setBulkTagBatchSize
+   */
+  public static final Property bulkTagBatchSize = newProperty(0, 500, null);
+  
+  /**
+   * Get the {@code bulkTagBatchSize} property.
+   * The number of components whose tags applyBatchTags and applyGridTags
+   * change between progress reports.
+   * @see #bulkTagBatchSize
+   */
+  public int getBulkTagBatchSize() { return getInt(bulkTagBatchSize); }
+  
+  /**
+   * Set the {@code bulkTagBatchSize} property.
+   * The number of components whose tags applyBatchTags and applyGridTags
+   * change between progress reports.
+   * @see #bulkTagBatchSize
+   */
+  public void setBulkTagBatchSize(int v) { setInt(bulkTagBatchSize, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "slotConversionThreads"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code slotConversionThreads} property.
+   * The number of threads which convert haystack slots.  Zero uses one thread
+   * per available processor, and one converts on the job's thread.
+   * @see #getSlotConversionThreads
+   * @see #setSlotConversionThreads
+   */
+  public static final Property slotConversionThreads = newProperty(0, 0, null);
+  
+  /**
+   * Get the {@code slotConversionThreads} property.
+   * The number of threads which convert haystack slots.  Zero uses one thread
+   * per available processor, and one converts on the job's thread.
+   * @see #slotConversionThreads
+   */
+  public int getSlotConversionThreads() { return getInt(slotConversionThreads); }
+  
+  /**
+   * Set the {@code slotConversionThreads} property.
+   * The number of threads which convert haystack slots.  Zero uses one thread
+   * per available processor, and one converts on the job's thread.
+   * @see #slotConversionThreads
+   */
+  public void setSlotConversionThreads(int v) { setInt(slotConversionThreads, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "watchPushWindow"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code watchPushWindow} property.
+   * How long a watch stream waits after a change to a watch before it sends
+   * the change, so that the changes which follow it are sent along with it.
+   * @see #getWatchPushWindow
+   * @see #setWatchPushWindow
+   */
+  public static final Property watchPushWindow = newProperty(0, BRelTime.make(100), null);
+  
+  /**
+   * Get the {@code watchPushWindow} property.
+   * How long a watch stream waits after a change to a watch before it sends
+   * the change, so that the changes which follow it are sent along with it.
+   * @see #watchPushWindow
+   */
+  public BRelTime getWatchPushWindow() { return (BRelTime)get(watchPushWindow); }
+  
+  /**
+   * Set the {@code watchPushWindow} property.
+   * How long a watch stream waits after a change to a watch before it sends
+   * the change, so that the changes which follow it are sent along with it.
+   * @see #watchPushWindow
+   */
+  public void setWatchPushWindow(BRelTime v) { set(watchPushWindow, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "watchStreamLimit"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code watchStreamLimit} property.
+   * The number of watch streams which can be open at once, each of which
+   * holds a web server thread.  A watch stream which is asked for when this
+   * many are open is refused with 503 Service Unavailable.
+   * @see #getWatchStreamLimit
+   * @see #setWatchStreamLimit
+   */
+  public static final Property watchStreamLimit = newProperty(0, 16, null);
+  
+  /**
+   * Get the {@code watchStreamLimit} property.
+   * The number of watch streams which can be open at once, each of which
+   * holds a web server thread.  A watch stream which is asked for when this
+   * many are open is refused with 503 Service Unavailable.
+   * @see #watchStreamLimit
+   */
+  public int getWatchStreamLimit() { return getInt(watchStreamLimit); }
+  
+  /**
+   * Set the {@code watchStreamLimit} property.
+   * The number of watch streams which can be open at once, each of which
+   * holds a web server thread.  A watch stream which is asked for when this
+   * many are open is refused with 503 Service Unavailable.
+   * @see #watchStreamLimit
+   */
+  public void setWatchStreamLimit(int v) { setInt(watchStreamLimit, v, null); }
+
 ////////////////////////////////////////////////////////////////
 // Property "schemaVersion"
 ////////////////////////////////////////////////////////////////
@@ -702,6 +1265,24 @@ public class BNHaystackService
    */
   public void applySchedule(BHScheduleEvent parameter) { invoke(applySchedule, parameter, null); }
 
+////////////////////////////////////////////////////////////////
+// Action "applyScheduleBucket"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code applyScheduleBucket} action.
+   * apply the scheduled writes that are due at the given time
+   * @see #applyScheduleBucket(BAbsTime parameter)
+   */
+  public static final Action applyScheduleBucket = newAction(Flags.OPERATOR | Flags.ASYNC | Flags.HIDDEN, BAbsTime.DEFAULT, null);
+  
+  /**
+   * Invoke the {@code applyScheduleBucket} action.
+   * apply the scheduled writes that are due at the given time
+   * @see #applyScheduleBucket
+   */
+  public void applyScheduleBucket(BAbsTime parameter) { invoke(applyScheduleBucket, parameter, null); }
+
 ////////////////////////////////////////////////////////////////
 // Action "initializeHaystack"
 ////////////////////////////////////////////////////////////////
@@ -794,6 +1375,42 @@ public class BNHaystackService
    */
   public void initializeHaystackDictionary() { invoke(initializeHaystackDictionary, null, null); }
 
+////////////////////////////////////////////////////////////////
+// Action "resetOpMetrics"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code resetOpMetrics} action.
+   * Reset the request metrics in the stats
+   * @see #resetOpMetrics()
+   */
+  public static final Action resetOpMetrics = newAction(Flags.OPERATOR, null);
+  
+  /**
+   * Invoke the {@code resetOpMetrics} action.
+   * Reset the request metrics in the stats
+   * @see #resetOpMetrics
+   */
+  public void resetOpMetrics() { invoke(resetOpMetrics, null, null); }
+
+////////////////////////////////////////////////////////////////
+// Action "fetchSlowQueries"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code fetchSlowQueries} action.
+   * fetch the slow query log, most recent first.
+   * @see #fetchSlowQueries()
+   */
+  public static final Action fetchSlowQueries = newAction(Flags.OPERATOR | Flags.HIDDEN, null);
+  
+  /**
+   * Invoke the {@code fetchSlowQueries} action.
+   * fetch the slow query log, most recent first.
+   * @see #fetchSlowQueries
+   */
+  public BHGrid fetchSlowQueries() { return (BHGrid)invoke(fetchSlowQueries, null, null); }
+
 ////////////////////////////////////////////////////////////////
 // Type
 ////////////////////////////////////////////////////////////////
@@ -838,8 +1455,12 @@ public class BNHaystackService
             retryUpgradeOnRestart = BBoolean.FALSE;
         }
 
+        // A checkpoint is left behind by a conversion that was interrupted,
+        // so resume it.
+        boolean resumeConversion = get(SLOT_CONVERSION_CHECKPOINT) != null;
+
         int schemaVersion = getSchemaVersion();
-        if (schemaVersion == 0 || ((BBoolean)retryUpgradeOnRestart).getBoolean())
+        if (schemaVersion == 0 || ((BBoolean)retryUpgradeOnRestart).getBoolean() || resumeConversion)
         {
             // If a future schema increment occurs but the retryUpgradeOnRestart
             // is set to true, do not reset the schema version to 1.
@@ -851,12 +1472,20 @@ public class BNHaystackService
         }
 
         this.server = createServer();
+        if (getHisRollupStoreEnabled())
+            server.getHisRollupStore().load();
     }
 
     @Override
     public void serviceStopped()
     {
         LOG.info("NHaystack Service stopped");
+        if (server != null)
+            server.getHistoryIndex().stop();
+        if (server != null && getHisRollupStoreEnabled())
+            server.getHisRollupStore().save();
+        if (server != null && getCacheSnapshotEnabled())
+            server.getCache().saveSnapshot();
     }
 
     @Override
@@ -949,6 +1578,7 @@ public class BNHaystackService
             action == removeBrokenRefs ||
             action == findUniqueEquipTypes ||
             action == applySchedule ||
+            action == applyScheduleBucket ||
             action == initializeHaystackDictionary)
         {
             return postAsyncChore(
@@ -1000,7 +1630,15 @@ public class BNHaystackService
 
         LOG.info("Begin initializing NHaystack");
 
-        getHaystackServer().getCache().rebuild(getStats());
+        // serve requests from the snapshot while the cache is rebuilt
+        Cache cache = getHaystackServer().getCache();
+        if (getCacheSnapshotEnabled() && cache.loadSnapshot(getStats()))
+        {
+            getServlet().enableWithMessage(true);
+            setInitialized(true);
+        }
+
+        cache.rebuild(getStats());
         getServlet().enableWithMessage(true);
         setInitialized(true);
 
@@ -1030,6 +1668,11 @@ public class BNHaystackService
         server.getScheduleManager().applySchedule(event);
     }
 
+    public void doApplyScheduleBucket(BAbsTime time)
+    {
+        server.getScheduleManager().applyBucket(time.getMillis());
+    }
+
     public BOrd doFindUniqueEquipTypes(BUniqueEquipTypeArgs args)
     {
         BUniqueEquipTypeJob job = new BUniqueEquipTypeJob(
@@ -1055,6 +1698,19 @@ public class BNHaystackService
         hsDict.importDictionary();
     }
 
+    public void doResetOpMetrics()
+    {
+        if (server != null)
+            server.getMetrics().reset(getStats());
+    }
+
+    public BHGrid doFetchSlowQueries()
+    {
+        if (server == null)
+            return BHGrid.DEFAULT;
+        return BHGrid.make(server.getSlowQueryLog().toGrid());
+    }
+
 ////////////////////////////////////////////////////////////////
 // public
 ////////////////////////////////////////////////////////////////
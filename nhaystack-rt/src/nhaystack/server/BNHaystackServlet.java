@@ -6,6 +6,7 @@
 //   07 Nov 2011  Richard McElhinney  Creation
 //   28 Sep 2012  Mike Jarmy          Ported from axhaystack
 //   09 May 2018  Eric Anderson       Migrated to slot annotations, added missing @Overrides annotations
+//   19 Oct 2026                      Serve watch streams
 //
 package nhaystack.server;
 
@@ -27,6 +28,9 @@ import org.projecthaystack.server.HServlet;
   * BNHaystackServlet relays GET and POST requests 
   * to the NHServer that is made available 
   * by the BNHaystackService.
+  * <p>
+  * GET requests for a watchStream are served by a WatchStream,
+  * which pushes the changes to a watch to the client.
   */
 @NiagaraType
 public class BNHaystackServlet extends BWebServlet
@@ -76,6 +80,15 @@ public class BNHaystackServlet extends BWebServlet
 
         try
         {
+            if (WatchStream.isStreamRequest(op.getRequest()))
+            {
+                BNHaystackService service = (BNHaystackService) getParent();
+                service.getHaystackServer().getWatchStream().serve(
+                    op.getRequest(),
+                    op.getResponse());
+                return;
+            }
+
             servlet.doGet(
 //                new RequestWrapper(op.getRequest()),
                 op.getRequest(),
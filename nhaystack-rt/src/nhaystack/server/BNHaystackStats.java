@@ -49,6 +49,126 @@ import javax.baja.sys.Type;
   defaultValue = "BAbsTime.DEFAULT",
   flags = Flags.READONLY
 )
+@NiagaraProperty(
+  name = "lastCacheRebuildThreads",
+  type = "int",
+  defaultValue = "0",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "lastComponentScanDuration",
+  type = "BRelTime",
+  defaultValue = "BRelTime.DEFAULT",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "lastSepRefScanDuration",
+  type = "BRelTime",
+  defaultValue = "BRelTime.DEFAULT",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "lastRemoteHistoryScanDuration",
+  type = "BRelTime",
+  defaultValue = "BRelTime.DEFAULT",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "lastNavHistoryScanDuration",
+  type = "BRelTime",
+  defaultValue = "BRelTime.DEFAULT",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "lastPointEventsDuration",
+  type = "BRelTime",
+  defaultValue = "BRelTime.DEFAULT",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "numRequests",
+  type = "long",
+  defaultValue = "0L",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "numRequestErrors",
+  type = "long",
+  defaultValue = "0L",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "requestBytesOut",
+  type = "long",
+  defaultValue = "0L",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "opMetrics",
+  type = "String",
+  defaultValue = "\"\"",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "opMetricsResetTime",
+  type = "BAbsTime",
+  defaultValue = "BAbsTime.DEFAULT",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "readAllCacheHits",
+  type = "long",
+  defaultValue = "0L",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "readAllCacheMisses",
+  type = "long",
+  defaultValue = "0L",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "readAllCacheEvictions",
+  type = "long",
+  defaultValue = "0L",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "numScheduleBuckets",
+  type = "long",
+  defaultValue = "0L",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "lastScheduleBucketSize",
+  type = "int",
+  defaultValue = "0",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "lastScheduleDispatchLag",
+  type = "BRelTime",
+  defaultValue = "BRelTime.DEFAULT",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "maxScheduleDispatchLag",
+  type = "BRelTime",
+  defaultValue = "BRelTime.DEFAULT",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "lastScheduleDispatchDuration",
+  type = "BRelTime",
+  defaultValue = "BRelTime.DEFAULT",
+  flags = Flags.READONLY
+)
+@NiagaraProperty(
+  name = "watchCovSuppressed",
+  type = "long",
+  defaultValue = "0L",
+  flags = Flags.READONLY
+)
 public class BNHaystackStats extends BStruct
 {
 /*+ ------------ BEGIN BAJA AUTO GENERATED CODE ------------ +*/
@@ -170,6 +290,466 @@ public class BNHaystackStats extends BStruct
    */
   public void setLastCacheRebuildTime(BAbsTime v) { set(lastCacheRebuildTime, v, null); }
 
+////////////////////////////////////////////////////////////////
+// Property "lastCacheRebuildThreads"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code lastCacheRebuildThreads} property.
+   * @see #getLastCacheRebuildThreads
+   * @see #setLastCacheRebuildThreads
+   */
+  public static final Property lastCacheRebuildThreads = newProperty(Flags.READONLY, 0, null);
+  
+  /**
+   * Get the {@code lastCacheRebuildThreads} property.
+   * @see #lastCacheRebuildThreads
+   */
+  public int getLastCacheRebuildThreads() { return getInt(lastCacheRebuildThreads); }
+  
+  /**
+   * Set the {@code lastCacheRebuildThreads} property.
+   * @see #lastCacheRebuildThreads
+   */
+  public void setLastCacheRebuildThreads(int v) { setInt(lastCacheRebuildThreads, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "lastComponentScanDuration"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code lastComponentScanDuration} property.
+   * @see #getLastComponentScanDuration
+   * @see #setLastComponentScanDuration
+   */
+  public static final Property lastComponentScanDuration = newProperty(Flags.READONLY, BRelTime.DEFAULT, null);
+  
+  /**
+   * Get the {@code lastComponentScanDuration} property.
+   * @see #lastComponentScanDuration
+   */
+  public BRelTime getLastComponentScanDuration() { return (BRelTime)get(lastComponentScanDuration); }
+  
+  /**
+   * Set the {@code lastComponentScanDuration} property.
+   * @see #lastComponentScanDuration
+   */
+  public void setLastComponentScanDuration(BRelTime v) { set(lastComponentScanDuration, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "lastSepRefScanDuration"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code lastSepRefScanDuration} property.
+   * @see #getLastSepRefScanDuration
+   * @see #setLastSepRefScanDuration
+   */
+  public static final Property lastSepRefScanDuration = newProperty(Flags.READONLY, BRelTime.DEFAULT, null);
+  
+  /**
+   * Get the {@code lastSepRefScanDuration} property.
+   * @see #lastSepRefScanDuration
+   */
+  public BRelTime getLastSepRefScanDuration() { return (BRelTime)get(lastSepRefScanDuration); }
+  
+  /**
+   * Set the {@code lastSepRefScanDuration} property.
+   * @see #lastSepRefScanDuration
+   */
+  public void setLastSepRefScanDuration(BRelTime v) { set(lastSepRefScanDuration, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "lastRemoteHistoryScanDuration"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code lastRemoteHistoryScanDuration} property.
+   * @see #getLastRemoteHistoryScanDuration
+   * @see #setLastRemoteHistoryScanDuration
+   */
+  public static final Property lastRemoteHistoryScanDuration = newProperty(Flags.READONLY, BRelTime.DEFAULT, null);
+  
+  /**
+   * Get the {@code lastRemoteHistoryScanDuration} property.
+   * @see #lastRemoteHistoryScanDuration
+   */
+  public BRelTime getLastRemoteHistoryScanDuration() { return (BRelTime)get(lastRemoteHistoryScanDuration); }
+  
+  /**
+   * Set the {@code lastRemoteHistoryScanDuration} property.
+   * @see #lastRemoteHistoryScanDuration
+   */
+  public void setLastRemoteHistoryScanDuration(BRelTime v) { set(lastRemoteHistoryScanDuration, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "lastNavHistoryScanDuration"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code lastNavHistoryScanDuration} property.
+   * @see #getLastNavHistoryScanDuration
+   * @see #setLastNavHistoryScanDuration
+   */
+  public static final Property lastNavHistoryScanDuration = newProperty(Flags.READONLY, BRelTime.DEFAULT, null);
+  
+  /**
+   * Get the {@code lastNavHistoryScanDuration} property.
+   * @see #lastNavHistoryScanDuration
+   */
+  public BRelTime getLastNavHistoryScanDuration() { return (BRelTime)get(lastNavHistoryScanDuration); }
+  
+  /**
+   * Set the {@code lastNavHistoryScanDuration} property.
+   * @see #lastNavHistoryScanDuration
+   */
+  public void setLastNavHistoryScanDuration(BRelTime v) { set(lastNavHistoryScanDuration, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "lastPointEventsDuration"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code lastPointEventsDuration} property.
+   * @see #getLastPointEventsDuration
+   * @see #setLastPointEventsDuration
+   */
+  public static final Property lastPointEventsDuration = newProperty(Flags.READONLY, BRelTime.DEFAULT, null);
+  
+  /**
+   * Get the {@code lastPointEventsDuration} property.
+   * @see #lastPointEventsDuration
+   */
+  public BRelTime getLastPointEventsDuration() { return (BRelTime)get(lastPointEventsDuration); }
+  
+  /**
+   * Set the {@code lastPointEventsDuration} property.
+   * @see #lastPointEventsDuration
+   */
+  public void setLastPointEventsDuration(BRelTime v) { set(lastPointEventsDuration, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "numRequests"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code numRequests} property.
+   * @see #getNumRequests
+   * @see #setNumRequests
+   */
+  public static final Property numRequests = newProperty(Flags.READONLY, 0L, null);
+  
+  /**
+   * Get the {@code numRequests} property.
+   * @see #numRequests
+   */
+  public long getNumRequests() { return getLong(numRequests); }
+  
+  /**
+   * Set the {@code numRequests} property.
+   * @see #numRequests
+   */
+  public void setNumRequests(long v) { setLong(numRequests, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "numRequestErrors"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code numRequestErrors} property.
+   * @see #getNumRequestErrors
+   * @see #setNumRequestErrors
+   */
+  public static final Property numRequestErrors = newProperty(Flags.READONLY, 0L, null);
+  
+  /**
+   * Get the {@code numRequestErrors} property.
+   * @see #numRequestErrors
+   */
+  public long getNumRequestErrors() { return getLong(numRequestErrors); }
+  
+  /**
+   * Set the {@code numRequestErrors} property.
+   * @see #numRequestErrors
+   */
+  public void setNumRequestErrors(long v) { setLong(numRequestErrors, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "requestBytesOut"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code requestBytesOut} property.
+   * @see #getRequestBytesOut
+   * @see #setRequestBytesOut
+   */
+  public static final Property requestBytesOut = newProperty(Flags.READONLY, 0L, null);
+  
+  /**
+   * Get the {@code requestBytesOut} property.
+   * @see #requestBytesOut
+   */
+  public long getRequestBytesOut() { return getLong(requestBytesOut); }
+  
+  /**
+   * Set the {@code requestBytesOut} property.
+   * @see #requestBytesOut
+   */
+  public void setRequestBytesOut(long v) { setLong(requestBytesOut, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "opMetrics"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code opMetrics} property.
+   * @see #getOpMetrics
+   * @see #setOpMetrics
+   */
+  public static final Property opMetrics = newProperty(Flags.READONLY, "", null);
+  
+  /**
+   * Get the {@code opMetrics} property.
+   * @see #opMetrics
+   */
+  public String getOpMetrics() { return getString(opMetrics); }
+  
+  /**
+   * Set the {@code opMetrics} property.
+   * @see #opMetrics
+   */
+  public void setOpMetrics(String v) { setString(opMetrics, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "opMetricsResetTime"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code opMetricsResetTime} property.
+   * @see #getOpMetricsResetTime
+   * @see #setOpMetricsResetTime
+   */
+  public static final Property opMetricsResetTime = newProperty(Flags.READONLY, BAbsTime.DEFAULT, null);
+  
+  /**
+   * Get the {@code opMetricsResetTime} property.
+   * @see #opMetricsResetTime
+   */
+  public BAbsTime getOpMetricsResetTime() { return (BAbsTime)get(opMetricsResetTime); }
+  
+  /**
+   * Set the {@code opMetricsResetTime} property.
+   * @see #opMetricsResetTime
+   */
+  public void setOpMetricsResetTime(BAbsTime v) { set(opMetricsResetTime, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "readAllCacheHits"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code readAllCacheHits} property.
+   * @see #getReadAllCacheHits
+   * @see #setReadAllCacheHits
+   */
+  public static final Property readAllCacheHits = newProperty(Flags.READONLY, 0L, null);
+  
+  /**
+   * Get the {@code readAllCacheHits} property.
+   * @see #readAllCacheHits
+   */
+  public long getReadAllCacheHits() { return getLong(readAllCacheHits); }
+  
+  /**
+   * Set the {@code readAllCacheHits} property.
+   * @see #readAllCacheHits
+   */
+  public void setReadAllCacheHits(long v) { setLong(readAllCacheHits, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "readAllCacheMisses"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code readAllCacheMisses} property.
+   * @see #getReadAllCacheMisses
+   * @see #setReadAllCacheMisses
+   */
+  public static final Property readAllCacheMisses = newProperty(Flags.READONLY, 0L, null);
+  
+  /**
+   * Get the {@code readAllCacheMisses} property.
+   * @see #readAllCacheMisses
+   */
+  public long getReadAllCacheMisses() { return getLong(readAllCacheMisses); }
+  
+  /**
+   * Set the {@code readAllCacheMisses} property.
+   * @see #readAllCacheMisses
+   */
+  public void setReadAllCacheMisses(long v) { setLong(readAllCacheMisses, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "readAllCacheEvictions"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code readAllCacheEvictions} property.
+   * @see #getReadAllCacheEvictions
+   * @see #setReadAllCacheEvictions
+   */
+  public static final Property readAllCacheEvictions = newProperty(Flags.READONLY, 0L, null);
+  
+  /**
+   * Get the {@code readAllCacheEvictions} property.
+   * @see #readAllCacheEvictions
+   */
+  public long getReadAllCacheEvictions() { return getLong(readAllCacheEvictions); }
+  
+  /**
+   * Set the {@code readAllCacheEvictions} property.
+   * @see #readAllCacheEvictions
+   */
+  public void setReadAllCacheEvictions(long v) { setLong(readAllCacheEvictions, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "numScheduleBuckets"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code numScheduleBuckets} property.
+   * @see #getNumScheduleBuckets
+   * @see #setNumScheduleBuckets
+   */
+  public static final Property numScheduleBuckets = newProperty(Flags.READONLY, 0L, null);
+  
+  /**
+   * Get the {@code numScheduleBuckets} property.
+   * @see #numScheduleBuckets
+   */
+  public long getNumScheduleBuckets() { return getLong(numScheduleBuckets); }
+  
+  /**
+   * Set the {@code numScheduleBuckets} property.
+   * @see #numScheduleBuckets
+   */
+  public void setNumScheduleBuckets(long v) { setLong(numScheduleBuckets, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "lastScheduleBucketSize"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code lastScheduleBucketSize} property.
+   * @see #getLastScheduleBucketSize
+   * @see #setLastScheduleBucketSize
+   */
+  public static final Property lastScheduleBucketSize = newProperty(Flags.READONLY, 0, null);
+  
+  /**
+   * Get the {@code lastScheduleBucketSize} property.
+   * @see #lastScheduleBucketSize
+   */
+  public int getLastScheduleBucketSize() { return getInt(lastScheduleBucketSize); }
+  
+  /**
+   * Set the {@code lastScheduleBucketSize} property.
+   * @see #lastScheduleBucketSize
+   */
+  public void setLastScheduleBucketSize(int v) { setInt(lastScheduleBucketSize, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "lastScheduleDispatchLag"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code lastScheduleDispatchLag} property.
+   * @see #getLastScheduleDispatchLag
+   * @see #setLastScheduleDispatchLag
+   */
+  public static final Property lastScheduleDispatchLag = newProperty(Flags.READONLY, BRelTime.DEFAULT, null);
+  
+  /**
+   * Get the {@code lastScheduleDispatchLag} property.
+   * @see #lastScheduleDispatchLag
+   */
+  public BRelTime getLastScheduleDispatchLag() { return (BRelTime)get(lastScheduleDispatchLag); }
+  
+  /**
+   * Set the {@code lastScheduleDispatchLag} property.
+   * @see #lastScheduleDispatchLag
+   */
+  public void setLastScheduleDispatchLag(BRelTime v) { set(lastScheduleDispatchLag, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "maxScheduleDispatchLag"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code maxScheduleDispatchLag} property.
+   * @see #getMaxScheduleDispatchLag
+   * @see #setMaxScheduleDispatchLag
+   */
+  public static final Property maxScheduleDispatchLag = newProperty(Flags.READONLY, BRelTime.DEFAULT, null);
+  
+  /**
+   * Get the {@code maxScheduleDispatchLag} property.
+   * @see #maxScheduleDispatchLag
+   */
+  public BRelTime getMaxScheduleDispatchLag() { return (BRelTime)get(maxScheduleDispatchLag); }
+  
+  /**
+   * Set the {@code maxScheduleDispatchLag} property.
+   * @see #maxScheduleDispatchLag
+   */
+  public void setMaxScheduleDispatchLag(BRelTime v) { set(maxScheduleDispatchLag, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "lastScheduleDispatchDuration"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code lastScheduleDispatchDuration} property.
+   * @see #getLastScheduleDispatchDuration
+   * @see #setLastScheduleDispatchDuration
+   */
+  public static final Property lastScheduleDispatchDuration = newProperty(Flags.READONLY, BRelTime.DEFAULT, null);
+  
+  /**
+   * Get the {@code lastScheduleDispatchDuration} property.
+   * @see #lastScheduleDispatchDuration
+   */
+  public BRelTime getLastScheduleDispatchDuration() { return (BRelTime)get(lastScheduleDispatchDuration); }
+  
+  /**
+   * Set the {@code lastScheduleDispatchDuration} property.
+   * @see #lastScheduleDispatchDuration
+   */
+  public void setLastScheduleDispatchDuration(BRelTime v) { set(lastScheduleDispatchDuration, v, null); }
+
+////////////////////////////////////////////////////////////////
+// Property "watchCovSuppressed"
+////////////////////////////////////////////////////////////////
+  
+  /**
+   * Slot for the {@code watchCovSuppressed} property.
+   * @see #getWatchCovSuppressed
+   * @see #setWatchCovSuppressed
+   */
+  public static final Property watchCovSuppressed = newProperty(Flags.READONLY, 0L, null);
+  
+  /**
+   * Get the {@code watchCovSuppressed} property.
+   * @see #watchCovSuppressed
+   */
+  public long getWatchCovSuppressed() { return getLong(watchCovSuppressed); }
+  
+  /**
+   * Set the {@code watchCovSuppressed} property.
+   * @see #watchCovSuppressed
+   */
+  public void setWatchCovSuppressed(long v) { setLong(watchCovSuppressed, v, null); }
+
 ////////////////////////////////////////////////////////////////
 // Type
 ////////////////////////////////////////////////////////////////
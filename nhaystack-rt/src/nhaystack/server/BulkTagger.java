@@ -0,0 +1,335 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BValue;
+import javax.baja.sys.Clock;
+import nhaystack.BHDict;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HDictBuilder;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HGridBuilder;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HStr;
+import org.projecthaystack.HVal;
+
+/**
+  * BulkTagger changes the haystack slots of many components at once.
+  * <p>
+  * All of the changes are planned before any of them are applied, so
+  * that they can be returned as a diff instead (a dry run), and the
+  * components whose tags would not change are left alone.  The new tags
+  * are compared with the tags that each component has now, including
+  * the ones that have already been migrated out of its haystack slot
+  * to Niagara tags and relations, so applying the same tags twice
+  * changes nothing the second time.  The changes
+  * are applied in batches of the service's bulkTagBatchSize.  Each
+  * component's new tags are migrated to Niagara tags and relations
+  * before its haystack slot is set, so the slot is set once rather than
+  * once for the new tags and again for the migrated ones.
+  * <p>
+  * Once every change has been applied, the readAll cache is discarded,
+  * and if any site, equip or ref tags, or any other tags which the
+  * Cache is built from, were changed then the Cache is rebuilt once.
+  * <p>
+  * The changes are not applied as a transaction.  Each component is
+  * changed on its own, and a change which fails does not stop the
+  * rest or undo the ones before it.  The outcome of every change is
+  * recorded, and returned by toResultGrid(): "applied", "notMigrated"
+  * if its tags could not be migrated and were kept in its haystack slot,
+  * or "failed" if its haystack slot could not be set.
+  */
+final class BulkTagger
+{
+    BulkTagger(BNHaystackService service)
+    {
+        this.service = service;
+    }
+
+////////////////////////////////////////////////////////////////
+// plan
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Plan setting the haystack slot of the component to the tags.
+      */
+    void plan(BComponent comp, HDict tags)
+    {
+        BValue slot = comp.get(BHDict.HAYSTACK_IDENTIFIER);
+        HDict orig = slot instanceof BHDict ? ((BHDict) slot).getDict() : HDict.EMPTY;
+
+        Change change = new Change(comp, orig, effectiveTags(comp, orig), tags);
+        if (slot != null && change.isEmpty())
+            return;
+
+        changes.add(change);
+        if (!structural) structural = change.isStructural();
+    }
+
+    /**
+      * Return the tags that the component has now: the ones in its
+      * haystack slot, and the Niagara tags and relations that tags
+      * have been migrated to.
+      */
+    private HDict effectiveTags(BComponent comp, HDict orig)
+    {
+        NHServer server = service.getHaystackServer();
+        if (server == null) return orig;
+
+        TagManager tagMgr = server.getTagManager();
+        HDictBuilder hdb = new HDictBuilder();
+        hdb.add(tagMgr.generateComponentTags(comp));
+        hdb.add(tagMgr.convertRelationsToRefTags(comp));
+        hdb.add(orig);
+        return hdb.toDict();
+    }
+
+    /**
+      * Return the planned changes, one row for each component.
+      */
+    HGrid toDiffGrid()
+    {
+        HDict[] rows = new HDict[changes.size()];
+        for (int i = 0; i < rows.length; i++)
+        {
+            Change change = changes.get(i);
+
+            HDictBuilder hdb = new HDictBuilder();
+            hdb.add("axSlotPath", change.comp.getSlotPath().toString());
+            hdb.add("added", HStr.make(String.join(",", change.added)));
+            hdb.add("changed", HStr.make(String.join(",", change.changed)));
+            hdb.add("removed", HStr.make(String.join(",", change.removed)));
+            rows[i] = hdb.toDict();
+        }
+
+        HDictBuilder meta = new HDictBuilder();
+        meta.add("dryRun");
+        meta.add("rowsChanged", HNum.make(rows.length));
+        meta.add("rebuildCache", structural);
+        return HGridBuilder.dictsToGrid(meta.toDict(), rows);
+    }
+
+    /**
+      * Return the outcome of each change that has been applied, one row
+      * for each component.
+      */
+    HGrid toResultGrid()
+    {
+        HDict[] rows = new HDict[changes.size()];
+        for (int i = 0; i < rows.length; i++)
+        {
+            Change change = changes.get(i);
+
+            HDictBuilder hdb = new HDictBuilder();
+            hdb.add("axSlotPath", change.comp.getSlotPath().toString());
+            hdb.add("status", change.status);
+            if (change.error != null)
+                hdb.add("errMsg", change.error);
+            rows[i] = hdb.toDict();
+        }
+
+        HDictBuilder meta = new HDictBuilder();
+        meta.add("rowsChanged", HNum.make(rows.length - failed));
+        meta.add("rowsFailed", HNum.make(failed));
+        meta.add("rowsNotMigrated", HNum.make(notMigrated));
+        meta.add("rebuildCache", structural);
+        return HGridBuilder.dictsToGrid(meta.toDict(), rows);
+    }
+
+    int size() { return changes.size(); }
+
+    /**
+      * Return the number of changes whose haystack slot could not be set.
+      */
+    int failedCount() { return failed; }
+
+////////////////////////////////////////////////////////////////
+// apply
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Apply the planned changes, reporting progress to the job
+      * if there is one.
+      */
+    void apply(BNHaystackBulkTagJob job)
+    {
+        long t0 = Clock.ticks();
+        int batchSize = Math.max(1, service.getBulkTagBatchSize());
+        int total = changes.size();
+
+        for (int start = 0; start < total; start += batchSize)
+        {
+            int end = Math.min(start + batchSize, total);
+            for (int i = start; i < end; i++)
+                applyChange(changes.get(i), job);
+
+            if (job != null)
+                job.batchApplied(end, total);
+        }
+
+        NHServer server = service.getHaystackServer();
+        if (server != null)
+            server.getReadAllCache().invalidate();
+
+        if (structural && server != null)
+        {
+            if (job == null)
+            {
+                service.rebuildCache();
+            }
+            else
+            {
+                job.log().message("Rebuilding the cache.");
+                server.getCache().rebuild(service.getStats());
+            }
+        }
+
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine("Applied " + (total - failed) + " of " + total + " tag changes in " +
+                (Clock.ticks() - t0) + "ms, " + notMigrated + " of which could not be migrated.");
+    }
+
+    private void applyChange(Change change, BNHaystackBulkTagJob job)
+    {
+        BComponent comp = change.comp;
+
+        HDict tags = change.tags;
+        try
+        {
+            tags = HaystackSlotUtil.refactorHaystackSlot(comp, change.tags, service);
+        }
+        catch (Exception e)
+        {
+            // keep the tags in the haystack slot, as migrateHaystackTags does
+            notMigrated++;
+            change.status = NOT_MIGRATED;
+            change.error = e.toString();
+            report("Cannot migrate the tags of " + comp.getSlotPath(), e, job);
+        }
+
+        try
+        {
+            if (comp.get(BHDict.HAYSTACK_IDENTIFIER) == null)
+                comp.add(BHDict.HAYSTACK_IDENTIFIER, BHDict.make(tags));
+            else
+                comp.set(BHDict.HAYSTACK_IDENTIFIER, BHDict.make(tags));
+        }
+        catch (Exception e)
+        {
+            // the other changes are still applied
+            failed++;
+            change.status = FAILED;
+            change.error = e.toString();
+            report("Cannot set the tags of " + comp.getSlotPath(), e, job);
+        }
+    }
+
+    private static void report(String msg, Exception e, BNHaystackBulkTagJob job)
+    {
+        if (job == null)
+            LOG.log(Level.WARNING, msg, e);
+        else
+            job.log().message(msg + ": " + e);
+    }
+
+////////////////////////////////////////////////////////////////
+// Change
+////////////////////////////////////////////////////////////////
+
+    private static final class Change
+    {
+        Change(BComponent comp, HDict orig, HDict effective, HDict tags)
+        {
+            this.comp = comp;
+            this.tags = tags;
+
+            Iterator<Map.Entry<String, HVal>> it = tags.iterator();
+            while (it.hasNext())
+            {
+                Map.Entry<String, HVal> e = it.next();
+                HVal val = effective.get(e.getKey(), false);
+                if (val == null)
+                    added.add(e.getKey());
+                else if (!val.equals(e.getValue()))
+                    changed.add(e.getKey());
+            }
+
+            // only the tags in the haystack slot can be removed
+            it = orig.iterator();
+            while (it.hasNext())
+            {
+                String name = it.next().getKey();
+                if (!tags.has(name))
+                    removed.add(name);
+            }
+        }
+
+        boolean isEmpty()
+        {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+
+        boolean isStructural()
+        {
+            return containsAny(added) || containsAny(changed) || containsAny(removed);
+        }
+
+        private static boolean containsAny(List<String> names)
+        {
+            for (String name : names)
+            {
+                if (STRUCTURAL_TAGS.contains(name))
+                    return true;
+            }
+            return false;
+        }
+
+        final BComponent comp;
+        final HDict tags;
+
+        String status = APPLIED;
+        String error;
+
+        final List<String> added = new ArrayList<>();
+        final List<String> changed = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final Logger LOG = Logger.getLogger("nhaystack");
+
+    // the outcomes of a change
+    static final String APPLIED = "applied";
+    static final String NOT_MIGRATED = "notMigrated";
+    static final String FAILED = "failed";
+
+    // the tags which the Cache is built from
+    private static final Set<String> STRUCTURAL_TAGS = new HashSet<>(Arrays.asList(
+        "site", "equip", "siteRef", "equipRef", "navName", "navNameFormat",
+        "weeklySchedule", "schedulable"));
+
+    private final BNHaystackService service;
+
+    private final List<Change> changes = new ArrayList<>();
+    private boolean structural;
+    private int notMigrated;
+    private int failed;
+}
@@ -11,20 +11,32 @@
 //
 package nhaystack.server;
 
+import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Stack;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import javax.baja.control.BControlPoint;
 import javax.baja.history.BHistoryConfig;
 import javax.baja.history.BHistoryId;
 import javax.baja.history.BIHistory;
+import javax.baja.history.ext.BHistoryExt;
 import javax.baja.naming.BOrd;
 import javax.baja.schedule.BWeeklySchedule;
 import javax.baja.spy.SpyWriter;
@@ -42,8 +54,6 @@ import javax.baja.tag.Relations;
 
 import nhaystack.BHDict;
 import nhaystack.NHRef;
-import nhaystack.collection.ComponentTreeIterator;
-import nhaystack.collection.HistoryDbIterator;
 import nhaystack.site.BHEquip;
 import nhaystack.site.BHSite;
 import nhaystack.site.BHTagged;
@@ -60,78 +70,178 @@ class Cache implements NHaystackConst
     {
         this.server = server;
         this.schedMgr = schedMgr;
+        this.snapshot = new CacheSnapshot(new File(Sys.getStationHome(), "nhaystack/cache.dat"));
     }
 
     /**
       * Rebuild the cache.
+      * <p>
+      * The component tree is split into subtrees and the history database
+      * into groups of histories from the same device, which are scanned
+      * on a fork-join pool.  The partial results are merged in the order
+      * of the tree and the database, so the cache is the same no matter
+      * how many threads are used.
+      * <p>
+      * The new structures are built off to the side, so requests are
+      * still served from the old ones until the rebuild is done.
       */
-    synchronized void rebuild(BNHaystackStats stats)
+    void rebuild(BNHaystackStats stats)
     {
-        Thread thread = Thread.currentThread();
-        Context cx = ThreadContext.getContext(thread);
-
-        // rebuildCache runs 'permission-less', so lets remove the
-        // current context and then put it back in when we are done
-        if (cx != null) ThreadContext.removeContext(thread);
-
-        try
+        synchronized (rebuildLock)
         {
-            long t0 = Clock.ticks();
-            LOG.info("Begin cache rebuild.");
+            Thread thread = Thread.currentThread();
+            Context cx = ThreadContext.getContext(thread);
 
-            LOG.fine("Rebuild cache: step 1 of 5...");
-            rebuildComponentCache_firstPass();
+            // rebuildCache runs 'permission-less', so lets remove the
+            // current context and then put it back in when we are done
+            if (cx != null) ThreadContext.removeContext(thread);
 
-            LOG.fine("Rebuild cache: step 2 of 5...");
-            rebuildComponentCache_secondPass();
+            int threads = server.getService().getCacheRebuildThreads();
+            if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+            ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
 
-            LOG.fine("Rebuild cache: step 3 of 5...");
-            rebuildHistoryCache_firstPass();
+            try
+            {
+                long t0 = Clock.ticks();
+                LOG.info("Begin cache rebuild.");
+                State next = new State();
+
+                BIHistory[] histories = server.getService().getHistoryDb().getHistories();
+                Set<BHistoryId> historyIds = new HashSet<>();
+                for (BIHistory h : histories)
+                    historyIds.add(h.getId());
+
+                LOG.fine("Rebuild cache: step 1 of 5...");
+                rebuildComponentCache_firstPass(next, pool, historyIds);
+                long t1 = Clock.ticks();
+
+                LOG.fine("Rebuild cache: step 2 of 5...");
+                rebuildComponentCache_secondPass(next, pool);
+                long t2 = Clock.ticks();
+
+                LOG.fine("Rebuild cache: step 3 of 5...");
+                List<HistoryChunk> chunks = makeHistoryChunks(histories, pool == null);
+                rebuildHistoryCache_firstPass(next, pool, chunks);
+                long t3 = Clock.ticks();
+
+                LOG.fine("Rebuild cache: step 4 of 5...");
+                rebuildHistoryCache_secondPass(next, pool, chunks, historyIds);
+                State prev = publish(next);
+                long t4 = Clock.ticks();
+
+                LOG.fine("Rebuild cache: step 5 of 5...");
+                schedMgr.makePointEvents(next.scheduledPoints.toArray(EMPTY_COMPONENT_ARRAY));
+                server.getRefIndex().rebuild(next.refs);
+                next.refs.clear();
+                server.getHistoryIndex().rebuild(next.historyEntries);
+                next.historyEntries.clear();
+
+                lastRebuildTime = BAbsTime.now();
+                long t5 = Clock.ticks();
+                LOG.fine("End cache rebuild " + (t5-t0) + "ms on " + threads + " thread(s).");
+                lastRebuildDuration = BRelTime.make(t5-t0);
+
+                stats.setNumSites(next.sites.size());
+                stats.setNumEquips(next.equips.size());
+                stats.setNumPoints(next.numPoints);
+                stats.setLastCacheRebuildDuration(lastRebuildDuration);
+                stats.setLastCacheRebuildTime(lastRebuildTime);
+                stats.setLastCacheRebuildThreads(pool == null ? 1 : threads);
+                stats.setLastComponentScanDuration(BRelTime.make(t1-t0));
+                stats.setLastSepRefScanDuration(BRelTime.make(t2-t1));
+                stats.setLastRemoteHistoryScanDuration(BRelTime.make(t3-t2));
+                stats.setLastNavHistoryScanDuration(BRelTime.make(t4-t3));
+                stats.setLastPointEventsDuration(BRelTime.make(t5-t4));
+
+                if (prev.fromSnapshot)
+                    LOG.info("Verified cache snapshot, " + prev.countDifferences(next) + " differences were reconciled.");
+
+                if (server.getService().getCacheSnapshotEnabled())
+                    snapshot.save(next);
+            }
+            finally
+            {
+                if (pool != null) pool.shutdown();
+                if (cx != null) ThreadContext.putContext(thread, cx);
+            }
+        }
+    }
 
-            LOG.fine("Rebuild cache: step 4 of 5...");
-            rebuildHistoryCache_secondPass();
-            initialized = true;
+    /**
+      * Load the cache from the snapshot that was saved by the last
+      * rebuild, so requests can be served before the first rebuild
+      * is done.  Return false if there is no usable snapshot.
+      * <p>
+      * The cache should be rebuilt right after it is loaded, to pick
+      * up any changes that the snapshot did not catch.
+      */
+    boolean loadSnapshot(BNHaystackStats stats)
+    {
+        synchronized (rebuildLock)
+        {
+            if (initialized) return false;
 
-            LOG.fine("Rebuild cache: step 5 of 5...");
-            schedMgr.makePointEvents(scheduledPoints.toArray(EMPTY_COMPONENT_ARRAY));
+            State loaded = snapshot.load(server.getService());
+            if (loaded == null) return false;
 
-            lastRebuildTime = BAbsTime.now();
-            long t1 = Clock.ticks();
-            LOG.fine("End cache rebuild " + (t1-t0) + "ms.");
-            lastRebuildDuration = BRelTime.make(t1-t0);
+            publish(loaded);
+            schedMgr.makePointEvents(loaded.scheduledPoints.toArray(EMPTY_COMPONENT_ARRAY));
 
-            stats.setNumSites(sites.size());
-            stats.setNumEquips(equips.size());
-            stats.setNumPoints(numPoints);
-            stats.setLastCacheRebuildDuration(lastRebuildDuration);
-            stats.setLastCacheRebuildTime(lastRebuildTime);
+            stats.setNumSites(loaded.sites.size());
+            stats.setNumEquips(loaded.equips.size());
+            stats.setNumPoints(loaded.numPoints);
+            return true;
         }
-        finally
+    }
+
+    /**
+      * Save the current structures to the snapshot file.
+      */
+    void saveSnapshot()
+    {
+        synchronized (rebuildLock)
         {
-            if (cx != null) ThreadContext.putContext(thread, cx);
+            if (initialized) snapshot.save(state);
         }
     }
 
+    /**
+      * Replace the structures that requests are served from,
+      * and return the old ones.
+      */
+    private synchronized State publish(State next)
+    {
+        State prev = state;
+        state = next;
+        initialized = true;
+        generation++;
+        return prev;
+    }
+
     /**
       * Get the history config that goes with the remote point, or return null.
       */
     synchronized BHistoryConfig getHistoryConfig(RemotePoint remotePoint)
     {
         if (!initialized) throw new IllegalStateException(NOT_INITIALIZED);
-        return remoteToConfig.get(remotePoint);
+        return state.remoteToConfig.get(remotePoint);
     }
 
     /**
       * Get the control point that goes with the remote point, or return null.
       */
-    synchronized BControlPoint getControlPoint(RemotePoint remotePoint)
+    BControlPoint getControlPoint(RemotePoint remotePoint)
     {
-        // skip this check, since this method gets called during
-        // rebuildHistoryCache_secondPass()
-        //
-        //if (!initialized) throw new IllegalStateException(NOT_INITIALIZED);
+        return state.remotePoints.getPoint(remotePoint);
+    }
 
-        return remoteToPoint.get(remotePoint);
+    /**
+      * Get the remote point for an imported point, or return null
+      * if the point is not imported.
+      */
+    RemotePoint getRemotePoint(BControlPoint point)
+    {
+        return state.remotePoints.forPoint(point);
     }
 
     /**
@@ -140,19 +250,19 @@ class Cache implements NHaystackConst
     synchronized BComponent getImplicitEquip(BComponent point)
     {
         if (!initialized) throw new IllegalStateException(NOT_INITIALIZED);
-        return implicitEquips.get(point);
+        return state.implicitEquips.get(point);
     }
 
     synchronized BComponent[] getAllSites()
     {
         if (!initialized) throw new IllegalStateException(NOT_INITIALIZED);
-        return sites.toArray(EMPTY_COMPONENT_ARRAY);
+        return state.sites.toArray(EMPTY_COMPONENT_ARRAY);
     }
 
     synchronized BComponent[] getAllEquips()
     {
         if (!initialized) throw new IllegalStateException(NOT_INITIALIZED);
-        return equips.toArray(EMPTY_COMPONENT_ARRAY);
+        return state.equips.toArray(EMPTY_COMPONENT_ARRAY);
     }
 
     /**
@@ -162,7 +272,7 @@ class Cache implements NHaystackConst
     {
         if (!initialized) throw new IllegalStateException(NOT_INITIALIZED);
 
-        Collection<BComponent> arr = siteEquips.get(siteNavs.get(siteNav));
+        Collection<BComponent> arr = state.siteEquips.get(state.siteNavs.get(siteNav));
         return arr == null ? EMPTY_COMPONENT_ARRAY : arr.toArray(EMPTY_COMPONENT_ARRAY);
     }
 
@@ -172,7 +282,7 @@ class Cache implements NHaystackConst
     synchronized BComponent[] getNavEquipPoints(String equipNav)
     {
         if (!initialized) throw new IllegalStateException(NOT_INITIALIZED);
-        return getEquipPoints(equipNavs.get(equipNav));
+        return getEquipPoints(state.equipNavs.get(equipNav));
     }
 
     /**
@@ -180,7 +290,7 @@ class Cache implements NHaystackConst
       */
     synchronized BComponent[] getEquipPoints(BComponent equip)
     {
-        Collection<BComponent> arr = equipPoints.get(equip);
+        Collection<BComponent> arr = state.equipPoints.get(equip);
         return arr == null ? EMPTY_COMPONENT_ARRAY : arr.toArray(EMPTY_COMPONENT_ARRAY);
     }
 
@@ -190,7 +300,7 @@ class Cache implements NHaystackConst
     synchronized String[] getNavHistoryStationNames()
     {
         if (!initialized) throw new IllegalStateException(NOT_INITIALIZED);
-        return navHistories.keySet().toArray(EMPTY_STRING_ARRAY);
+        return state.navHistories.keySet().toArray(EMPTY_STRING_ARRAY);
     }
 
     /**
@@ -200,7 +310,7 @@ class Cache implements NHaystackConst
     {
         if (!initialized) throw new IllegalStateException(NOT_INITIALIZED);
 
-        Collection<BHistoryConfig> arr = navHistories.get(stationName);
+        Collection<BHistoryConfig> arr = state.navHistories.get(stationName);
 
         if (arr == null) 
             throw new BajaRuntimeException(
@@ -215,7 +325,7 @@ class Cache implements NHaystackConst
     synchronized BComponent lookupComponentBySepRef(NHRef id)
     {
         if (!initialized) throw new IllegalStateException(NOT_INITIALIZED);
-        return sepRefToComp.get(id);
+        return state.sepRefToComp.get(id);
     }
 
     /**
@@ -224,7 +334,7 @@ class Cache implements NHaystackConst
     synchronized NHRef lookupSepRefByComponent(BComponent comp)
     {
         if (!initialized) throw new IllegalStateException(NOT_INITIALIZED);
-        return compToSepRef.get(comp);
+        return state.compToSepRef.get(comp);
     }
 
 ////////////////////////////////////////////////////////////////
@@ -234,308 +344,567 @@ class Cache implements NHaystackConst
     /**
       * rebuildComponentCache_firstPass
       */
-    private void rebuildComponentCache_firstPass()
+    private void rebuildComponentCache_firstPass(State next, ForkJoinPool pool, Set<BHistoryId> historyIds)
     {
-        remoteToPoint  = new HashMap<>();
-        implicitEquips = new HashMap<>();
-        siteNavs  = new HashMap<>();
-        equipNavs = new HashMap<>();
-        siteEquips  = new HashMap<>();
-        equipPoints = new HashMap<>();
-        sepRefToComp = new HashMap<>();
-        compToSepRef = new HashMap<>();
-        scheduledPoints = new ArrayList<>();
-
-        sites = new ArrayList<>();
-        equips = new ArrayList<>();
-        Stack<ImplicitEquip> implicitEquipStack = new Stack<>();
-        numPoints = 0;
+        BComponent root = (BComponent) BOrd.make("slot:/").resolve(server.getService(), null).get();
 
-        ComponentTreeIterator iterator = new ComponentTreeIterator(
-            (BComponent) BOrd.make("slot:/").resolve(server.getService(), null).get());
+        List<Callable<ComponentScan>> tasks = new ArrayList<>();
+        partition(root, null, pool == null ? 0 : PARTITION_DEPTH, next.remotePoints, historyIds, tasks);
 
-        while (iterator.hasNext())
+        for (ComponentScan scan : invokeAll(pool, tasks))
         {
-            BComponent comp = iterator.next();
-
-            // push implicit equip 
-            SlotCursor<Property> cursor = comp.getProperties();
-            if (cursor.next(BHEquip.class))
-            {
-                implicitEquipStack.push(
-                    new ImplicitEquip(
-                        (BHEquip) cursor.get(),
-                        iterator.getStackDepth()));
-            }
-            // pop implicit equip once it goes out of scope
-            else
-            {
-                if (!implicitEquipStack.isEmpty())
-                {
-                    ImplicitEquip ie = implicitEquipStack.peek();
-                    if (iterator.getStackDepth() <= ie.depth)
-                        implicitEquipStack.pop();
-                }
-            }
-
-            // get cur implicit
-            BHEquip curImplicitEquip = implicitEquipStack.isEmpty() ?
-                null : implicitEquipStack.peek().equip;
-
-            processComponent(comp, curImplicitEquip);
+            next.numPoints += scan.numPoints;
+            next.scheduledPoints.addAll(scan.scheduledPoints);
+            next.remoteToPoint.putAll(scan.remoteToPoint);
+            next.implicitEquips.putAll(scan.implicitEquips);
+            next.sites.addAll(scan.sites);
+            next.equips.addAll(scan.equips);
+            next.siteNavs.putAll(scan.siteNavs);
+            next.equipNavs.putAll(scan.equipNavs);
+            mergeLists(next.siteEquips, scan.siteEquips);
+            mergeLists(next.equipPoints, scan.equipPoints);
+            next.historyLinks.putAll(scan.historyLinks);
+            next.refs.addAll(scan.refs);
+            for (Map.Entry<BHistoryId, BControlPoint> entry : scan.historyPoints.entrySet())
+                next.historyPoints.put(entry.getKey(), Optional.of(entry.getValue()));
         }
     }
 
     /**
-      * ImplicitEquip
+      * Split the tree into tasks, in depth-first order.  The components
+      * above the given depth are each scanned on their own, and the
+      * components at the given depth are scanned along with all of
+      * their descendants.
       */
-    static class ImplicitEquip
+    private void partition(
+        BComponent comp, BHEquip implicitEquip, int depth, RemotePointIndex remotePoints,
+        Set<BHistoryId> historyIds, List<Callable<ComponentScan>> tasks)
     {
-        ImplicitEquip(BHEquip equip, int depth) 
+        if (depth == 0)
         {
-            this.equip = equip;
-            this.depth = depth;
+            tasks.add(() -> new ComponentScan(remotePoints, historyIds).scanTree(comp, implicitEquip));
+            return;
         }
 
-        final BHEquip equip;
-        final int depth;
+        BHEquip curImplicitEquip = findImplicitEquip(comp, implicitEquip);
+        tasks.add(() -> new ComponentScan(remotePoints, historyIds).scan(comp, curImplicitEquip));
+
+        for (BComponent kid : comp.getChildComponents())
+            partition(kid, curImplicitEquip, depth - 1, remotePoints, historyIds, tasks);
     }
 
     /**
-      * processComponent
+      * Return the BHEquip child of the component if it has one, or else
+      * the implicit equip that it inherits from its parent.
       */
-    private void processComponent(BComponent comp, BComponent curImplicitEquip)
+    private static BHEquip findImplicitEquip(BComponent comp, BHEquip inherited)
     {
-        HDict tags = BHDict.findTagAnnotation(comp);
-        if (tags == null) tags = HDict.EMPTY;
+        SlotCursor<Property> cursor = comp.getProperties();
+        return cursor.next(BHEquip.class) ? (BHEquip) cursor.get() : inherited;
+    }
 
-        if (comp instanceof BControlPoint)
-        {
-            // point
-            BControlPoint point = (BControlPoint) comp;
-            numPoints++;
+    private static void mergeLists(
+        Map<BComponent, Collection<BComponent>> into,
+        Map<BComponent, Collection<BComponent>> from)
+    {
+        for (Map.Entry<BComponent, Collection<BComponent>> entry : from.entrySet())
+            into.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).addAll(entry.getValue());
+    }
 
-            if (tags.has("weeklySchedule") && tags.has("schedulable"))
-                scheduledPoints.add(point);
+    /**
+      * Look up a siteRef or equipRef while the cache is being rebuilt.
+      * Only refs in the component space can be resolved at this point:
+      * sep refs are what the rebuild is creating, and resolving any
+      * other kind of ref would need the cache.
+      */
+    private BComponent resolveRef(HRef ref)
+    {
+        String space = NHRef.make(ref).getSpace();
+        if (!space.equals(NHRef.COMP) && !space.equals(NHRef.COMP_BASE64))
+            return null;
 
-            // save remote point 
-            RemotePoint remote = RemotePoint.fromControlPoint(point);
-            if (remote != null) remoteToPoint.put(remote, point);
+        return server.getTagManager().lookupComponent(ref);
+    }
 
-            handleEquip(point, tags, curImplicitEquip);
-        }
-        else if (comp instanceof BWeeklySchedule)
-        {
-            // schedule
-            BWeeklySchedule sched = (BWeeklySchedule) comp;
-            numPoints++;
+    /**
+      * rebuildComponentCache_secondPass
+      */
+    private void rebuildComponentCache_secondPass(State next, ForkJoinPool pool)
+    {
+        List<Callable<Map<NHRef, BComponent>>> tasks = new ArrayList<>(next.sites.size());
+        for (BComponent site : next.sites)
+            tasks.add(() -> makeSepRefs(next, site));
 
-            handleEquip(sched, tags, curImplicitEquip);
-        }
-        else if (comp instanceof BHTagged)
+        for (Map<NHRef, BComponent> refs : invokeAll(pool, tasks))
         {
-            // auto-tagged site and equip
-            if (comp instanceof BHSite)
+            for (Map.Entry<NHRef, BComponent> entry : refs.entrySet())
             {
-                sites.add(comp);
-                siteNavs.put(
-                    Nav.makeSiteNavId(Nav.makeNavName(comp, tags)),
-                    comp);
+                // save bi-directional lookup
+                next.sepRefToComp.put(entry.getKey(), entry.getValue());
+                next.compToSepRef.put(entry.getValue(), entry.getKey());
             }
-            else if (comp instanceof BHEquip)
+        }
+    }
+
+    /**
+      * Make the sep refs for a site and its equips and points.
+      */
+    private static Map<NHRef, BComponent> makeSepRefs(State next, BComponent site)
+    {
+        Map<NHRef, BComponent> refs = new LinkedHashMap<>();
+
+        // make ref for site
+        HDict siteTags = site instanceof BHSite ? ((BHSite)site).getHaystack().getDict() : HDict.EMPTY;
+        String siteNav = Nav.makeNavName(site, siteTags);
+        refs.put(TagManager.makeSepRef(new String[] { siteNav }), site);
+
+        // iterate through equips for site
+        for (BComponent equip : next.siteEquips.getOrDefault(site, Collections.emptyList()))
+        {
+            // make ref for equip
+            HDict equipTags = equip instanceof BHEquip ? ((BHEquip)equip).getHaystack().getDict() : HDict.EMPTY;
+            String equipNav = Nav.makeNavName(equip, equipTags);
+            refs.put(TagManager.makeSepRef(new String[] { siteNav, equipNav }), equip);
+
+            // iterate through points for equip
+            for (BComponent point : next.equipPoints.getOrDefault(equip, Collections.emptyList()))
             {
-                equips.add(comp);
-                processEquip(comp);
+                // make ref for point
+                HDict pointTags = BHDict.findTagAnnotation(point);
+                if (pointTags == null) pointTags = HDict.EMPTY;
+                String pointNav = Nav.makeNavName(point, pointTags);
+                refs.put(TagManager.makeSepRef(new String[] { siteNav, equipNav, pointNav }), point);
             }
         }
-        else if(comp.tags().contains(ID_SITE))
+        return refs;
+    }
+
+////////////////////////////////////////////////////////////////
+// private -- history space
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Split the history database into chunks of histories from the
+      * same device, in the order of the database.  Devices with a lot
+      * of histories are split into several chunks.
+      */
+    private static List<HistoryChunk> makeHistoryChunks(BIHistory[] histories, boolean single)
+    {
+        List<HistoryChunk> chunks = new ArrayList<>();
+        if (single)
         {
-            sites.add(comp);
-            siteNavs.put(Nav.makeSiteNavId(Nav.makeNavName(comp, tags)), comp);
+            chunks.add(new HistoryChunk(Arrays.asList(histories)));
+            return chunks;
         }
-        else if (comp.tags().contains(ID_EQUIP))
+
+        Map<String, List<BIHistory>> devices = new LinkedHashMap<>();
+        for (BIHistory h : histories)
+            devices.computeIfAbsent(h.getId().getDeviceName(), k -> new ArrayList<>()).add(h);
+
+        for (List<BIHistory> device : devices.values())
         {
-            equips.add(comp);
-            processEquip(comp);
+            for (int i = 0; i < device.size(); i += HISTORY_CHUNK_SIZE)
+                chunks.add(new HistoryChunk(device.subList(i, Math.min(i + HISTORY_CHUNK_SIZE, device.size()))));
         }
+        return chunks;
     }
 
-    private void handleEquip(BComponent component, HDict tags, BComponent curImplicitEquip)
+    /**
+      * rebuildHistoryCache_firstPass
+      */
+    private void rebuildHistoryCache_firstPass(State next, ForkJoinPool pool, List<HistoryChunk> chunks)
     {
-        // explicit equip
-        Optional<Relation> optRelation = component.relations().get(ID_EQUIP_REF, Relations.OUT);
-        if (tags.has(EQUIP_REF))
+        List<Callable<Map<RemotePoint, BHistoryConfig>>> tasks = new ArrayList<>(chunks.size());
+        for (HistoryChunk chunk : chunks)
+            tasks.add(() -> chunk.readConfigs(next.remotePoints));
+
+        for (Map<RemotePoint, BHistoryConfig> configs : invokeAll(pool, tasks))
+            next.remoteToConfig.putAll(configs);
+    }
+
+    /**
+      * rebuildHistoryCache_secondPass
+      */
+    private void rebuildHistoryCache_secondPass(
+        State next, ForkJoinPool pool, List<HistoryChunk> chunks, Set<BHistoryId> historyIds)
+    {
+        // the first pass linked every point ext to its history, so any
+        // other local history has no point
+        String stationName = Sys.getStation().getStationName();
+        for (BHistoryId id : historyIds)
         {
-            HRef ref = tags.getRef(EQUIP_REF);
-            BComponent equip = server.getTagManager().lookupComponent(ref);
-            addPointToEquip(equip, component);
+            if (id.getDeviceName().equals(stationName))
+                next.historyPoints.putIfAbsent(id, Optional.empty());
         }
-        else if (optRelation.isPresent())
+
+        // look up linked points in the state that is being built
+        HistoryIndex historyIndex = server.getHistoryIndex();
+
+        List<Callable<List<HistoryIndex.Entry>>> tasks = new ArrayList<>(chunks.size());
+        for (HistoryChunk chunk : chunks)
         {
-            BComponent equip = (BComponent)optRelation.get().getEndpoint();
-            addPointToEquip(equip, component);
+            tasks.add(() ->
+            {
+                List<HistoryIndex.Entry> entries = new ArrayList<>(chunk.configs.length);
+                for (BHistoryConfig cfg : chunk.configs)
+                    entries.add(historyIndex.makeEntry(cfg, next));
+                return entries;
+            });
         }
-        else
+
+        boolean showLinked = server.getService().getShowLinkedHistories();
+        for (List<HistoryIndex.Entry> entries : invokeAll(pool, tasks))
         {
-            // implicit equip
-            if (curImplicitEquip != null)
+            for (HistoryIndex.Entry entry : entries)
             {
-                addPointToEquip(curImplicitEquip, component);
-                implicitEquips.put(component, curImplicitEquip);
+                next.historyEntries.add(entry);
+                if (entry.isVisible(showLinked))
+                    next.navHistories.computeIfAbsent(entry.station, k -> new ArrayList<>()).add(entry.cfg);
             }
         }
     }
 
     /**
-      * addPointToEquip
+      * HistoryChunk is a run of histories which are scanned together.
+      * The configs are read once in the first pass, and reused in the
+      * second.
       */
-    private void addPointToEquip(BComponent equip, BComponent point)
+    private static final class HistoryChunk
     {
-        equipPoints.computeIfAbsent(equip, k -> new ArrayList<>()).add(point);
+        HistoryChunk(List<BIHistory> histories)
+        {
+            this.histories = histories;
+        }
+
+        Map<RemotePoint, BHistoryConfig> readConfigs(RemotePointIndex remotePoints)
+        {
+            String stationName = Sys.getStation().getStationName();
+            Map<RemotePoint, BHistoryConfig> remoteToConfig = new LinkedHashMap<>();
+
+            configs = new BHistoryConfig[histories.size()];
+            for (int i = 0; i < configs.length; i++)
+            {
+                BIHistory h = histories.get(i);
+                BHistoryConfig cfg = h.getConfig();
+                configs[i] = cfg;
+
+                // ignore local histories
+                if (h.getId().getDeviceName().equals(stationName))
+                    continue;
+
+                RemotePoint remotePoint = remotePoints.forHistory(cfg);
+                if (remotePoint != null)
+                    remoteToConfig.put(remotePoint, cfg);
+            }
+            return remoteToConfig;
+        }
+
+        private final List<BIHistory> histories;
+        private BHistoryConfig[] configs;
     }
 
+////////////////////////////////////////////////////////////////
+// private -- tasks
+////////////////////////////////////////////////////////////////
+
     /**
-      * addEquipToSite
+      * Run the tasks on the pool, or on the calling thread if there is
+      * no pool, and return their results in the order of the tasks.
       */
-    private void addEquipToSite(BComponent site, BComponent equip)
+    private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks)
     {
-        siteEquips.computeIfAbsent(site, k -> new ArrayList<>()).add(equip);
+        List<T> results = new ArrayList<>(tasks.size());
+        try
+        {
+            if (pool == null)
+            {
+                for (Callable<T> task : tasks)
+                    results.add(task.call());
+            }
+            else
+            {
+                for (Future<T> future : pool.invokeAll(tasks))
+                    results.add(future.get());
+            }
+            return results;
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new BajaRuntimeException("Cache rebuild failed", cause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new BajaRuntimeException("Cache rebuild interrupted", e);
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw new BajaRuntimeException("Cache rebuild failed", e);
+        }
     }
 
+////////////////////////////////////////////////////////////////
+// ComponentScan
+////////////////////////////////////////////////////////////////
+
     /**
-      * processEquip
+      * ComponentScan collects the sites, equips and points of one part
+      * of the component tree.  It must not call back into the Cache,
+      * since it can run on a worker thread while the Cache is locked.
       */
-    private void processEquip(BComponent equip)
+    private final class ComponentScan
     {
-        HDict equipTags = BHDict.findTagAnnotation(equip);
-        if (equipTags == null)
+        ComponentScan(RemotePointIndex remotePoints, Set<BHistoryId> historyIds)
         {
-            equipTags = HDict.EMPTY;
+            this.remotePoints = remotePoints;
+            this.historyIds = historyIds;
         }
 
-        BComponent site = null;
-        if (equipTags.has(SITE_REF))
+        /**
+          * Scan just the given component.
+          */
+        ComponentScan scan(BComponent comp, BHEquip curImplicitEquip)
         {
-            HRef ref = equipTags.getRef(SITE_REF);
-            site = server.getTagManager().lookupComponent(ref);
+            processComponent(comp, curImplicitEquip);
+            return this;
         }
-        else  //check for niagara "hs:siteRef" relation to initialize site.
+
+        /**
+          * Scan the given component and all of its descendants.
+          */
+        ComponentScan scanTree(BComponent root, BHEquip implicitEquip)
         {
-            Optional<Relation> optRelation = equip.relations().get(ID_SITE_REF);
-            if (optRelation.isPresent())
+            Deque<Frame> stack = new ArrayDeque<>();
+            stack.push(new Frame(root, implicitEquip));
+
+            while (!stack.isEmpty())
             {
-                site = (BComponent)optRelation.get().getEndpoint();
+                Frame frame = stack.pop();
+                BHEquip curImplicitEquip = findImplicitEquip(frame.comp, frame.implicitEquip);
+                processComponent(frame.comp, curImplicitEquip);
+
+                // push in reverse so the kids are visited in slot order
+                BComponent[] kids = frame.comp.getChildComponents();
+                for (int i = kids.length - 1; i >= 0; i--)
+                    stack.push(new Frame(kids[i], curImplicitEquip));
             }
+            return this;
         }
 
-        if (site != null)
+        /**
+          * processComponent
+          */
+        private void processComponent(BComponent comp, BComponent curImplicitEquip)
         {
-            addEquipToSite(site, equip);
+            HDict tags = BHDict.findTagAnnotation(comp);
+            if (tags == null) tags = HDict.EMPTY;
+
+            RefIndex.collect(comp, tags, refs);
 
-            // save the equip nav
-            HDict siteTags = BHDict.findTagAnnotation(site);
-            if (siteTags == null)
+            if (comp instanceof BControlPoint)
             {
-                siteTags = HDict.EMPTY;
+                // point
+                BControlPoint point = (BControlPoint) comp;
+                numPoints++;
+
+                if (tags.has("weeklySchedule") && tags.has("schedulable"))
+                    scheduledPoints.add(point);
+
+                // save remote point 
+                RemotePoint remote = remotePoints.forPoint(point);
+                if (remote != null) remoteToPoint.put(remote, point);
+
+                linkHistories(point);
+                handleEquip(point, tags, curImplicitEquip);
             }
+            else if (comp instanceof BWeeklySchedule)
+            {
+                // schedule
+                BWeeklySchedule sched = (BWeeklySchedule) comp;
+                numPoints++;
 
-            equipNavs.put(
-                Nav.makeEquipNavId(
-                    Nav.makeNavName(site, siteTags),
-                    Nav.makeNavName(equip, equipTags)),
-                equip);
+                handleEquip(sched, tags, curImplicitEquip);
+            }
+            else if (comp instanceof BHTagged)
+            {
+                // auto-tagged site and equip
+                if (comp instanceof BHSite)
+                {
+                    sites.add(comp);
+                    siteNavs.put(
+                        Nav.makeSiteNavId(Nav.makeNavName(comp, tags)),
+                        comp);
+                }
+                else if (comp instanceof BHEquip)
+                {
+                    equips.add(comp);
+                    processEquip(comp);
+                }
+            }
+            else if(comp.tags().contains(ID_SITE))
+            {
+                sites.add(comp);
+                siteNavs.put(Nav.makeSiteNavId(Nav.makeNavName(comp, tags)), comp);
+            }
+            else if (comp.tags().contains(ID_EQUIP))
+            {
+                equips.add(comp);
+                processEquip(comp);
+            }
         }
-    }
 
-    /**
-      * rebuildComponentCache_secondPass
-      */
-    private void rebuildComponentCache_secondPass()
-    {
-        for (BComponent site : sites)
+        private void handleEquip(BComponent component, HDict tags, BComponent curImplicitEquip)
         {
-            // make ref for site
-            HDict siteTags = site instanceof BHSite ? ((BHSite)site).getHaystack().getDict() : HDict.EMPTY;
-            String siteNav = Nav.makeNavName(site, siteTags);
-            NHRef siteRef = TagManager.makeSepRef(new String[] { siteNav });
+            // explicit equip
+            Optional<Relation> optRelation = component.relations().get(ID_EQUIP_REF, Relations.OUT);
+            if (tags.has(EQUIP_REF))
+            {
+                HRef ref = tags.getRef(EQUIP_REF);
+                BComponent equip = resolveRef(ref);
+                addPointToEquip(equip, component);
+            }
+            else if (optRelation.isPresent())
+            {
+                Object endpoint = optRelation.get().getEndpoint();
+                if (endpoint instanceof BComponent)
+                    addPointToEquip((BComponent) endpoint, component);
+            }
+            else
+            {
+                // implicit equip
+                if (curImplicitEquip != null)
+                {
+                    addPointToEquip(curImplicitEquip, component);
+                    implicitEquips.put(component, curImplicitEquip);
+                }
+            }
+        }
 
-            // save bi-directional lookup for site
-            sepRefToComp.put(siteRef, site);
-            compToSepRef.put(site, siteRef);
+        /**
+          * addPointToEquip
+          */
+        private void addPointToEquip(BComponent equip, BComponent point)
+        {
+            // the equipRef is dangling
+            if (equip == null) return;
 
-            // iterate through equips for site
-            for (BComponent equip : siteEquips.getOrDefault(site, Collections.emptyList()))
-            {
-                // make ref for equip
-                HDict equipTags = equip instanceof BHEquip ? ((BHEquip)equip).getHaystack().getDict() : HDict.EMPTY;
-                String equipNav = Nav.makeNavName(equip, equipTags);
-                NHRef equipRef = TagManager.makeSepRef(new String[] { siteNav, equipNav });
+            equipPoints.computeIfAbsent(equip, k -> new ArrayList<>()).add(point);
+        }
 
-                // save bi-directional lookup for equip
-                sepRefToComp.put(equipRef, equip);
-                compToSepRef.put(equip, equipRef);
+        /**
+          * addEquipToSite
+          */
+        private void addEquipToSite(BComponent site, BComponent equip)
+        {
+            // the siteRef is dangling
+            if (site == null) return;
+
+            siteEquips.computeIfAbsent(site, k -> new ArrayList<>()).add(equip);
+        }
+
+        /**
+          * processEquip
+          */
+        private void processEquip(BComponent equip)
+        {
+            HDict equipTags = BHDict.findTagAnnotation(equip);
+            if (equipTags == null)
+            {
+                equipTags = HDict.EMPTY;
+            }
 
-                // iterate through points for equip
-                for (BComponent point : equipPoints.getOrDefault(equip, Collections.emptyList()))
+            BComponent site = null;
+            if (equipTags.has(SITE_REF))
+            {
+                HRef ref = equipTags.getRef(SITE_REF);
+                site = resolveRef(ref);
+            }
+            else  //check for niagara "hs:siteRef" relation to initialize site.
+            {
+                Optional<Relation> optRelation = equip.relations().get(ID_SITE_REF);
+                if (optRelation.isPresent() &&
+                    optRelation.get().getEndpoint() instanceof BComponent)
                 {
-                    // make ref for point
-                    HDict pointTags = BHDict.findTagAnnotation(point);
-                    if (pointTags == null) pointTags = HDict.EMPTY;
-                    String pointNav = Nav.makeNavName(point, pointTags);
-                    NHRef pointRef = TagManager.makeSepRef(new String[] { siteNav, equipNav, pointNav });
-
-                    // save bi-directional lookup for point
-                    sepRefToComp.put(pointRef, point);
-                    compToSepRef.put(point, pointRef);
+                    site = (BComponent)optRelation.get().getEndpoint();
                 }
             }
-        }
-    }
 
-////////////////////////////////////////////////////////////////
-// private -- history space
-////////////////////////////////////////////////////////////////
+            if (site != null)
+            {
+                addEquipToSite(site, equip);
 
-    /**
-      * rebuildHistoryCache_firstPass
-      */
-    private void rebuildHistoryCache_firstPass()
-    {
-        remoteToConfig = new HashMap<>();
-        navHistories = new TreeMap<>();
+                // save the equip nav
+                HDict siteTags = BHDict.findTagAnnotation(site);
+                if (siteTags == null)
+                {
+                    siteTags = HDict.EMPTY;
+                }
 
-        BIHistory[] histories = server.getService().getHistoryDb().getHistories();
-        for (BIHistory h : histories)
-        {
-            BHistoryId hid = h.getId();
+                equipNavs.put(
+                    Nav.makeEquipNavId(
+                        Nav.makeNavName(site, siteTags),
+                        Nav.makeNavName(equip, equipTags)),
+                    equip);
+            }
+        }
 
-            // ignore local histories
-            if (hid.getDeviceName().equals(Sys.getStation().getStationName()))
-                continue;
+        /**
+          * Link the point to the histories of its history exts.
+          */
+        private void linkHistories(BControlPoint point)
+        {
+            BHistoryExt first = HistoryLink.findHistoryExt(point);
+            historyLinks.put(point, new HistoryLink(
+                first, first != null && historyIds.contains(first.getHistoryConfig().getId())));
 
-            BHistoryConfig cfg = h.getConfig();
-            RemotePoint remotePoint = RemotePoint.fromHistoryConfig(cfg);
-            if (remotePoint != null)
-                remoteToConfig.put(remotePoint, cfg);
+            SlotCursor<Property> cursor = point.getProperties();
+            while (cursor.next(BHistoryExt.class))
+            {
+                BHistoryId id = ((BHistoryExt) cursor.get()).getHistoryConfig().getId();
+                if (historyIds.contains(id))
+                    historyPoints.put(id, point);
+            }
         }
+
+        private final RemotePointIndex remotePoints;
+        private final Set<BHistoryId> historyIds;
+
+        private int numPoints;
+        private final List<BComponent> scheduledPoints = new ArrayList<>();
+        private final Map<RemotePoint, BControlPoint> remoteToPoint = new HashMap<>();
+        private final Map<BComponent, BComponent> implicitEquips = new HashMap<>();
+        private final List<BComponent> sites = new ArrayList<>();
+        private final List<BComponent> equips = new ArrayList<>();
+        private final Map<String, BComponent> siteNavs = new HashMap<>();
+        private final Map<String, BComponent> equipNavs = new HashMap<>();
+        private final Map<BComponent, Collection<BComponent>> siteEquips = new HashMap<>();
+        private final Map<BComponent, Collection<BComponent>> equipPoints = new HashMap<>();
+        private final Map<BControlPoint, HistoryLink> historyLinks = new HashMap<>();
+        private final Map<BHistoryId, BControlPoint> historyPoints = new HashMap<>();
+        private final List<RefIndex.Ref> refs = new ArrayList<>();
     }
 
     /**
-      * rebuildHistoryCache_secondPass
+      * A component which is waiting to be scanned, along with the
+      * implicit equip that it inherits from its parent.
       */
-    private void rebuildHistoryCache_secondPass()
+    private static final class Frame
     {
-        Iterator<BHistoryConfig> itr = new HistoryDbIterator(server.getService().getHistoryDb());
-        while (itr.hasNext())
+        Frame(BComponent comp, BHEquip implicitEquip)
         {
-            BHistoryConfig cfg = itr.next();
-
-            if (server.getSpaceManager().isVisibleHistory(cfg))
-            {
-                String stationName = cfg.getId().getDeviceName();
-                navHistories.computeIfAbsent(stationName, k -> new ArrayList<>()).add(cfg);
-            }
+            this.comp = comp;
+            this.implicitEquip = implicitEquip;
         }
+
+        final BComponent comp;
+        final BHEquip implicitEquip;
     }
 
 ////////////////////////////////////////////////////////////////
@@ -545,7 +914,7 @@ class Cache implements NHaystackConst
     public void spy(SpyWriter out) throws Exception {
         out.startProps();
         out.trTitle("Cache SiteNavs", 2);
-        for (Map.Entry<String, BComponent> siteNav : siteNavs.entrySet())
+        for (Map.Entry<String, BComponent> siteNav : state.siteNavs.entrySet())
         {
             out.prop(siteNav.getKey(), siteNav.getValue().getSlotPath());
         }
@@ -553,7 +922,7 @@ class Cache implements NHaystackConst
 
         out.startProps();
         out.trTitle("Cache EquipNavs", 2);
-        for (Map.Entry<String, BComponent> nav : equipNavs.entrySet())
+        for (Map.Entry<String, BComponent> nav : state.equipNavs.entrySet())
         {
             out.prop(nav.getKey(), nav.getValue().getSlotPath());
         }
@@ -561,7 +930,7 @@ class Cache implements NHaystackConst
 
         out.startProps();
         out.trTitle("Cache ImplicitEquips", 2);
-        for (Map.Entry<BComponent, BComponent> nav : implicitEquips.entrySet())
+        for (Map.Entry<BComponent, BComponent> nav : state.implicitEquips.entrySet())
         {
             out.prop(nav.getKey().getSlotPath(), nav.getValue().getSlotPath());
         }
@@ -569,7 +938,7 @@ class Cache implements NHaystackConst
 
         out.startProps();
         out.trTitle("Cache SiteEquips", 2);
-        for (Map.Entry<BComponent, Collection<BComponent>> nav : siteEquips.entrySet())
+        for (Map.Entry<BComponent, Collection<BComponent>> nav : state.siteEquips.entrySet())
         {
             String site = nav.getKey().getSlotPath().toString();
             for (BComponent component : nav.getValue())
@@ -582,7 +951,7 @@ class Cache implements NHaystackConst
 
         out.startProps();
         out.trTitle("Cache EquipPoints", 2);
-        for (Map.Entry<BComponent, Collection<BComponent>> nav : equipPoints.entrySet())
+        for (Map.Entry<BComponent, Collection<BComponent>> nav : state.equipPoints.entrySet())
         {
             String equip = nav.getKey().getSlotPath().toString();
             for (BComponent component : nav.getValue())
@@ -601,6 +970,100 @@ class Cache implements NHaystackConst
 
     boolean initialized() { return initialized; }
 
+    /**
+      * Return the structures that requests are currently served from.
+      */
+    State currentState() { return state; }
+
+    /**
+      * Return a number which changes every time the cache is rebuilt.
+      */
+    int generation() { return generation; }
+
+////////////////////////////////////////////////////////////////
+// State
+////////////////////////////////////////////////////////////////
+
+    /**
+      * State holds the structures that are derived from the station.
+      * A rebuild fills in a new State, and then replaces the old one
+      * all at once.
+      */
+    static final class State
+    {
+        /**
+          * Count the entries which differ between this state and
+          * another one.
+          */
+        int countDifferences(State that)
+        {
+            int count = 0;
+            count += countDifferences(sepRefToComp, that.sepRefToComp);
+            count += countDifferences(implicitEquips, that.implicitEquips);
+            count += countDifferences(remoteToPoint, that.remoteToPoint);
+            count += countDifferences(remoteToConfig, that.remoteToConfig);
+            count += countDifferences(siteEquips, that.siteEquips);
+            count += countDifferences(equipPoints, that.equipPoints);
+            count += countDifferences(navHistories, that.navHistories);
+            return count;
+        }
+
+        private static <K, V> int countDifferences(Map<K, V> a, Map<K, V> b)
+        {
+            int count = 0;
+            for (Map.Entry<K, V> e : a.entrySet())
+            {
+                if (!e.getValue().equals(b.get(e.getKey())))
+                    count++;
+            }
+            for (K key : b.keySet())
+            {
+                if (!a.containsKey(key))
+                    count++;
+            }
+            return count;
+        }
+
+        final Map<RemotePoint, BHistoryConfig> remoteToConfig = new HashMap<>();
+        final Map<RemotePoint, BControlPoint> remoteToPoint = new ConcurrentHashMap<>();
+        final Map<String, Collection<BHistoryConfig>> navHistories = new TreeMap<>();
+
+        final Collection<BComponent> sites = new ArrayList<>();
+        final Collection<BComponent> equips = new ArrayList<>();
+
+        final Map<BComponent, BComponent> implicitEquips = new HashMap<>();
+        final Map<String, BComponent> siteNavs = new HashMap<>();
+        final Map<String, BComponent> equipNavs = new HashMap<>();
+        final Map<BComponent, Collection<BComponent>> siteEquips = new HashMap<>();
+        final Map<BComponent, Collection<BComponent>> equipPoints = new HashMap<>();
+
+        final Map<NHRef, BComponent> sepRefToComp = new HashMap<>();
+        final Map<BComponent, NHRef> compToSepRef = new HashMap<>();
+
+        final Collection<BComponent> scheduledPoints = new ArrayList<>();
+
+        // the references between components, which are handed to the
+        // RefIndex once the rebuild is published and are not kept here
+        final List<RefIndex.Ref> refs = new ArrayList<>();
+
+        // every history, which is handed to the HistoryIndex in the same way
+        final List<HistoryIndex.Entry> historyEntries = new ArrayList<>();
+
+        // the links between points and histories are filled in by the
+        // rebuild, and added to as new points and histories are seen
+        final Map<BControlPoint, HistoryLink> historyLinks = new ConcurrentHashMap<>();
+        final Map<BHistoryId, Optional<BControlPoint>> historyPoints = new ConcurrentHashMap<>();
+
+        // imported points by remote station and slot path, which is also
+        // kept up to date as proxy points are added and removed
+        final RemotePointIndex remotePoints = new RemotePointIndex(remoteToPoint);
+
+        int numPoints;
+
+        // true until a rebuild has checked a state that came from a snapshot
+        boolean fromSnapshot;
+    }
+
 ////////////////////////////////////////////////////////////////
 // attribs
 ////////////////////////////////////////////////////////////////
@@ -614,29 +1077,21 @@ class Cache implements NHaystackConst
 
     private static final Logger LOG = Logger.getLogger("nhaystack");
 
-    private final NHServer server;
-    private final ScheduleManager schedMgr;
-    private boolean initialized;
-
-    private Map<RemotePoint, BHistoryConfig> remoteToConfig;
-    private Map<RemotePoint, BControlPoint> remoteToPoint;
-    private Map<String, Collection<BHistoryConfig>> navHistories;
+    // the depth at which the component tree is split into subtrees,
+    // e.g. one subtree per station under /Drivers/NiagaraNetwork
+    private static final int PARTITION_DEPTH = 3;
 
-    private Collection<BComponent> sites = Collections.emptyList();
-    private Collection<BComponent> equips = Collections.emptyList();
+    private static final int HISTORY_CHUNK_SIZE = 1000;
 
-    private Map<BComponent, BComponent> implicitEquips;
-    private Map<String, BComponent> siteNavs;
-    private Map<String, BComponent> equipNavs;
-    private Map<BComponent, Collection<BComponent>> siteEquips;
-    private Map<BComponent, Collection<BComponent>> equipPoints;
-
-    private Map<NHRef, BComponent> sepRefToComp;
-    private Map<BComponent, NHRef> compToSepRef;
+    private final NHServer server;
+    private final ScheduleManager schedMgr;
+    private volatile boolean initialized;
+    private volatile int generation;
 
-    private Collection<BComponent> scheduledPoints;
+    private final Object rebuildLock = new Object();
+    private final CacheSnapshot snapshot;
+    private volatile State state = new State();
 
-    private int numPoints;
     private BRelTime lastRebuildDuration = BRelTime.DEFAULT;
     private BAbsTime lastRebuildTime = BAbsTime.DEFAULT;
 }
@@ -0,0 +1,421 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.baja.control.BControlPoint;
+import javax.baja.history.BHistoryConfig;
+import javax.baja.history.BIHistory;
+import javax.baja.naming.BOrd;
+import javax.baja.naming.UnresolvedException;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BObject;
+import javax.baja.sys.Clock;
+import javax.baja.sys.Sys;
+
+import nhaystack.NHRef;
+import org.projecthaystack.HRef;
+
+/**
+  * CacheSnapshot saves the structures of the Cache to a local file,
+  * so that a restarted station can serve requests before the cache
+  * has been rebuilt.
+  * <p>
+  * Components are saved by slot path and type, and histories by id.
+  * When the snapshot is loaded, every one of them must still exist
+  * with the same type, or else the whole snapshot is discarded.  The
+  * remote point keys are not saved, since they are quick to make from
+  * the points and histories themselves.
+  */
+final class CacheSnapshot
+{
+    CacheSnapshot(File file)
+    {
+        this.file = file;
+    }
+
+////////////////////////////////////////////////////////////////
+// save
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Save the state to the snapshot file.
+      */
+    void save(Cache.State state)
+    {
+        long t0 = Clock.ticks();
+        try
+        {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs())
+                throw new IOException("Cannot create " + dir);
+
+            // write to a temporary file, so a failed save
+            // never leaves a partial snapshot behind
+            File tmp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp))))
+            {
+                new Writer(out).write(state);
+            }
+
+            if (file.exists() && !file.delete())
+                throw new IOException("Cannot delete " + file);
+            if (!tmp.renameTo(file))
+                throw new IOException("Cannot rename " + tmp);
+
+            LOG.info("Saved cache snapshot to " + file + " in " + (Clock.ticks() - t0) + "ms.");
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // a snapshot is only an optimization, so failing to save
+            // one must never stop a rebuild or the service from stopping
+            LOG.log(Level.WARNING, "Cannot save cache snapshot " + file, e);
+        }
+    }
+
+    private static final class Writer
+    {
+        Writer(DataOutputStream out)
+        {
+            this.out = out;
+        }
+
+        void write(Cache.State state) throws IOException
+        {
+            // number the components and histories first, so the
+            // structures can refer to them by index
+            for (BComponent comp : state.sites) comp(comp);
+            for (BComponent comp : state.equips) comp(comp);
+            for (BComponent comp : state.scheduledPoints) comp(comp);
+            for (BComponent comp : state.remoteToPoint.values()) comp(comp);
+            for (BComponent comp : state.implicitEquips.keySet()) comp(comp);
+            for (BComponent comp : state.implicitEquips.values()) comp(comp);
+            for (BComponent comp : state.siteEquips.keySet()) comp(comp);
+            for (BComponent comp : state.equipPoints.keySet()) comp(comp);
+            for (Collection<BComponent> list : state.siteEquips.values()) list.forEach(this::comp);
+            for (Collection<BComponent> list : state.equipPoints.values()) list.forEach(this::comp);
+            for (BComponent comp : state.siteNavs.values()) comp(comp);
+            for (BComponent comp : state.equipNavs.values()) comp(comp);
+            for (BComponent comp : state.sepRefToComp.values()) comp(comp);
+            for (BHistoryConfig cfg : state.remoteToConfig.values()) history(cfg);
+            for (Collection<BHistoryConfig> list : state.navHistories.values()) list.forEach(this::history);
+
+            out.writeInt(VERSION);
+            out.writeUTF(Sys.getStation().getStationName());
+
+            out.writeInt(comps.size());
+            for (BComponent comp : comps)
+            {
+                out.writeUTF(comp.getSlotPath().toString());
+                out.writeUTF(comp.getType().toString());
+            }
+
+            out.writeInt(histories.size());
+            for (BHistoryConfig cfg : histories)
+                out.writeUTF(cfg.getId().toString());
+
+            out.writeInt(state.numPoints);
+            writeComps(state.sites);
+            writeComps(state.equips);
+            writeComps(state.scheduledPoints);
+            writeComps(state.remoteToPoint.values());
+
+            out.writeInt(state.implicitEquips.size());
+            for (Map.Entry<BComponent, BComponent> e : state.implicitEquips.entrySet())
+            {
+                out.writeInt(compIndex.get(e.getKey()));
+                out.writeInt(compIndex.get(e.getValue()));
+            }
+
+            writeCompLists(state.siteEquips);
+            writeCompLists(state.equipPoints);
+            writeNavs(state.siteNavs);
+            writeNavs(state.equipNavs);
+
+            out.writeInt(state.sepRefToComp.size());
+            for (Map.Entry<NHRef, BComponent> e : state.sepRefToComp.entrySet())
+            {
+                out.writeUTF(e.getKey().getHRef().val);
+                out.writeInt(compIndex.get(e.getValue()));
+            }
+
+            writeHistories(state.remoteToConfig.values());
+
+            out.writeInt(state.navHistories.size());
+            for (Map.Entry<String, Collection<BHistoryConfig>> e : state.navHistories.entrySet())
+            {
+                out.writeUTF(e.getKey());
+                writeHistories(e.getValue());
+            }
+        }
+
+        private void comp(BComponent comp)
+        {
+            if (!compIndex.containsKey(comp))
+            {
+                compIndex.put(comp, comps.size());
+                comps.add(comp);
+            }
+        }
+
+        private void history(BHistoryConfig cfg)
+        {
+            if (!historyIndex.containsKey(cfg))
+            {
+                historyIndex.put(cfg, histories.size());
+                histories.add(cfg);
+            }
+        }
+
+        private void writeComps(Collection<? extends BComponent> list) throws IOException
+        {
+            out.writeInt(list.size());
+            for (BComponent comp : list)
+                out.writeInt(compIndex.get(comp));
+        }
+
+        private void writeCompLists(Map<BComponent, Collection<BComponent>> map) throws IOException
+        {
+            out.writeInt(map.size());
+            for (Map.Entry<BComponent, Collection<BComponent>> e : map.entrySet())
+            {
+                out.writeInt(compIndex.get(e.getKey()));
+                writeComps(e.getValue());
+            }
+        }
+
+        private void writeNavs(Map<String, BComponent> navs) throws IOException
+        {
+            out.writeInt(navs.size());
+            for (Map.Entry<String, BComponent> e : navs.entrySet())
+            {
+                out.writeUTF(e.getKey());
+                out.writeInt(compIndex.get(e.getValue()));
+            }
+        }
+
+        private void writeHistories(Collection<BHistoryConfig> list) throws IOException
+        {
+            out.writeInt(list.size());
+            for (BHistoryConfig cfg : list)
+                out.writeInt(historyIndex.get(cfg));
+        }
+
+        private final DataOutputStream out;
+        private final List<BComponent> comps = new ArrayList<>();
+        private final Map<BComponent, Integer> compIndex = new IdentityHashMap<>();
+        private final List<BHistoryConfig> histories = new ArrayList<>();
+        private final Map<BHistoryConfig, Integer> historyIndex = new IdentityHashMap<>();
+    }
+
+////////////////////////////////////////////////////////////////
+// load
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Load the state from the snapshot file, or return null if there
+      * is no snapshot, or it does not match the station any more.
+      */
+    Cache.State load(BNHaystackService service)
+    {
+        if (!file.exists()) return null;
+
+        long t0 = Clock.ticks();
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file))))
+        {
+            Cache.State state = new Reader(in, service).read();
+            if (state != null)
+                LOG.info("Loaded cache snapshot from " + file + " in " + (Clock.ticks() - t0) + "ms.");
+            return state;
+        }
+        catch (Exception e)
+        {
+            LOG.log(Level.WARNING, "Cannot load cache snapshot " + file, e);
+            return null;
+        }
+    }
+
+    private static final class Reader
+    {
+        Reader(DataInputStream in, BNHaystackService service)
+        {
+            this.in = in;
+            this.service = service;
+        }
+
+        Cache.State read() throws IOException
+        {
+            if (in.readInt() != VERSION)
+                return invalid("it was saved by a different version");
+            if (!in.readUTF().equals(Sys.getStation().getStationName()))
+                return invalid("it was saved by a different station");
+
+            comps = new BComponent[in.readInt()];
+            for (int i = 0; i < comps.length; i++)
+            {
+                String slotPath = in.readUTF();
+                String type = in.readUTF();
+
+                BObject obj;
+                try
+                {
+                    obj = BOrd.make("station:|" + slotPath).get(service, null);
+                }
+                catch (UnresolvedException e)
+                {
+                    return invalid(slotPath + " has been removed");
+                }
+                if (!(obj instanceof BComponent) || !obj.getType().toString().equals(type))
+                    return invalid(slotPath + " has changed");
+                comps[i] = (BComponent) obj;
+            }
+
+            Map<String, BIHistory> db = new HashMap<>();
+            for (BIHistory h : service.getHistoryDb().getHistories())
+                db.put(h.getId().toString(), h);
+
+            histories = new BHistoryConfig[in.readInt()];
+            for (int i = 0; i < histories.length; i++)
+            {
+                String id = in.readUTF();
+                BIHistory h = db.get(id);
+                if (h == null)
+                    return invalid("history " + id + " has been removed");
+                histories[i] = h.getConfig();
+            }
+
+            Cache.State state = new Cache.State();
+            state.fromSnapshot = true;
+            state.numPoints = in.readInt();
+            readComps(state.sites);
+            readComps(state.equips);
+            readComps(state.scheduledPoints);
+
+            List<BComponent> remotePoints = new ArrayList<>();
+            readComps(remotePoints);
+            for (BComponent comp : remotePoints)
+            {
+                if (!(comp instanceof BControlPoint))
+                    return invalid(comp.getSlotPath() + " is not a point");
+                BControlPoint point = (BControlPoint) comp;
+                RemotePoint remote = state.remotePoints.forPoint(point);
+                if (remote == null)
+                    return invalid(comp.getSlotPath() + " is not a remote point");
+                state.remoteToPoint.put(remote, point);
+            }
+
+            int n = in.readInt();
+            for (int i = 0; i < n; i++)
+                state.implicitEquips.put(comps[in.readInt()], comps[in.readInt()]);
+
+            readCompLists(state.siteEquips);
+            readCompLists(state.equipPoints);
+            readNavs(state.siteNavs);
+            readNavs(state.equipNavs);
+
+            n = in.readInt();
+            for (int i = 0; i < n; i++)
+            {
+                NHRef ref = NHRef.make(HRef.make(in.readUTF()));
+                BComponent comp = comps[in.readInt()];
+                state.sepRefToComp.put(ref, comp);
+                state.compToSepRef.put(comp, ref);
+            }
+
+            List<BHistoryConfig> remoteConfigs = new ArrayList<>();
+            readHistories(remoteConfigs);
+            for (BHistoryConfig cfg : remoteConfigs)
+            {
+                RemotePoint remote = state.remotePoints.forHistory(cfg);
+                if (remote == null)
+                    return invalid(cfg.getId() + " is not a remote history");
+                state.remoteToConfig.put(remote, cfg);
+            }
+
+            n = in.readInt();
+            for (int i = 0; i < n; i++)
+            {
+                List<BHistoryConfig> cfgs = new ArrayList<>();
+                state.navHistories.put(in.readUTF(), cfgs);
+                readHistories(cfgs);
+            }
+
+            return state;
+        }
+
+        private void readComps(Collection<BComponent> list) throws IOException
+        {
+            int n = in.readInt();
+            for (int i = 0; i < n; i++)
+                list.add(comps[in.readInt()]);
+        }
+
+        private void readCompLists(Map<BComponent, Collection<BComponent>> map) throws IOException
+        {
+            int n = in.readInt();
+            for (int i = 0; i < n; i++)
+            {
+                List<BComponent> list = new ArrayList<>();
+                map.put(comps[in.readInt()], list);
+                readComps(list);
+            }
+        }
+
+        private void readNavs(Map<String, BComponent> navs) throws IOException
+        {
+            int n = in.readInt();
+            for (int i = 0; i < n; i++)
+                navs.put(in.readUTF(), comps[in.readInt()]);
+        }
+
+        private void readHistories(Collection<BHistoryConfig> list) throws IOException
+        {
+            int n = in.readInt();
+            for (int i = 0; i < n; i++)
+                list.add(histories[in.readInt()]);
+        }
+
+        private static Cache.State invalid(String reason)
+        {
+            LOG.info("Ignoring cache snapshot, because " + reason + '.');
+            return null;
+        }
+
+        private final DataInputStream in;
+        private final BNHaystackService service;
+        private BComponent[] comps;
+        private BHistoryConfig[] histories;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final Logger LOG = Logger.getLogger("nhaystack");
+
+    private static final int VERSION = 1;
+
+    private final File file;
+}
@@ -0,0 +1,104 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import javax.baja.naming.SlotPath;
+import javax.baja.sys.BComponent;
+
+/**
+  * ComponentIndex remembers which component each component space id
+  * resolved to, so that ids which are looked up again and again do not
+  * have to be parsed, turned into ords and resolved every time.
+  * <p>
+  * The index is keyed on the id itself, which encodes either the
+  * component's slot path or its handle.  An entry is only used if its
+  * component is still mounted at the same slot path as when it was
+  * added, so components which are removed, renamed or moved are
+  * resolved from scratch.  The whole index is dropped every time the
+  * Cache is rebuilt.
+  */
+final class ComponentIndex
+{
+    ComponentIndex(Cache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+      * Return the component for the id, or null if it is not
+      * in the index or its entry is out of date.
+      */
+    BComponent get(String id)
+    {
+        checkGeneration();
+
+        Entry entry = entries.get(id);
+        if (entry == null) return null;
+
+        BComponent comp = entry.comp;
+        if (!comp.isMounted() || !comp.getSlotPath().equals(entry.slotPath))
+        {
+            entries.remove(id, entry);
+            return null;
+        }
+        return comp;
+    }
+
+    void put(String id, BComponent comp)
+    {
+        checkGeneration();
+
+        if (entries.size() >= MAX_ENTRIES)
+            entries.clear();
+
+        entries.put(id, new Entry(comp));
+    }
+
+    void clear()
+    {
+        entries.clear();
+    }
+
+    int size()
+    {
+        return entries.size();
+    }
+
+    private void checkGeneration()
+    {
+        int gen = cache.generation();
+        if (gen != generation)
+        {
+            entries.clear();
+            generation = gen;
+        }
+    }
+
+    private static final class Entry
+    {
+        Entry(BComponent comp)
+        {
+            this.comp = comp;
+            this.slotPath = comp.getSlotPath();
+        }
+
+        final BComponent comp;
+        final SlotPath slotPath;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final int MAX_ENTRIES = 500000;
+
+    private final Cache cache;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile int generation;
+}
@@ -0,0 +1,264 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import static nhaystack.util.NHaystackConst.NAME_SPACE;
+
+import java.util.Optional;
+import javax.baja.control.BControlPoint;
+import javax.baja.data.BIDataValue;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BFacets;
+import javax.baja.sys.BNumber;
+import javax.baja.sys.BObject;
+import javax.baja.tag.Id;
+import nhaystack.BHDict;
+import org.projecthaystack.HBool;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HVal;
+
+/**
+  * CovFilter decides which changes to the points in a watch are
+  * worth reporting.
+  * <p>
+  * The options are given in the meta of the watchSub request:
+  * <ul>
+  *   <li>covDeadband: how much a numeric curVal has to change by to be
+  *       reported, either in the point's units, or as a percent of the
+  *       range of its facets (or of its last reported value, if it does
+  *       not have a range)</li>
+  *   <li>covMinInterval: the shortest time between two reports of the
+  *       same point.  A change that comes sooner is held back until the
+  *       interval has passed, and replaced by any change that follows it.</li>
+  *   <li>covStatusOnly: only report changes to curStatus</li>
+  *   <li>covPointIncrement: use the covIncrement of each point, without
+  *       any of the other options</li>
+  * </ul>
+  * Once a watch has any of these options, a point which has a covIncrement
+  * tag, or a covIncrement facet, uses that as its deadband instead.  A
+  * watch without options reports every change, as it always has.
+  * Changes to curStatus are always reported.
+  */
+final class CovFilter
+{
+    private CovFilter(double deadband, boolean percent, long minInterval, boolean statusOnly)
+    {
+        this.deadband = deadband;
+        this.percent = percent;
+        this.minInterval = minInterval;
+        this.statusOnly = statusOnly;
+    }
+
+    private static boolean isSet(HDict meta, String name)
+    {
+        return meta.has(name) && !meta.get(name).equals(HBool.FALSE);
+    }
+
+    /**
+      * Make the filter from the options in the meta of a watchSub
+      * request, or return NONE if it does not have any.
+      */
+    static CovFilter make(HDict meta)
+    {
+        double deadband = 0;
+        boolean percent = false;
+        HVal val = meta.get("covDeadband", false);
+        if (val != null)
+        {
+            HNum num = toNum("covDeadband", val);
+            if (num.val < 0)
+                throw new IllegalArgumentException("covDeadband must not be negative: " + num);
+            deadband = num.val;
+            percent = "%".equals(num.unit);
+        }
+
+        long minInterval = 0;
+        val = meta.get("covMinInterval", false);
+        if (val != null)
+        {
+            HNum num = toNum("covMinInterval", val);
+            minInterval = num.unit == null ? (long) num.val : num.millis();
+            if (minInterval < 0)
+                throw new IllegalArgumentException("covMinInterval must not be negative: " + num);
+        }
+
+        boolean statusOnly = isSet(meta, "covStatusOnly");
+
+        if (deadband == 0 && minInterval == 0 && !statusOnly && !isSet(meta, "covPointIncrement"))
+            return NONE;
+        return new CovFilter(deadband, percent, minInterval, statusOnly);
+    }
+
+    private static HNum toNum(String name, HVal val)
+    {
+        if (!(val instanceof HNum))
+            throw new IllegalArgumentException(name + " must be a number: " + val);
+        return (HNum) val;
+    }
+
+    /**
+      * Make the state that the component's changes are filtered with,
+      * starting from the given COV, or return null if every change
+      * is reported.
+      */
+    Point makePoint(BComponent comp, HDict cov)
+    {
+        if (this == NONE) return null;
+
+        return new Point(this, findIncrement(comp), findRange(comp), cov);
+    }
+
+    /**
+      * Return the covIncrement tag or facet of the component,
+      * or NaN if it has neither.
+      */
+    private static double findIncrement(BComponent comp)
+    {
+        Optional<BIDataValue> tag = comp.tags().get(ID_COV_INCREMENT);
+        if (tag.isPresent() && tag.get() instanceof BNumber)
+            return ((BNumber) tag.get()).getDouble();
+
+        HDict tags = BHDict.findTagAnnotation(comp);
+        if (tags != null && tags.get(COV_INCREMENT, false) instanceof HNum)
+            return ((HNum) tags.get(COV_INCREMENT)).val;
+
+        BFacets facets = facetsOf(comp);
+        if (facets != null && facets.get(COV_INCREMENT) instanceof BNumber)
+            return ((BNumber) facets.get(COV_INCREMENT)).getDouble();
+
+        return Double.NaN;
+    }
+
+    /**
+      * Return the range of the component's facets, or NaN if
+      * they do not have a finite range.
+      */
+    private static double findRange(BComponent comp)
+    {
+        BFacets facets = facetsOf(comp);
+        if (facets == null) return Double.NaN;
+
+        BObject min = facets.get(BFacets.MIN);
+        BObject max = facets.get(BFacets.MAX);
+        if (!(min instanceof BNumber) || !(max instanceof BNumber))
+            return Double.NaN;
+
+        double range = ((BNumber) max).getDouble() - ((BNumber) min).getDouble();
+        return Double.isInfinite(range) || range <= 0 ? Double.NaN : range;
+    }
+
+    private static BFacets facetsOf(BComponent comp)
+    {
+        return comp instanceof BControlPoint ? ((BControlPoint) comp).getFacets() : null;
+    }
+
+////////////////////////////////////////////////////////////////
+// Point
+////////////////////////////////////////////////////////////////
+
+    /**
+      * The COV that was last reported for a point, and the
+      * change that is being held back, if any.
+      */
+    static final class Point
+    {
+        private Point(CovFilter filter, double increment, double range, HDict cov)
+        {
+            this.filter = filter;
+            this.increment = increment;
+            this.range = range;
+            reported(cov, 0);
+        }
+
+        /**
+          * Return what should be done with the change.
+          */
+        int check(HDict cov, long now)
+        {
+            if (!isSignificant(cov)) return SUPPRESS;
+
+            return now - lastTime < filter.minInterval ? DEFER : REPORT;
+        }
+
+        /**
+          * Return when a change that is held back can be reported.
+          */
+        long dueTime()
+        {
+            return lastTime + filter.minInterval;
+        }
+
+        void reported(HDict cov, long now)
+        {
+            last = cov;
+            lastTime = now;
+            deferred = null;
+        }
+
+        private boolean isSignificant(HDict cov)
+        {
+            HVal status = cov.get("curStatus", false);
+            if (status == null ? last.has("curStatus") : !status.equals(last.get("curStatus", false)))
+                return true;
+
+            if (filter.statusOnly) return false;
+
+            HVal val = cov.get("curVal", false);
+            HVal lastVal = last.get("curVal", false);
+            if (!(val instanceof HNum) || !(lastVal instanceof HNum))
+                return val == null ? lastVal != null : !val.equals(lastVal);
+
+            double v = ((HNum) val).val;
+            double lv = ((HNum) lastVal).val;
+            double delta = Math.abs(v - lv);
+            if (Double.isNaN(delta)) return Double.isNaN(v) != Double.isNaN(lv);
+
+            return delta > 0 && delta >= deadband(lv);
+        }
+
+        private double deadband(double lastVal)
+        {
+            if (!Double.isNaN(increment)) return increment;
+            if (!filter.percent) return filter.deadband;
+
+            double base = Double.isNaN(range) ? Math.abs(lastVal) : range;
+            return base * filter.deadband / 100;
+        }
+
+        private final CovFilter filter;
+        private final double increment;
+        private final double range;
+
+        private HDict last;
+        private long lastTime;
+
+        // the change that is held back until minInterval has passed
+        HDict deferred;
+        boolean scheduled;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    static final CovFilter NONE = new CovFilter(0, false, 0, false);
+
+    // what to do with a change
+    static final int REPORT   = 0;
+    static final int SUPPRESS = 1;
+    static final int DEFER    = 2;
+
+    private static final String COV_INCREMENT = "covIncrement";
+    private static final Id ID_COV_INCREMENT = Id.newId(NAME_SPACE, COV_INCREMENT);
+
+    private final double deadband;
+    private final boolean percent;
+    private final long minInterval;
+    private final boolean statusOnly;
+}
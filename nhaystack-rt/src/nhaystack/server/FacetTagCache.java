@@ -0,0 +1,213 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import javax.baja.sys.BEnumRange;
+import javax.baja.sys.BFacets;
+import javax.baja.sys.BNumber;
+import javax.baja.sys.BObject;
+import javax.baja.units.BUnit;
+import javax.baja.units.BUnitConversion;
+import nhaystack.res.Resources;
+import nhaystack.res.Unit;
+import nhaystack.util.SlotUtil;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HStr;
+
+/**
+  * FacetTagCache holds the tags that TagManager derives from the facets
+  * of points and histories, and the serialized 'actions' grids of
+  * writable points.  Most of the points in a station share a handful of
+  * facets, so the tags are worked out once per distinct BFacets value
+  * and shared by every point that has it.
+  * <p>
+  * Since BFacets is immutable, changing the facets of a point gives it
+  * a new BFacets, which is looked up afresh.  The entries for a facets
+  * value are only remade if the service's translateEnums setting has
+  * changed since they were made.
+  */
+final class FacetTagCache
+{
+    /**
+      * Return the tags derived from the facets, which may be null.
+      */
+    FacetTags get(BFacets facets, boolean translateEnums)
+    {
+        if (facets == null) return FacetTags.NONE;
+
+        FacetTags ft = facetTags.get(facets);
+        if (ft == null || ft.translateEnums != translateEnums)
+        {
+            if (facetTags.size() >= MAX_ENTRIES)
+                facetTags.clear();
+
+            ft = new FacetTags(facets, translateEnums);
+            facetTags.put(facets, ft);
+        }
+        return ft;
+    }
+
+    /**
+      * Return the serialized actions grid for the key, making it
+      * with the given supplier if it has not been made yet.
+      */
+    HStr getActions(String key, Supplier<HStr> supplier)
+    {
+        HStr actions = this.actions.get(key);
+        if (actions == null)
+        {
+            actions = supplier.get();
+            if (actions == null) return null;
+
+            if (this.actions.size() >= MAX_ENTRIES)
+                this.actions.clear();
+            this.actions.put(key, actions);
+        }
+        return actions;
+    }
+
+    void clear()
+    {
+        facetTags.clear();
+        actions.clear();
+    }
+
+    int size()
+    {
+        return facetTags.size() + actions.size();
+    }
+
+////////////////////////////////////////////////////////////////
+// FacetTags
+////////////////////////////////////////////////////////////////
+
+    /**
+      * The tags derived from one BFacets value.
+      */
+    static final class FacetTags
+    {
+        private FacetTags()
+        {
+            this.translateEnums = false;
+            this.unit = null;
+            this.trueFalse = "false,true";
+            this.range = null;
+            this.enumTags = new HashMap<>();
+            this.enumText = "";
+            this.minVal = null;
+            this.maxVal = null;
+            this.precision = null;
+        }
+
+        FacetTags(BFacets facets, boolean translateEnums)
+        {
+            this.translateEnums = translateEnums;
+            this.unit = findUnit(facets);
+            this.trueFalse =
+                facets.gets("falseText", "false") + ',' +
+                facets.gets("trueText", "true");
+
+            BObject range = facets.get(BFacets.RANGE);
+            this.range = range instanceof BEnumRange ? (BEnumRange) range : null;
+            this.enumTags = new HashMap<>();
+
+            StringBuilder sb = new StringBuilder();
+            if (this.range != null && !this.range.isNull())
+            {
+                int[] ords = this.range.getOrdinals();
+                for (int i = 0; i < ords.length; i++)
+                {
+                    String tag = SlotUtil.fromEnum(this.range.get(ords[i]).getTag(), translateEnums);
+                    enumTags.put(ords[i], tag);
+
+                    if (i > 0) sb.append(',');
+                    sb.append(tag);
+                }
+            }
+            this.enumText = sb.toString();
+
+            this.minVal    = getNumberFacet(facets, BFacets.MIN);
+            this.maxVal    = getNumberFacet(facets, BFacets.MAX);
+            this.precision = getNumberFacet(facets, BFacets.PRECISION);
+        }
+
+        /**
+          * Return the tag of the ordinal, or null if the
+          * facets do not have a range.
+          */
+        String getEnumTag(int ordinal)
+        {
+            if (range == null) return null;
+
+            String tag = enumTags.get(ordinal);
+            return tag != null ? tag :
+                SlotUtil.fromEnum(range.getTag(ordinal), translateEnums);
+        }
+
+        private static Unit findUnit(BFacets facets)
+        {
+            BObject obj = facets.get(BFacets.UNITS);
+            if (!(obj instanceof BUnit)) return null;
+
+            BUnit unit = (BUnit) obj;
+            if (unit.isNull())
+                return null;
+
+            int conv = facets.geti("unitConversion", 0);
+            if (conv != 0)
+                unit = BUnitConversion.make(conv).getDesiredUnit(unit);
+
+            return Resources.fromBajaUnit(unit);
+        }
+
+        private static HNum getNumberFacet(BFacets facets, String name)
+        {
+            BNumber num = (BNumber) facets.get(name);
+            if (num == null) return null;
+            if (num.toString().equals("+inf")) return null;
+            if (num.toString().equals("-inf")) return null;
+            return HNum.make(num.getInt());
+        }
+
+        static final FacetTags NONE = new FacetTags();
+
+        private final boolean translateEnums;
+
+        /** The unit, or null. */
+        final Unit unit;
+
+        /** The 'enum' tag of a boolean point. */
+        final String trueFalse;
+
+        /** The enum range, or null. */
+        final BEnumRange range;
+
+        /** The 'enum' tag of an enum point. */
+        final String enumText;
+
+        /** The minVal, maxVal and precision tags, or null. */
+        final HNum minVal;
+        final HNum maxVal;
+        final HNum precision;
+
+        private final Map<Integer, String> enumTags;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final int MAX_ENTRIES = 10000;
+
+    private final ConcurrentHashMap<BFacets, FacetTags> facetTags = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, HStr> actions = new ConcurrentHashMap<>();
+}
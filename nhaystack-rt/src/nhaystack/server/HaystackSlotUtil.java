@@ -73,6 +73,14 @@ public final class HaystackSlotUtil
     }
 
     public static void migrateHaystackTags(BComponent component, BNHaystackConvertHaystackSlotsJob job)
+    {
+        migrateHaystackTags(component, job, findNHaystackService());
+    }
+
+    public static void migrateHaystackTags(
+        BComponent component,
+        BNHaystackConvertHaystackSlotsJob job,
+        BNHaystackService nhaystackService)
     {
         try
         {
@@ -81,7 +89,7 @@ public final class HaystackSlotUtil
             {
                 return;
             }
-            migrateHaystackTags(component, dict, job, findNHaystackService());
+            migrateHaystackTags(component, dict, job, nhaystackService);
         }
         catch (Exception e)
         {
@@ -0,0 +1,404 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import org.projecthaystack.HBool;
+import org.projecthaystack.HDateTime;
+import org.projecthaystack.HHisItem;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HTimeZone;
+import org.projecthaystack.HVal;
+
+/**
+  * HisRollup folds a time-ordered stream of history samples into
+  * fixed intervals in a single pass.
+  * <p>
+  * Buckets are aligned in the history's time zone: sub-day intervals
+  * are aligned to local midnight, day and week intervals to local
+  * days (weeks start on Sunday), and month intervals to the first of
+  * the month.  Each bucket is emitted as soon as a sample falls past
+  * its end, so only the current bucket is ever held in memory.
+  * <p>
+  * The time-weighted average ("tavg") integrates between consecutive
+  * samples, either linearly or as a step function when the history
+  * is interpolated by change of value.
+  */
+final class HisRollup
+{
+    /**
+      * The supported fold functions.
+      */
+    enum Fold
+    {
+        AVG("avg", true),
+        MIN("min", true),
+        MAX("max", true),
+        SUM("sum", true),
+        COUNT("count", false),
+        FIRST("first", false),
+        LAST("last", false),
+        TAVG("tavg", true);
+
+        Fold(String name, boolean numeric)
+        {
+            this.name = name;
+            this.numeric = numeric;
+        }
+
+        static Fold fromName(String name)
+        {
+            for (Fold fold : values())
+                if (fold.name.equals(name))
+                    return fold;
+            throw new IllegalArgumentException("Unknown rollup fold '" + name + "'");
+        }
+
+        final String name;
+        final boolean numeric;
+    }
+
+    /**
+      * @param interval the bucket size, e.g. 15min, 1h, 1day, 1wk or 1mo
+      * @param fold the name of the fold function
+      * @param tz the time zone in which buckets are aligned
+      * @param stepInterpolate if true, "tavg" holds each value until the
+      *        next sample instead of interpolating linearly
+      */
+    HisRollup(HNum interval, String fold, HTimeZone tz, boolean stepInterpolate)
+    {
+        this.fold = Fold.fromName(fold);
+        this.tz = tz;
+        this.zone = tz.java.toZoneId();
+        this.stepInterpolate = stepInterpolate;
+
+        if (interval.val <= 0)
+            throw new IllegalArgumentException("Rollup interval must be positive: " + interval);
+
+        String unit = interval.unit == null ? "ms" : interval.unit;
+        switch (unit)
+        {
+            case "ms":  this.millis = (long) interval.val;                break;
+            case "s":
+            case "sec": this.millis = (long) (interval.val * 1000L);      break;
+            case "min": this.millis = (long) (interval.val * MIN_MILLIS); break;
+            case "h":
+            case "hr":  this.millis = (long) (interval.val * HOUR_MILLIS); break;
+            case "day": this.days   = wholeUnits(interval);               break;
+            case "wk":  this.days   = wholeUnits(interval) * 7;           break;
+            case "mo":  this.months = wholeUnits(interval);               break;
+            default:
+                throw new IllegalArgumentException("Unsupported rollup interval unit '" + unit + "'");
+        }
+
+        // promote whole days to calendar days so DST days stay aligned
+        if (millis >= DAY_MILLIS)
+        {
+            if (millis % DAY_MILLIS != 0)
+                throw new IllegalArgumentException("Rollup interval must divide evenly into days: " + interval);
+            days = (int) (millis / DAY_MILLIS);
+            millis = 0;
+        }
+        else if (millis == 0 && days == 0 && months == 0)
+        {
+            throw new IllegalArgumentException("Rollup interval is too small: " + interval);
+        }
+    }
+
+    private static int wholeUnits(HNum interval)
+    {
+        if (interval.val != Math.floor(interval.val))
+            throw new IllegalArgumentException("Calendar rollup intervals must be whole: " + interval);
+        return (int) interval.val;
+    }
+
+////////////////////////////////////////////////////////////////
+// streaming
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Add the next sample.  Samples must be added in ascending time order.
+      */
+    void add(long ts, HVal val)
+    {
+        double d = Double.NaN;
+        if (val instanceof HNum)
+        {
+            HNum num = (HNum) val;
+            d = num.val;
+            if (unit == null) unit = num.unit;
+        }
+        else if (val instanceof HBool)
+        {
+            d = ((HBool) val).val ? 1 : 0;
+        }
+        else if (fold.numeric)
+        {
+            throw new IllegalArgumentException(
+                "Rollup fold '" + fold.name + "' requires a numeric or boolean history");
+        }
+
+        // integrate the segment since the previous sample, which
+        // may cross one or more bucket boundaries
+        if (fold == Fold.TAVG && hasPrev)
+            integrate(ts, d);
+
+        if (!hasBucket || ts >= bucketEnd)
+        {
+            flush();
+            openBucket(ts);
+        }
+
+        if (count == 0) first = val;
+        last = val;
+        count++;
+
+        if (!Double.isNaN(d))
+        {
+            sum += d;
+            if (d < min) min = d;
+            if (d > max) max = d;
+        }
+
+        prevTs = ts;
+        prevVal = d;
+        hasPrev = true;
+    }
+
+    /**
+      * Add a pre-aggregated chunk of samples which starts at the given
+      * time.  Chunks and samples must be added in ascending time order,
+      * and a chunk must not straddle a bucket boundary.
+      */
+    void addAggregate(long ts, int count, double sum, double min, double max, String unit)
+    {
+        if (!canAggregate())
+            throw new IllegalStateException("Rollup fold '" + fold.name + "' cannot use aggregates");
+        if (count == 0) return;
+
+        if (!hasBucket || ts >= bucketEnd)
+        {
+            flush();
+            openBucket(ts);
+        }
+
+        if (this.unit == null) this.unit = unit;
+        this.count += count;
+        this.sum += sum;
+        if (min < this.min) this.min = min;
+        if (max > this.max) this.max = max;
+    }
+
+    /**
+      * Return whether this rollup can be computed from pre-aggregated
+      * counts, sums, minimums and maximums.
+      */
+    boolean canAggregate()
+    {
+        switch (fold)
+        {
+            case AVG: case MIN: case MAX: case SUM: case COUNT: return true;
+            default: return false;
+        }
+    }
+
+    /**
+      * Return whether every bucket is made up of whole local hours.
+      */
+    boolean isHourAligned()
+    {
+        return millis > 0 && millis % HOUR_MILLIS == 0;
+    }
+
+    /**
+      * Return whether every bucket is made up of whole local days.
+      */
+    boolean isDayAligned()
+    {
+        return millis == 0;
+    }
+
+    /**
+      * Flush the final bucket and return the rolled up items.
+      *
+      * @param end the end of the queried range.  For step interpolated
+      *        "tavg" folds, the last value is held until the end of its
+      *        bucket or this time, whichever comes first.
+      */
+    HHisItem[] finish(long end)
+    {
+        if (fold == Fold.TAVG && stepInterpolate && hasPrev && hasBucket)
+        {
+            long holdUntil = Math.min(end, bucketEnd);
+            if (holdUntil > prevTs)
+            {
+                area += prevVal * (holdUntil - prevTs);
+                covered += holdUntil - prevTs;
+            }
+        }
+        flush();
+        hasBucket = false;
+        return items.toArray(new HHisItem[items.size()]);
+    }
+
+    private void integrate(long ts, double d)
+    {
+        long t0 = prevTs;
+        double v0 = prevVal;
+        while (t0 < ts)
+        {
+            long t1 = Math.min(ts, bucketEnd);
+            double v1 = stepInterpolate ? v0 : prevVal + (d - prevVal) * (t1 - prevTs) / (ts - prevTs);
+
+            area += stepInterpolate ? v0 * (t1 - t0) : (v0 + v1) / 2 * (t1 - t0);
+            covered += t1 - t0;
+
+            if (t1 == ts) break;
+
+            // the segment continues into the following bucket
+            flush();
+            openBucket(t1);
+            t0 = t1;
+            v0 = v1;
+        }
+    }
+
+    private void openBucket(long ts)
+    {
+        bucketStart = bucketStart(ts);
+        bucketEnd = bucketEnd(bucketStart);
+        hasBucket = true;
+
+        count = 0;
+        first = null;
+        last = null;
+        sum = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        area = 0;
+        covered = 0;
+    }
+
+    private void flush()
+    {
+        if (!hasBucket || (count == 0 && covered == 0)) return;
+
+        HVal val;
+        switch (fold)
+        {
+            case AVG:   val = HNum.make(sum / count, unit); break;
+            case MIN:   val = HNum.make(min, unit); break;
+            case MAX:   val = HNum.make(max, unit); break;
+            case SUM:   val = HNum.make(sum, unit); break;
+            case COUNT: val = HNum.make(count); break;
+            case FIRST: val = first; break;
+            case LAST:  val = last; break;
+            case TAVG:
+                val = covered > 0 ?
+                    HNum.make(area / covered, unit) :
+                    HNum.make(sum / count, unit);
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+
+        items.add(HHisItem.make(HDateTime.make(bucketStart, tz), val));
+    }
+
+////////////////////////////////////////////////////////////////
+// bucketing
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Return the start of the bucket which contains the given time.
+      */
+    long bucketStart(long ts)
+    {
+        LocalDate date = Instant.ofEpochMilli(ts).atZone(zone).toLocalDate();
+
+        if (millis > 0)
+        {
+            long midnight = startOfDay(date);
+            return midnight + ((ts - midnight) / millis) * millis;
+        }
+        else if (days > 0)
+        {
+            // weeks are aligned to Sunday, epoch day 3
+            long base = days % 7 == 0 ? 3 : 0;
+            long epochDay = Math.floorDiv(date.toEpochDay() - base, days) * days + base;
+            return startOfDay(LocalDate.ofEpochDay(epochDay));
+        }
+        else
+        {
+            int month = date.getYear() * 12 + date.getMonthValue() - 1;
+            month = Math.floorDiv(month, months) * months;
+            return startOfDay(LocalDate.of(month / 12, month % 12 + 1, 1));
+        }
+    }
+
+    /**
+      * Return the end of the bucket which starts at the given time.
+      */
+    long bucketEnd(long start)
+    {
+        LocalDate date = Instant.ofEpochMilli(start).atZone(zone).toLocalDate();
+
+        if (millis > 0)
+            return Math.min(start + millis, startOfDay(date.plusDays(1)));
+        else if (days > 0)
+            return startOfDay(date.plusDays(days));
+        else
+            return startOfDay(date.plusMonths(months));
+    }
+
+    private long startOfDay(LocalDate date)
+    {
+        return date.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final long MIN_MILLIS  = 60L * 1000L;
+    private static final long HOUR_MILLIS = 60L * MIN_MILLIS;
+    private static final long DAY_MILLIS  = 24L * HOUR_MILLIS;
+
+    final Fold fold;
+    private final HTimeZone tz;
+    private final ZoneId zone;
+    private final boolean stepInterpolate;
+
+    private long millis;
+    private int days;
+    private int months;
+
+    private final ArrayList<HHisItem> items = new ArrayList<>();
+    private String unit;
+
+    // current bucket
+    private boolean hasBucket;
+    private long bucketStart;
+    private long bucketEnd;
+    private int count;
+    private HVal first;
+    private HVal last;
+    private double sum;
+    private double min;
+    private double max;
+    private double area;
+    private long covered;
+
+    // previous sample, for time-weighted folds
+    private boolean hasPrev;
+    private long prevTs;
+    private double prevVal;
+}
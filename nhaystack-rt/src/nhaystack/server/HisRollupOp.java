@@ -0,0 +1,77 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.projecthaystack.HDateTimeRange;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HDictBuilder;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HGridBuilder;
+import org.projecthaystack.HHisItem;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HRef;
+import org.projecthaystack.HRow;
+import org.projecthaystack.HTimeZone;
+import org.projecthaystack.server.HOp;
+import org.projecthaystack.server.HServer;
+
+/**
+  * HisRollupOp is a variant of hisRead which folds the history
+  * into fixed intervals on the server.
+  * <p>
+  * The request takes the same "id" and "range" as hisRead, plus an
+  * "interval" number such as 15min, 1h, 1day, 1wk or 1mo, and a "fold"
+  * which is one of avg, min, max, sum, count, first, last or tavg
+  * (time-weighted average).  Each row of the response is the start
+  * of a bucket and its folded value.
+  */
+class HisRollupOp extends HOp
+{
+    @Override
+    public String name() { return "hisRollup"; }
+    @Override
+    public String summary() { return "His Rollup"; }
+    @Override
+    public HGrid onService(HServer db, HGrid req)
+    {
+        NHServer server = (NHServer) db;
+        if (!server.getCache().initialized())
+            throw new IllegalStateException(Cache.NOT_INITIALIZED);
+
+        HRow params = req.row(0);
+        HRef id = params.id();
+        String range = params.getStr("range");
+        HNum interval = (HNum) params.get("interval");
+        String fold = params.has("fold") ? params.getStr("fold") : "avg";
+
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine(name() + " " + id + ", " + range + ", " + interval + ", " + fold);
+
+        HDict rec = server.readById(id);
+        HTimeZone tz = HTimeZone.make(rec.getStr("tz"));
+        HDateTimeRange r = HDateTimeRange.make(range, tz);
+
+        HHisItem[] items = server.onHisRollup(rec, r, interval, fold);
+
+        HDictBuilder meta = new HDictBuilder();
+        meta.add("id", id);
+        meta.add("hisStart", r.start);
+        meta.add("hisEnd", r.end);
+        meta.add("interval", interval);
+        meta.add("fold", fold);
+        return HGridBuilder.hisItemsToGrid(meta.toDict(), items);
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final Logger LOG = Logger.getLogger("nhaystack");
+}
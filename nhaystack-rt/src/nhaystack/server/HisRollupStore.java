@@ -0,0 +1,473 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.baja.collection.BITable;
+import javax.baja.collection.TableCursor;
+import javax.baja.history.BBooleanTrendRecord;
+import javax.baja.history.BHistoryConfig;
+import javax.baja.history.BHistoryId;
+import javax.baja.history.BHistoryRecord;
+import javax.baja.history.BIHistory;
+import javax.baja.history.BNumericTrendRecord;
+import javax.baja.history.HistorySpaceConnection;
+import javax.baja.sys.BAbsTime;
+import javax.baja.sys.BBoolean;
+import javax.baja.sys.BNumber;
+import javax.baja.sys.BValue;
+import javax.baja.sys.Clock;
+import javax.baja.sys.Type;
+import org.projecthaystack.HHisItem;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HTimeZone;
+
+/**
+  * HisRollupStore keeps hourly and daily count/sum/min/max aggregates
+  * for numeric and boolean histories, so that aligned hisRollup
+  * queries do not have to rescan the raw history tables.
+  * <p>
+  * A history's aggregates are built the first time it is rolled up.
+  * After that, each query only folds the records which were appended
+  * since the last one, and records written through hisWrite behind
+  * that point cause the affected days to be recomputed.  A history's
+  * aggregates are discarded when it is deleted, renamed or reconfigured,
+  * since its records may no longer be the ones they were built from.
+  * Whenever the oldest record of a history has changed, because a rolling
+  * history has overwritten its oldest records or they have been deleted,
+  * the aggregates before it are dropped and its day is recomputed.  Hourly
+  * aggregates are only kept for the most recent HOURLY_RETENTION_DAYS.
+  * <p>
+  * The store is loaded when the service starts and saved when it stops.
+  * The file is deleted once it has been loaded, so a station which
+  * does not shut down cleanly simply rebuilds the aggregates.
+  */
+final class HisRollupStore
+{
+    HisRollupStore(File file)
+    {
+        this.file = file;
+    }
+
+////////////////////////////////////////////////////////////////
+// queries
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Return whether the given rollup over the given range can be
+      * answered from the store.
+      */
+    boolean canServe(BHistoryConfig cfg, HisRollup rollup, long start, long end)
+    {
+        if (!rollup.canAggregate()) return false;
+        if (!isNumeric(cfg)) return false;
+
+        // the range must begin and end on bucket boundaries
+        if (rollup.bucketStart(start) != start) return false;
+        if (rollup.bucketStart(end) != end) return false;
+
+        if (rollup.isDayAligned()) return true;
+        return rollup.isHourAligned() &&
+            start >= Clock.millis() - HOURLY_RETENTION_DAYS * DAY_MILLIS;
+    }
+
+    /**
+      * Fold the given range into the rollup, using the stored
+      * aggregates wherever possible.
+      * <p>
+      * The first hour or day is read from the raw history, since
+      * hisRead excludes a record which falls exactly on the start of
+      * the range, and a record which falls exactly on the end of the
+      * range is likewise read raw.
+      */
+    HHisItem[] read(
+        HistorySpaceConnection conn, BIHistory history, BHistoryConfig cfg,
+        HTimeZone tz, HisRollup rollup, long start, long end, String unit)
+    {
+        Entry entry = entry(cfg, tz);
+        synchronized (entry)
+        {
+            catchUp(conn, history, cfg, entry);
+            trimToFirstRecord(conn, history, entry);
+
+            boolean hourly = !rollup.isDayAligned();
+            HisRollup granule = hourly ? entry.hours : entry.days;
+            SortedMap<Long, Agg> aggs = hourly ? entry.hourly : entry.daily;
+
+            long headEnd = Math.min(end, granule.bucketEnd(start));
+            scan(conn, history, start, headEnd, (ts, val) -> {
+                if (ts > start && ts < headEnd)
+                    rollup.add(ts, HNum.make(val, unit));
+            });
+
+            for (Map.Entry<Long, Agg> e : aggs.subMap(headEnd, end).entrySet())
+            {
+                Agg agg = e.getValue();
+                rollup.addAggregate(e.getKey(), agg.count, agg.sum, agg.min, agg.max, unit);
+            }
+
+            scan(conn, history, end, end, (ts, val) -> {
+                if (ts == end)
+                    rollup.add(ts, HNum.make(val, unit));
+            });
+        }
+
+        return rollup.finish(end);
+    }
+
+////////////////////////////////////////////////////////////////
+// maintenance
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Called after records have been written to a history.  Records
+      * which are newer than everything folded so far are picked up by
+      * the next query, but older ones invalidate the days they fall in.
+      */
+    void onHisWrite(HistorySpaceConnection conn, BIHistory history, BHistoryConfig cfg, HHisItem[] items)
+    {
+        Entry entry = entries.get(key(cfg));
+        if (entry == null) return;
+
+        synchronized (entry)
+        {
+            TreeSet<Long> stale = new TreeSet<>();
+            for (HHisItem item : items)
+            {
+                long ts = item.ts.millis();
+                if (ts <= entry.watermark)
+                    stale.add(entry.days.bucketStart(ts));
+            }
+
+            for (Long day : stale)
+                recompute(conn, history, entry, day);
+        }
+    }
+
+    /**
+      * Forget the aggregates of the history with the given id, because
+      * it has been deleted or reconfigured.
+      */
+    void remove(BHistoryId id)
+    {
+        entries.remove(id.toString());
+    }
+
+    /**
+      * Forget the aggregates of every history.
+      */
+    void clear()
+    {
+        entries.clear();
+    }
+
+    private Entry entry(BHistoryConfig cfg, HTimeZone tz)
+    {
+        // rebuild if the history's time zone has changed
+        return entries.compute(key(cfg), (key, entry) ->
+            entry == null || !entry.tz.equals(tz.name) ? new Entry(tz) : entry);
+    }
+
+    /**
+      * Fold every record newer than the watermark into the aggregates.
+      */
+    private void catchUp(HistorySpaceConnection conn, BIHistory history, BHistoryConfig cfg, Entry entry)
+    {
+        long now = Clock.millis();
+        long from = entry.watermark == Long.MIN_VALUE ? 0 : entry.watermark;
+
+        int[] counter = new int[1];
+        scan(conn, history, from, now, (ts, val) -> {
+            if (ts <= entry.watermark) return;
+            fold(entry, ts, val);
+            entry.watermark = ts;
+            counter[0]++;
+        });
+
+        // drop hourly aggregates that have aged out
+        entry.hourly.headMap(now - HOURLY_RETENTION_DAYS * DAY_MILLIS).clear();
+
+        if (LOG.isLoggable(Level.FINE) && counter[0] > 0)
+            LOG.fine("HisRollupStore folded " + counter[0] + " records into " + cfg.getId());
+    }
+
+    /**
+      * Drop the aggregates of records which are no longer in the history.
+      * Rolling histories overwrite their oldest records, so the day of
+      * the oldest record is recomputed whenever it has changed.
+      */
+    private void trimToFirstRecord(HistorySpaceConnection conn, BIHistory history, Entry entry)
+    {
+        BAbsTime firstTs = conn.getFirstTimestamp(history);
+        long first = firstTs == null || firstTs.isNull() ? Long.MAX_VALUE : firstTs.getMillis();
+        if (first == entry.first) return;
+        entry.first = first;
+
+        if (first == Long.MAX_VALUE)
+        {
+            entry.daily.clear();
+            entry.hourly.clear();
+            return;
+        }
+
+        long day = entry.days.bucketStart(first);
+        entry.daily.headMap(day).clear();
+        entry.hourly.headMap(day).clear();
+        recompute(conn, history, entry, day);
+    }
+
+    private void recompute(HistorySpaceConnection conn, BIHistory history, Entry entry, long day)
+    {
+        long dayEnd = entry.days.bucketEnd(day);
+        entry.daily.remove(day);
+        entry.hourly.subMap(day, dayEnd).clear();
+        scan(conn, history, day, dayEnd, (ts, val) -> {
+            if (ts < dayEnd && ts <= entry.watermark)
+                fold(entry, ts, val);
+        });
+    }
+
+    private static void fold(Entry entry, long ts, double val)
+    {
+        entry.daily.computeIfAbsent(entry.days.bucketStart(ts), k -> new Agg()).add(val);
+
+        if (ts >= Clock.millis() - HOURLY_RETENTION_DAYS * DAY_MILLIS)
+            entry.hourly.computeIfAbsent(entry.hours.bucketStart(ts), k -> new Agg()).add(val);
+    }
+
+    private interface RecordVisitor
+    {
+        void visit(long ts, double val);
+    }
+
+    /**
+      * Visit the numeric value of every record between start and end inclusive.
+      */
+    private static void scan(HistorySpaceConnection conn, BIHistory history, long start, long end, RecordVisitor visitor)
+    {
+        BITable<BHistoryRecord> table = conn.timeQuery(
+            history, BAbsTime.make(start), BAbsTime.make(end));
+
+        try (TableCursor<BHistoryRecord> cursor = table.cursor())
+        {
+            while (cursor.next())
+            {
+                BHistoryRecord hrec = cursor.get();
+                long ts = ((BAbsTime) hrec.get("timestamp")).getMillis();
+
+                BValue value = hrec.get("value");
+                if (value instanceof BNumber)
+                    visitor.visit(ts, ((BNumber) value).getDouble());
+                else if (value instanceof BBoolean)
+                    visitor.visit(ts, ((BBoolean) value).getBoolean() ? 1 : 0);
+            }
+        }
+    }
+
+    private static boolean isNumeric(BHistoryConfig cfg)
+    {
+        Type recType = cfg.getRecordType().getResolvedType();
+        return recType.is(BNumericTrendRecord.TYPE) || recType.is(BBooleanTrendRecord.TYPE);
+    }
+
+    private static String key(BHistoryConfig cfg)
+    {
+        return cfg.getId().toString();
+    }
+
+////////////////////////////////////////////////////////////////
+// persistence
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Load the aggregates which were saved at the last shutdown.
+      */
+    void load()
+    {
+        if (!file.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (in.readInt() != VERSION) return;
+
+            int n = in.readInt();
+            for (int i = 0; i < n; i++)
+            {
+                String key = in.readUTF();
+                Entry entry = new Entry(HTimeZone.make(in.readUTF()));
+                entry.watermark = in.readLong();
+                readAggs(in, entry.hourly);
+                readAggs(in, entry.daily);
+                entries.put(key, entry);
+            }
+
+            LOG.info("HisRollupStore loaded " + n + " histories from " + file);
+        }
+        catch (Exception e)
+        {
+            LOG.log(Level.WARNING, "Cannot load " + file + ", history rollups will be rebuilt", e);
+            entries.clear();
+        }
+        finally
+        {
+            if (!file.delete())
+                LOG.warning("Cannot delete " + file);
+        }
+    }
+
+    /**
+      * Save the aggregates so they survive a restart.
+      */
+    void save()
+    {
+        if (entries.isEmpty()) return;
+
+        try
+        {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs())
+                throw new IOException("Cannot create " + dir);
+
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file))))
+            {
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> e : entries.entrySet())
+                {
+                    Entry entry = e.getValue();
+                    synchronized (entry)
+                    {
+                        out.writeUTF(e.getKey());
+                        out.writeUTF(entry.tz);
+                        out.writeLong(entry.watermark);
+                        writeAggs(out, entry.hourly);
+                        writeAggs(out, entry.daily);
+                    }
+                }
+            }
+
+            LOG.info("HisRollupStore saved " + entries.size() + " histories to " + file);
+        }
+        catch (IOException e)
+        {
+            LOG.log(Level.WARNING, "Cannot save " + file, e);
+        }
+    }
+
+    private static void readAggs(DataInputStream in, SortedMap<Long, Agg> aggs) throws IOException
+    {
+        int n = in.readInt();
+        for (int i = 0; i < n; i++)
+        {
+            long ts = in.readLong();
+            Agg agg = new Agg();
+            agg.count = in.readInt();
+            agg.sum = in.readDouble();
+            agg.min = in.readDouble();
+            agg.max = in.readDouble();
+            aggs.put(ts, agg);
+        }
+    }
+
+    private static void writeAggs(DataOutputStream out, SortedMap<Long, Agg> aggs) throws IOException
+    {
+        out.writeInt(aggs.size());
+        for (Map.Entry<Long, Agg> e : aggs.entrySet())
+        {
+            Agg agg = e.getValue();
+            out.writeLong(e.getKey());
+            out.writeInt(agg.count);
+            out.writeDouble(agg.sum);
+            out.writeDouble(agg.min);
+            out.writeDouble(agg.max);
+        }
+    }
+
+    int size()
+    {
+        return entries.size();
+    }
+
+////////////////////////////////////////////////////////////////
+// Entry
+////////////////////////////////////////////////////////////////
+
+    /**
+      * The aggregates of one history.
+      */
+    private static final class Entry
+    {
+        Entry(HTimeZone tz)
+        {
+            this.tz = tz.name;
+            this.hours = new HisRollup(HNum.make(1, "h"), "count", tz, false);
+            this.days = new HisRollup(HNum.make(1, "day"), "count", tz, false);
+        }
+
+        final String tz;
+        final HisRollup hours;
+        final HisRollup days;
+
+        final TreeMap<Long, Agg> hourly = new TreeMap<>();
+        final TreeMap<Long, Agg> daily = new TreeMap<>();
+        long watermark = Long.MIN_VALUE;
+
+        // the timestamp of the oldest record when the aggregates were last
+        // checked against it, which is not saved, so that they are checked
+        // again after a restart
+        long first = Long.MIN_VALUE;
+    }
+
+    /**
+      * The aggregate of one hour or day.
+      */
+    private static final class Agg
+    {
+        void add(double val)
+        {
+            count++;
+            sum += val;
+            if (val < min) min = val;
+            if (val > max) max = val;
+        }
+
+        int count;
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final Logger LOG = Logger.getLogger("nhaystack");
+
+    static final int HOURLY_RETENTION_DAYS = 92;
+    private static final long DAY_MILLIS = 24L * 60L * 60L * 1000L;
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,434 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.baja.control.BControlPoint;
+import javax.baja.history.BHistoryConfig;
+import javax.baja.history.BHistoryEvent;
+import javax.baja.history.BHistoryId;
+import javax.baja.history.BIHistory;
+import javax.baja.history.HistoryEventListener;
+import javax.baja.history.HistorySpaceConnection;
+import javax.baja.history.db.BHistoryDatabase;
+import javax.baja.sys.BajaRuntimeException;
+import nhaystack.BHDict;
+import org.projecthaystack.HDict;
+
+/**
+  * HistoryIndex keeps what is needed to decide whether each history is
+  * shown as a record: whether its id can be made into a ref, its
+  * annotated tags, and the point it is linked to, if any.
+  * <p>
+  * The index is built along with the Cache, and is then kept up to date
+  * by the history database's events, so the history space can be read
+  * and navigated without reading the config of every history and looking
+  * up its point again.  Only the permissions of the user still have to be
+  * checked for each history, and only for those that are shown.
+  */
+final class HistoryIndex implements HistoryEventListener
+{
+    HistoryIndex(NHServer server)
+    {
+        this.server = server;
+    }
+
+////////////////////////////////////////////////////////////////
+// build
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Make the entry for the history, looking up the point that it
+      * is linked to in the given cache state.
+      */
+    Entry makeEntry(BHistoryConfig cfg, Cache.State state)
+    {
+        return new Entry(cfg, server.getSpaceManager().lookupPointFromHistory(cfg, state));
+    }
+
+    /**
+      * Replace the index with the given entries, and start listening
+      * to the history database if it is not already.
+      */
+    void rebuild(Collection<Entry> list)
+    {
+        Map<BHistoryId, Entry> map = new ConcurrentHashMap<>();
+        for (Entry entry : list)
+            map.put(entry.id, entry);
+
+        synchronized (this)
+        {
+            entries = map;
+            view = null;
+            version++;
+            resync = false;
+            built = true;
+
+            if (db == null)
+            {
+                db = server.getService().getHistoryDb();
+                db.addHistoryEventListener(this);
+            }
+        }
+    }
+
+    /**
+      * Stop listening to the history database.
+      */
+    synchronized void stop()
+    {
+        if (db != null)
+        {
+            db.removeHistoryEventListener(this);
+            db = null;
+        }
+        built = false;
+    }
+
+    synchronized boolean isBuilt() { return built; }
+
+////////////////////////////////////////////////////////////////
+// HistoryEventListener
+////////////////////////////////////////////////////////////////
+
+    @Override
+    public void historyEvent(BHistoryEvent event)
+    {
+        dropRollups(event);
+        dropHistoryLinks(event);
+        if (!isBuilt()) return;
+
+        switch (event.getId())
+        {
+            case BHistoryEvent.CREATED:
+            case BHistoryEvent.CONFIG_CHANGED:
+                update(event.getHistoryId());
+                break;
+
+            case BHistoryEvent.DELETED:
+                entries.remove(event.getHistoryId());
+                changed();
+                break;
+
+            // the old id of a renamed history is not known,
+            // so the whole index is read again when it is next used
+            case BHistoryEvent.RENAMED:
+                synchronized (this) { resync = true; }
+                changed();
+                break;
+
+            // records being added or removed do not matter here
+            default:
+                break;
+        }
+    }
+
+    /**
+      * Discard the stored rollups of a history which has been deleted,
+      * renamed or reconfigured.
+      */
+    private void dropRollups(BHistoryEvent event)
+    {
+        HisRollupStore store = server.getHisRollupStore();
+        switch (event.getId())
+        {
+            case BHistoryEvent.DELETED:
+            case BHistoryEvent.CONFIG_CHANGED:
+                store.remove(event.getHistoryId());
+                break;
+
+            // as above, the old id of a renamed history is not known
+            case BHistoryEvent.RENAMED:
+                store.clear();
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+      * Discard the point links of a history which has been created,
+      * deleted or renamed, so that they are made again with the
+      * history's current existence the next time they are used.
+      */
+    private void dropHistoryLinks(BHistoryEvent event)
+    {
+        Map<BControlPoint, HistoryLink> links = server.getCache().currentState().historyLinks;
+        switch (event.getId())
+        {
+            case BHistoryEvent.CREATED:
+            case BHistoryEvent.DELETED:
+                BHistoryId id = event.getHistoryId();
+                links.values().removeIf(link -> link.isFor(id));
+                break;
+
+            // as above, the old id of a renamed history is not known
+            case BHistoryEvent.RENAMED:
+                links.clear();
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void update(BHistoryId id)
+    {
+        try (HistorySpaceConnection conn = server.getService().getHistoryDb().getConnection(null))
+        {
+            BIHistory history = conn.getHistory(id);
+            if (history == null)
+            {
+                entries.remove(id);
+            }
+            else
+            {
+                // the point that the history is linked to may have changed too
+                Cache.State state = server.getCache().currentState();
+                state.historyPoints.remove(id);
+                entries.put(id, makeEntry(history.getConfig(), state));
+            }
+        }
+        catch (Exception e)
+        {
+            LOG.log(Level.WARNING, "Cannot index history " + id, e);
+        }
+        changed();
+    }
+
+    private void changed()
+    {
+        synchronized (this)
+        {
+            view = null;
+            version++;
+        }
+        server.getReadAllCache().invalidate();
+        server.getNav().navCache.removeAll(HIS_NAV);
+    }
+
+////////////////////////////////////////////////////////////////
+// access
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Return the configs of the histories that are shown as records,
+      * before the user's permissions are checked, ordered by station
+      * and then by id.
+      */
+    List<BHistoryConfig> visibleConfigs()
+    {
+        return view().configs;
+    }
+
+    /**
+      * Return the names of the stations that have histories
+      * which are shown.
+      */
+    String[] stationNames()
+    {
+        return view().byStation.keySet().toArray(new String[0]);
+    }
+
+    /**
+      * Return the configs of the histories from the station which are
+      * shown, before the user's permissions are checked.
+      */
+    BHistoryConfig[] navHistories(String stationName)
+    {
+        List<BHistoryConfig> list = view().byStation.get(stationName);
+        if (list == null)
+            throw new BajaRuntimeException(
+                "No nav histories found for '" + stationName + '\'');
+        return list.toArray(new BHistoryConfig[0]);
+    }
+
+    int size() { return entries.size(); }
+
+    /**
+      * Return the histories that are shown, which are worked out
+      * again after the index or showLinkedHistories has changed, or
+      * after a point that a history is linked to has been removed.
+      * <p>
+      * The view is only kept if the index has not changed while it was
+      * being worked out, so that a change is never hidden by a view
+      * which was made from the index as it was before.
+      */
+    private View view()
+    {
+        boolean showLinked = server.getService().getShowLinkedHistories();
+        boolean doResync;
+        int stamp;
+        synchronized (this)
+        {
+            if (view != null && view.showLinked == showLinked && !view.hasRemovedPoint()) return view;
+            doResync = resync;
+            resync = false;
+            stamp = version;
+        }
+        Map<BHistoryId, Entry> map = doResync ? resync() : entries;
+
+        Cache.State state = server.getCache().currentState();
+        List<Entry> list = new ArrayList<>();
+        List<BControlPoint> linked = new ArrayList<>();
+        for (Entry entry : map.values())
+        {
+            // the point has been removed since the entry was made
+            if (entry.point != null && !entry.point.isMounted())
+            {
+                Entry fresh = makeEntry(entry.cfg, state);
+                map.replace(entry.id, entry, fresh);
+                entry = fresh;
+            }
+
+            if (entry.point != null) linked.add(entry.point);
+            if (entry.isVisible(showLinked)) list.add(entry);
+        }
+        list.sort(ORDER);
+
+        View v = new View(showLinked, list, linked);
+        synchronized (this)
+        {
+            if (doResync) entries = map;
+
+            if (version == stamp)
+                view = v;
+            // an event may have gone to the index that was replaced
+            else if (doResync)
+                resync = true;
+        }
+        return v;
+    }
+
+    /**
+      * Read every history into a new index.
+      */
+    private Map<BHistoryId, Entry> resync()
+    {
+        Cache.State state = server.getCache().currentState();
+        Map<BHistoryId, Entry> map = new ConcurrentHashMap<>();
+        for (BIHistory history : server.getService().getHistoryDb().getHistories())
+            map.put(history.getId(), makeEntry(history.getConfig(), state));
+
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine("Indexed " + map.size() + " histories.");
+        return map;
+    }
+
+////////////////////////////////////////////////////////////////
+// Entry
+////////////////////////////////////////////////////////////////
+
+    static final class Entry
+    {
+        private Entry(BHistoryConfig cfg, BControlPoint point)
+        {
+            this.cfg = cfg;
+            this.id = cfg.getId();
+            this.station = id.getDeviceName();
+            this.validName = isValidName(cfg);
+            this.tags = BHDict.findTagAnnotation(cfg);
+            this.point = point;
+        }
+
+        /**
+          * Return whether the history is shown as a record, which is the
+          * same as SpaceManager.isVisibleHistory apart from the permissions.
+          */
+        boolean isVisible(boolean showLinked)
+        {
+            if (!validName) return false;
+            if (tags != null && !tags.isEmpty()) return true;
+            return showLinked || point == null;
+        }
+
+        private static boolean isValidName(BHistoryConfig cfg)
+        {
+            // make sure the history name is valid. This is a workaround for a bug
+            // in third-party software.
+            try
+            {
+                TagManager.makeHistoryRef(cfg);
+                return true;
+            }
+            catch (Exception e)
+            {
+                LOG.severe("Invalid history name: " + cfg.getId());
+                return false;
+            }
+        }
+
+        final BHistoryConfig cfg;
+        final BHistoryId id;
+        final String station;
+        final boolean validName;
+        final HDict tags;
+        final BControlPoint point;
+    }
+
+    private static final class View
+    {
+        View(boolean showLinked, List<Entry> sorted, List<BControlPoint> linked)
+        {
+            this.showLinked = showLinked;
+            this.linked = linked;
+            for (Entry entry : sorted)
+            {
+                configs.add(entry.cfg);
+                byStation.computeIfAbsent(entry.station, k -> new ArrayList<>()).add(entry.cfg);
+            }
+        }
+
+        /**
+          * Return whether a point that a history is linked to has been
+          * removed from the station since the view was made.
+          */
+        boolean hasRemovedPoint()
+        {
+            for (BControlPoint point : linked)
+            {
+                if (!point.isMounted()) return true;
+            }
+            return false;
+        }
+
+        final boolean showLinked;
+        final List<BControlPoint> linked;
+        final List<BHistoryConfig> configs = new ArrayList<>();
+        final Map<String, List<BHistoryConfig>> byStation = new TreeMap<>();
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final Logger LOG = Logger.getLogger("nhaystack");
+
+    private static final String HIS_NAV = "his:/";
+
+    private static final Comparator<Entry> ORDER =
+        Comparator.<Entry, String>comparing(e -> e.station).thenComparing(e -> e.id.toString());
+
+    private final NHServer server;
+
+    private volatile Map<BHistoryId, Entry> entries = new ConcurrentHashMap<>();
+    private View view;
+    private int version;
+    private boolean resync;
+    private boolean built;
+    private BHistoryDatabase db;
+}
@@ -0,0 +1,83 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import javax.baja.control.BControlPoint;
+import javax.baja.history.BHistoryId;
+import javax.baja.history.ext.BHistoryExt;
+import javax.baja.sys.Property;
+import javax.baja.sys.SlotCursor;
+
+/**
+  * HistoryLink records whether a point has a history ext, and whether
+  * the ext's history exists in the history database, so that making
+  * the tags of a point does not have to open a history connection.
+  * <p>
+  * A link is out of date once the ext is removed from the point, a
+  * new ext is added, the ext is enabled or disabled, since enabling
+  * an ext for the first time is what creates its history, or the ext
+  * is pointed at another history.  The HistoryIndex also drops the
+  * links of a history when it is created, deleted or renamed.
+  */
+final class HistoryLink
+{
+    HistoryLink(BHistoryExt ext, boolean exists)
+    {
+        this.ext = ext;
+        this.enabled = ext != null && ext.getEnabled();
+        this.historyId = ext == null ? null : ext.getHistoryConfig().getId();
+        this.exists = exists;
+    }
+
+    /**
+      * Return the first BHistoryExt of the point, or null.
+      */
+    static BHistoryExt findHistoryExt(BControlPoint point)
+    {
+        SlotCursor<Property> cursor = point.getProperties();
+        return cursor.next(BHistoryExt.class) ? (BHistoryExt) cursor.get() : null;
+    }
+
+    /**
+      * Return whether this link still describes the point.
+      */
+    boolean isCurrent(BControlPoint point)
+    {
+        if (ext == null)
+            return findHistoryExt(point) == null;
+
+        return findHistoryExt(point) == ext &&
+            ext.getEnabled() == enabled &&
+            ext.getHistoryConfig().getId().equals(historyId);
+    }
+
+    /**
+      * Return whether this link is to the history with the given id.
+      */
+    boolean isFor(BHistoryId id)
+    {
+        return id.equals(historyId);
+    }
+
+    /**
+      * Return the ext if its history exists, or else null.
+      */
+    BHistoryExt getHistoryExt()
+    {
+        return exists ? ext : null;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private final BHistoryExt ext;
+    private final boolean enabled;
+    private final BHistoryId historyId;
+    private final boolean exists;
+}
@@ -0,0 +1,128 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import javax.baja.history.BHistoryId;
+import javax.baja.naming.SlotPath;
+import javax.baja.sys.BComponent;
+import nhaystack.NHRef;
+
+/**
+  * IdTable remembers the id that was made for each component and
+  * history, so that the slot path or history id does not have to be
+  * escaped, and a new HRef made, every time a record or a ref to it is
+  * returned.
+  * <p>
+  * As with the ComponentIndex, a component's entry is only used if the
+  * component is still mounted at the same slot path as when it was added.
+  * Histories are kept by their history id, which their id is made from.
+  * The whole table is dropped every time the Cache is rebuilt.
+  */
+final class IdTable
+{
+    IdTable(Cache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+      * Return the id of the component, or null if it is not
+      * in the table or its entry is out of date.
+      */
+    NHRef get(BComponent comp)
+    {
+        checkGeneration();
+
+        Entry entry = entries.get(comp);
+        if (entry == null) return null;
+
+        if (!comp.isMounted() || !comp.getSlotPath().equals(entry.slotPath))
+        {
+            entries.remove(comp, entry);
+            return null;
+        }
+        return entry.ref;
+    }
+
+    void put(BComponent comp, NHRef ref)
+    {
+        checkGeneration();
+
+        if (!comp.isMounted()) return;
+
+        if (entries.size() >= MAX_ENTRIES)
+            entries.clear();
+
+        entries.put(comp, new Entry(comp, ref));
+    }
+
+    /**
+      * Return the id of the history, or null if it is not in the table.
+      */
+    NHRef get(BHistoryId id)
+    {
+        checkGeneration();
+        return histories.get(id);
+    }
+
+    void put(BHistoryId id, NHRef ref)
+    {
+        checkGeneration();
+
+        if (histories.size() >= MAX_ENTRIES)
+            histories.clear();
+
+        histories.put(id, ref);
+    }
+
+    void clear()
+    {
+        entries.clear();
+        histories.clear();
+    }
+
+    int size()
+    {
+        return entries.size() + histories.size();
+    }
+
+    private void checkGeneration()
+    {
+        int gen = cache.generation();
+        if (gen != generation)
+        {
+            entries.clear();
+            histories.clear();
+            generation = gen;
+        }
+    }
+
+    private static final class Entry
+    {
+        Entry(BComponent comp, NHRef ref)
+        {
+            this.slotPath = comp.getSlotPath();
+            this.ref = ref;
+        }
+
+        final SlotPath slotPath;
+        final NHRef ref;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final int MAX_ENTRIES = 500000;
+
+    private final Cache cache;
+    private final ConcurrentHashMap<BComponent, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<BHistoryId, NHRef> histories = new ConcurrentHashMap<>();
+    private volatile int generation;
+}
@@ -0,0 +1,184 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.io.IOException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HStr;
+import org.projecthaystack.HVal;
+import org.projecthaystack.server.HOp;
+import org.projecthaystack.server.HServer;
+
+/**
+  * MeteredOp wraps another op, and records the latency, errors,
+  * bytes written and rows returned of every request that it
+  * handles in the server's OpMetrics.
+  * <p>
+  * Requests that come in over HTTP are timed from when the request
+  * grid starts being read until the response has been written.
+  * Extended functions are also recorded separately, by function name.
+  * Requests for functions that do not exist are all recorded under
+  * extended.other, so that clients cannot add meters without limit.
+  */
+class MeteredOp extends HOp
+{
+    MeteredOp(HOp op)
+    {
+        this.op = op;
+    }
+
+    @Override
+    public String name() { return op.name(); }
+    @Override
+    public String summary() { return op.summary(); }
+
+    @Override
+    public void onService(HServer db, HttpServletRequest req, HttpServletResponse res) throws Exception
+    {
+        OpMetrics metrics = ((NHServer) db).getMetrics();
+        CountingResponse counting = new CountingResponse(res);
+
+        long begin = System.nanoTime();
+        boolean error = true;
+        try
+        {
+            // the base implementation reads the request, calls
+            // onService(db, grid), and writes the response
+            super.onService(db, req, counting);
+            error = false;
+        }
+        finally
+        {
+            metrics.meter(op.name()).record(System.nanoTime() - begin, error, counting.getCount());
+            metrics.maybePublish(((NHServer) db).getService().getStats());
+        }
+    }
+
+    @Override
+    public HGrid onService(HServer db, HGrid req) throws Exception
+    {
+        OpMetrics.Meter meter = ((NHServer) db).getMetrics().meter(op.name());
+        OpMetrics.Meter function = null;
+        if (EXTENDED.equals(op.name()) && !req.isEmpty() && req.row(0).has("function"))
+            function = ((NHServer) db).getMetrics().meter(EXTENDED + '.' + functionName(req));
+
+        long begin = System.nanoTime();
+        boolean error = true;
+        try
+        {
+            HGrid result = op.onService(db, req);
+            error = result.isErr();
+            meter.addRows(result.numRows());
+            if (function != null) function.addRows(result.numRows());
+            if (error) meter.addError();
+            return result;
+        }
+        catch (Exception | Error e)
+        {
+            meter.addError();
+            throw e;
+        }
+        finally
+        {
+            if (function != null)
+                function.record(System.nanoTime() - begin, error, 0);
+        }
+    }
+
+    /**
+      * Return the name to meter the extended function under.
+      */
+    static String functionName(HGrid req)
+    {
+        HVal name = req.row(0).get("function");
+        if (name instanceof HStr && NHServerOps.ExtendedOp.FUNCTIONS.contains(((HStr) name).val))
+            return ((HStr) name).val;
+        return OTHER;
+    }
+
+////////////////////////////////////////////////////////////////
+// CountingResponse
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Counts the bytes that are written to the response.
+      */
+    private static final class CountingResponse extends HttpServletResponseWrapper
+    {
+        CountingResponse(HttpServletResponse res)
+        {
+            super(res);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException
+        {
+            if (out == null)
+                out = new CountingOutputStream(super.getOutputStream());
+            return out;
+        }
+
+        long getCount()
+        {
+            return out == null ? 0 : out.count;
+        }
+
+        private CountingOutputStream out;
+    }
+
+    private static final class CountingOutputStream extends ServletOutputStream
+    {
+        CountingOutputStream(ServletOutputStream out)
+        {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException { out.flush(); }
+
+        @Override
+        public void close() throws IOException { out.close(); }
+
+        @Override
+        public boolean isReady() { return out.isReady(); }
+
+        @Override
+        public void setWriteListener(WriteListener listener) { out.setWriteListener(listener); }
+
+        private final ServletOutputStream out;
+        private long count;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final String EXTENDED = "extended";
+    private static final String OTHER = "other";
+
+    private final HOp op;
+}
@@ -9,12 +9,13 @@
 //
 package nhaystack.server;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.baja.collection.BITable;
@@ -58,6 +59,7 @@ import org.projecthaystack.HDateTime;
 import org.projecthaystack.HDateTimeRange;
 import org.projecthaystack.HDict;
 import org.projecthaystack.HDictBuilder;
+import org.projecthaystack.HFilter;
 import org.projecthaystack.HGrid;
 import org.projecthaystack.HGridBuilder;
 import org.projecthaystack.HHisItem;
@@ -85,9 +87,15 @@ public class NHServer extends HServer
         this.schedMgr = new ScheduleManager(this, service);
         this.cache = new Cache(this, schedMgr);
         this.tagMgr = new TagManager(this, service, spaceMgr, cache);
-        this.nav = new Nav(service, spaceMgr, cache, tagMgr);
+        this.historyIndex = new HistoryIndex(this);
+        this.nav = new Nav(service, spaceMgr, cache, tagMgr, historyIndex);
         this.foxSessionMgr = new FoxSessionManager();
         this.pointIO = new PointIO(service, cache, tagMgr, schedMgr, foxSessionMgr);
+        this.slowQueries = new SlowQueryLog(service);
+        this.readAllCache = new ReadAllCache(service, cache);
+        this.refIndex = new RefIndex(tagMgr);
+        this.rollupStore = new HisRollupStore(new File(Sys.getStationHome(), "nhaystack/hisRollups.dat"));
+        this.watchStream = new WatchStream(this);
     }
 
 ////////////////////////////////////////////////////////////////
@@ -143,6 +151,16 @@ public class NHServer extends HServer
 
     @Override
     public HGrid onReadAll(String filter, int limit)
+    {
+        return readAll(filter, limit, "read");
+    }
+
+    /**
+      * Read the records that match the filter, and record the request
+      * in the slow query log if it took longer than the threshold.
+      * The op is the name of the op that the request came from.
+      */
+    HGrid readAll(String filter, int limit, String op)
     {
         if (!cache.initialized()) 
             throw new IllegalStateException(Cache.NOT_INITIALIZED);
@@ -152,11 +170,63 @@ public class NHServer extends HServer
             if (LOG.isLoggable(Level.FINE))
                 LOG.fine("onReadAll begin filter:\"" + filter + "\", limit:" + limit);
 
-            long ticks = Clock.ticks();
-            HGrid grid = super.onReadAll(filter, limit);
+            long begin = System.nanoTime();
+            HFilter f = HFilter.make(filter);
+            Context cx = ThreadContext.getContext(Thread.currentThread());
+
+            boolean cacheable = readAllCache.isCacheable(filter);
+            if (cacheable)
+            {
+                HRef[] ids = readAllCache.get(filter, limit, cx);
+                readAllCache.publish(service.getStats());
+                if (ids != null)
+                    return readCachedIds(f, ids);
+            }
+            int generation = cache.generation();
+            int editGeneration = readAllCache.editGeneration();
+
+            // tags are generated as the records are iterated, so
+            // the scan times the iterator separately from the filter
+            ReadAllScan scan = new ReadAllScan(tagMgr, f, pather, limit);
+            ForkJoinPool pool = getReadAllPool();
+            if (pool == null)
+            {
+                scan.scan(iterator());
+            }
+            else
+            {
+                scan.scanParallel(
+                    (BComponent) BOrd.make("slot:/").resolve(service, null).get(), pool, cx);
+                if (!scan.isFull())
+                    scan.scan(spaceMgr.makeHistorySpaceIterator());
+            }
+
+            List<HDict> found = scan.getFound();
+            HGrid grid = HGridBuilder.dictsToGrid(found.toArray(EMPTY_HDICT_ARR));
+            long totalNanos = System.nanoTime() - begin;
+
+            if (cacheable)
+            {
+                HRef[] ids = new HRef[found.size()];
+                for (int i = 0; i < ids.length; i++)
+                    ids[i] = found.get(i).id();
+                readAllCache.put(filter, limit, cx, ids, generation, editGeneration);
+            }
+
+            if (slowQueries.isSlow(totalNanos))
+            {
+                int resultTags = 0;
+                for (HDict dict : found)
+                    resultTags += dict.size();
+
+                slowQueries.add(new SlowQueryLog.Entry(
+                    op, filter, cx,
+                    scan.getScanned(), found.size(), resultTags,
+                    scan.getTagNanos(), scan.getFilterNanos(), totalNanos));
+            }
 
             if (LOG.isLoggable(Level.FINE))
-                LOG.fine("onReadAll end   filter:\"" + filter + "\", limit:" + limit + ", " + (Clock.ticks()-ticks) + "ms.");
+                LOG.fine("onReadAll end   filter:\"" + filter + "\", limit:" + limit + ", " + totalNanos / 1000000L + "ms.");
 
             return grid;
         }
@@ -167,6 +237,45 @@ public class NHServer extends HServer
         }
     }
 
+    /**
+      * Return the pool that scans the component space for readAll,
+      * or null if it is scanned on the calling thread.  The pool is
+      * made again if the number of threads has been changed; the old
+      * one is not shut down, since a request may still be using it, and
+      * its threads exit once they have been idle for a while.
+      */
+    private synchronized ForkJoinPool getReadAllPool()
+    {
+        int threads = service.getReadAllThreads();
+        if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+
+        if (threads == 1)
+            readAllPool = null;
+        else if (readAllPool == null || readAllPool.getParallelism() != threads)
+            readAllPool = new ForkJoinPool(threads);
+        return readAllPool;
+    }
+
+    /**
+      * Re-read the records that matched a filter the last time it was
+      * read, and keep the ones that are still visible and still match.
+      */
+    private HGrid readCachedIds(HFilter f, HRef[] ids)
+    {
+        BComponent[] comps = tagMgr.lookupComponents(ids);
+
+        ArrayList<HDict> found = new ArrayList<>(ids.length);
+        for (BComponent comp : comps)
+        {
+            if (comp == null) continue;
+
+            HDict dict = tagMgr.createTags(comp);
+            if (f.include(dict, pather))
+                found.add(dict);
+        }
+        return HGridBuilder.dictsToGrid(found.toArray(EMPTY_HDICT_ARR));
+    }
+
     /**
       * Iterate every haystack-annotated entry in both the 
       * BComponentSpace and the BHistoryDatabase.
@@ -218,6 +327,35 @@ public class NHServer extends HServer
         }
     }
 
+    /**
+      * Read several entities by id.  The ids are resolved in one pass,
+      * and a row is null if its entity cannot be found.
+      */
+    @Override
+    public HGrid onReadByIds(HRef[] ids)
+    {
+        if (!cache.initialized()) 
+            throw new IllegalStateException(Cache.NOT_INITIALIZED);
+
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine("onReadByIds " + ids.length);
+
+        try
+        {
+            BComponent[] comps = tagMgr.lookupComponents(ids);
+
+            HDict[] recs = new HDict[ids.length];
+            for (int i = 0; i < ids.length; i++)
+                recs[i] = comps[i] == null ? null : tagMgr.createTags(comps[i]);
+            return HGridBuilder.dictsToGrid(recs);
+        }
+        catch (RuntimeException e)
+        {
+            e.printStackTrace();
+            throw e;
+        }
+    }
+
     /**
       * Return navigation tree children for given navId.
       * The grid must define the "navId" column.
@@ -373,6 +511,7 @@ public class NHServer extends HServer
             try (HistorySpaceConnection conn = service.getHistoryDb().getConnection(null))
             {
                 BIHistory history = conn.getHistory(cfg.getId());
+                if (history == null) return EMPTY_HIS_ITEM_ARR;
 
                 BITable<BHistoryRecord> table = conn.timeQuery(history, rangeStart, rangeEnd);
 
@@ -397,39 +536,7 @@ public class NHServer extends HServer
                             HDateTime ts = HDateTime.make(timestamp.getMillis(), tz);
 
                             // create val
-                            HVal val;
-                            if (isTrendRecord)
-                            {
-                                // extract value from BTrendRecord
-                                BValue value = hrec.get("value");
-
-                                Type recType = cfg.getRecordType().getResolvedType();
-                                if (recType.is(BNumericTrendRecord.TYPE))
-                                {
-                                    BNumber num = (BNumber) value;
-                                    val = unit == null ?
-                                            HNum.make(num.getDouble()) :
-                                            HNum.make(num.getDouble(), unit.val);
-                                } else if (recType.is(BBooleanTrendRecord.TYPE))
-                                {
-                                    BBoolean bool = (BBoolean) value;
-                                    val = HBool.make(bool.getBoolean());
-                                } else if (recType.is(BEnumTrendRecord.TYPE))
-                                {
-                                    BDynamicEnum dyn = (BDynamicEnum) value;
-                                    BFacets facets = (BFacets) cfg.get("valueFacets");
-                                    BEnumRange er = (BEnumRange) facets.get("range");
-                                    val = HStr.make(SlotUtil.fromNiagara(er.getTag(dyn.getOrdinal())));
-                                } else
-                                {
-                                    val = HStr.make(value.toString());
-                                }
-                            } else
-                            {
-                                // if its not a BTrendRecord, just do a toString()
-                                // of the whole record
-                                val = HStr.make(hrec.toString());
-                            }
+                            HVal val = makeHisVal(cfg, hrec, isTrendRecord, unit);
 
                             // add item
                             arr.add(HHisItem.make(ts, val));
@@ -455,6 +562,116 @@ public class NHServer extends HServer
         }
     }
 
+    /**
+      * Read the history for the given BComponent, folding the records
+      * into buckets of the given interval.  The records are streamed
+      * from the history cursor, and the buckets are aligned in the
+      * history's time zone.
+      */
+    HHisItem[] onHisRollup(HDict rec, HDateTimeRange range, HNum interval, String fold)
+    {
+        if (!cache.initialized())
+            throw new IllegalStateException(Cache.NOT_INITIALIZED);
+
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine("onHisRollup " + rec.id() + ", " + range + ", " + interval + ", " + fold);
+
+        try
+        {
+            BHistoryConfig cfg = tagMgr.lookupHistoryConfig(rec.id());
+            if (cfg == null) return EMPTY_HIS_ITEM_ARR;
+
+            HStr unit = (HStr) rec.get("unit", false);
+
+            HTimeZone tz = fromBajaTimeZone(cfg.getTimeZone());
+            if (tz == null) tz = range.start.tz;
+
+            // booleans and cov histories hold their value until the next sample
+            boolean step =
+                COV.equals(rec.get("hisInterpolate", false)) ||
+                cfg.getRecordType().getResolvedType().is(BBooleanTrendRecord.TYPE);
+
+            HisRollup rollup = new HisRollup(interval, fold, tz, step);
+            long start = range.start.millis();
+            long end = range.end.millis();
+
+            BAbsTime rangeStart = BAbsTime.make(start, cfg.getTimeZone());
+            BAbsTime rangeEnd = BAbsTime.make(end, cfg.getTimeZone());
+
+            // NOTE: be careful, timeQuery() is inclusive of both start and end
+            try (HistorySpaceConnection conn = service.getHistoryDb().getConnection(null))
+            {
+                BIHistory history = conn.getHistory(cfg.getId());
+                if (history == null) return EMPTY_HIS_ITEM_ARR;
+
+                // aligned numeric rollups can be answered from the pre-aggregated store
+                if (service.getHisRollupStoreEnabled() && rollupStore.canServe(cfg, rollup, start, end))
+                    return rollupStore.read(conn, history, cfg, tz, rollup, start, end, unit == null ? null : unit.val);
+
+                BITable<BHistoryRecord> table = conn.timeQuery(history, rangeStart, rangeEnd);
+
+                boolean isTrendRecord = cfg.getRecordType().getResolvedType().is(BTrendRecord.TYPE);
+
+                try (TableCursor<BHistoryRecord> cursor = table.cursor())
+                {
+                    while (cursor.next())
+                    {
+                        BHistoryRecord hrec = cursor.get();
+                        BAbsTime timestamp = (BAbsTime) hrec.get("timestamp");
+
+                        // ignore inclusive start value
+                        if (!timestamp.equals(rangeStart))
+                            rollup.add(timestamp.getMillis(), makeHisVal(cfg, hrec, isTrendRecord, unit));
+                    }
+                }
+
+                return rollup.finish(Math.min(end, Clock.millis()));
+            }
+        } catch (RuntimeException e)
+        {
+            e.printStackTrace();
+            throw e;
+        }
+    }
+
+    /**
+      * Create the haystack value for a history record.
+      */
+    private static HVal makeHisVal(BHistoryConfig cfg, BHistoryRecord hrec, boolean isTrendRecord, HStr unit)
+    {
+        if (!isTrendRecord)
+        {
+            // if its not a BTrendRecord, just do a toString()
+            // of the whole record
+            return HStr.make(hrec.toString());
+        }
+
+        // extract value from BTrendRecord
+        BValue value = hrec.get("value");
+
+        Type recType = cfg.getRecordType().getResolvedType();
+        if (recType.is(BNumericTrendRecord.TYPE))
+        {
+            BNumber num = (BNumber) value;
+            return unit == null ?
+                    HNum.make(num.getDouble()) :
+                    HNum.make(num.getDouble(), unit.val);
+        } else if (recType.is(BBooleanTrendRecord.TYPE))
+        {
+            BBoolean bool = (BBoolean) value;
+            return HBool.make(bool.getBoolean());
+        } else if (recType.is(BEnumTrendRecord.TYPE))
+        {
+            BDynamicEnum dyn = (BDynamicEnum) value;
+            BFacets facets = (BFacets) cfg.get("valueFacets");
+            BEnumRange er = (BEnumRange) facets.get("range");
+            return HStr.make(SlotUtil.fromNiagara(er.getTag(dyn.getOrdinal())));
+        } else
+        {
+            return HStr.make(value.toString());
+        }
+    }
+
     /**
       * Write the history for the given BComponent.
       */
@@ -482,6 +699,8 @@ public class NHServer extends HServer
                 conn.append(
                     history,
                     makeTrendRecord(kind, item.ts, item.val));
+
+            rollupStore.onHisWrite(conn, history, cfg, items);
         }
     }
 
@@ -650,72 +869,33 @@ public class NHServer extends HServer
         }
     }
 
+    /**
+      * Collect the refs of every component, so the RefIndex is up to
+      * date even if the cache has not been rebuilt since they changed,
+      * and then repair all of the broken refs.
+      */
     void removeBrokenRefs() 
     {
-//        if (!cache.initialized()) 
-//            throw new IllegalStateException(Cache.NOT_INITIALIZED);
-
         if (LOG.isLoggable(Level.FINE)) LOG.fine("BEGIN removeBrokenRefs"); 
 
         Iterator<BComponent> compItr = new ComponentTreeIterator(
             (BComponent) BOrd.make("slot:/").resolve(service, null).get());
 
-        // check every component
+        List<RefIndex.Ref> refs = new ArrayList<>();
         while (compItr.hasNext())
         {
             BComponent comp = compItr.next();
             HDict tags = BHDict.findTagAnnotation(comp);
-            if (tags == null) continue;
-
-            // check if any of the tags are a broken ref
-            Set<String> brokenRefs = null;
-            Iterator<Map.Entry<String, HVal>> tagItr = tags.iterator();
-            while (tagItr.hasNext())
-            {
-                Map.Entry<String, HVal> e = tagItr.next();
-                String name = e.getKey();
-                HVal val = e.getValue();
-
-                if (val instanceof HRef)
-                {
-                    // try to resolve the ref
-                    try
-                    {
-                        BComponent lookup = tagMgr.lookupComponent((HRef) val);
-                        if (lookup == null)
-                            throw new IllegalStateException("Cannot find component for " + val);
-                    }
-                    // failed!
-                    catch (Exception e2)
-                    {
-                        LOG.warning(
-                            "broken ref '" + name + "' found in " + 
-                            comp.getSlotPath());
-
-                        if (brokenRefs == null)
-                            brokenRefs = new HashSet<>();
-                        brokenRefs.add(name);
-                    }
-                }
-            }
+            RefIndex.collect(comp, tags == null ? HDict.EMPTY : tags, refs);
+        }
+        refIndex.rebuild(refs);
 
-            // at least one broken ref was found
-            if (brokenRefs != null)
-            {
-                HDictBuilder hdb = new HDictBuilder();
-                tagItr = tags.iterator();
-                while (tagItr.hasNext())
-                {
-                    Map.Entry<String, HVal> e = tagItr.next();
-                    String name = e.getKey();
-                    HVal val = e.getValue();
+        List<RefIndex.Ref> dangling = refIndex.findDangling(null);
+        for (RefIndex.Ref ref : dangling)
+            LOG.warning("broken ref '" + ref.name + "' found in " + ref.source.getSlotPath());
 
-                    if (!brokenRefs.contains(name))
-                        hdb.add(name, val);
-                }
-                comp.set("haystack", BHDict.make(hdb.toDict()));
-            }
-        }
+        refIndex.repair(dangling, null);
+        readAllCache.invalidate();
 
         if (LOG.isLoggable(Level.FINE)) LOG.fine("END removeBrokenRefs"); 
     }
@@ -744,6 +924,18 @@ public class NHServer extends HServer
         synchronized(watches) { return watches.get(watchId); }
     }
 
+    /**
+      * Add the changes that a watch has filtered out to the stats.
+      */
+    void addCovSuppressed(long count)
+    {
+        BNHaystackStats stats = service.getStats();
+        synchronized(watches)
+        {
+            stats.setWatchCovSuppressed(stats.getWatchCovSuppressed() + count);
+        }
+    }
+
 ////////////////////////////////////////////////////////////////
 // trend record
 ////////////////////////////////////////////////////////////////
@@ -770,6 +962,18 @@ public class NHServer extends HServer
         else throw new IllegalStateException("Cannot create trend record for kind " + kind);
     }
 
+    /**
+      * Wrap each of the ops so that its requests are recorded
+      * in the server's metrics.
+      */
+    private static HOp[] meter(HOp... ops)
+    {
+        HOp[] metered = new HOp[ops.length];
+        for (int i = 0; i < ops.length; i++)
+            metered[i] = new MeteredOp(ops[i]);
+        return metered;
+    }
+
 ////////////////////////////////////////////////////////////////
 // access
 ////////////////////////////////////////////////////////////////
@@ -781,6 +985,13 @@ public class NHServer extends HServer
     Cache getCache() { return cache; }
     Nav getNav() { return nav; }
     ScheduleManager getScheduleManager() { return schedMgr; }
+    HisRollupStore getHisRollupStore() { return rollupStore; }
+    OpMetrics getMetrics() { return metrics; }
+    SlowQueryLog getSlowQueryLog() { return slowQueries; }
+    ReadAllCache getReadAllCache() { return readAllCache; }
+    RefIndex getRefIndex() { return refIndex; }
+    HistoryIndex getHistoryIndex() { return historyIndex; }
+    WatchStream getWatchStream() { return watchStream; }
 
 ////////////////////////////////////////////////////////////////
 // Attributes 
@@ -790,16 +1001,17 @@ public class NHServer extends HServer
     private static final Logger LOG_WATCH = Logger.getLogger("nhaystack.watch");
 
     private static final String LAST_WRITE = "haystackLastWrite";
+    private static final HStr COV = HStr.make("cov");
     private static final HHisItem[] EMPTY_HIS_ITEM_ARR = new HHisItem[0];
+    private static final HDict[] EMPTY_HDICT_ARR = new HDict[0];
 
-    private static final HOp[] OPS =
-    {
+    private static final HOp[] OPS = meter(
         HStdOps.about,
         HStdOps.ops,
         HStdOps.formats,
         HStdOps.read,
         HStdOps.nav,
-        HStdOps.watchSub,
+        new WatchSubOp(),
         HStdOps.watchUnsub,
         HStdOps.watchPoll,
         HStdOps.pointWrite,
@@ -808,8 +1020,8 @@ public class NHServer extends HServer
         HStdOps.invokeAction,
         new NHServerOps.ExtendedReadOp(),
         new NHServerOps.ExtendedOp(),
-        new AlarmAckOp()
-    };
+        new AlarmAckOp(),
+        new HisRollupOp());
 
     private final Map<String, NHWatch> watches = new HashMap<>();
 
@@ -821,5 +1033,18 @@ public class NHServer extends HServer
     private final ScheduleManager schedMgr;
     private final FoxSessionManager foxSessionMgr;
     private final PointIO pointIO;
+    private final HisRollupStore rollupStore;
+    private final OpMetrics metrics = new OpMetrics();
+    private final SlowQueryLog slowQueries;
+    private final ReadAllCache readAllCache;
+    private final RefIndex refIndex;
+    private final HistoryIndex historyIndex;
+    private final WatchStream watchStream;
+    private ForkJoinPool readAllPool;
+
+    /**
+      * Resolves the refs in filter paths, the same way as HServer.
+      */
+    private final HFilter.Pather pather = ref -> readById(HRef.make(ref));
 }
 
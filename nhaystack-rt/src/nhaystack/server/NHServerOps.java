@@ -74,7 +74,7 @@ final class NHServerOps implements NHaystackConst
               params.getInt("limit") :
               Integer.MAX_VALUE;
 
-      HGrid result = server.onReadAll(filter, limit);
+      HGrid result = server.readAll(filter, limit, name());
 
       // size
       if (params.has("size") && params.get("size").equals(HBool.TRUE))
@@ -204,6 +204,9 @@ final class NHServerOps implements NHaystackConst
           break;
 
         // read
+        case "brokenRefs":
+          result = brokenRefs(server, params);
+          break;
         case "findDuplicatePoints":
           result = findDuplicatePoints(server, params);
           break;
@@ -216,6 +219,12 @@ final class NHServerOps implements NHaystackConst
         case "showWatches":
           result = showWatches(server, params);
           break;
+        case "opMetrics":
+          result = opMetrics(server, params);
+          break;
+        case "slowQueries":
+          result = slowQueries(server, params);
+          break;
         case "uniqueTags":
           result = uniqueTags(server, params);
           break;
@@ -234,9 +243,28 @@ final class NHServerOps implements NHaystackConst
           break;
       }
 
+      // edits can change which records match a filter
+      if (WRITE_FUNCTIONS.contains(function))
+      {
+        server.getReadAllCache().invalidate();
+      }
+
       LOG.fine(() -> name() + ' ' + function + " end, " + (Clock.ticks() - ticks) + "ms.");
       return result;
     }
+
+    // every function that onService handles
+    static final Set<String> FUNCTIONS = new HashSet<>(Arrays.asList(
+      "addHaystackSlots", "addEquips", "applyBatchTags", "copyEquipTags", "delete",
+      "deleteHaystackSlot", "searchAndReplace", "mapPointsToEquip", "makeDynamicWritable",
+      "applyGridTags", "rebuildCache", "brokenRefs", "findDuplicatePoints", "pullPropTags",
+      "showPointsInWatch", "showWatches", "opMetrics", "slowQueries", "uniqueTags",
+      "uniqueEquipTypes", "simpleStrContains"));
+
+    private static final Set<String> WRITE_FUNCTIONS = new HashSet<>(Arrays.asList(
+      "addHaystackSlots", "addEquips", "applyBatchTags", "copyEquipTags", "delete",
+      "deleteHaystackSlot", "searchAndReplace", "mapPointsToEquip", "makeDynamicWritable",
+      "applyGridTags"));
   }
 
   /**
@@ -639,6 +667,7 @@ outer:
   private static HGrid applyGridTags(NHServer server, HGrid request)
   {
     TagManager tagMgr = server.getTagManager();
+    BulkTagger tagger = new BulkTagger(server.getService());
 
     Context cx = ThreadContext.getContext(Thread.currentThread());
     for (int i = 1; i < request.numRows(); i++)
@@ -674,16 +703,13 @@ outer:
       }
 
       // set haystack
-      if (comp.get("haystack") == null)
-      {
-        comp.add("haystack", BHDict.make(hdb.toDict()));
-      }
-      else
-      {
-        comp.set("haystack", BHDict.make(hdb.toDict()));
-      }
-      HaystackSlotUtil.migrateHaystackTags(comp);
+      tagger.plan(comp, hdb.toDict());
+    }
 
+    HGrid plan = applyBulkTags(tagger, request.row(0));
+    if (plan != null)
+    {
+      return plan;
     }
 
     HDictBuilder hdb = new HDictBuilder();
@@ -716,29 +742,38 @@ outer:
     HDict newTags = new HZincReader(tags).readDict();
 
     BComponent[] targets = getFilterComponents(server, targetFilter, ids);
+    BulkTagger tagger = new BulkTagger(server.getService());
     HDict[] rows = new HDict[targets.length];
     for (int i = 0; i < targets.length; i++)
     {
       BComponent target = targets[i];
 
+      HDict origTags;
       if (target.get("haystack") == null)
       {
-        target.add("haystack", BHDict.DEFAULT);
+        origTags = HDict.EMPTY;
       }
       else if (!(target.get("haystack") instanceof BHDict))
       {
         continue;
       }
-
-      HDict origTags = ((BHDict) target.get("haystack")).getDict();
+      else
+      {
+        origTags = ((BHDict) target.get("haystack")).getDict();
+      }
 
       HDict row = applyTagsToDict(origTags, newTags);
-      target.set("haystack", BHDict.make(row));
-      HaystackSlotUtil.migrateHaystackTags(target);
+      tagger.plan(target, row);
 
       rows[i] = row;
     }
 
+    HGrid plan = applyBulkTags(tagger, params);
+    if (plan != null)
+    {
+      return plan;
+    }
+
     HGrid result;
     if (returnResultRows)
     {
@@ -753,6 +788,35 @@ outer:
     return result;
   }
 
+  /**
+   * Applies the changes that the tagger has planned. If params "dryRun" is true, the changes are
+   * returned as a grid instead. If params "job" is true, they are applied by a job, and the ord
+   * of the job is returned; the job's result holds the outcome of each change when it is done.
+   * Otherwise they are applied now, and null is returned, unless some of them could not be
+   * applied, in which case the outcome of each change is returned. The changes are not applied
+   * as a transaction, so the ones which succeeded are kept either way.
+   */
+  private static HGrid applyBulkTags(BulkTagger tagger, HRow params)
+  {
+    if (params.has("dryRun") && params.getBool("dryRun"))
+    {
+      return tagger.toDiffGrid();
+    }
+
+    if (params.has("job") && params.getBool("job"))
+    {
+      BOrd ord = new BNHaystackBulkTagJob(tagger).submit(null);
+
+      HDictBuilder hdb = new HDictBuilder();
+      hdb.add("job", ord.toString());
+      hdb.add("rowsChanged", HNum.make(tagger.size()));
+      return HGridBuilder.dictToGrid(hdb.toDict());
+    }
+
+    tagger.apply(null);
+    return tagger.failedCount() == 0 ? null : tagger.toResultGrid();
+  }
+
   /**
    * applyTagsToDict
    */
@@ -1317,6 +1381,70 @@ outer:
     return HGridBuilder.dictsToGrid(arr.toArray(EMPTY_HDICT_ARRAY));
   }
 
+  /**
+   * Return the request counts, errors, bytes out, rows and latency
+   * percentiles of every op and extended function.  If the params
+   * have a "reset" marker, the metrics are reset after being read.
+   */
+  private static HGrid opMetrics(NHServer server, HRow params)
+  {
+    HGrid grid = server.getMetrics().toGrid();
+    if (params.has("reset"))
+    {
+      // check permissions on this Thread's saved context
+      Context cx = ThreadContext.getContext(Thread.currentThread());
+      if (!TypeUtil.canInvoke(server.getService(), cx))
+      {
+        throw new PermissionException("Cannot invoke resetOpMetrics");
+      }
+
+      server.getService().invoke(BNHaystackService.resetOpMetrics, null, cx);
+    }
+    return grid;
+  }
+
+  /**
+   * Return the slow query log, most recent first.  If the params
+   * have a "clear" marker, the log is cleared after being read.
+   */
+  private static HGrid slowQueries(NHServer server, HRow params)
+  {
+    HGrid grid = server.getSlowQueryLog().toGrid();
+    if (params.has("clear"))
+    {
+      // check permissions on this Thread's saved context
+      Context cx = ThreadContext.getContext(Thread.currentThread());
+      if (!TypeUtil.canInvoke(server.getService(), cx))
+      {
+        throw new PermissionException("Cannot clear slowQueries");
+      }
+
+      server.getSlowQueryLog().clear();
+    }
+    return grid;
+  }
+
+  /**
+   * Lists the refs, both ref tags and hs: relations, whose target cannot be found or has been
+   * removed or renamed since the cache was last rebuilt.  If the "repair" param is given, the
+   * refs to a renamed component are pointed at its new id and the others are removed, for the
+   * components which can be written to, and the refs which were repaired are returned.
+   */
+  private static HGrid brokenRefs(NHServer server, HRow params)
+  {
+    // check permissions on this Thread's saved context
+    Context cx = ThreadContext.getContext(Thread.currentThread());
+
+    RefIndex refIndex = server.getRefIndex();
+    List<RefIndex.Ref> dangling = refIndex.findDangling(cx);
+    if (params.has("repair") && params.getBool("repair"))
+    {
+      dangling = refIndex.repair(dangling, cx);
+      server.getReadAllCache().invalidate();
+    }
+    return refIndex.toGrid(dangling);
+  }
+
   /**
    * showPointsInWatch
    */
@@ -1645,7 +1773,7 @@ outer:
     return refs;
   }
 
-  private static HRef valToId(HServer db, HVal val)
+  static HRef valToId(HServer db, HVal val)
   {
     if (val instanceof HUri)
     {
@@ -5,6 +5,8 @@
 // History:
 //   30 Mar 2013  Mike Jarmy     Creation
 //   10 May 2018  Eric Anderson  Added missing @Overrides annotations, added use of generics
+//   19 Oct 2026                 Added awaitChanges for pushing changes to a watch stream
+//   19 Oct 2026                 Added COV filtering
 //
 package nhaystack.server;
 
@@ -113,11 +115,13 @@ class NHWatch extends HWatch
 
         ArrayList<HDict> response = new ArrayList<>();
         ArrayList<BComponent> pointArr = new ArrayList<>();
-        for (HRef id : ids)
+        BComponent[] comps = server.getTagManager().lookupComponents(ids);
+        for (int i = 0; i < ids.length; i++)
         {
+            HRef id = ids[i];
             try
             {
-                BComponent comp = server.getTagManager().lookupComponent(id);
+                BComponent comp = comps[i];
 
                 // no such component -- treat 'checked' as if it were false, since
                 // 'checked' is handled on the client side.
@@ -137,6 +141,7 @@ class NHWatch extends HWatch
                     pointArr.add(comp);
                     HDict cov = server.getTagManager().createComponentCovTags(comp);
                     allSubscribed.put(comp, cov);
+                    setCovPoint(comp, covFilter.makePoint(comp, cov));
                     response.add(cov);
                 }
             }
@@ -186,6 +191,7 @@ class NHWatch extends HWatch
                 pointArr.add(comp);
                 allSubscribed.remove(comp);
                 nextPoll.remove(comp);
+                covPoints.remove(comp);
             }
         }
 
@@ -214,6 +220,7 @@ class NHWatch extends HWatch
 
         // clear out nextPoll so we can start accumulating more COVs
         nextPoll.clear();
+        publishCovSuppressed();
 
         // done
         if (LOG.isLoggable(Level.FINE))
@@ -244,11 +251,16 @@ class NHWatch extends HWatch
             HDict dict = server.getTagManager().createComponentCovTags(point);
             response.add(dict);
             allSubscribed.put(point, dict);
+
+            // the filter starts again from what the client has now
+            CovFilter.Point cp = covPoints.get(point);
+            if (cp != null) cp.reported(dict, System.currentTimeMillis());
         }
 
         // since this method counts as a poll, clear out nextPoll so we 
         // can start accumulating more Covs.
         nextPoll.clear();
+        publishCovSuppressed();
 
         // done
         if (LOG.isLoggable(Level.FINE))
@@ -279,6 +291,11 @@ class NHWatch extends HWatch
 
         allSubscribed.clear();
         nextPoll.clear();
+        covPoints.clear();
+        publishCovSuppressed();
+
+        // wake up any stream that is waiting for changes
+        notifyAll();
 
         server.removeWatch(watchId);
     }
@@ -309,16 +326,122 @@ class NHWatch extends HWatch
                     allSubscribed.containsKey(comp))     // and lets double check that we are really subscribed
                 {
                     HDict cov = server.getTagManager().createComponentCovTags(comp);
-                    nextPoll.put(comp, cov);
+                    CovFilter.Point cp = covPoints.get(comp);
+                    if (cp == null)
+                    {
+                        report(comp, cov);
+                        return;
+                    }
+
+                    long now = System.currentTimeMillis();
+                    switch (cp.check(cov, now))
+                    {
+                        case CovFilter.REPORT:
+                            cp.reported(cov, now);
+                            report(comp, cov);
+                            break;
+
+                        case CovFilter.SUPPRESS:
+                            // a change that was held back is out of date too
+                            if (cp.deferred != null) covSuppressed++;
+                            cp.deferred = null;
+                            covSuppressed++;
+                            break;
+
+                        case CovFilter.DEFER:
+                            if (cp.deferred != null) covSuppressed++;
+                            cp.deferred = cov;
+                            if (!cp.scheduled)
+                            {
+                                cp.scheduled = true;
+                                timer.schedule(new Deferred(comp, cp), Math.max(0, cp.dueTime() - now));
+                            }
+                            break;
+                    }
                 }
             }
         }
     }
 
+    private void report(BComponent comp, HDict cov)
+    {
+        nextPoll.put(comp, cov);
+        notifyAll();
+    }
+
+    /**
+      * Report a change that was held back until the minimum
+      * interval between reports had passed.
+      */
+    private class Deferred extends TimerTask
+    {
+        Deferred(BComponent comp, CovFilter.Point point)
+        {
+            this.comp = comp;
+            this.point = point;
+        }
+
+        @Override
+        public void run()
+        {
+            synchronized(NHWatch.this)
+            {
+                point.scheduled = false;
+                if (!open || covPoints.get(comp) != point || point.deferred == null)
+                    return;
+
+                HDict cov = point.deferred;
+                point.reported(cov, System.currentTimeMillis());
+                report(comp, cov);
+            }
+        }
+
+        private final BComponent comp;
+        private final CovFilter.Point point;
+    }
+
 ////////////////////////////////////////////////////////////////
 // package-scope
 ////////////////////////////////////////////////////////////////
 
+    /**
+      * Filter the changes to the points which are subscribed from now
+      * on, and to those which are already subscribed, with the filter.
+      */
+    synchronized void setCovFilter(CovFilter filter)
+    {
+        if (!open) throw new BajaRuntimeException(
+            "Watch " + watchId + " is closed.");
+
+        covFilter = filter;
+        for (Map.Entry<BComponent, HDict> e : allSubscribed.entrySet())
+            setCovPoint(e.getKey(), filter.makePoint(e.getKey(), e.getValue()));
+    }
+
+    private void setCovPoint(BComponent comp, CovFilter.Point point)
+    {
+        if (point == null)
+            covPoints.remove(comp);
+        else
+            covPoints.put(comp, point);
+    }
+
+    /**
+      * Return how many changes have been filtered out, or
+      * replaced by a later change before they were reported.
+      */
+    synchronized long covSuppressed()
+    {
+        return covSuppressed;
+    }
+
+    private void publishCovSuppressed()
+    {
+        if (covSuppressed == covPublished) return;
+        server.addCovSuppressed(covSuppressed - covPublished);
+        covPublished = covSuppressed;
+    }
+
     synchronized HDict[] curSubscribed()
     {
         ArrayList<HDict> arr = new ArrayList<>();
@@ -335,6 +458,61 @@ class NHWatch extends HWatch
         return lastPoll;
     }
 
+    /**
+      * Wait for changes to the subscribed points, and then return them
+      * the same way as pollChanges.
+      * <p>
+      * Once the first change arrives, keep waiting until the window has
+      * passed, so that the changes which follow it are returned along
+      * with it.  Changes keep being gathered into nextPoll while this
+      * waits, and while the caller is sending the last batch, so only the
+      * latest value of each point is returned no matter how slowly the
+      * caller takes them.
+      * <p>
+      * Return an empty array if there are no changes before the timeout,
+      * or null if the watch is closed.  Waiting counts as a poll, so the
+      * lease of an open watch is renewed.
+      */
+    synchronized HDict[] awaitChanges(long window, long timeout) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (open && nextPoll.isEmpty())
+        {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) break;
+            wait(remaining);
+        }
+
+        if (open && !nextPoll.isEmpty() && window > 0)
+        {
+            long end = System.currentTimeMillis() + window;
+            long remaining = window;
+            while (open && remaining > 0)
+            {
+                wait(remaining);
+                remaining = end - System.currentTimeMillis();
+            }
+        }
+
+        if (!open) return null;
+
+        lastPoll = System.currentTimeMillis();
+        scheduleLeaseTimeout();
+
+        HDict[] changes = nextPoll.values().toArray(EMPTY_HDICT_ARRAY);
+        nextPoll.clear();
+        publishCovSuppressed();
+
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine("NHWatch.awaitChanges " + watchId + ", size " + changes.length);
+        return changes;
+    }
+
+    long leaseInterval()
+    {
+        return leaseInterval;
+    }
+
 ////////////////////////////////////////////////////////////////
 // Timeout
 ////////////////////////////////////////////////////////////////
@@ -375,6 +553,11 @@ class NHWatch extends HWatch
 
     private final Map<BComponent, HDict> allSubscribed = new HashMap<>(); // point -> HDict (all tags)
     private final Map<BComponent, HDict> nextPoll = new HashMap<>(); // point -> HDict (cov)
+    private final Map<BComponent, CovFilter.Point> covPoints = new HashMap<>(); // point -> filter state
+
+    private CovFilter covFilter = CovFilter.NONE;
+    private long covSuppressed;
+    private long covPublished;
 
     private boolean open;
     private final Timer timer = new Timer();
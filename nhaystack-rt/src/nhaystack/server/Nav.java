@@ -11,6 +11,7 @@ package nhaystack.server;
 
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.function.Supplier;
 import javax.baja.history.BHistoryConfig;
 import javax.baja.naming.BOrd;
 import javax.baja.naming.SlotPath;
@@ -38,12 +39,15 @@ public class Nav
         BNHaystackService service,
         SpaceManager spaceMgr,
         Cache cache,
-        TagManager tagMgr)
+        TagManager tagMgr,
+        HistoryIndex historyIndex)
     {
         this.service = service;
         this.spaceMgr = spaceMgr;
         this.cache = cache;
         this.tagMgr = tagMgr;
+        this.historyIndex = historyIndex;
+        this.navCache = new NavCache(cache);
     }
 
 ////////////////////////////////////////////////////////////////
@@ -228,27 +232,29 @@ public class Nav
         if (!TypeUtil.canRead(root, cx))
             throw new PermissionException("Cannot read " + navId);
 
-        BComponent[] kids = root.getChildComponents();
-        ArrayList<HDict> dicts = new ArrayList<>();
-        for (BComponent kid : kids)
-        {
-            if (TypeUtil.canRead(kid, cx))
-                dicts.add(makeCompNavRec(kid));
-        }
-        return HGridBuilder.dictsToGrid(dicts.toArray(EMPTY_HDICT_ARRAY));
+        NavCache.Row[] rows = lookupRows(navId, root, () -> {
+            BComponent[] kids = root.getChildComponents();
+            NavCache.Row[] arr = new NavCache.Row[kids.length];
+            for (int i = 0; i < kids.length; i++)
+                arr[i] = makeCompNavRow(kids[i]);
+            return arr;
+        });
+        return makeGrid(rows, cx);
     }
 
-    private HDict makeCompNavRec(BComponent comp)
+    private NavCache.Row makeCompNavRow(BComponent comp)
     {
         HDictBuilder hdb = new HDictBuilder();
 
         // add a navId, but only if this component is not a leaf
-        if (comp.getChildComponents().length > 0)
+        boolean hasKids = NavCache.hasChildComponents(comp);
+        if (hasKids)
         {
             hdb.add("navId", comp.getSlotPath().toString());
         }
 
-        if (SpaceManager.isVisibleComponent(comp))
+        boolean visible = SpaceManager.isVisibleComponent(comp);
+        if (visible)
         {
             hdb.add(tagMgr.createComponentTags(comp));
         }
@@ -262,7 +268,7 @@ public class Nav
         // always use a slot path ref
         hdb.add("id", TagManager.makeSlotPathRef(comp).getHRef());
 
-        return hdb.toDict();
+        return makeRow(comp, hdb.toDict(), hasKids, visible);
     }
 
     private HGrid onHisNav(String navId)
@@ -272,7 +278,9 @@ public class Nav
         // distinct station names
         if (navId.equals("his:/"))
         {
-            String[] stationNames = cache.getNavHistoryStationNames();
+            String[] stationNames = historyIndex.isBuilt() ?
+                historyIndex.stationNames() :
+                cache.getNavHistoryStationNames();
 
             ArrayList<HDict> dicts = new ArrayList<>();
             for (String stationName : stationNames)
@@ -294,12 +302,14 @@ public class Nav
         {
             String stationName = navId.substring("his:/".length());
 
-            BHistoryConfig[] configs = getAccessibleHistoryConfigs(stationName, cx);
-
-            ArrayList<HDict> dicts = new ArrayList<>();
-            for (BHistoryConfig config : configs)
-                dicts.add(tagMgr.createHistoryTags(config));
-            return HGridBuilder.dictsToGrid(dicts.toArray(EMPTY_HDICT_ARRAY));
+            NavCache.Row[] rows = lookupRows(navId, null, () -> {
+                BHistoryConfig[] configs = getNavHistories(stationName);
+                NavCache.Row[] arr = new NavCache.Row[configs.length];
+                for (int i = 0; i < configs.length; i++)
+                    arr[i] = makeRow(configs[i], tagMgr.createHistoryTags(configs[i]), false, false);
+                return arr;
+            });
+            return makeGrid(rows, cx);
         }
 
         else throw new BajaRuntimeException("Cannot lookup nav for " + navId);
@@ -307,7 +317,7 @@ public class Nav
 
     private BHistoryConfig[] getAccessibleHistoryConfigs(String stationName, Context cx)
     {
-        BHistoryConfig[] configs = cache.getNavHistories(stationName);
+        BHistoryConfig[] configs = getNavHistories(stationName);
 
         ArrayList<BHistoryConfig> arr = new ArrayList<>();
         for (BHistoryConfig config : configs)
@@ -318,30 +328,38 @@ public class Nav
         return arr.toArray(EMPTY_HISTORY_CONFIG_ARRAY);
     }
 
+    private BHistoryConfig[] getNavHistories(String stationName)
+    {
+        // the cache's histories are only used until the index is built
+        return historyIndex.isBuilt() ?
+            historyIndex.navHistories(stationName) :
+            cache.getNavHistories(stationName);
+    }
+
     private HGrid onSepNav(String navId)
     {
         if (navId.equals("sep:/"))
         {
             Context cx = ThreadContext.getContext(Thread.currentThread());
-            ArrayList<HDict> dicts = new ArrayList<>();
-
-            BComponent[] sites = cache.getAllSites();
-            for (BComponent site : sites)
-            {
-                if (!TypeUtil.canRead(site, cx)) continue;
-
-                HDict tags = tagMgr.createComponentTags(site);
 
-                String siteNav = makeSiteNavId(tags.getStr("navName"));
+            NavCache.Row[] rows = lookupRows(navId, null, () -> {
+                BComponent[] sites = cache.getAllSites();
+                NavCache.Row[] arr = new NavCache.Row[sites.length];
+                for (int i = 0; i < sites.length; i++)
+                {
+                    HDict tags = tagMgr.createComponentTags(sites[i]);
 
-                HDictBuilder hd = new HDictBuilder();
-                hd.add("navId", HStr.make(siteNav));
-                hd.add(tags);
+                    String siteNav = makeSiteNavId(tags.getStr("navName"));
 
-                dicts.add(hd.toDict());
-            }
+                    HDictBuilder hd = new HDictBuilder();
+                    hd.add("navId", HStr.make(siteNav));
+                    hd.add(tags);
 
-            return HGridBuilder.dictsToGrid(dicts.toArray(EMPTY_HDICT_ARRAY));
+                    arr[i] = makeRow(sites[i], hd.toDict(), true, false);
+                }
+                return arr;
+            });
+            return makeGrid(rows, cx);
         }
 
         else if (navId.startsWith("sep:/"))
@@ -364,42 +382,116 @@ public class Nav
     private HGrid makeSiteNav(String siteName)
     {
         Context cx = ThreadContext.getContext(Thread.currentThread());
-        ArrayList<HDict> dicts = new ArrayList<>();
 
         String siteNav = makeSiteNavId(siteName);
-        BComponent[] equips = cache.getNavSiteEquips(siteNav);
+        NavCache.Row[] rows = lookupRows(siteNav, null, () -> {
+            BComponent[] equips = cache.getNavSiteEquips(siteNav);
+            NavCache.Row[] arr = new NavCache.Row[equips.length];
+            for (int i = 0; i < equips.length; i++)
+            {
+                HDict tags = tagMgr.createComponentTags(equips[i]);
 
-        for (BComponent equip : equips)
-        {
-            if (!TypeUtil.canRead(equip, cx)) continue;
+                String equipNav = makeEquipNavId(
+                    siteNav, tags.getStr("navName"));
 
-            HDict tags = tagMgr.createComponentTags(equip);
+                HDictBuilder hd = new HDictBuilder();
+                hd.add("navId", HStr.make(equipNav));
+                hd.add(tags);
+                arr[i] = makeRow(equips[i], hd.toDict(), true, false);
+            }
+            return arr;
+        });
+        return makeGrid(rows, cx);
+    }
 
-            String equipNav = makeEquipNavId(
-                siteNav, tags.getStr("navName"));
+    private HGrid makeEquipNav(String siteName, String equipName)
+    {
+        Context cx = ThreadContext.getContext(Thread.currentThread());
 
-            HDictBuilder hd = new HDictBuilder();
-            hd.add("navId", HStr.make(equipNav));
-            hd.add(tags);
-            dicts.add(hd.toDict());
+        String equipNav = makeEquipNavId(siteName, equipName);
+        NavCache.Row[] rows = lookupRows(equipNav, null, () -> {
+            BComponent[] points = cache.getNavEquipPoints(equipNav);
+            NavCache.Row[] arr = new NavCache.Row[points.length];
+            for (int i = 0; i < points.length; i++)
+                arr[i] = makeRow(points[i], tagMgr.createComponentTags(points[i]), false, true);
+            return arr;
+        });
+        return makeGrid(rows, cx);
+    }
+
+////////////////////////////////////////////////////////////////
+// nav cache
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Return the rows for the navId from the nav cache, building
+      * them if they are missing or out of date.  The rows are built
+      * without the current user's context, so that they can be
+      * shared between users.
+      */
+    private NavCache.Row[] lookupRows(String navId, BComponent root, Supplier<NavCache.Row[]> builder)
+    {
+        long lifetime = service.getNavCacheLifetime().getMillis();
+        if (lifetime > 0)
+        {
+            NavCache.Row[] rows = navCache.get(navId, root, lifetime);
+            if (rows != null) return rows;
         }
 
-        return HGridBuilder.dictsToGrid(dicts.toArray(EMPTY_HDICT_ARRAY));
+        Thread thread = Thread.currentThread();
+        Context cx = ThreadContext.getContext(thread);
+        if (cx != null) ThreadContext.removeContext(thread);
+
+        NavCache.Row[] rows;
+        try
+        {
+            rows = builder.get();
+        }
+        finally
+        {
+            if (cx != null) ThreadContext.putContext(thread, cx);
+        }
+
+        if (lifetime > 0) navCache.put(navId, root, rows);
+        return rows;
     }
 
-    private HGrid makeEquipNav(String siteName, String equipName)
+    private static NavCache.Row makeRow(BComponent comp, HDict tags, boolean hasKids, boolean visible)
     {
-        ArrayList<HDict> dicts = new ArrayList<>();
+        boolean hasCurTags = visible && NavCache.hasCurTags(comp);
+        return new NavCache.Row(
+            comp,
+            hasCurTags ? NavCache.withoutCurTags(tags) : tags,
+            hasKids,
+            hasCurTags);
+    }
 
-        String equipNav = makeEquipNavId(siteName, equipName);
-        BComponent[] points = cache.getNavEquipPoints(equipNav);
-        for (BComponent point : points)
+    /**
+      * Make a grid from the rows which the user is allowed to read,
+      * filling in the current value of any points.
+      */
+    private HGrid makeGrid(NavCache.Row[] rows, Context cx)
+    {
+        ArrayList<HDict> dicts = new ArrayList<>(rows.length);
+        for (NavCache.Row row : rows)
         {
-            HDictBuilder hd = new HDictBuilder();
-            hd.add(tagMgr.createComponentTags(point));
-            dicts.add(hd.toDict());
-        }
+            if (!TypeUtil.canRead(row.target, cx)) continue;
 
+            if (row.hasCurTags)
+            {
+                HDict cov = tagMgr.createComponentCovTags(row.target);
+
+                HDictBuilder hd = new HDictBuilder();
+                hd.add(row.tags);
+                if (cov.has("curVal")) hd.add("curVal", cov.get("curVal"));
+                if (cov.has("curStatus")) hd.add("curStatus", cov.get("curStatus"));
+                dicts.add(hd.toDict());
+            }
+            else
+            {
+                dicts.add(row.tags);
+            }
+        }
         return HGridBuilder.dictsToGrid(dicts.toArray(EMPTY_HDICT_ARRAY));
     }
 
@@ -414,4 +506,6 @@ public class Nav
     final Cache cache;
     final SpaceManager spaceMgr;
     final TagManager tagMgr;
+    final HistoryIndex historyIndex;
+    final NavCache navCache;
 }
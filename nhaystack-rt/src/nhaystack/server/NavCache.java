@@ -0,0 +1,249 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.baja.control.BControlPoint;
+import javax.baja.history.BHistoryConfig;
+import javax.baja.schedule.BWeeklySchedule;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BRelation;
+import javax.baja.sys.BValue;
+import javax.baja.sys.Clock;
+import javax.baja.sys.Property;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HDictBuilder;
+import org.projecthaystack.HVal;
+
+/**
+  * NavCache keeps the child rows of recently visited navIds, so that
+  * browsing a large tree does not regenerate the tags of every child
+  * on every nav request.
+  * <p>
+  * The rows are built without a user context, and are filtered by
+  * the permissions of the current user when they are read.  The
+  * volatile curVal and curStatus tags are never cached; they are
+  * filled in from the live points when the rows are read.
+  * <p>
+  * An entry is discarded when the Cache has been rebuilt, when it is
+  * older than the service's navCacheLifetime, when the children of
+  * its root component have been added, removed, renamed or
+  * reordered, or when the haystack slot, the Niagara tags, the
+  * relations or the facets of one of its rows have changed.  The configs of histories are not in the component
+  * space, so the rows of the his navs are instead discarded by the
+  * HistoryIndex whenever a history is created, deleted, renamed or
+  * reconfigured.
+  */
+final class NavCache
+{
+    NavCache(Cache cache)
+    {
+        this.cache = cache;
+    }
+
+////////////////////////////////////////////////////////////////
+// access
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Return the cached rows for the navId, or null if there are none
+      * or they are out of date.
+      *
+      * @param root the component whose children make up the rows,
+      *        or null if the rows do not come from the component space.
+      */
+    synchronized Row[] get(String navId, BComponent root, long lifetime)
+    {
+        Entry entry = entries.get(navId);
+        if (entry == null) return null;
+
+        if (entry.generation != cache.generation() ||
+            Clock.ticks() - entry.ticks > lifetime ||
+            entry.root != root ||
+            !isCurrent(entry))
+        {
+            entries.remove(navId);
+            return null;
+        }
+
+        return entry.rows;
+    }
+
+    synchronized void put(String navId, BComponent root, Row[] rows)
+    {
+        Entry entry = new Entry();
+        entry.generation = cache.generation();
+        entry.ticks = Clock.ticks();
+        entry.root = root;
+        entry.rows = rows;
+        entries.put(navId, entry);
+    }
+
+    synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+      * Remove the rows of every navId that starts with the prefix.
+      */
+    synchronized void removeAll(String prefix)
+    {
+        entries.keySet().removeIf(navId -> navId.startsWith(prefix));
+    }
+
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+    private static boolean isCurrent(Entry entry)
+    {
+        // the children of a component space root must not have changed
+        if (entry.root != null)
+        {
+            BComponent[] kids = entry.root.getChildComponents();
+            if (kids.length != entry.rows.length) return false;
+            for (int i = 0; i < kids.length; i++)
+            {
+                if (kids[i] != entry.rows[i].target) return false;
+                if (hasChildComponents(kids[i]) != entry.rows[i].hasKids) return false;
+            }
+        }
+
+        for (Row row : entry.rows)
+        {
+            if (!row.isCurrent()) return false;
+        }
+        return true;
+    }
+
+    /**
+      * Return whether the component has any child components, without
+      * building an array of them.
+      */
+    static boolean hasChildComponents(BComponent comp)
+    {
+        return comp.getProperties().nextComponent();
+    }
+
+    /**
+      * Make a copy of the tags which omits the tags that change
+      * with the value of the point.
+      */
+    static HDict withoutCurTags(HDict tags)
+    {
+        if (!tags.has("curVal") && !tags.has("curStatus")) return tags;
+
+        HDictBuilder hdb = new HDictBuilder();
+        Iterator<Map.Entry<String, HVal>> it = tags.iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<String, HVal> e = it.next();
+            if (!e.getKey().equals("curVal") && !e.getKey().equals("curStatus"))
+                hdb.add(e.getKey(), e.getValue());
+        }
+        return hdb.toDict();
+    }
+
+    /**
+      * Return whether the component has curVal and curStatus tags.
+      */
+    static boolean hasCurTags(BComponent comp)
+    {
+        return comp instanceof BControlPoint || comp instanceof BWeeklySchedule;
+    }
+
+////////////////////////////////////////////////////////////////
+// Row
+////////////////////////////////////////////////////////////////
+
+    /**
+      * A cached nav row, along with the component that it came from.
+      */
+    static final class Row
+    {
+        Row(BComponent target, HDict tags, boolean hasKids, boolean hasCurTags)
+        {
+            this.target = target;
+            this.tags = tags;
+            this.hasKids = hasKids;
+            this.hasCurTags = hasCurTags;
+            this.name = target.getName();
+            this.haystack = target.get("haystack");
+            this.signature = signature(target);
+        }
+
+        private boolean isCurrent()
+        {
+            if (target instanceof BHistoryConfig) return true;
+
+            return target.isMounted() &&
+                target.getName().equals(name) &&
+                target.get("haystack") == haystack &&
+                signature(target) == signature;
+        }
+
+        /**
+          * Return a signature of the slots that the tags of the component
+          * are made from, besides its haystack slot.  Niagara tags and
+          * relations are dynamic slots, and like the facets their values
+          * are replaced when they are edited, so the identity of each
+          * value is enough, except for the endpoint of a relation.
+          */
+        private static int signature(BComponent comp)
+        {
+            int h = System.identityHashCode(comp.get("facets"));
+            for (Property prop : comp.getDynamicPropertiesArray())
+            {
+                BValue value = comp.get(prop);
+                h = 31 * h + prop.getName().hashCode();
+                h = 31 * h + System.identityHashCode(value);
+                if (value instanceof BRelation)
+                    h = 31 * h + System.identityHashCode(((BRelation) value).getEndpoint());
+            }
+            return h;
+        }
+
+        final BComponent target;
+        final HDict tags;
+        final boolean hasKids;
+        final boolean hasCurTags;
+        private final String name;
+        private final BValue haystack;
+        private final int signature;
+    }
+
+    private static final class Entry
+    {
+        int generation;
+        long ticks;
+        BComponent root;
+        Row[] rows;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final int MAX_ENTRIES = 1000;
+
+    private final Cache cache;
+
+    private final LinkedHashMap<String, Entry> entries =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                return size() > MAX_ENTRIES;
+            }
+        };
+}
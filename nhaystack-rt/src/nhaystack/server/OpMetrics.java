@@ -0,0 +1,244 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.baja.sys.BAbsTime;
+import javax.baja.sys.Clock;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HDictBuilder;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HGridBuilder;
+import org.projecthaystack.HNum;
+
+/**
+  * OpMetrics keeps request counts, error counts, bytes out, rows
+  * returned and latency histograms for every op and extended function
+  * that the server handles.
+  * <p>
+  * Recording a request only updates striped counters and one bucket of
+  * a fixed size histogram, so it does not contend with other requests.
+  * The totals are copied into BNHaystackStats at most once every few
+  * seconds, rather than on every request.
+  */
+final class OpMetrics
+{
+    /**
+      * Return the meter for the op, creating it if need be.
+      */
+    Meter meter(String name)
+    {
+        Meter meter = meters.get(name);
+        return meter != null ? meter : meters.computeIfAbsent(name, Meter::new);
+    }
+
+    /**
+      * Forget everything that has been recorded so far.
+      */
+    void reset(BNHaystackStats stats)
+    {
+        meters.clear();
+        resetTime = BAbsTime.now();
+        publish(stats);
+    }
+
+    /**
+      * Make a grid with one row per op.
+      */
+    HGrid toGrid()
+    {
+        List<HDict> rows = new ArrayList<>();
+        for (Meter m : sorted().values())
+        {
+            HDictBuilder hdb = new HDictBuilder();
+            hdb.add("op", m.name);
+            hdb.add("requests", m.requests.sum());
+            hdb.add("errors", m.errors.sum());
+            hdb.add("bytesOut", m.bytesOut.sum());
+            hdb.add("rows", m.rows.sum());
+            hdb.add("p50", HNum.make(m.histogram.percentile(0.50) / 1000.0, "ms"));
+            hdb.add("p95", HNum.make(m.histogram.percentile(0.95) / 1000.0, "ms"));
+            hdb.add("p99", HNum.make(m.histogram.percentile(0.99) / 1000.0, "ms"));
+            hdb.add("max", HNum.make(m.maxMicros.get() / 1000.0, "ms"));
+            rows.add(hdb.toDict());
+        }
+        return HGridBuilder.dictsToGrid(rows.toArray(new HDict[rows.size()]));
+    }
+
+    /**
+      * Copy the totals into the stats if they have not been
+      * copied in the last few seconds.
+      */
+    void maybePublish(BNHaystackStats stats)
+    {
+        long now = Clock.ticks();
+        long next = nextPublish.get();
+        if (now < next || !nextPublish.compareAndSet(next, now + PUBLISH_INTERVAL))
+            return;
+
+        publish(stats);
+    }
+
+    private void publish(BNHaystackStats stats)
+    {
+        long requests = 0, errors = 0, bytesOut = 0;
+        StringBuilder sb = new StringBuilder();
+        for (Meter m : sorted().values())
+        {
+            requests += m.requests.sum();
+            errors += m.errors.sum();
+            bytesOut += m.bytesOut.sum();
+
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(m.name)
+                .append(": requests=").append(m.requests.sum())
+                .append(" errors=").append(m.errors.sum())
+                .append(" p50=").append(m.histogram.percentile(0.50) / 1000.0).append("ms")
+                .append(" p95=").append(m.histogram.percentile(0.95) / 1000.0).append("ms")
+                .append(" p99=").append(m.histogram.percentile(0.99) / 1000.0).append("ms")
+                .append(" max=").append(m.maxMicros.get() / 1000.0).append("ms");
+        }
+
+        stats.setNumRequests(requests);
+        stats.setNumRequestErrors(errors);
+        stats.setRequestBytesOut(bytesOut);
+        stats.setOpMetrics(sb.toString());
+        stats.setOpMetricsResetTime(resetTime);
+    }
+
+    private Map<String, Meter> sorted()
+    {
+        return new TreeMap<>(meters);
+    }
+
+////////////////////////////////////////////////////////////////
+// Meter
+////////////////////////////////////////////////////////////////
+
+    static final class Meter
+    {
+        Meter(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+          * Record one request.
+          */
+        void record(long nanos, boolean error, long bytesOut)
+        {
+            long micros = nanos / 1000L;
+            requests.increment();
+            if (error) errors.increment();
+            if (bytesOut > 0) this.bytesOut.add(bytesOut);
+            histogram.record(micros);
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+
+        void addRows(int n) { rows.add(n); }
+        void addError() { errors.increment(); }
+
+        final String name;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final AtomicLong maxMicros = new AtomicLong();
+        private final Histogram histogram = new Histogram();
+    }
+
+////////////////////////////////////////////////////////////////
+// Histogram
+////////////////////////////////////////////////////////////////
+
+    /**
+      * A log-linear histogram of microsecond latencies, in the manner of
+      * HdrHistogram.  Values below 64 are counted exactly, and larger
+      * values are counted in 32 linear sub-buckets per power of two, so
+      * every percentile is within about 3% of the true value.
+      */
+    static final class Histogram
+    {
+        void record(long micros)
+        {
+            counts.incrementAndGet(index(micros));
+        }
+
+        /**
+          * Return the value at the given quantile, or zero if
+          * nothing has been recorded.
+          */
+        long percentile(double quantile)
+        {
+            long total = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++)
+                total += counts.get(i);
+            if (total == 0) return 0;
+
+            long target = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++)
+            {
+                seen += counts.get(i);
+                if (seen >= target) return value(i);
+            }
+            return value(NUM_BUCKETS - 1);
+        }
+
+        static int index(long v)
+        {
+            if (v < LINEAR) return (int) Math.max(v, 0);
+
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            if (exp > MAX_EXP) return NUM_BUCKETS - 1;
+
+            int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return LINEAR + (exp - LINEAR_BITS) * SUB_BUCKETS + sub;
+        }
+
+        /**
+          * Return the midpoint of the values that are counted
+          * in the bucket.
+          */
+        static long value(int index)
+        {
+            if (index < LINEAR) return index;
+
+            int exp = (index - LINEAR) / SUB_BUCKETS + LINEAR_BITS;
+            int sub = (index - LINEAR) % SUB_BUCKETS;
+            long width = 1L << (exp - SUB_BITS);
+            return (SUB_BUCKETS + sub) * width + width / 2;
+        }
+
+        private static final int LINEAR_BITS = 6;
+        private static final int LINEAR = 1 << LINEAR_BITS;
+        private static final int SUB_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int MAX_EXP = 40;
+        private static final int NUM_BUCKETS = LINEAR + (MAX_EXP - LINEAR_BITS + 1) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final long PUBLISH_INTERVAL = 5000L;
+
+    private final ConcurrentHashMap<String, Meter> meters = new ConcurrentHashMap<>();
+    private final AtomicLong nextPublish = new AtomicLong();
+    private volatile BAbsTime resetTime = BAbsTime.now();
+}
@@ -172,7 +172,7 @@ public class PointIO
             BControlPoint remote;
 
             // check to see if point is remote
-            RemotePoint rp = RemotePoint.fromControlPoint(point);
+            RemotePoint rp = cache.getRemotePoint(point);
             if (rp == null)
             {
                 LOG.finest(point.getSlotPath() + " is not remote, assuming point is local to this station");
@@ -442,7 +442,7 @@ public class PointIO
         }
 
         // look up remote point
-        RemotePoint rp = RemotePoint.fromControlPoint(point);
+        RemotePoint rp = cache.getRemotePoint(point);
         if (rp == null)
         {
             LOG.severe("cannot write to " + point.getSlotPath() + ", it is neither writable nor remote.");
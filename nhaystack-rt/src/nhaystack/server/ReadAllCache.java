@@ -0,0 +1,219 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.baja.sys.Clock;
+import javax.baja.sys.Context;
+import org.projecthaystack.HRef;
+
+/**
+  * ReadAllCache keeps the ids of the records that matched recent
+  * readAll filters, so that a filter which is issued over and over
+  * does not scan the whole station every time.
+  * <p>
+  * An entry is keyed on the filter, the limit and the user, and holds
+  * only ids.  The records are re-read, and re-matched against the
+  * filter, every time the entry is used, so their tags are always
+  * current and a record which no longer matches is dropped.  Reading
+  * the records by id also checks the user's permissions again.
+  * <p>
+  * An entry is discarded when the Cache has been rebuilt, when the
+  * tags have been edited through nhaystack since it was made, or when
+  * it is older than the service's readAllCacheLifetime, which bounds
+  * how long a record that starts matching after an edit made elsewhere
+  * can be missed.  Filters on tags which change with the value of a
+  * point are never cached.
+  */
+final class ReadAllCache
+{
+    ReadAllCache(BNHaystackService service, Cache cache)
+    {
+        this.service = service;
+        this.cache = cache;
+    }
+
+    /**
+      * Return whether the filter can be cached.
+      */
+    boolean isCacheable(String filter)
+    {
+        if (service.getReadAllCacheSize() <= 0)
+            return false;
+
+        Matcher m = NAME.matcher(filter);
+        while (m.find())
+        {
+            if (VOLATILE_TAGS.contains(m.group()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+      * Return the ids that matched the filter, or null if there
+      * are none or they are out of date.
+      */
+    HRef[] get(String filter, int limit, Context cx)
+    {
+        Key key = new Key(filter, limit, cx);
+        synchronized (this)
+        {
+            Entry entry = entries.get(key);
+            if (entry != null &&
+                entry.generation == cache.generation() &&
+                entry.editGeneration == editGeneration &&
+                Clock.ticks() - entry.ticks <= service.getReadAllCacheLifetime().getMillis())
+            {
+                hits++;
+                return entry.ids;
+            }
+
+            if (entry != null) entries.remove(key);
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+      * Return the number of times that the entries have been
+      * invalidated, which a scan has to capture, along with the
+      * Cache's generation, before it starts.
+      */
+    synchronized int editGeneration()
+    {
+        return editGeneration;
+    }
+
+    /**
+      * Save the ids that matched the filter, unless the Cache has been
+      * rebuilt or the tags have been edited since the scan that found
+      * them started, in which case they may already be out of date.
+      */
+    synchronized void put(String filter, int limit, Context cx, HRef[] ids, int generation, int editGeneration)
+    {
+        if (generation != cache.generation() || editGeneration != this.editGeneration)
+            return;
+
+        Entry entry = new Entry();
+        entry.ids = ids;
+        entry.generation = generation;
+        entry.editGeneration = editGeneration;
+        entry.ticks = Clock.ticks();
+        entries.put(new Key(filter, limit, cx), entry);
+    }
+
+    /**
+      * Discard every entry, because tags have been edited.
+      */
+    synchronized void invalidate()
+    {
+        editGeneration++;
+        entries.clear();
+    }
+
+    /**
+      * Copy the counters into the stats.
+      */
+    void publish(BNHaystackStats stats)
+    {
+        long h, m, e;
+        synchronized (this)
+        {
+            h = hits;
+            m = misses;
+            e = evictions;
+        }
+        stats.setReadAllCacheHits(h);
+        stats.setReadAllCacheMisses(m);
+        stats.setReadAllCacheEvictions(e);
+    }
+
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+////////////////////////////////////////////////////////////////
+// Key
+////////////////////////////////////////////////////////////////
+
+    private static final class Key
+    {
+        Key(String filter, int limit, Context cx)
+        {
+            this.filter = filter;
+            this.limit = limit;
+            this.user = cx == null || cx.getUser() == null ? null : cx.getUser().getUsername();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key)) return false;
+            Key that = (Key) obj;
+            return filter.equals(that.filter) &&
+                limit == that.limit &&
+                Objects.equals(user, that.user);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (filter.hashCode() * 31 + limit) * 31 + Objects.hashCode(user);
+        }
+
+        private final String filter;
+        private final int limit;
+        private final String user;
+    }
+
+    private static final class Entry
+    {
+        HRef[] ids;
+        int generation;
+        int editGeneration;
+        long ticks;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private static final Set<String> VOLATILE_TAGS = new HashSet<>(Arrays.asList(
+        "curVal", "curStatus", "curErr", "axStatus", "writeVal", "writeLevel", "writeStatus"));
+
+    private final BNHaystackService service;
+    private final Cache cache;
+
+    private final LinkedHashMap<Key, Entry> entries =
+        new LinkedHashMap<Key, Entry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+            {
+                if (size() <= service.getReadAllCacheSize()) return false;
+                evictions++;
+                return true;
+            }
+        };
+
+    private int editGeneration;
+    private long hits;
+    private long misses;
+    private long evictions;
+}
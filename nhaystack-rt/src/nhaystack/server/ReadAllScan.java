@@ -0,0 +1,261 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BajaRuntimeException;
+import javax.baja.sys.Context;
+import nhaystack.collection.ComponentTreeIterator;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HFilter;
+
+/**
+  * ReadAllScan matches records against a filter for readAll, until
+  * it runs out of records or has found as many as the limit.  It
+  * also counts the records that were scanned, and times the tag
+  * generation and the filter matching separately.
+  * <p>
+  * The component space can be scanned in parallel: the tree is split
+  * into subtrees the same way as when the cache is rebuilt, each
+  * subtree is scanned on a pool thread which carries the caller's
+  * ThreadContext, and the matches are merged in the same order that a
+  * serial scan would have found them.  Once the subtrees that come
+  * first have found enough matches, the rest are cancelled.
+  */
+final class ReadAllScan
+{
+    ReadAllScan(TagManager tagMgr, HFilter filter, HFilter.Pather pather, int limit)
+    {
+        this.tagMgr = tagMgr;
+        this.filter = filter;
+        this.pather = pather;
+        this.limit = limit;
+    }
+
+////////////////////////////////////////////////////////////////
+// serial
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Match the records of the iterator, whose tags are generated
+      * as it is iterated.
+      */
+    void scan(Iterator<?> it)
+    {
+        while (!isFull())
+        {
+            long t0 = System.nanoTime();
+            if (!it.hasNext())
+            {
+                tagNanos += System.nanoTime() - t0;
+                return;
+            }
+            HDict dict = (HDict) it.next();
+            long t1 = System.nanoTime();
+            tagNanos += t1 - t0;
+            scanned++;
+
+            if (filter.include(dict, pather))
+                found.add(dict);
+            filterNanos += System.nanoTime() - t1;
+        }
+    }
+
+    /**
+      * Match the visible components of the iterator.
+      */
+    private void scanComponents(Iterator<BComponent> it, Context cx)
+    {
+        while (!isFull() && it.hasNext())
+        {
+            BComponent comp = it.next();
+
+            long t0 = System.nanoTime();
+            if (!SpaceManager.isVisibleComponent(comp, cx))
+                continue;
+            HDict dict = tagMgr.createComponentTags(comp);
+            long t1 = System.nanoTime();
+            tagNanos += t1 - t0;
+            scanned++;
+
+            if (filter.include(dict, pather))
+                found.add(dict);
+            filterNanos += System.nanoTime() - t1;
+        }
+    }
+
+////////////////////////////////////////////////////////////////
+// parallel
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Match the components in the tree underneath the root,
+      * using the threads of the pool.
+      */
+    void scanParallel(BComponent root, ForkJoinPool pool, Context cx)
+    {
+        List<Callable<ReadAllScan>> tasks = new ArrayList<>();
+        partition(root, PARTITION_DEPTH, cx, tasks);
+
+        List<Future<ReadAllScan>> futures = new ArrayList<>(tasks.size());
+        for (Callable<ReadAllScan> task : tasks)
+            futures.add(pool.submit(task));
+
+        boolean done = false;
+        try
+        {
+            for (int i = 0; i < futures.size(); i++)
+            {
+                merge(futures.get(i).get());
+                if (isFull())
+                {
+                    // the tasks after this one are not needed
+                    cutoff = i;
+                    break;
+                }
+            }
+            done = true;
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new BajaRuntimeException("readAll failed", cause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new BajaRuntimeException("readAll interrupted", e);
+        }
+        finally
+        {
+            // stop the tasks that are still running if the scan failed
+            if (!done) cutoff = -1;
+            for (int i = cutoff + 1; i < futures.size(); i++)
+                futures.get(i).cancel(false);
+        }
+    }
+
+    /**
+      * Split the tree into tasks, in depth-first order.  The components
+      * above the given depth are each scanned on their own, and the
+      * components at the given depth are scanned along with all of
+      * their descendants.
+      */
+    private void partition(BComponent comp, int depth, Context cx, List<Callable<ReadAllScan>> tasks)
+    {
+        int index = tasks.size();
+        if (depth == 0)
+        {
+            tasks.add(() -> runTask(new ComponentTreeIterator(comp), cx, index));
+            return;
+        }
+
+        tasks.add(() -> runTask(Collections.singletonList(comp).iterator(), cx, index));
+        for (BComponent kid : comp.getChildComponents())
+            partition(kid, depth - 1, cx, tasks);
+    }
+
+    private ReadAllScan runTask(Iterator<BComponent> it, Context cx, int index)
+    {
+        ReadAllScan part = new ReadAllScan(tagMgr, filter, pather, limit);
+
+        Thread thread = Thread.currentThread();
+        if (cx != null) ThreadContext.putContext(thread, cx);
+        try
+        {
+            // a task that starts after enough matches were found does nothing
+            if (index <= cutoff)
+                part.scanComponents(new CutoffIterator(it, index), cx);
+            return part;
+        }
+        finally
+        {
+            if (cx != null) ThreadContext.removeContext(thread);
+        }
+    }
+
+    private void merge(ReadAllScan part)
+    {
+        for (HDict dict : part.found)
+        {
+            if (isFull()) break;
+            found.add(dict);
+        }
+        scanned += part.scanned;
+        tagNanos += part.tagNanos;
+        filterNanos += part.filterNanos;
+    }
+
+    /**
+      * Stops iterating once the scan of a task that comes earlier
+      * in the order has found enough matches.
+      */
+    private final class CutoffIterator implements Iterator<BComponent>
+    {
+        CutoffIterator(Iterator<BComponent> it, int index)
+        {
+            this.it = it;
+            this.index = index;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return index <= cutoff && it.hasNext();
+        }
+
+        @Override
+        public BComponent next()
+        {
+            return it.next();
+        }
+
+        private final Iterator<BComponent> it;
+        private final int index;
+    }
+
+////////////////////////////////////////////////////////////////
+// access
+////////////////////////////////////////////////////////////////
+
+    boolean isFull() { return found.size() >= limit; }
+
+    List<HDict> getFound() { return found; }
+    int getScanned() { return scanned; }
+    long getTagNanos() { return tagNanos; }
+    long getFilterNanos() { return filterNanos; }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final int PARTITION_DEPTH = 3;
+
+    private final TagManager tagMgr;
+    private final HFilter filter;
+    private final HFilter.Pather pather;
+    private final int limit;
+
+    private final List<HDict> found = new ArrayList<>();
+    private int scanned;
+    private long tagNanos;
+    private long filterNanos;
+
+    // the index of the last task whose matches are needed
+    private volatile int cutoff = Integer.MAX_VALUE;
+}
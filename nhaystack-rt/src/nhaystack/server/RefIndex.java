@@ -0,0 +1,380 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BRelation;
+import javax.baja.sys.Context;
+import javax.baja.tag.Entity;
+import nhaystack.BHDict;
+import nhaystack.util.NHaystackConst;
+import nhaystack.util.TypeUtil;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HDictBuilder;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HGridBuilder;
+import org.projecthaystack.HRef;
+import org.projecthaystack.HVal;
+import com.tridium.sys.tag.ComponentRelations;
+
+/**
+  * RefIndex is a reverse index of the references between components:
+  * the ref tags in their haystack slots, and their outbound hs: relations.
+  * It is built along with the Cache, and maps each component that is
+  * referred to onto the references to it.
+  * <p>
+  * Each distinct target is resolved once when the index is built, and
+  * its slot path is remembered.  A reference is dangling if its target
+  * could not be resolved, or if the target has since been removed from
+  * the station or moved to another slot path, which makes finding the
+  * dangling references a pass over the index rather than a walk of the
+  * station with an ord lookup for every ref.
+  */
+final class RefIndex implements NHaystackConst
+{
+    RefIndex(TagManager tagMgr)
+    {
+        this.tagMgr = tagMgr;
+    }
+
+////////////////////////////////////////////////////////////////
+// build
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Collect the references that the component makes.  This only
+      * looks at the component, so it can be called while the Cache is
+      * being rebuilt.
+      */
+    static void collect(BComponent comp, HDict tags, List<Ref> refs)
+    {
+        Iterator<Map.Entry<String, HVal>> it = tags.iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<String, HVal> e = it.next();
+            if (e.getValue() instanceof HRef && !e.getKey().equals("id"))
+                refs.add(new Ref(comp, e.getKey(), (HRef) e.getValue(), null));
+        }
+
+        for (BRelation relation : comp.getComponentRelations())
+        {
+            if (relation.isOutbound() && relation.getId().getDictionary().equals(NAME_SPACE))
+                refs.add(new Ref(comp, relation.getId().toString(), null, relation));
+        }
+    }
+
+    /**
+      * Replace the index with the given references, resolving
+      * each of their targets once.
+      */
+    void rebuild(List<Ref> refs)
+    {
+        Map<String, Target> byId = new HashMap<>();
+        Map<BComponent, Target> byComp = new IdentityHashMap<>();
+
+        for (Ref ref : refs)
+        {
+            if (ref.id != null)
+            {
+                Target target = byId.get(ref.id.val);
+                if (target == null)
+                {
+                    target = new Target(resolve(ref.id));
+                    byId.put(ref.id.val, target);
+                }
+                ref.target = target;
+            }
+            else
+            {
+                Entity endpoint = endpoint(ref.relation);
+
+                // relations to things other than components are not checked
+                if (endpoint != null && !(endpoint instanceof BComponent))
+                    ref.target = Target.FOREIGN;
+                else
+                    ref.target = byComp.computeIfAbsent((BComponent) endpoint, Target::new);
+            }
+        }
+
+        Map<BComponent, List<Ref>> referrers = new IdentityHashMap<>();
+        for (Ref ref : refs)
+        {
+            if (ref.target.comp != null)
+                referrers.computeIfAbsent(ref.target.comp, k -> new ArrayList<>()).add(ref);
+        }
+
+        synchronized (this)
+        {
+            this.refs = new ArrayList<>(refs);
+            this.referrers = referrers;
+            this.built = true;
+        }
+
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine("Indexed " + refs.size() + " refs to " + (byId.size() + byComp.size()) + " targets.");
+    }
+
+    private BComponent resolve(HRef id)
+    {
+        try
+        {
+            return tagMgr.doLookupComponent(id, false);
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    private static Entity endpoint(BRelation relation)
+    {
+        try
+        {
+            return relation.getEndpoint();
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    /**
+      * Return whether the reference resolves now, which it may do even
+      * though it was dangling when the index was built, if its target
+      * has been added or put back since then.
+      */
+    private boolean resolvesNow(Ref ref)
+    {
+        if (ref.relation != null)
+        {
+            Entity endpoint = endpoint(ref.relation);
+            if (endpoint == null) return false;
+            return !(endpoint instanceof BComponent) || ((BComponent) endpoint).isMounted();
+        }
+
+        BComponent comp = resolve(ref.id);
+        return comp != null && (comp.isMounted() || !ref.target.mounted);
+    }
+
+////////////////////////////////////////////////////////////////
+// access
+////////////////////////////////////////////////////////////////
+
+    synchronized boolean isBuilt() { return built; }
+
+    /**
+      * Return the references to the component.
+      */
+    synchronized List<Ref> referrers(BComponent target)
+    {
+        List<Ref> list = referrers.get(target);
+        return list == null ? Collections.emptyList() : new ArrayList<>(list);
+    }
+
+    /**
+      * Return the dangling references that are made by
+      * components which are visible in the context.
+      */
+    List<Ref> findDangling(Context cx)
+    {
+        List<Ref> all;
+        synchronized (this) { all = refs; }
+
+        List<Ref> dangling = new ArrayList<>();
+        for (Ref ref : all)
+        {
+            if (ref.repaired || !ref.source.isMounted()) continue;
+            if (ref.target.problem() == null) continue;
+            if (cx != null && !SpaceManager.isVisibleComponent(ref.source, cx)) continue;
+            dangling.add(ref);
+        }
+        return dangling;
+    }
+
+////////////////////////////////////////////////////////////////
+// repair
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Repair the dangling references that the context may write to.
+      * A ref tag whose target has moved is pointed at where the target
+      * is now, and any other dangling reference is removed.  Each one
+      * is resolved again first, and left alone if it resolves now.
+      * Return the references that were repaired.
+      */
+    List<Ref> repair(List<Ref> dangling, Context cx)
+    {
+        // group the ref tags by component, so each haystack slot is set once
+        Map<BComponent, List<Ref>> bySource = new LinkedHashMap<>();
+        List<Ref> repaired = new ArrayList<>();
+        for (Ref ref : dangling)
+        {
+            if (!TypeUtil.canWrite(ref.source, cx)) continue;
+            if (resolvesNow(ref)) continue;
+
+            if (ref.relation != null)
+            {
+                new ComponentRelations(ref.source).remove(ref.relation);
+                ref.repaired = true;
+                repaired.add(ref);
+            }
+            else
+            {
+                bySource.computeIfAbsent(ref.source, k -> new ArrayList<>()).add(ref);
+            }
+        }
+
+        for (Map.Entry<BComponent, List<Ref>> e : bySource.entrySet())
+        {
+            BComponent source = e.getKey();
+            HDict tags = BHDict.findTagAnnotation(source);
+            if (tags == null) continue;
+
+            Map<String, Ref> byName = new HashMap<>();
+            for (Ref ref : e.getValue())
+                byName.put(ref.name, ref);
+
+            HDictBuilder hdb = new HDictBuilder();
+            Iterator<Map.Entry<String, HVal>> it = tags.iterator();
+            while (it.hasNext())
+            {
+                Map.Entry<String, HVal> tag = it.next();
+                Ref ref = byName.get(tag.getKey());
+
+                // the tag has been changed since the index was built
+                if (ref == null || !ref.id.equals(tag.getValue()))
+                {
+                    hdb.add(tag.getKey(), tag.getValue());
+                    continue;
+                }
+
+                if (MOVED.equals(ref.target.problem()))
+                    hdb.add(tag.getKey(), tagMgr.makeComponentRef(ref.target.comp).getHRef());
+                ref.repaired = true;
+                repaired.add(ref);
+            }
+            source.set(BHDict.HAYSTACK_IDENTIFIER, BHDict.make(hdb.toDict()));
+        }
+
+        return repaired;
+    }
+
+    /**
+      * Return a grid with a row for each of the references.
+      */
+    HGrid toGrid(Collection<Ref> list)
+    {
+        HDict[] rows = new HDict[list.size()];
+        int i = 0;
+        for (Ref ref : list)
+        {
+            HDictBuilder hdb = new HDictBuilder();
+            hdb.add("id", tagMgr.makeComponentRef(ref.source).getHRef());
+            hdb.add("axSlotPath", ref.source.getSlotPath().toString());
+            hdb.add("tag", ref.name);
+            if (ref.id != null) hdb.add("ref", ref.id);
+            if (ref.target.slotPath != null) hdb.add("target", ref.target.slotPath);
+            String problem = ref.target.problem();
+            if (problem != null) hdb.add("problem", problem);
+            rows[i++] = hdb.toDict();
+        }
+        return HGridBuilder.dictsToGrid(rows);
+    }
+
+////////////////////////////////////////////////////////////////
+// Ref
+////////////////////////////////////////////////////////////////
+
+    /**
+      * A reference from a component, either by a ref tag in its
+      * haystack slot or by an outbound relation.
+      */
+    static final class Ref
+    {
+        private Ref(BComponent source, String name, HRef id, BRelation relation)
+        {
+            this.source = source;
+            this.name = name;
+            this.id = id;
+            this.relation = relation;
+        }
+
+        final BComponent source;
+        final String name;
+        final HRef id;
+        final BRelation relation;
+
+        private Target target;
+        private volatile boolean repaired;
+    }
+
+    /**
+      * The component that one or more references refer to, as it
+      * was when the index was built.
+      */
+    private static final class Target
+    {
+        Target(BComponent comp)
+        {
+            this.comp = comp;
+            this.mounted = comp != null && comp.isMounted();
+            this.slotPath = mounted ? comp.getSlotPath().toString() : null;
+        }
+
+        /**
+          * Return why references to the target are dangling,
+          * or null if they are not.
+          */
+        String problem()
+        {
+            if (this == FOREIGN) return null;
+            if (comp == null) return UNRESOLVED;
+
+            // histories are not in the component space
+            if (!mounted) return null;
+
+            if (!comp.isMounted()) return REMOVED;
+            if (!comp.getSlotPath().toString().equals(slotPath)) return MOVED;
+            return null;
+        }
+
+        final BComponent comp;
+        final boolean mounted;
+        final String slotPath;
+
+        // the target of a relation to something other than a component
+        static final Target FOREIGN = new Target(null);
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    static final String UNRESOLVED = "unresolved";
+    static final String REMOVED = "removed";
+    static final String MOVED = "moved";
+
+    private static final Logger LOG = Logger.getLogger("nhaystack");
+
+    private final TagManager tagMgr;
+
+    private List<Ref> refs = Collections.emptyList();
+    private Map<BComponent, List<Ref>> referrers = Collections.emptyMap();
+    private boolean built;
+}
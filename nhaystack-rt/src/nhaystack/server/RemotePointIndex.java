@@ -0,0 +1,158 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.baja.control.BControlPoint;
+import javax.baja.control.ext.BAbstractProxyExt;
+import javax.baja.history.BHistoryConfig;
+import javax.baja.history.BHistoryId;
+import javax.baja.naming.BOrdList;
+import javax.baja.naming.SlotPath;
+import javax.baja.sys.BValue;
+
+/**
+  * RemotePointIndex maps each (station name, remote slot path) pair
+  * to the imported proxy point for it, and remembers the RemotePoint
+  * of every imported point and history, so that they are not parsed
+  * again every time tags are made for them.
+  * <p>
+  * The index is filled in when the Cache is rebuilt.  After that it is
+  * kept up to date as it is used: a proxy point that has been removed,
+  * renamed or re-pointed at another remote slot is dropped the next
+  * time it is looked up, and a proxy point that has been added is
+  * indexed the first time its RemotePoint is asked for.
+  */
+final class RemotePointIndex
+{
+    RemotePointIndex(Map<RemotePoint, BControlPoint> remoteToPoint)
+    {
+        this.remoteToPoint = remoteToPoint;
+    }
+
+    /**
+      * Return the RemotePoint for the point, or null if it is not
+      * an imported point.
+      */
+    RemotePoint forPoint(BControlPoint point)
+    {
+        if (!RemotePoint.isRemotePoint(point)) return null;
+
+        PointEntry entry = points.get(point);
+        if (entry == null || !entry.isCurrent(point))
+        {
+            entry = new PointEntry(point);
+            points.put(point, entry);
+            if (entry.remote != null) index(entry.remote, point);
+        }
+        return entry.remote;
+    }
+
+    /**
+      * Return the RemotePoint for the imported history,
+      * or null if it does not have one.
+      */
+    RemotePoint forHistory(BHistoryConfig cfg)
+    {
+        HistoryEntry entry = histories.get(cfg.getId());
+        if (entry == null || entry.source != cfg.getSource())
+        {
+            entry = new HistoryEntry(cfg);
+            histories.put(cfg.getId(), entry);
+        }
+        return entry.remote;
+    }
+
+    /**
+      * Return the imported point for the RemotePoint, or null.
+      */
+    BControlPoint getPoint(RemotePoint remote)
+    {
+        BControlPoint point = remoteToPoint.get(remote);
+        if (point == null) return null;
+
+        if (!point.isMounted() || !remote.equals(forPoint(point)))
+        {
+            remoteToPoint.remove(remote, point);
+            return null;
+        }
+        return point;
+    }
+
+    /**
+      * Add the point to the index, unless a different point which
+      * is still mounted is already indexed for the RemotePoint.
+      */
+    private void index(RemotePoint remote, BControlPoint point)
+    {
+        BControlPoint old = remoteToPoint.putIfAbsent(remote, point);
+        if (old != null && old != point && !old.isMounted())
+            remoteToPoint.replace(remote, old, point);
+    }
+
+    int size()
+    {
+        return remoteToPoint.size();
+    }
+
+////////////////////////////////////////////////////////////////
+// entries
+////////////////////////////////////////////////////////////////
+
+    /**
+      * The RemotePoint of an imported point, along with the
+      * parts of the point that it was made from.
+      */
+    private static final class PointEntry
+    {
+        PointEntry(BControlPoint point)
+        {
+            this.proxyExt = point.getProxyExt();
+            this.pointId = proxyExt.get("pointId");
+            this.slotPath = point.getSlotPath();
+            this.remote = RemotePoint.fromControlPoint(point);
+        }
+
+        boolean isCurrent(BControlPoint point)
+        {
+            return point.getProxyExt() == proxyExt &&
+                proxyExt.get("pointId") == pointId &&
+                point.getSlotPath().equals(slotPath);
+        }
+
+        final BAbstractProxyExt proxyExt;
+        final BValue pointId;
+        final SlotPath slotPath;
+        final RemotePoint remote;
+    }
+
+    /**
+      * The RemotePoint of an imported history, along with the
+      * source ords that it was made from.
+      */
+    private static final class HistoryEntry
+    {
+        HistoryEntry(BHistoryConfig cfg)
+        {
+            this.source = cfg.getSource();
+            this.remote = RemotePoint.fromHistoryConfig(cfg);
+        }
+
+        final BOrdList source;
+        final RemotePoint remote;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private final Map<RemotePoint, BControlPoint> remoteToPoint;
+    private final ConcurrentHashMap<BControlPoint, PointEntry> points = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<BHistoryId, HistoryEntry> histories = new ConcurrentHashMap<>();
+}
@@ -14,9 +14,14 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.baja.control.BControlPoint;
@@ -44,9 +49,7 @@ import javax.baja.sys.BTime;
 import javax.baja.sys.BValue;
 import javax.baja.sys.BajaRuntimeException;
 import javax.baja.sys.Clock;
-import javax.baja.sys.Clock.Ticket;
 import nhaystack.BHDict;
-import nhaystack.BHRef;
 import nhaystack.util.SlotUtil;
 import nhaystack.util.TypeUtil;
 import org.projecthaystack.HDateTime;
@@ -75,27 +78,48 @@ class ScheduleManager
     {
         this.server = server;
         this.service = service;
+        this.wheel = new ScheduleWheel(service);
     }
 
     /**
-      * this gets called during 'rebuildCache()'
+      * this gets called during 'rebuildCache()'.  Only the points whose
+      * 'weeklySchedule' tag has changed, or which have no pending write,
+      * are given a new ticket, and the pending writes of the points which
+      * are no longer scheduled are cancelled.
       */
     void makePointEvents(BComponent[] points)
     {
+        Set<HRef> ids = new HashSet<>();
+        int count = 0;
         for (BComponent point : points)
         {
             HRef id = server.getTagManager().makeComponentRef(point).getHRef();
+            ids.add(id);
 
-            // cancel any existing ticket
-            Ticket ticket = ticketById.remove(id);
-            if (ticket != null)
-            {
-                ticket.cancel();
-            }
+            WeeklyEvents prev = eventsById.get(id);
+            WeeklyEvents events = compiledEvents(id, point);
+            if (events == prev && wheel.isPending(id))
+                continue;
 
             // make a new ticket
-            makeTicketFromItems(id, hisItems(point));
+            scheduleNext(id, events);
+            count++;
+        }
+
+        // forget the points that are no longer scheduled
+        Iterator<HRef> itr = eventsById.keySet().iterator();
+        while (itr.hasNext())
+        {
+            HRef id = itr.next();
+            if (!ids.contains(id))
+            {
+                wheel.cancel(id);
+                itr.remove();
+            }
         }
+
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine("Made tickets for " + count + " of " + points.length + " scheduled points.");
     }
 
     /**
@@ -104,7 +128,74 @@ class ScheduleManager
     void applySchedule(BHScheduleEvent event)
     {
         HRef id = event.getId().getRef();
+        wheel.cancel(id);
+        applyWrite(id, (BSimple) event.getValue());
+    }
+
+    /**
+      * Apply all of the scheduled writes that are due at the given time,
+      * now that the ticket of their slot has expired.  Up to
+      * scheduleWriteThreads writes are applied at once, and the lag
+      * between when the writes were due and when they were started is
+      * recorded in the stats.
+      */
+    void applyBucket(long slotMillis)
+    {
+        Map<HRef, BSimple> writes = wheel.take(slotMillis);
+        if (writes.isEmpty()) return;
+
+        long start = Clock.millis();
+        long lag = Math.max(0L, start - slotMillis);
+
+        List<Callable<Boolean>> tasks = new ArrayList<>(writes.size());
+        for (Map.Entry<HRef, BSimple> entry : writes.entrySet())
+        {
+            HRef id = entry.getKey();
+            BSimple value = entry.getValue();
+            tasks.add(() -> tryApplyWrite(id, value));
+        }
+
+        int failed = 0;
+        for (boolean ok : invokeAll(getWritePool(), tasks))
+        {
+            if (!ok) failed++;
+        }
+        long duration = Clock.millis() - start;
+
+        BNHaystackStats stats = service.getStats();
+        stats.setNumScheduleBuckets(stats.getNumScheduleBuckets() + 1);
+        stats.setLastScheduleBucketSize(writes.size());
+        stats.setLastScheduleDispatchLag(BRelTime.make(lag));
+        stats.setLastScheduleDispatchDuration(BRelTime.make(duration));
+        if (lag > stats.getMaxScheduleDispatchLag().getMillis())
+            stats.setMaxScheduleDispatchLag(BRelTime.make(lag));
+
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine("Applied " + (writes.size() - failed) + " of " + writes.size() +
+                " scheduled writes due at " + BAbsTime.make(slotMillis) +
+                ", lag " + lag + "ms, took " + duration + "ms.");
+    }
+
+    private boolean tryApplyWrite(HRef id, BSimple value)
+    {
+        try
+        {
+            applyWrite(id, value);
+            return true;
+        }
+        catch (Exception e)
+        {
+            LOG.log(Level.SEVERE, "Cannot apply scheduled write to " + id, e);
+            return false;
+        }
+    }
 
+    /**
+      * Write the value to the point at its schedulable level,
+      * and make a ticket for its next scheduled write.
+      */
+    private void applyWrite(HRef id, BSimple value)
+    {
         BComponent point = server.getTagManager().lookupComponent(id);
         HDict tags = BHDict.findTagAnnotation(point);
 
@@ -113,14 +204,11 @@ class ScheduleManager
         hdb.add("id", id);
         HDict rec = hdb.toDict();
         int level = tags.getInt("schedulable");
-        HVal val = TypeUtil.fromBajaSimple((BSimple) event.getValue(), service.getTranslateEnums());
+        HVal val = TypeUtil.fromBajaSimple(value, service.getTranslateEnums());
         server.onPointWrite(rec, level, val, "", null, null);
 
-        // remove existing ticket
-        ticketById.remove(id);
-
         // try to make another ticket
-        makeTicketFromItems(id, hisItems(point));
+        scheduleNext(id, compiledEvents(id, point));
     }
 
     /**
@@ -184,7 +272,8 @@ class ScheduleManager
         }
 
         HGrid schedule = HGridBuilder.hisItemsToGrid(HDict.EMPTY, items);
-        hdb.add("weeklySchedule", HZincWriter.gridToString(schedule));
+        String zinc = HZincWriter.gridToString(schedule);
+        hdb.add("weeklySchedule", zinc);
         if (items.length > 0)
             hdb.add("tz", items[0].ts.tz.toString());
 
@@ -194,7 +283,9 @@ class ScheduleManager
             point.set("haystack", BHDict.make(hdb.toDict()));
 
         HRef id = server.getTagManager().makeComponentRef(point).getHRef();
-        makeTicketFromItems(id, items);
+        WeeklyEvents events = WeeklyEvents.compile(zinc, items);
+        eventsById.put(id, events);
+        scheduleNext(id, events);
     } 
 
     private static void writeWeeklySchedule(BWeeklySchedule sched, HHisItem[] items)
@@ -279,6 +370,61 @@ class ScheduleManager
         }
     }
 
+    /**
+      * Return the pool which applies the writes of a slot, or null
+      * if they are applied on the calling thread.
+      */
+    private synchronized ForkJoinPool getWritePool()
+    {
+        int threads = service.getScheduleWriteThreads();
+        if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+
+        if (threads == 1)
+            writePool = null;
+        else if (writePool == null || writePool.getParallelism() != threads)
+            writePool = new ForkJoinPool(threads);
+        return writePool;
+    }
+
+    private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks)
+    {
+        List<T> results = new ArrayList<>(tasks.size());
+        try
+        {
+            if (pool == null)
+            {
+                for (Callable<T> task : tasks)
+                    results.add(task.call());
+            }
+            else
+            {
+                for (Future<T> future : pool.invokeAll(tasks))
+                    results.add(future.get());
+            }
+            return results;
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new BajaRuntimeException("Scheduled writes failed", cause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new BajaRuntimeException("Scheduled writes interrupted", e);
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw new BajaRuntimeException("Scheduled writes failed", e);
+        }
+    }
+
     /**
       * Make sure all of the items are scheduled to happen this week.  
       */
@@ -311,75 +457,39 @@ class ScheduleManager
     }
 
     /**
-      * read the HHisItems from the 'weeklySchedule' tag
-      */
-    private static HHisItem[] hisItems(BComponent point)
-    {
-        HDict tags = BHDict.findTagAnnotation(point);
-        HGrid grid = new HZincReader(tags.getStr("weeklySchedule")).readGrid();
-        return HHisItem.gridToItems(grid);
-    }
-
-    /**
-      * create a ticket for the next future HHisItem
+      * Return the point's compiled 'weeklySchedule' tag, compiling
+      * it again only if it has changed.
       */
-    private void makeTicketFromItems(HRef id, HHisItem[] items)
+    private WeeklyEvents compiledEvents(HRef id, BComponent point)
     {
-        if (items.length == 0) return;
+        String zinc = BHDict.findTagAnnotation(point).getStr("weeklySchedule");
 
-        HTimeZone tz = items[0].ts.tz;
-        long curMillis = System.currentTimeMillis();
-
-        // compute sunday of this week
-        HDateTime now = HDateTime.make(curMillis, tz);
-        HDateTime sunday = HDateTime.make(
-            now.date.minusDays(now.date.weekday()-1), 
-            HTime.MIDNIGHT, tz);
-
-        // try this week
-        if (!scheduleWeeklyTicket(id, doNormalizeWeek(items, sunday), curMillis))
+        WeeklyEvents events = eventsById.get(id);
+        if (events == null || !events.getSource().equals(zinc))
         {
-            // maybe next week
-            sunday = HDateTime.make(sunday.date.plusDays(7), HTime.MIDNIGHT, tz);
-            scheduleWeeklyTicket(id, doNormalizeWeek(items, sunday), curMillis);
+            events = WeeklyEvents.compile(zinc);
+            eventsById.put(id, events);
         }
+        return events;
     }
 
     /**
-      * Attempt to schedule something for this week from the given HHisItems.
-      * If there is nothing available, then  
+      * Schedule the point's next event, or cancel its
+      * pending write if it has none.
       */
-    private boolean scheduleWeeklyTicket(HRef id, HHisItem[] items, long curMillis)
+    private void scheduleNext(HRef id, WeeklyEvents events)
     {
-        HDateTime now = HDateTime.now(items[0].ts.tz);
-
-        // try to find an item from the future
-        for (HHisItem item : items)
+        WeeklyEvents.Event next = events.next(Clock.millis());
+        if (next == null)
         {
-            if (item.ts.millis() > now.millis())
-            {
-                BAbsTime absTime = BAbsTime.make(
-                    item.ts.millis(), 
-                    TypeUtil.toBajaTimeZone(item.ts.tz));
-
-                if (LOG.isLoggable(Level.FINE))
-                    LOG.fine("Scheduling a ticket at " + item.ts + " for " + id);
-
-                ticketById.put(
-                    id, 
-                    Clock.schedule(
-                        service, 
-                        absTime,
-                        BNHaystackService.applySchedule,
-                        new BHScheduleEvent(
-                            BHRef.make(id),
-                            TypeUtil.toBajaSimple(item.val))));
-
-                return true;
-            }
+            wheel.cancel(id);
+            return;
         }
 
-        return false;
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine("Scheduling a ticket at " + next.getTimestamp() + " for " + id);
+
+        wheel.schedule(id, next.getTimestamp().millis(), next.getValue());
     }
 
     /**
@@ -448,7 +558,8 @@ class ScheduleManager
     private final NHServer server;
     private final BNHaystackService service;
 
-    // <HRef,Clock.Ticket>
-    private final Map<HRef, Ticket> ticketById = new ConcurrentHashMap<>();
+    private final ScheduleWheel wheel;
+    private final Map<HRef, WeeklyEvents> eventsById = new ConcurrentHashMap<>();
+    private ForkJoinPool writePool;
 }
 
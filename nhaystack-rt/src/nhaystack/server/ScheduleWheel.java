@@ -0,0 +1,145 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.baja.sys.BAbsTime;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BSimple;
+import javax.baja.sys.Clock;
+import javax.baja.sys.Clock.Ticket;
+import org.projecthaystack.HRef;
+
+/**
+  * ScheduleWheel groups the scheduled writes of points into slots by
+  * the time that they are due, so that there is one Clock ticket per
+  * slot rather than one per point.  When the ticket of a slot fires,
+  * the service's applyScheduleBucket action is invoked with the time
+  * of the slot, and all of its writes are taken out of the wheel and
+  * applied together.
+  * <p>
+  * Slots are a second wide, and a write is put in the slot at or
+  * after the time it is due, so that it is never applied early.
+  * Each point has at most one pending write.
+  */
+final class ScheduleWheel
+{
+    ScheduleWheel(BComponent service)
+    {
+        this.service = service;
+    }
+
+    /**
+      * Schedule a write of the value to the point at the given time,
+      * replacing the point's pending write if it has one.
+      */
+    synchronized void schedule(HRef id, long millis, BSimple value)
+    {
+        cancel(id);
+
+        long key = slotOf(millis);
+        Bucket bucket = buckets.get(key);
+        if (bucket == null)
+        {
+            bucket = new Bucket();
+            bucket.ticket = Clock.schedule(
+                service,
+                BAbsTime.make(key),
+                BNHaystackService.applyScheduleBucket,
+                BAbsTime.make(key));
+            buckets.put(key, bucket);
+        }
+
+        bucket.writes.put(id, value);
+        slotById.put(id, key);
+    }
+
+    /**
+      * Cancel the point's pending write, if it has one.
+      */
+    synchronized void cancel(HRef id)
+    {
+        Long key = slotById.remove(id);
+        if (key == null) return;
+
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) return;
+
+        bucket.writes.remove(id);
+        if (bucket.writes.isEmpty())
+        {
+            bucket.ticket.cancel();
+            buckets.remove(key);
+        }
+    }
+
+    /**
+      * Remove the slot at the given time, and return its writes
+      * in the order that they were scheduled.
+      */
+    synchronized Map<HRef, BSimple> take(long key)
+    {
+        Bucket bucket = buckets.remove(key);
+        if (bucket == null) return Collections.emptyMap();
+
+        for (HRef id : bucket.writes.keySet())
+            slotById.remove(id);
+        return bucket.writes;
+    }
+
+    /**
+      * Return whether the point has a pending write.
+      */
+    synchronized boolean isPending(HRef id)
+    {
+        return slotById.containsKey(id);
+    }
+
+    synchronized int numPending()
+    {
+        return slotById.size();
+    }
+
+    synchronized int numSlots()
+    {
+        return buckets.size();
+    }
+
+    /**
+      * Return the time of the slot that a write due
+      * at the given time goes in.
+      */
+    static long slotOf(long millis)
+    {
+        return (millis + SLOT_MILLIS - 1) / SLOT_MILLIS * SLOT_MILLIS;
+    }
+
+////////////////////////////////////////////////////////////////
+// Bucket
+////////////////////////////////////////////////////////////////
+
+    private static final class Bucket
+    {
+        Ticket ticket;
+        final LinkedHashMap<HRef, BSimple> writes = new LinkedHashMap<>();
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    static final long SLOT_MILLIS = 1000L;
+
+    private final BComponent service;
+
+    private final Map<Long, Bucket> buckets = new HashMap<>();
+    private final Map<HRef, Long> slotById = new HashMap<>();
+}
@@ -0,0 +1,166 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.baja.sys.Context;
+import org.projecthaystack.HDateTime;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HDictBuilder;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HGridBuilder;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HTimeZone;
+
+/**
+  * SlowQueryLog keeps the most recent readAll requests which took
+  * longer than the service's slowQueryThreshold, in a ring buffer
+  * of slowQueryLogSize entries.
+  * <p>
+  * Each entry splits the time of the request into the time that was
+  * spent generating the tags of the records that were scanned, and
+  * the time that was spent matching them against the filter, so that
+  * an expensive filter can be told apart from an expensive scan.
+  */
+final class SlowQueryLog
+{
+    SlowQueryLog(BNHaystackService service)
+    {
+        this.service = service;
+    }
+
+    /**
+      * Return whether a request that took the given time
+      * should be recorded.
+      */
+    boolean isSlow(long totalNanos)
+    {
+        if (service.getSlowQueryLogSize() <= 0)
+            return false;
+
+        return totalNanos >= service.getSlowQueryThreshold().getMillis() * 1000000L;
+    }
+
+    /**
+      * Record a request, replacing the oldest entry if the log is full.
+      */
+    synchronized void add(Entry entry)
+    {
+        int size = service.getSlowQueryLogSize();
+        if (size <= 0) return;
+
+        if (entries.length != size)
+        {
+            // keep the most recent entries when the size changes
+            Entry[] resized = new Entry[size];
+            int n = Math.min(count, size);
+            for (int i = 0; i < n; i++)
+                resized[n - 1 - i] = get(i);
+            entries = resized;
+            count = n;
+            next = n % size;
+        }
+
+        entries[next] = entry;
+        next = (next + 1) % entries.length;
+        if (count < entries.length) count++;
+    }
+
+    synchronized void clear()
+    {
+        entries = new Entry[0];
+        count = 0;
+        next = 0;
+    }
+
+    /**
+      * Make a grid of the entries, most recent first.
+      */
+    HGrid toGrid()
+    {
+        Entry[] arr;
+        synchronized (this)
+        {
+            arr = new Entry[count];
+            for (int i = 0; i < count; i++)
+                arr[i] = get(i);
+        }
+
+        List<HDict> rows = new ArrayList<>(arr.length);
+        for (Entry e : arr)
+        {
+            HDictBuilder hdb = new HDictBuilder();
+            hdb.add("ts", HDateTime.make(e.millis, HTimeZone.DEFAULT));
+            hdb.add("op", e.op);
+            hdb.add("filter", e.filter);
+            hdb.add("user", e.user);
+            hdb.add("scanned", e.scanned);
+            hdb.add("returned", e.returned);
+            hdb.add("resultTags", e.resultTags);
+            hdb.add("tagTime", HNum.make(e.tagNanos / 1e6, "ms"));
+            hdb.add("filterTime", HNum.make(e.filterNanos / 1e6, "ms"));
+            hdb.add("totalTime", HNum.make(e.totalNanos / 1e6, "ms"));
+            rows.add(hdb.toDict());
+        }
+        return HGridBuilder.dictsToGrid(rows.toArray(new HDict[rows.size()]));
+    }
+
+    /**
+      * Return the i'th most recent entry.
+      */
+    private Entry get(int i)
+    {
+        int len = entries.length;
+        return entries[((next - 1 - i) % len + len) % len];
+    }
+
+////////////////////////////////////////////////////////////////
+// Entry
+////////////////////////////////////////////////////////////////
+
+    static final class Entry
+    {
+        Entry(String op, String filter, Context cx,
+            int scanned, int returned, int resultTags,
+            long tagNanos, long filterNanos, long totalNanos)
+        {
+            this.millis = System.currentTimeMillis();
+            this.op = op;
+            this.filter = filter;
+            this.user = cx == null || cx.getUser() == null ? "" : cx.getUser().getUsername();
+            this.scanned = scanned;
+            this.returned = returned;
+            this.resultTags = resultTags;
+            this.tagNanos = tagNanos;
+            this.filterNanos = filterNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        final long millis;
+        final String op;
+        final String filter;
+        final String user;
+        final int scanned;
+        final int returned;
+        final int resultTags;
+        final long tagNanos;
+        final long filterNanos;
+        final long totalNanos;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private final BNHaystackService service;
+
+    private Entry[] entries = new Entry[0];
+    private int count;
+    private int next;
+}
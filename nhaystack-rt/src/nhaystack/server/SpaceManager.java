@@ -11,12 +11,11 @@
 package nhaystack.server;
 
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
 import java.util.logging.Logger;
 import javax.baja.control.BControlPoint;
-import javax.baja.control.ext.BAbstractProxyExt;
 import javax.baja.driver.BDevice;
-import javax.baja.driver.BDeviceNetwork;
-import javax.baja.driver.point.BPointDeviceExt;
 import javax.baja.history.BHistoryConfig;
 import javax.baja.history.HistorySpaceConnection;
 import javax.baja.history.ext.BHistoryExt;
@@ -26,8 +25,6 @@ import javax.baja.schedule.BWeeklySchedule;
 import javax.baja.sys.BComponent;
 import javax.baja.sys.BValue;
 import javax.baja.sys.Context;
-import javax.baja.sys.Property;
-import javax.baja.sys.SlotCursor;
 import javax.baja.sys.Sys;
 import javax.baja.tag.Tags;
 
@@ -71,7 +68,14 @@ public class SpaceManager
     public static boolean isVisibleComponent(BComponent comp)
     {
         // check permissions on this Thread's saved context
-        Context cx = ThreadContext.getContext(Thread.currentThread());
+        return isVisibleComponent(comp, ThreadContext.getContext(Thread.currentThread()));
+    }
+
+    /**
+      * Return whether the component is visible to the given context.
+      */
+    static boolean isVisibleComponent(BComponent comp, Context cx)
+    {
         if (!TypeUtil.canRead(comp, cx)) 
             return false;
 
@@ -103,83 +107,64 @@ public class SpaceManager
       * or return null.
       */
     BControlPoint lookupPointFromHistory(BHistoryConfig cfg)
+    {
+        return lookupPointFromHistory(cfg, server.getCache().currentState());
+    }
+
+    /**
+      * Try to find the point that goes with a history in the
+      * given cache state.
+      */
+    BControlPoint lookupPointFromHistory(BHistoryConfig cfg, Cache.State state)
     {
         // local history
         if (cfg.getId().getDeviceName().equals(Sys.getStation().getStationName()))
         {
-            try
+            Optional<BControlPoint> point = state.historyPoints.get(cfg.getId());
+            if (point == null || (point.isPresent() && !point.get().isMounted()))
             {
-                BOrd[] ords = cfg.getSource().toArray();
-                if (ords.length == 1) 
-                {
-                    BComponent source = (BComponent) ords[0].resolve(service, null).get();
-
-                    // The source is not always a BHistoryExt.  E.g. for 
-                    // LogHistory its the LogHistoryService.
-                    if (source instanceof BHistoryExt)
-                    {
-                        if (source.getParent() instanceof BControlPoint)
-                            return (BControlPoint) source.getParent();
-                    }
-                }
+                point = Optional.ofNullable(resolveHistorySource(cfg));
+                state.historyPoints.put(cfg.getId(), point);
             }
-            catch (UnresolvedException e)
-            {
-                return null;
-            }
-
-            return null;
+            return point.orElse(null);
         }
         // look for imported point that goes with history (if any)
         else
         {
-            RemotePoint remote = RemotePoint.fromHistoryConfig(cfg);
+            RemotePoint remote = state.remotePoints.forHistory(cfg);
             if (remote == null) return null;
 
-            return server.getCache().getControlPoint(remote);
+            return state.remotePoints.getPoint(remote);
         }
     }
 
-////////////////////////////////////////////////////////////////
-// private
-////////////////////////////////////////////////////////////////
-
     /**
-      * Find the imported point that goes with an imported history, 
-      * or return null.  
+      * Find the point whose history ext is the source of a local history,
+      * or return null.
       */
-    private BControlPoint lookupRemotePoint(
-        BHistoryConfig cfg, 
-        RemotePoint remote)
+    private BControlPoint resolveHistorySource(BHistoryConfig cfg)
     {
-        // look up the station
-        BDeviceNetwork network = service.getNiagaraNetwork();
-        BDevice station = (BDevice) network.get(remote.getStationName());
-        if (station == null) return null;
-
-        // look up the points
-        // this fetches from sub-folders too
-        BPointDeviceExt pointDevExt = (BPointDeviceExt) station.get("points");
-        BControlPoint[] points = pointDevExt.getPoints(); 
-
-        // find a point with matching slot path
-        for (BControlPoint point : points)
+        try
         {
-            // check for remote point
-            if (!RemotePoint.isRemotePoint(point)) continue;
-
-            BAbstractProxyExt proxyExt = point.getProxyExt();
-
-            // "pointId" seems to always contain the slotPath on 
-            // the remote host.
-            String slotPath = proxyExt.get("pointId").toString();
+            BOrd[] ords = cfg.getSource().toArray();
+            if (ords.length == 1) 
+            {
+                BComponent source = (BComponent) ords[0].resolve(service, null).get();
 
-            // found it!
-            if (slotPath.equals(remote.getSlotPath().toString()))
-                return point;
+                // The source is not always a BHistoryExt.  E.g. for 
+                // LogHistory its the LogHistoryService.
+                if (source instanceof BHistoryExt)
+                {
+                    if (source.getParent() instanceof BControlPoint)
+                        return (BControlPoint) source.getParent();
+                }
+            }
+        }
+        catch (UnresolvedException e)
+        {
+            return null;
         }
 
-        // no such point
         return null;
     }
 
@@ -271,30 +256,53 @@ public class SpaceManager
       */
     BHistoryExt lookupHistoryExt(BControlPoint point)
     {
-        SlotCursor<Property> cursor = point.getProperties();
-        if (cursor.next(BHistoryExt.class))
-        {
-            BHistoryExt ext = (BHistoryExt) cursor.get();
-
-            // Return null if the extension has never been enabled.
-            BHistoryConfig config = ext.getHistoryConfig();
+        return lookupHistoryLink(point).getHistoryExt();
+    }
 
-            try (HistorySpaceConnection conn = service.getHistoryDb().getConnection(null))
-            {
-                if (conn.getHistory(config.getId()) == null)
-                    return null;
-            }
+    /**
+      * Return the link between the point and its history ext.  Links are
+      * made when the cache is rebuilt, and remade whenever the point's
+      * history ext changes, so this normally does no history database I/O.
+      */
+    HistoryLink lookupHistoryLink(BControlPoint point)
+    {
+        Map<BControlPoint, HistoryLink> links = server.getCache().currentState().historyLinks;
 
-            return ext;
+        HistoryLink link = links.get(point);
+        if (link == null || !link.isCurrent(point))
+        {
+            link = makeHistoryLink(point);
+            links.put(point, link);
         }
+        return link;
+    }
 
-        return null;
+    private HistoryLink makeHistoryLink(BControlPoint point)
+    {
+        BHistoryExt ext = HistoryLink.findHistoryExt(point);
+        if (ext == null) return new HistoryLink(null, false);
+
+        // the history does not exist if the extension has never been enabled
+        try (HistorySpaceConnection conn = service.getHistoryDb().getConnection(null))
+        {
+            return new HistoryLink(ext, conn.getHistory(ext.getHistoryConfig().getId()) != null);
+        }
     }
 
     /**
       * Return whether this history is visible to the outside world.
       */
     boolean isVisibleHistory(BHistoryConfig cfg)
+    {
+        return isVisibleHistory(cfg, server.getCache().currentState());
+    }
+
+    /**
+      * Return whether the history is visible, using the given cache
+      * state to look up the point that it might be linked to.  The
+      * Cache uses this while it is being rebuilt.
+      */
+    boolean isVisibleHistory(BHistoryConfig cfg, Cache.State state)
     {
         // check permissions on this Thread's saved context
         Context cx = ThreadContext.getContext(Thread.currentThread());
@@ -323,7 +331,7 @@ public class SpaceManager
             return true;
 
         // make sure the history is not linked
-        if (lookupPointFromHistory(cfg) == null)
+        if (lookupPointFromHistory(cfg, state) == null)
             return true;
 
         return false;
@@ -339,7 +347,7 @@ public class SpaceManager
       */
     private BHistoryConfig lookupRemoteHistory(BControlPoint point)
     {
-        RemotePoint remotePoint = RemotePoint.fromControlPoint(point);
+        RemotePoint remotePoint = server.getCache().getRemotePoint(point);
         if (remotePoint == null) return null;
 
         return server.getCache().getHistoryConfig(remotePoint);
@@ -353,7 +361,14 @@ public class SpaceManager
     {
         HIterator()
         {
-            this.iterator = new HistoryDbIterator(service.getHistoryDb());
+            // only the histories which are shown are in the index,
+            // so only the permissions need to be checked for them
+            HistoryIndex index = server.getHistoryIndex();
+            this.indexed = index.isBuilt();
+            this.iterator = indexed ?
+                index.visibleConfigs().iterator() :
+                new HistoryDbIterator(service.getHistoryDb());
+            this.cx = ThreadContext.getContext(Thread.currentThread());
             findNext();
         }
 
@@ -383,7 +398,7 @@ public class SpaceManager
             {
                 BHistoryConfig cfg = iterator.next();
 
-                if (isVisibleHistory(cfg))
+                if (indexed ? TypeUtil.canRead(cfg, cx) : isVisibleHistory(cfg))
                 {
                     nextDict = server.getTagManager().createHistoryTags(cfg);
                     break;
@@ -391,7 +406,9 @@ public class SpaceManager
             }
         }
 
-        private final HistoryDbIterator iterator;
+        private final Iterator<BHistoryConfig> iterator;
+        private final boolean indexed;
+        private final Context cx;
 
         private HDict nextDict;
     }
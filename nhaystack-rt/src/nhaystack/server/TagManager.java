@@ -60,28 +60,24 @@ import javax.baja.sys.BBoolean;
 import javax.baja.sys.BComponent;
 import javax.baja.sys.BDouble;
 import javax.baja.sys.BDynamicEnum;
-import javax.baja.sys.BEnumRange;
 import javax.baja.sys.BFacets;
 import javax.baja.sys.BFloat;
 import javax.baja.sys.BInteger;
 import javax.baja.sys.BLong;
 import javax.baja.sys.BMarker;
-import javax.baja.sys.BNumber;
-import javax.baja.sys.BObject;
 import javax.baja.sys.BString;
 import javax.baja.sys.BValue;
+import javax.baja.sys.Context;
 import javax.baja.sys.Flags;
 import javax.baja.sys.Type;
 import javax.baja.tag.Relation;
 import javax.baja.tag.Tag;
 import javax.baja.timezone.BTimeZone;
 import javax.baja.units.BUnit;
-import javax.baja.units.BUnitConversion;
 import javax.baja.util.BFormat;
 
 import nhaystack.BHDict;
 import nhaystack.NHRef;
-import nhaystack.res.Resources;
 import nhaystack.res.Unit;
 import nhaystack.site.BHTagged;
 import nhaystack.util.NHaystackConst;
@@ -117,6 +113,8 @@ public class TagManager implements NHaystackConst
         this.service = service;
         this.spaceMgr = spaceMgr;
         this.cache = cache;
+        this.index = new ComponentIndex(cache);
+        this.ids = new IdTable(cache);
     }
 
 ////////////////////////////////////////////////////////////////
@@ -162,8 +160,42 @@ public class TagManager implements NHaystackConst
         return doLookupComponent(id, true);
     }
 
+    /**
+      * Look up the BComponents for several ids in one pass.  The result
+      * has an entry for each id, which is null if the BComponent cannot
+      * be found, or if it is not haystack-annotated.
+      */
+    public BComponent[] lookupComponents(HRef[] ids)
+    {
+        Context cx = ThreadContext.getContext(Thread.currentThread());
+
+        BComponent[] comps = new BComponent[ids.length];
+        for (int i = 0; i < ids.length; i++)
+        {
+            try
+            {
+                BComponent comp = index.get(ids[i].val);
+                if (comp == null)
+                    comps[i] = lookupComponent(ids[i]);
+                else if (SpaceManager.isVisibleComponent(comp, cx))
+                    comps[i] = comp;
+            }
+            catch (RuntimeException e)
+            {
+                if (LOG.isLoggable(Level.FINE))
+                    LOG.fine("lookup failed for '" + ids[i] + "': " + e.getMessage());
+            }
+        }
+        return comps;
+    }
+
     BComponent doLookupComponent(HRef id, boolean mustBeVisible)
     {
+        // most ids that are looked up have been seen before
+        BComponent indexed = index.get(id.val);
+        if (indexed != null)
+            return !mustBeVisible || SpaceManager.isVisibleComponent(indexed) ? indexed : null;
+
         NHRef nh = NHRef.make(id);
 
         switch (nh.getSpace())
@@ -178,6 +210,7 @@ public class TagManager implements NHaystackConst
 
             BComponent comp = (BComponent) ord.get(service, null);
             if (comp == null) return null;
+            index.put(id.val, comp);
 
             if (!mustBeVisible) return comp;
 
@@ -220,8 +253,13 @@ public class TagManager implements NHaystackConst
         // history space
         if (comp instanceof BHistoryConfig)
         {
-            BHistoryConfig cfg = (BHistoryConfig) comp;
-            return makeHistoryRef(cfg);
+            BHistoryId id = ((BHistoryConfig) comp).getId();
+            NHRef ref = ids.get(id);
+            if (ref != null) return ref;
+
+            ref = makeHistoryRef((BHistoryConfig) comp);
+            ids.put(id, ref);
+            return ref;
         }
         // component space
         else
@@ -230,7 +268,16 @@ public class TagManager implements NHaystackConst
             NHRef sepRef = cache.lookupSepRefByComponent(comp);
             if (sepRef != null) return sepRef;
 
-            return makeSlotPathRef(comp);
+            NHRef ref = ids.get(comp);
+            if (ref != null) return ref;
+
+            ref = makeSlotPathRef(comp);
+            if (comp.isMounted())
+            {
+                ids.put(comp, ref);
+                index.put(ref.getHRef().val, comp);
+            }
+            return ref;
         }
     }
 
@@ -506,8 +553,7 @@ public class TagManager implements NHaystackConst
             // add id if it doesn't exist
             if (!hdb.has("id"))
             {
-                HRef id = makeComponentRef(comp).getHRef();
-                hdb.add("id", HRef.make(id.val, dis));
+                hdb.add("id", makeComponentRef(comp).getHRef(dis));
             }
 
             // add device if it doesn't exist
@@ -572,8 +618,7 @@ public class TagManager implements NHaystackConst
         hdb.add("navName", dis);
 
         // add id
-        HRef ref = makeComponentRef(cfg).getHRef();
-        hdb.add("id", HRef.make(ref.val, dis));
+        hdb.add("id", makeComponentRef(cfg).getHRef(dis));
 
         // add misc other tags
         hdb.add("axType", cfg.getType().toString());
@@ -826,19 +871,17 @@ public class TagManager implements NHaystackConst
         hdb.add("axStatus", axStatus(point.getStatus()));
 
         // minVal, maxVal, precision
-        BNumber minVal    = getNumberFacet(facets, BFacets.MIN);
-        BNumber maxVal    = getNumberFacet(facets, BFacets.MAX);
-        BNumber precision = getNumberFacet(facets, BFacets.PRECISION);
-        if (minVal    != null) hdb.add("minVal",    HNum.make(minVal.getInt()));
-        if (maxVal    != null) hdb.add("maxVal",    HNum.make(maxVal.getInt()));
-        if (precision != null) hdb.add("precision", HNum.make(precision.getInt()));
+        FacetTagCache.FacetTags ft = findFacetTags(facets);
+        if (ft.minVal    != null) hdb.add("minVal",    ft.minVal);
+        if (ft.maxVal    != null) hdb.add("maxVal",    ft.maxVal);
+        if (ft.precision != null) hdb.add("precision", ft.precision);
 
         // actions tag
         if (point.isWritablePoint() || tags.has("writable"))
         {
-            HGrid actionsGrid = createPointActions(point, pointKind);
-            if (actionsGrid != null)
-                hdb.add("actions", HStr.make(HZincWriter.gridToString(actionsGrid)));
+            HStr actions = makePointActions(point, pointKind);
+            if (actions != null)
+                hdb.add("actions", actions);
         }
 
         // siteRef, equipRef
@@ -895,12 +938,10 @@ public class TagManager implements NHaystackConst
         if (curStatus != null) hdb.add("curStatus", curStatus);
 
         // minVal, maxVal, precision
-        BNumber minVal    = getNumberFacet(facets, BFacets.MIN);
-        BNumber maxVal    = getNumberFacet(facets, BFacets.MAX);
-        BNumber precision = getNumberFacet(facets, BFacets.PRECISION);
-        if (minVal    != null) hdb.add("minVal",    HNum.make(minVal.getInt()));
-        if (maxVal    != null) hdb.add("maxVal",    HNum.make(maxVal.getInt()));
-        if (precision != null) hdb.add("precision", HNum.make(precision.getInt()));
+        FacetTagCache.FacetTags ft = findFacetTags(facets);
+        if (ft.minVal    != null) hdb.add("minVal",    ft.minVal);
+        if (ft.maxVal    != null) hdb.add("maxVal",    ft.maxVal);
+        if (ft.precision != null) hdb.add("precision", ft.precision);
 
         // siteRef, equipRef
         addSiteEquipTags(point, hdb, tags);
@@ -963,44 +1004,66 @@ public class TagManager implements NHaystackConst
         }
     }
 
-    private static BNumber getNumberFacet(BFacets facets, String name)
+    /**
+      * Return the tags derived from the facets, which may be null.
+      */
+    private FacetTagCache.FacetTags findFacetTags(BFacets facets)
     {
-        BNumber num = (BNumber) facets.get(name);
-        if (num == null) return null;
-        if (num.toString().equals("+inf")) return null;
-        if (num.toString().equals("-inf")) return null;
-        return num;
+        return facetTags.get(facets, service.getTranslateEnums());
     }
 
     /**
-      * create the 'actions' tag for a point
+      * make the serialized 'actions' tag for a point.  The grid only
+      * depends on the point's kind and the display names of its visible
+      * actions, so it is serialized once and shared by every point
+      * which has the same ones.
       */
-    private static HGrid createPointActions(BControlPoint point, int pointKind)
+    private HStr makePointActions(BControlPoint point, int pointKind)
     {
-        ArrayList<HDict> arr = new ArrayList<>();
+        String[][] defs = findPointActions(pointKind);
+        if (defs == null) return null;
+
+        StringBuilder key = new StringBuilder().append(pointKind);
+        for (String[] def : defs)
+        {
+            key.append('\n');
+            Action action = point.getAction(def[0]);
+            if (action != null && !Flags.isHidden(point, action))
+                key.append('\t').append(point.getDisplayName(action, null));
+        }
+
+        return facetTags.getActions(key.toString(), () ->
+        {
+            HGrid grid = createPointActions(point, defs);
+            return grid == null ? null : HStr.make(HZincWriter.gridToString(grid));
+        });
+    }
 
+    private static String[][] findPointActions(int pointKind)
+    {
         switch(pointKind)
         {
             case NUMERIC_KIND:
             case ENUM_KIND:
             case STRING_KIND:
-                addPointAction(point, arr, "override",          "pointOverride($self, $val, $duration)");
-                addPointAction(point, arr, "auto",              "pointAuto($self)");
-                addPointAction(point, arr, "emergencyOverride", "pointEmergencyOverride($self, $val)");
-                addPointAction(point, arr, "emergencyAuto",     "pointEmergencyAuto($self)");
-                addPointAction(point, arr, "set",               "pointSetDef($self, $val)");
-                break;
+                return VALUE_ACTIONS;
 
             case BOOLEAN_KIND:
-                addPointAction(point, arr, "active",            "pointOverride($self, true, $duration)");
-                addPointAction(point, arr, "inactive",          "pointOverride($self, false, $duration)");
-                addPointAction(point, arr, "auto",              "pointAuto($self)");
-                addPointAction(point, arr, "emergencyActive",   "pointEmergencyOverride($self, true, $duration)");
-                addPointAction(point, arr, "emergencyInactive", "pointEmergencyOverride($self, false, $duration)");
-                addPointAction(point, arr, "emergencyAuto",     "pointEmergencyAuto($self)");
-                addPointAction(point, arr, "set",               "pointSetDef($self, $val)");
-                break;
+                return BOOLEAN_ACTIONS;
+
+            default:
+                return null;
         }
+    }
+
+    /**
+      * create the 'actions' grid for a point
+      */
+    private static HGrid createPointActions(BControlPoint point, String[][] defs)
+    {
+        ArrayList<HDict> arr = new ArrayList<>();
+        for (String[] def : defs)
+            addPointAction(point, arr, def[0], def[1]);
 
         HDict[] rows = arr.toArray(EMPTY_HDICT_ARRAY);
         return rows.length == 0 ?
@@ -1079,7 +1142,7 @@ public class TagManager implements NHaystackConst
                 }
                 else
                 {
-                    Unit unit = findUnit(facets);
+                    Unit unit = findFacetTags(facets).unit;
                     if (unit == null) 
                         return HNum.make(sn.getNumeric());
                     else
@@ -1092,18 +1155,16 @@ public class TagManager implements NHaystackConst
 
             case ENUM_KIND:
 
-                BEnumRange er = (BEnumRange) facets.get("range");
-                if (er == null)
+                BStatusEnum se = (BStatusEnum) sv;
+                String tag = findFacetTags(facets).getEnumTag(se.getEnum().getOrdinal());
+                if (tag == null)
                 {
                     LOG.severe("No 'range' facets found for point " + point.getSlotPath());
                     return HStr.make("INVALID_ENUM");
                 }
                 else
                 {
-                    BStatusEnum se = (BStatusEnum) sv;
-                    return HStr.make(SlotUtil.fromEnum(
-                        er.getTag(se.getEnum().getOrdinal()),
-                        service.getTranslateEnums()));
+                    return HStr.make(tag);
                 }
 
             case STRING_KIND:
@@ -1157,7 +1218,7 @@ public class TagManager implements NHaystackConst
 
                 if (!tags.has("unit"))
                 {
-                    Unit unit = findUnit(facets);
+                    Unit unit = findFacetTags(facets).unit;
                     if (unit != null) 
                         hdb.add("unit", unit.symbol);
                 }
@@ -1167,13 +1228,13 @@ public class TagManager implements NHaystackConst
             case BOOLEAN_KIND:
 
                 if (!tags.has("kind")) hdb.add("kind", "Bool");
-                if (!tags.has("enum")) hdb.add("enum", findTrueFalse(facets));
+                if (!tags.has("enum")) hdb.add("enum", findFacetTags(facets).trueFalse);
                 break;
 
             case ENUM_KIND:
 
                 if (!tags.has("kind")) hdb.add("kind", "Str");
-                if (!tags.has("enum")) hdb.add("enum", findRange(facets));
+                if (!tags.has("enum")) hdb.add("enum", findFacetTags(facets).enumText);
                 break;
 
             case STRING_KIND:
@@ -1183,26 +1244,6 @@ public class TagManager implements NHaystackConst
         }
     }
 
-    private static Unit findUnit(BFacets facets)
-    {
-        if (facets == null) 
-            return null;
-
-        BObject obj = facets.get(BFacets.UNITS);
-        if (!(obj instanceof BUnit)) return null;
-
-        BUnit unit = (BUnit) obj;
-
-        if (unit == null || unit.isNull())
-            return null;
-
-        int conv = facets.geti("unitConversion", 0);
-        if (conv != 0)
-            unit = BUnitConversion.make(conv).getDesiredUnit(unit);
-
-        return Resources.fromBajaUnit(unit);
-    }
-
     private static int getControlPointKind(BComponent point)
     {
         if      (point instanceof BNumericPoint) return NUMERIC_KIND;
@@ -1218,37 +1259,6 @@ public class TagManager implements NHaystackConst
         else return UNKNOWN_KIND;
     }
 
-    private static String findTrueFalse(BFacets facets)
-    {
-        if (facets == null) 
-            return "false,true";
-
-        return 
-            facets.gets("falseText", "false") + ',' +
-            facets.gets("trueText", "true");
-    }
-
-    private String findRange(BFacets facets)
-    {
-        if (facets == null) 
-            return "";
-
-        BEnumRange range = (BEnumRange) facets.get("range");
-        if (range == null || range.isNull())
-            return "";
-
-        StringBuilder sb = new StringBuilder();
-        int[] ords = range.getOrdinals();
-        for (int i = 0; i < ords.length; i++)
-        {
-            if (i > 0) sb.append(',');
-            sb.append(SlotUtil.fromEnum(
-                range.get(ords[i]).getTag(),
-                service.getTranslateEnums()));
-        }
-        return sb.toString();
-    }
-
     private static int getTrendRecordKind(Type trendRecType)
     {
         if      (trendRecType.is(BNumericTrendRecord.TYPE)) return NUMERIC_KIND;
@@ -1303,6 +1313,24 @@ public class TagManager implements NHaystackConst
 
     private static final HDict[] EMPTY_HDICT_ARRAY = new HDict[0];
 
+    // the actions of numeric, enum and string points, and of boolean points
+    private static final String[][] VALUE_ACTIONS = {
+        { "override",          "pointOverride($self, $val, $duration)" },
+        { "auto",              "pointAuto($self)" },
+        { "emergencyOverride", "pointEmergencyOverride($self, $val)" },
+        { "emergencyAuto",     "pointEmergencyAuto($self)" },
+        { "set",               "pointSetDef($self, $val)" },
+    };
+    private static final String[][] BOOLEAN_ACTIONS = {
+        { "active",            "pointOverride($self, true, $duration)" },
+        { "inactive",          "pointOverride($self, false, $duration)" },
+        { "auto",              "pointAuto($self)" },
+        { "emergencyActive",   "pointEmergencyOverride($self, true, $duration)" },
+        { "emergencyInactive", "pointEmergencyOverride($self, false, $duration)" },
+        { "emergencyAuto",     "pointEmergencyAuto($self)" },
+        { "set",               "pointSetDef($self, $val)" },
+    };
+
     // point kinds
     private static final int UNKNOWN_KIND = -1;
     private static final int NUMERIC_KIND =  0;
@@ -1314,5 +1342,8 @@ public class TagManager implements NHaystackConst
     private final BNHaystackService service;
     private final SpaceManager spaceMgr;
     private final Cache cache;
+    private final ComponentIndex index;
+    private final IdTable ids;
+    private final FacetTagCache facetTags = new FacetTagCache();
 }
 
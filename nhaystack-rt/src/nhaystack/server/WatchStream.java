@@ -0,0 +1,202 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HGridBuilder;
+import org.projecthaystack.io.HZincWriter;
+
+/**
+  * WatchStream pushes the changes to an open watch to the client as
+  * Server-Sent Events, instead of the client polling for them.
+  * <p>
+  * The client opens and subscribes to the watch as usual, and then
+  * GETs {@code watchStream?watchId=<id>}, optionally with a
+  * {@code window} in milliseconds which overrides the service's
+  * watchPushWindow.  Each batch of changes is sent as a "cov" event whose
+  * data is the zinc grid that watchPoll would have returned.  A comment
+  * is sent when nothing has changed for a while, which keeps the lease
+  * of the watch alive and finds out when the client has gone away.  A
+  * "close" event is sent when the watch is closed.
+  * <p>
+  * A client that reads slowly does not hold up the station, since only
+  * the latest value of each point is kept until it can be sent.  Each
+  * stream holds a web server thread for as long as it is open, so only
+  * the service's watchStreamLimit of them can be open at once.
+  */
+final class WatchStream
+{
+    WatchStream(NHServer server)
+    {
+        this.server = server;
+    }
+
+    /**
+      * Return whether the request is for a watch stream.
+      */
+    static boolean isStreamRequest(HttpServletRequest req)
+    {
+        String path = req.getPathInfo();
+        if (path == null) return false;
+
+        int slash = path.indexOf('/', 1);
+        String op = slash < 0 ? path.substring(1) : path.substring(1, slash);
+        return op.equals(OP_NAME);
+    }
+
+    /**
+      * Send the changes to the watch until it is closed, the client
+      * goes away, or the thread is interrupted, unless too many
+      * streams are open already.
+      */
+    void serve(HttpServletRequest req, HttpServletResponse res) throws IOException
+    {
+        int limit = server.getService().getWatchStreamLimit();
+        if (open.incrementAndGet() > limit)
+        {
+            open.decrementAndGet();
+            res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                "Too many watch streams are open: " + limit);
+            return;
+        }
+
+        try
+        {
+            stream(req, res);
+        }
+        finally
+        {
+            open.decrementAndGet();
+        }
+    }
+
+    /**
+      * Return the number of streams that are open.
+      */
+    int openCount()
+    {
+        return open.get();
+    }
+
+    private void stream(HttpServletRequest req, HttpServletResponse res) throws IOException
+    {
+        String watchId = req.getParameter("watchId");
+        NHWatch watch = watchId == null ? null : (NHWatch) server.getWatch(watchId);
+        if (watch == null || !watch.isOpen())
+        {
+            res.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown watch: " + watchId);
+            return;
+        }
+
+        long heartbeat = Math.min(watch.leaseInterval() / 2, MAX_HEARTBEAT);
+        long window;
+        try
+        {
+            String param = req.getParameter("window");
+            window = param == null ?
+                server.getService().getWatchPushWindow().getMillis() :
+                Long.parseLong(param);
+            window = Math.max(0, Math.min(window, heartbeat));
+        }
+        catch (NumberFormatException e)
+        {
+            res.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid window: " + e.getMessage());
+            return;
+        }
+
+        res.setStatus(HttpServletResponse.SC_OK);
+        res.setContentType("text/event-stream");
+        res.setCharacterEncoding("UTF-8");
+        res.setHeader("Cache-Control", "no-cache");
+
+        PrintWriter out = res.getWriter();
+        out.write(": watch " + watchId + "\n\n");
+        out.flush();
+
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine("WatchStream begin " + watchId + ", window " + window + "ms");
+
+        int batches = 0;
+        try
+        {
+            while (!out.checkError())
+            {
+                HDict[] changes = watch.awaitChanges(window, heartbeat);
+                if (changes == null)
+                {
+                    writeEvent(out, "close", watchId);
+                    out.flush();
+                    break;
+                }
+
+                if (changes.length == 0)
+                    out.write(": keepalive\n\n");
+                else
+                {
+                    writeEvent(out, "cov", HZincWriter.gridToString(HGridBuilder.dictsToGrid(changes)));
+                    batches++;
+                }
+                out.flush();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if (LOG.isLoggable(Level.FINE))
+            LOG.fine("WatchStream end   " + watchId + ", batches " + batches);
+    }
+
+    /**
+      * Write an event, sending each line of its data as a separate
+      * data field.
+      */
+    static void writeEvent(PrintWriter out, String event, String data)
+    {
+        out.write("event: ");
+        out.write(event);
+        out.write('\n');
+
+        int end = data.length();
+        while (end > 0 && data.charAt(end - 1) == '\n') end--;
+
+        int start = 0;
+        while (start <= end)
+        {
+            int nl = data.indexOf('\n', start);
+            if (nl < 0 || nl > end) nl = end;
+            out.write("data: ");
+            out.write(data, start, nl - start);
+            out.write('\n');
+            start = nl + 1;
+        }
+        out.write('\n');
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final Logger LOG = Logger.getLogger("nhaystack.watch");
+
+    static final String OP_NAME = "watchStream";
+
+    // how long to wait for changes before sending a comment
+    private static final long MAX_HEARTBEAT = 15000;
+
+    private final NHServer server;
+    private final AtomicInteger open = new AtomicInteger();
+}
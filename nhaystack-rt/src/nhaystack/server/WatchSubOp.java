@@ -0,0 +1,61 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import org.projecthaystack.HDict;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HRef;
+import org.projecthaystack.HVal;
+import org.projecthaystack.server.HOp;
+import org.projecthaystack.server.HServer;
+
+/**
+  * WatchSubOp is the standard watchSub op, which also reads the COV
+  * filtering options from the meta of the request.  See CovFilter for
+  * the options.
+  * <p>
+  * The options apply to the whole watch.  A watchSub which adds points
+  * to an existing watch without any options leaves its filter as it was.
+  */
+class WatchSubOp extends HOp
+{
+    @Override
+    public String name() { return "watchSub"; }
+    @Override
+    public String summary() { return "Watch subscription"; }
+    @Override
+    public HGrid onService(HServer db, HGrid req)
+    {
+        HDict meta = req.meta();
+        CovFilter filter = CovFilter.make(meta);
+
+        NHWatch watch;
+        if (meta.has("watchId"))
+        {
+            watch = (NHWatch) db.watch(meta.getStr("watchId"));
+        }
+        else
+        {
+            HNum lease = meta.has("lease") ? (HNum) meta.get("lease") : null;
+            watch = (NHWatch) db.watchOpen(meta.getStr("watchDis"), lease);
+        }
+
+        if (filter != CovFilter.NONE)
+            watch.setCovFilter(filter);
+
+        // the same as the standard op, ids may be refs or nav uris
+        HRef[] ids = new HRef[req.numRows()];
+        for (int i = 0; i < ids.length; i++)
+        {
+            HVal val = req.row(i).get("id", false);
+            ids[i] = val == null ? HRef.nullRef : NHServerOps.valToId(db, val);
+        }
+        return watch.sub(ids);
+    }
+}
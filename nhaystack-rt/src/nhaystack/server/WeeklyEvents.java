@@ -0,0 +1,196 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.server;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import javax.baja.sys.BRelTime;
+import javax.baja.sys.BSimple;
+import nhaystack.util.TypeUtil;
+import org.projecthaystack.HDate;
+import org.projecthaystack.HDateTime;
+import org.projecthaystack.HHisItem;
+import org.projecthaystack.HTime;
+import org.projecthaystack.HTimeZone;
+import org.projecthaystack.io.HZincReader;
+
+/**
+  * WeeklyEvents is the 'weeklySchedule' tag of a point, compiled once
+  * into an array of events that is sorted by when they happen during
+  * the week, so that finding the next event is a binary search.
+  * <p>
+  * Each item of the schedule is reduced to its day of the week and its
+  * wall clock time in the schedule's time zone, which is where it
+  * lands when it is moved by whole weeks into any given week.  Items
+  * that land on the same time keep the first one, and items without a
+  * value are skipped.
+  */
+final class WeeklyEvents
+{
+    /**
+      * Compile the zinc grid of a 'weeklySchedule' tag.
+      */
+    static WeeklyEvents compile(String source)
+    {
+        return compile(source, HHisItem.gridToItems(new HZincReader(source).readGrid()));
+    }
+
+    /**
+      * Compile the items that the zinc grid of a 'weeklySchedule' tag holds.
+      */
+    static WeeklyEvents compile(String source, HHisItem[] items)
+    {
+        Event[] events = new Event[items.length];
+        int n = 0;
+        for (HHisItem item : items)
+        {
+            if (item.val == null) continue;
+
+            int day = item.ts.date.weekday() - 1;
+            HTime time = item.ts.time;
+            events[n++] = new Event(
+                day * BRelTime.MILLIS_IN_DAY + millisOfDay(time), day, time,
+                TypeUtil.toBajaSimple(item.val));
+        }
+
+        // the sort is stable, so the first of the items
+        // that land on the same time comes first
+        events = Arrays.copyOf(events, n);
+        Arrays.sort(events, Comparator.comparingLong((Event e) -> e.offset));
+
+        int m = 0;
+        for (int i = 0; i < n; i++)
+        {
+            if (m == 0 || events[m - 1].offset != events[i].offset)
+                events[m++] = events[i];
+        }
+
+        HTimeZone tz = items.length == 0 ? null : items[0].ts.tz;
+        return new WeeklyEvents(source, tz, Arrays.copyOf(events, m));
+    }
+
+    private WeeklyEvents(String source, HTimeZone tz, Event[] events)
+    {
+        this.source = source;
+        this.tz = tz;
+        this.events = events;
+        this.offsets = new long[events.length];
+        for (int i = 0; i < events.length; i++)
+            offsets[i] = events[i].offset;
+    }
+
+    /**
+      * Return the zinc that this was compiled from.
+      */
+    String getSource() { return source; }
+
+    boolean isEmpty() { return events.length == 0; }
+
+    /**
+      * Return the first event after the given time, with the time that
+      * it happens at, or null if there are no events.
+      */
+    Event next(long millis)
+    {
+        if (events.length == 0) return null;
+
+        HDateTime now = HDateTime.make(millis, tz);
+        HDate sunday = now.date.minusDays(now.date.weekday() - 1);
+
+        // the first event that is later in the week than now,
+        // or the first event of next week if there is none
+        int i = upperBound(offsets, (now.date.weekday() - 1) * BRelTime.MILLIS_IN_DAY + millisOfDay(now.time));
+        while (true)
+        {
+            if (i == events.length)
+            {
+                i = 0;
+                sunday = sunday.plusDays(7);
+            }
+
+            Event e = events[i];
+            HDateTime ts = HDateTime.make(sunday.plusDays(e.day), e.time, tz);
+
+            // a wall clock time can be earlier than it looks
+            // when the clocks have just been turned back
+            if (ts.millis() > millis)
+                return e.at(ts);
+            i++;
+        }
+    }
+
+    /**
+      * Return the index of the first offset that is greater than the key.
+      */
+    private static int upperBound(long[] offsets, long key)
+    {
+        int lo = 0;
+        int hi = offsets.length;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (offsets[mid] <= key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static long millisOfDay(HTime time)
+    {
+        return ((time.hour * 60L + time.min) * 60L + time.sec) * 1000L + time.ms;
+    }
+
+////////////////////////////////////////////////////////////////
+// Event
+////////////////////////////////////////////////////////////////
+
+    /**
+      * An event of the schedule.  Its timestamp is only set on the
+      * copy that next() returns.
+      */
+    static final class Event
+    {
+        private Event(long offset, int day, HTime time, BSimple value)
+        {
+            this.offset = offset;
+            this.day = day;
+            this.time = time;
+            this.value = value;
+            this.ts = null;
+        }
+
+        private Event(Event e, HDateTime ts)
+        {
+            this.offset = e.offset;
+            this.day = e.day;
+            this.time = e.time;
+            this.value = e.value;
+            this.ts = ts;
+        }
+
+        private Event at(HDateTime ts) { return new Event(this, ts); }
+
+        HDateTime getTimestamp() { return ts; }
+        BSimple getValue() { return value; }
+
+        private final long offset;
+        private final int day;
+        private final HTime time;
+        private final BSimple value;
+        private final HDateTime ts;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private final String source;
+    private final HTimeZone tz;
+    private final Event[] events;
+    private final long[] offsets;
+}
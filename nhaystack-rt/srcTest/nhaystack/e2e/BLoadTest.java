@@ -0,0 +1,187 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.e2e;
+
+import static nhaystack.ntest.helper.NHaystackTestUtil.makeNavGrid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import nhaystack.ntest.helper.LoadGenerator;
+import nhaystack.ntest.helper.LoadGenerator.ClientOp;
+import nhaystack.ntest.helper.LoadGenerator.OpSpec;
+import nhaystack.ntest.helper.SyntheticStation;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HRef;
+import org.projecthaystack.HWatch;
+import org.projecthaystack.client.HClient;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+  * An end-to-end load test, which drives read, nav, watch, hisRead and
+  * pointWrite requests over HTTP at a synthetic station, first one op
+  * at a time and then all of them together, and prints the latency
+  * percentiles, throughput, peak heap and peak thread count of each.
+  * <p>
+  * The test is skipped unless the "nhaystack.load" system property is
+  * true.  The station is sized with "nhaystack.load.points" and
+  * "nhaystack.load.histories", each phase runs for
+  * "nhaystack.load.seconds", and the rate of each op in requests per
+  * second is set with "nhaystack.load.rate.&lt;op&gt;".
+  */
+@NiagaraType
+@Test(groups = {"load"})
+public class BLoadTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BLoadTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+
+        if (ENABLED)
+            synthetic.build("synthetic", station);
+    }
+
+    @BeforeClass
+    public void setupLoad()
+    {
+        if (!ENABLED)
+            throw new SkipException("set -Dnhaystack.load=true to run the load test");
+
+        synthetic.addHistories(
+            nhaystackService.getHistoryDb(),
+            Integer.getInteger("nhaystack.load.histories", 100),
+            96 * 7, 15L * 60L * 1000L);
+        rebuildCache();
+
+        pointIds = readIds("point");
+        writableIds = readIds("point and writable and kind == \"Number\"");
+        hisIds = readIds("his");
+
+        HGrid roots = client.call("nav", HGrid.EMPTY);
+        for (int i = 0; i < roots.numRows(); i++)
+        {
+            if (roots.row(i).has("navId"))
+                navIds.add(roots.row(i).getStr("navId"));
+        }
+    }
+
+    public void testLoad() throws Exception
+    {
+        long millis = Long.getLong("nhaystack.load.seconds", 30L) * 1000L;
+        int threads = Integer.getInteger("nhaystack.load.threads", 4);
+
+        List<OpSpec> specs = Arrays.asList(
+            new OpSpec("read", rate("read", 50), threads, () -> client -> client.readAll("point and equipRef")),
+            new OpSpec("readById", rate("readById", 200), threads, () -> client -> client.readById(pick(pointIds))),
+            new OpSpec("nav", rate("nav", 20), threads, () -> client -> client.call("nav", makeNavGrid(pick(navIds)))),
+            new OpSpec("watchPoll", rate("watchPoll", 20), threads, WatchOp::new),
+            new OpSpec("hisRead", rate("hisRead", 20), threads, () -> client -> client.hisRead(pick(hisIds), "yesterday")),
+            new OpSpec("pointWrite", rate("pointWrite", 10), threads, () -> client ->
+                client.pointWrite(pick(writableIds), 16, "load", HNum.make(ThreadLocalRandom.current().nextInt(100)), null)));
+
+        LoadGenerator load = new LoadGenerator(this::openLoadClient);
+        for (OpSpec spec : specs)
+            load.run(spec.getName(), Arrays.asList(spec), millis);
+        load.run("mixed", specs, millis);
+
+        System.out.println("nhaystack load test, " + synthetic.getNumPoints() + " points\n" + load.report());
+    }
+
+////////////////////////////////////////////////////////////////
+// private
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Each thread opens a watch on a random slice of the points,
+      * and then polls it for changes.
+      */
+    private final class WatchOp implements ClientOp
+    {
+        @Override
+        public void run(HClient client)
+        {
+            if (watch == null)
+            {
+                watch = client.watchOpen("load", HNum.make(10, "min"));
+
+                int size = Math.min(WATCH_SIZE, pointIds.length);
+                int from = ThreadLocalRandom.current().nextInt(pointIds.length - size + 1);
+                watch.sub(Arrays.copyOfRange(pointIds, from, from + size));
+            }
+            watch.pollChanges();
+        }
+
+        @Override
+        public void close(HClient client)
+        {
+            if (watch != null) watch.close();
+        }
+
+        private HWatch watch;
+    }
+
+    private HClient openLoadClient()
+    {
+        return HClient.open(getBaseURI() + "haystack/", getSuperUsername(), getSuperUserPassword());
+    }
+
+    private HRef[] readIds(String filter)
+    {
+        HGrid grid = client.readAll(filter);
+        HRef[] ids = new HRef[grid.numRows()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = grid.row(i).id();
+        return ids;
+    }
+
+    private static double rate(String op, int def)
+    {
+        return Double.parseDouble(System.getProperty("nhaystack.load.rate." + op, Integer.toString(def)));
+    }
+
+    private static <T> T pick(T[] arr)
+    {
+        return arr[ThreadLocalRandom.current().nextInt(arr.length)];
+    }
+
+    private static String pick(List<String> list)
+    {
+        return list.get(ThreadLocalRandom.current().nextInt(list.size()));
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final boolean ENABLED = Boolean.getBoolean("nhaystack.load");
+    private static final int WATCH_SIZE = 100;
+
+    private final SyntheticStation synthetic =
+        SyntheticStation.fromSystemProperty("nhaystack.load.points", 1000);
+
+    private HRef[] pointIds;
+    private HRef[] writableIds;
+    private HRef[] hisIds;
+    private final List<String> navIds = new ArrayList<>();
+}
@@ -0,0 +1,140 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+package nhaystack.ntest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+import javax.baja.test.BTestNg;
+import nhaystack.BHDict;
+import org.projecthaystack.HDate;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HDictBuilder;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HRef;
+import org.projecthaystack.HUri;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@NiagaraType
+public class BHDictTest extends BTestNg
+{
+/*+ ------------ BEGIN BAJA AUTO GENERATED CODE ------------ +*/
+/*@ $nhaystack.ntest.BHDictTest(2979906276)1.0$ @*/
+/* Generated Mon Oct 19 10:00:00 EDT 2026 by Slot-o-Matic (c) Tridium, Inc. 2012 */
+
+////////////////////////////////////////////////////////////////
+// Type
+////////////////////////////////////////////////////////////////
+
+  public Type getType() { return TYPE; }
+  public static final Type TYPE = Sys.loadType(BHDictTest.class);
+
+/*+ ------------ END BAJA AUTO GENERATED CODE -------------- +*/
+
+  @Test
+  public void testBinaryRoundTrip() throws Exception
+  {
+    HDict dict = new HDictBuilder()
+      .add("dis", "Discharge Air Temp")
+      .add("point")
+      .add("his", true)
+      .add("writable", false)
+      .add("curVal", HNum.make(72.5, "\u00b0F"))
+      .add("minVal", HNum.make(50, "\u00b0F"))
+      .add("precision", HNum.make(1))
+      .add("equipRef", HRef.make("S.SiteA.AHU1", "AHU1"))
+      .add("siteRef", HRef.make("S.SiteA"))
+      .add("doc", HUri.make("http://example.com/ahu1"))
+      .add("installed", HDate.make(2026, 10, 19))
+      .toDict();
+
+    BHDict decoded = roundTripBinary(BHDict.make(dict));
+    Assert.assertEquals(decoded.getDict(), dict);
+    Assert.assertEquals(decoded, BHDict.make(dict));
+
+    // the decoded dict is sent on as it was received
+    Assert.assertEquals(roundTripBinary(decoded).getDict(), dict);
+    Assert.assertEquals(roundTrip(decoded).getDict(), dict);
+  }
+
+  @Test
+  public void testEncodeIsZinc() throws Exception
+  {
+    // peers running older versions only read the zinc encoding
+    String zinc = "dis:\"AHU1\" equip siteRef:@S.SiteA";
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BHDict.make(zinc).encode(new DataOutputStream(bytes));
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    Assert.assertEquals(in.readUTF(), zinc);
+    Assert.assertEquals(in.available(), 0);
+  }
+
+  @Test
+  public void testEmpty() throws Exception
+  {
+    Assert.assertEquals(roundTrip(BHDict.DEFAULT).getDict(), HDict.EMPTY);
+    Assert.assertEquals(roundTripBinary(BHDict.DEFAULT).getDict(), HDict.EMPTY);
+  }
+
+  @Test
+  public void testDecodeZinc() throws Exception
+  {
+    // the encoding from before the binary format
+    String zinc = "dis:\"AHU1\" equip siteRef:@S.SiteA";
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new DataOutputStream(bytes).writeUTF(zinc);
+
+    BHDict decoded = (BHDict) BHDict.DEFAULT.decode(
+      new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertEquals(decoded.getDict(), BHDict.make(zinc).getDict());
+  }
+
+  @Test
+  public void testDecodeFromString() throws Exception
+  {
+    String zinc = "dis:\"AHU1\" equip siteRef:@S.SiteA";
+    BHDict decoded = (BHDict) BHDict.DEFAULT.decodeFromString(zinc);
+
+    // the string is saved again as it was loaded
+    Assert.assertEquals(decoded.encodeToString(), zinc);
+    Assert.assertTrue(decoded.getDict().has("equip"));
+    Assert.assertEquals(decoded.getDict().getRef("siteRef"), HRef.make("S.SiteA"));
+  }
+
+  @Test
+  public void testDecodeInvalidZinc() throws Exception
+  {
+    String zinc = "dis:\"AHU1";
+    BHDict decoded = (BHDict) BHDict.DEFAULT.decodeFromString(zinc);
+
+    Assert.assertEquals(decoded.getDict(), HDict.EMPTY);
+    Assert.assertEquals(decoded.encodeToString(), zinc);
+  }
+
+  private static BHDict roundTripBinary(BHDict dict) throws Exception
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    dict.encodeBinary(new DataOutputStream(bytes));
+    return (BHDict) BHDict.DEFAULT.decode(
+      new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  private static BHDict roundTrip(BHDict dict) throws Exception
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    dict.encode(new DataOutputStream(bytes));
+    return (BHDict) BHDict.DEFAULT.decode(
+      new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+}
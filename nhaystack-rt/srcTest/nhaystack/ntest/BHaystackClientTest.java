@@ -33,6 +33,7 @@ import static nhaystack.util.NHaystackConst.ID_SITE_REF;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -56,6 +57,7 @@ import javax.baja.sys.BRelation;
 import javax.baja.sys.BStation;
 import javax.baja.sys.BString;
 import javax.baja.sys.Clock;
+import javax.baja.sys.Flags;
 import javax.baja.sys.Sys;
 import javax.baja.sys.Type;
 import javax.baja.tag.Entity;
@@ -66,7 +68,9 @@ import javax.baja.units.BUnit;
 import javax.baja.util.BFolder;
 
 import junit.extensions.PA;
+import nhaystack.BHDict;
 import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import nhaystack.server.BNHaystackBulkTagJob;
 import nhaystack.server.BNHaystackConvertHaystackSlotsJob;
 import nhaystack.server.BNHaystackService;
 import nhaystack.site.BHEquip;
@@ -85,6 +89,7 @@ import org.projecthaystack.HNum;
 import org.projecthaystack.HRef;
 import org.projecthaystack.HStr;
 import org.projecthaystack.HTimeZone;
+import org.projecthaystack.HUri;
 import org.projecthaystack.HVal;
 import org.projecthaystack.client.CallErrException;
 import org.testng.Assert;
@@ -93,6 +98,7 @@ import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 import com.tridium.history.log.BLogHistoryService;
 import com.tridium.kitControl.util.BSineWave;
+import com.tridium.testng.TestUtil;
 
 @NiagaraType
 @Test(singleThreaded = true)
@@ -281,6 +287,63 @@ public class BHaystackClientTest extends BNHaystackStationTestBase
         Thread.sleep(3000L);
     }
 
+    public void testConversionClearsCheckpoint() throws InterruptedException
+    {
+        // a checkpoint left behind by an interrupted conversion
+        nhaystackService.add(
+            BNHaystackConvertHaystackSlotsJob.SLOT_CONVERSION_CHECKPOINT,
+            BString.make(testFolder.getSlotPath().toString()),
+            Flags.HIDDEN | Flags.READONLY);
+
+        final BOrd bOrd = nhaystackService.convertHaystackSlots();
+        final BNHaystackConvertHaystackSlotsJob job = (BNHaystackConvertHaystackSlotsJob) bOrd.resolve(nhaystackService).get();
+
+        long startTicks = Clock.ticks();
+        while (job.isAlive())
+        {
+            Thread.yield();
+            if (Clock.ticks() - startTicks > 5000)
+            {
+                break;
+            }
+        }
+
+        // the conversion finished, so there is nothing left to resume
+        assertNull(nhaystackService.get(BNHaystackConvertHaystackSlotsJob.SLOT_CONVERSION_CHECKPOINT));
+    }
+
+    public void testConversionResumesFromCheckpoint() throws InterruptedException
+    {
+        BFolder done = addFolder("done", testFolder);
+        done.add(HAYSTACK_SLOT_NAME, BHDict.make(new HDictBuilder().add("discharge").toDict()));
+        BFolder pending = addFolder("pending", testFolder);
+        pending.add(HAYSTACK_SLOT_NAME, BHDict.make(new HDictBuilder().add("discharge").toDict()));
+
+        // an interrupted conversion that had finished the first folder
+        nhaystackService.add(
+            BNHaystackConvertHaystackSlotsJob.SLOT_CONVERSION_CHECKPOINT,
+            BString.make(done.getSlotPath().toString()),
+            Flags.HIDDEN | Flags.READONLY);
+
+        final BOrd bOrd = nhaystackService.convertHaystackSlots();
+        final BNHaystackConvertHaystackSlotsJob job = (BNHaystackConvertHaystackSlotsJob) bOrd.resolve(nhaystackService).get();
+
+        long startTicks = Clock.ticks();
+        while (job.isAlive())
+        {
+            Thread.yield();
+            if (Clock.ticks() - startTicks > 5000)
+            {
+                break;
+            }
+        }
+
+        // only the folder that was not finished is converted
+        assertTrue(pending.tags().contains(DISCHARGE_ID));
+        assertFalse(done.tags().contains(DISCHARGE_ID));
+        assertTrue(BHDict.findTagAnnotation(done).has("discharge"));
+    }
+
     public void testAbout() throws InterruptedException
     {
         HDict r = client.about();
@@ -782,6 +845,175 @@ public class BHaystackClientTest extends BNHaystackStationTestBase
         assertTrue(equip.tags().contains(SENSOR_ID));
     }
 
+    public void testApplyBatchTagsAgain()
+    {
+        BHEquip equip = new BHEquip();
+        testFolder.add("equip", equip);
+
+        HDictBuilder hd = new HDictBuilder();
+        hd.add(FUNCTION_OP_ARG_NAME, HStr.make("applyBatchTags"));
+        hd.add("ids", HStr.make("[C.testFolder.equip]"));
+        hd.add("tags", HStr.make("{discharge air}"));
+        hd.add(TARGET_FILTER_OP_ARG_NAME, HStr.make(""));
+        client.call(EXTENDED_OP_NAME, HGridBuilder.dictToGrid(hd.toDict()));
+        equip.lease();
+        assertTrue(equip.tags().contains(DISCHARGE_ID));
+
+        // the tags have been migrated out of the haystack slot,
+        // but applying them again still changes nothing
+        hd.add("dryRun", HBool.TRUE);
+        HGrid grid = client.call(EXTENDED_OP_NAME, HGridBuilder.dictToGrid(hd.toDict()));
+        assertEquals(grid.numRows(), 0);
+        assertEquals(grid.meta().get("rowsChanged"), HNum.make(0));
+    }
+
+    public void testApplyBatchTagsJob() throws Exception
+    {
+        BHEquip equip = new BHEquip();
+        testFolder.add("equip", equip);
+
+        HDictBuilder hd = new HDictBuilder();
+        hd.add(FUNCTION_OP_ARG_NAME, HStr.make("applyBatchTags"));
+        hd.add("ids", HStr.make("[C.testFolder.equip]"));
+        hd.add("tags", HStr.make("{discharge air}"));
+        hd.add(TARGET_FILTER_OP_ARG_NAME, HStr.make(""));
+        hd.add("job", HBool.TRUE);
+        HGrid grid = client.call(EXTENDED_OP_NAME, HGridBuilder.dictToGrid(hd.toDict()));
+        assertTrue(grid.row(0).has("job"));
+        assertEquals(grid.row(0).get("rowsChanged"), HNum.make(1));
+
+        TestUtil.waitFor(10, () -> { equip.lease(); return equip.tags().contains(AIR_ID); },
+            "Waiting for the bulk tag job to finish");
+        assertTrue(equip.tags().contains(DISCHARGE_ID));
+
+        // the job's result has the outcome of each change
+        BNHaystackBulkTagJob job = (BNHaystackBulkTagJob)
+            BOrd.make(grid.row(0).getStr("job")).get(Sys.getStation());
+        TestUtil.waitFor(10, () -> job.getResult().getGrid().numRows() == 1,
+            "Waiting for the bulk tag job result");
+        HGrid result = job.getResult().getGrid();
+        assertEquals(result.row(0).getStr("axSlotPath"), equip.getSlotPath().toString());
+        assertEquals(result.row(0).getStr("status"), "applied");
+        assertEquals(result.meta().get("rowsFailed"), HNum.make(0));
+    }
+
+    public void testApplyBatchTagsDryRun()
+    {
+        HStr id = HStr.make("[C.testFolder.equip]");
+        BHEquip equip = new BHEquip();
+        testFolder.add("equip", equip);
+
+        HDictBuilder hd = new HDictBuilder();
+        hd.add(FUNCTION_OP_ARG_NAME, HStr.make("applyBatchTags"));
+        hd.add("ids", id);
+        hd.add("tags", HStr.make("{discharge air}"));
+        hd.add(TARGET_FILTER_OP_ARG_NAME, HStr.make(""));
+        hd.add("dryRun", HBool.TRUE);
+        HGrid grid = client.call(EXTENDED_OP_NAME, HGridBuilder.dictToGrid(hd.toDict()));
+
+        // the changes are reported but not made
+        assertEquals(grid.numRows(), 1);
+        assertEquals(grid.row(0).getStr("added"), "discharge,air");
+        equip.lease();
+        assertFalse(equip.tags().contains(DISCHARGE_ID));
+        assertFalse(equip.tags().contains(AIR_ID));
+    }
+
+    public void testBrokenRefs()
+    {
+        BComponent target = new BComponent();
+        testFolder.add("target", target);
+        BComponent source = new BComponent();
+        source.add(HAYSTACK_SLOT_NAME, BHDict.make(new HDictBuilder()
+            .add("targetRef", HRef.make("C.testFolder.target"))
+            .toDict()));
+        testFolder.add("source", source);
+        rebuildCache();
+
+        HDictBuilder hd = new HDictBuilder();
+        hd.add(FUNCTION_OP_ARG_NAME, HStr.make("brokenRefs"));
+        assertEquals(client.call(EXTENDED_OP_NAME, HGridBuilder.dictToGrid(hd.toDict())).numRows(), 0);
+
+        // the ref is reported as soon as its target is renamed
+        testFolder.rename(testFolder.getProperty("target"), "renamed");
+        HGrid grid = client.call(EXTENDED_OP_NAME, HGridBuilder.dictToGrid(hd.toDict()));
+        assertEquals(grid.numRows(), 1);
+        assertEquals(grid.row(0).getStr("tag"), "targetRef");
+        assertEquals(grid.row(0).getStr("problem"), "moved");
+
+        // and is repaired by pointing it at the new slot path
+        hd.add("repair", HBool.TRUE);
+        grid = client.call(EXTENDED_OP_NAME, HGridBuilder.dictToGrid(hd.toDict()));
+        assertEquals(grid.numRows(), 1);
+        assertEquals(BHDict.findTagAnnotation(source).getRef("targetRef"), HRef.make("C.testFolder.renamed"));
+    }
+
+    public void testBrokenRefsUnresolved()
+    {
+        BComponent source = new BComponent();
+        source.add(HAYSTACK_SLOT_NAME, BHDict.make(new HDictBuilder()
+            .add("missingRef", HRef.make("C.testFolder.missing"))
+            .toDict()));
+        testFolder.add("unresolvedSource", source);
+        rebuildCache();
+
+        HGrid grid = callBrokenRefs(false);
+        assertEquals(grid.numRows(), 1);
+        assertEquals(grid.row(0).getStr("problem"), "unresolved");
+
+        // the ref is removed
+        assertEquals(callBrokenRefs(true).numRows(), 1);
+        assertFalse(BHDict.findTagAnnotation(source).has("missingRef"));
+        assertEquals(callBrokenRefs(false).numRows(), 0);
+    }
+
+    public void testBrokenRefsRemoved()
+    {
+        testFolder.add("removedTarget", new BComponent());
+        BComponent source = new BComponent();
+        source.add(HAYSTACK_SLOT_NAME, BHDict.make(new HDictBuilder()
+            .add("targetRef", HRef.make("C.testFolder.removedTarget"))
+            .toDict()));
+        testFolder.add("removedSource", source);
+        rebuildCache();
+        assertEquals(callBrokenRefs(false).numRows(), 0);
+
+        // the ref is reported as soon as its target is removed
+        testFolder.remove("removedTarget");
+        HGrid grid = callBrokenRefs(false);
+        assertEquals(grid.numRows(), 1);
+        assertEquals(grid.row(0).getStr("problem"), "removed");
+
+        // and is removed
+        assertEquals(callBrokenRefs(true).numRows(), 1);
+        assertFalse(BHDict.findTagAnnotation(source).has("targetRef"));
+    }
+
+    public void testBrokenRefsFixedAfterIndexing()
+    {
+        BComponent source = new BComponent();
+        source.add(HAYSTACK_SLOT_NAME, BHDict.make(new HDictBuilder()
+            .add("laterRef", HRef.make("C.testFolder.later"))
+            .toDict()));
+        testFolder.add("laterSource", source);
+        rebuildCache();
+        assertEquals(callBrokenRefs(false).numRows(), 1);
+
+        // the target is added after the index was built, so the
+        // ref resolves again and the repair leaves it alone
+        testFolder.add("later", new BComponent());
+        assertEquals(callBrokenRefs(true).numRows(), 0);
+        assertEquals(BHDict.findTagAnnotation(source).getRef("laterRef"), HRef.make("C.testFolder.later"));
+    }
+
+    private HGrid callBrokenRefs(boolean repair)
+    {
+        HDictBuilder hd = new HDictBuilder();
+        hd.add(FUNCTION_OP_ARG_NAME, HStr.make("brokenRefs"));
+        if (repair) hd.add("repair", HBool.TRUE);
+        return client.call(EXTENDED_OP_NAME, HGridBuilder.dictToGrid(hd.toDict()));
+    }
+
     public void testAddEquips()
     {
         HStr id = HStr.make("[C.testFolder]");
@@ -926,6 +1158,29 @@ public class BHaystackClientTest extends BNHaystackStationTestBase
     }
 */
 
+    public void testWatchSubByNavUri()
+    {
+        String uri = "sep:/SiteA/EquipA/sineWave1";
+        HRef expected = client.call("read", makeIdGrid(uri)).row(0).id();
+
+        // rows may give a nav uri instead of an id, as with the standard op
+        HDict meta = new HDictBuilder()
+            .add("watchDis", "byNavUri")
+            .add("lease", HNum.make(1, "min"))
+            .toDict();
+        HGrid req = HGridBuilder.dictsToGrid(meta, new HDict[] {
+            new HDictBuilder().add("id", HUri.make(uri)).toDict() });
+        HGrid sub = client.call("watchSub", req);
+        assertEquals(sub.numRows(), 1);
+        assertEquals(sub.row(0).id(), expected);
+
+        HDict close = new HDictBuilder()
+            .add("watchId", sub.meta().getStr("watchId"))
+            .add("close")
+            .toDict();
+        client.call("watchUnsub", HGridBuilder.dictsToGrid(close, new HDict[0]));
+    }
+
 ////////////////////////////////////////////////////////////////
 // Utils
 ////////////////////////////////////////////////////////////////
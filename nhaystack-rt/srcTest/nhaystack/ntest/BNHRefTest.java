@@ -0,0 +1,88 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.ntest;
+
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BajaRuntimeException;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+import javax.baja.test.BTestNg;
+
+import nhaystack.NHRef;
+import org.projecthaystack.HRef;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@NiagaraType
+@Test
+public class BNHRefTest extends BTestNg
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BNHRefTest.class);
+
+    public void testMakeFromHRef()
+    {
+        HRef ref = HRef.make("S.SiteA.EquipA.point1");
+        NHRef nh = NHRef.make(ref);
+        Assert.assertSame(nh.getHRef(), ref);
+        Assert.assertSame(nh.getSpace(), NHRef.SEP);
+        Assert.assertEquals(nh.getPath(), "SiteA.EquipA.point1");
+
+        nh = NHRef.make(HRef.make("h.L2hpc3Rvcnk"));
+        Assert.assertSame(nh.getSpace(), NHRef.HIS_BASE64);
+        Assert.assertEquals(nh.getPath(), "L2hpc3Rvcnk");
+
+        Assert.assertEquals(NHRef.make(NHRef.COMP, "Drivers.point"), NHRef.make(HRef.make("C.Drivers.point")));
+    }
+
+    public void testMakeDropsDis()
+    {
+        NHRef nh = NHRef.make(HRef.make("C.Drivers.point", "From a client"));
+        Assert.assertNull(nh.getHRef().dis);
+        Assert.assertEquals(nh.getHRef().val, "C.Drivers.point");
+    }
+
+    @Test(expectedExceptions = BajaRuntimeException.class)
+    public void testNoSpace()
+    {
+        NHRef.make(HRef.make("Drivers"));
+    }
+
+    @Test(expectedExceptions = BajaRuntimeException.class)
+    public void testInvalidSpace()
+    {
+        NHRef.make(HRef.make("X.Drivers.point"));
+    }
+
+    @Test(expectedExceptions = BajaRuntimeException.class)
+    public void testLongSpace()
+    {
+        NHRef.make("CC", "Drivers.point");
+    }
+
+    public void testHRefWithDis()
+    {
+        NHRef nh = NHRef.make(NHRef.COMP, "Drivers.point");
+        HRef a = nh.getHRef("Point");
+        Assert.assertEquals(a.val, "C.Drivers.point");
+        Assert.assertEquals(a.dis, "Point");
+        Assert.assertSame(nh.getHRef("Point"), a);
+
+        HRef b = nh.getHRef("Renamed");
+        Assert.assertEquals(b.dis, "Renamed");
+        Assert.assertEquals(b, a);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void testHRefWithNullDis()
+    {
+        NHRef.make(NHRef.COMP, "Drivers.point").getHRef(null);
+    }
+}
@@ -0,0 +1,175 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.ntest.helper;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+  * BenchmarkRunner measures the throughput and allocation rate of an
+  * operation, in the manner of a JMH throughput benchmark: a number of
+  * timed warmup iterations whose results are discarded, followed by a
+  * number of timed measurement iterations.
+  * <p>
+  * The operations being measured need a running station, so they are
+  * run in the station's own JVM rather than in forked JVMs.  Allocation
+  * is measured with the HotSpot per-thread allocation counter, so the
+  * operation must do its work on the calling thread.
+  */
+public final class BenchmarkRunner
+{
+    public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis)
+    {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    /**
+      * Make a runner configured from the "nhaystack.benchmark.warmup",
+      * "nhaystack.benchmark.iterations" and "nhaystack.benchmark.millis"
+      * system properties.
+      */
+    public static BenchmarkRunner fromSystemProperties()
+    {
+        return new BenchmarkRunner(
+            Integer.getInteger("nhaystack.benchmark.warmup", 3),
+            Integer.getInteger("nhaystack.benchmark.iterations", 5),
+            Long.getLong("nhaystack.benchmark.millis", 2000L));
+    }
+
+    /**
+      * An operation to benchmark.  Each call performs some number
+      * of operations, and returns that number.
+      */
+    @FunctionalInterface
+    public interface Op
+    {
+        int run() throws Exception;
+    }
+
+    /**
+      * Benchmark the operation, record the result, and return it.
+      */
+    public Result run(String name, Op op) throws Exception
+    {
+        for (int i = 0; i < warmupIterations; i++)
+            iteration(op);
+
+        long ops = 0;
+        long nanos = 0;
+        long bytes = 0;
+        for (int i = 0; i < measurementIterations; i++)
+        {
+            long[] it = iteration(op);
+            ops += it[0];
+            nanos += it[1];
+            bytes += it[2];
+        }
+
+        Result result = new Result(name, ops, nanos, bytes);
+        results.add(result);
+        return result;
+    }
+
+    /**
+      * Run the operation repeatedly for one iteration, and return the
+      * number of operations, the elapsed nanos and the allocated bytes.
+      */
+    private long[] iteration(Op op) throws Exception
+    {
+        long deadline = System.nanoTime() + iterationMillis * 1000000L;
+        long ops = 0;
+
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        long now;
+        do
+        {
+            ops += op.run();
+            now = System.nanoTime();
+        }
+        while (now < deadline);
+
+        return new long[] { ops, now - start, allocatedBytes() - bytes };
+    }
+
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+      * Return a table of all the results so far.
+      */
+    public String report()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-40s %14s %14s %16s%n",
+            "Benchmark", "ops/s", "us/op", "bytes/op"));
+        for (Result r : results)
+        {
+            sb.append(String.format(Locale.US, "%-40s %14.1f %14.2f %16.0f%n",
+                r.name, r.opsPerSecond(), r.microsPerOp(), r.bytesPerOp()));
+        }
+        return sb.toString();
+    }
+
+////////////////////////////////////////////////////////////////
+// Result
+////////////////////////////////////////////////////////////////
+
+    public static final class Result
+    {
+        Result(String name, long ops, long nanos, long bytes)
+        {
+            this.name = name;
+            this.ops = ops;
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        public double opsPerSecond()
+        {
+            return nanos == 0 ? 0 : ops * 1e9 / nanos;
+        }
+
+        public double microsPerOp()
+        {
+            return ops == 0 ? 0 : nanos / 1e3 / ops;
+        }
+
+        public double bytesPerOp()
+        {
+            return ops == 0 ? 0 : (double) bytes / ops;
+        }
+
+        public final String name;
+        public final long ops;
+        public final long nanos;
+        public final long bytes;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationMillis;
+    private final List<Result> results = new ArrayList<>();
+}
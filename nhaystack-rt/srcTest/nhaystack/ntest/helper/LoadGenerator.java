@@ -0,0 +1,314 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.ntest.helper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.projecthaystack.client.HClient;
+
+/**
+  * LoadGenerator drives haystack requests at a station from a number
+  * of client threads, each of which sends requests at a fixed rate.
+  * <p>
+  * Latencies are measured from the time that each request was due to
+  * be sent, rather than from the time it was actually sent, so that a
+  * server which falls behind is charged for the requests that queue up
+  * behind a slow one.  While a phase runs, the heap usage and thread
+  * count of the JVM are sampled, and their peaks are reported along
+  * with the latency percentiles of each op.
+  */
+public final class LoadGenerator
+{
+    public LoadGenerator(Supplier<HClient> clients)
+    {
+        this.clients = clients;
+    }
+
+    /**
+      * An operation that a client thread performs repeatedly.  Each
+      * thread makes its own instance, so an op can keep per-thread
+      * state such as an open watch.
+      */
+    public interface ClientOp
+    {
+        void run(HClient client) throws Exception;
+
+        default void close(HClient client) throws Exception {}
+    }
+
+    /**
+      * The name of an op, the total rate in requests per second to
+      * send it at, and the number of threads to send it from.
+      */
+    public static final class OpSpec
+    {
+        public OpSpec(String name, double rate, int threads, Supplier<ClientOp> factory)
+        {
+            this.name = name;
+            this.rate = rate;
+            this.threads = threads;
+            this.factory = factory;
+        }
+
+        public String getName() { return name; }
+
+        final String name;
+        final double rate;
+        final int threads;
+        final Supplier<ClientOp> factory;
+    }
+
+////////////////////////////////////////////////////////////////
+// run
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Send all of the ops at the same time for the given duration,
+      * and return the results.
+      */
+    public Phase run(String phaseName, List<OpSpec> specs, long durationMillis) throws InterruptedException
+    {
+        Phase phase = new Phase(phaseName);
+        List<Thread> threads = new ArrayList<>();
+
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+
+        for (OpSpec spec : specs)
+        {
+            Recorder recorder = new Recorder(spec.name);
+            phase.recorders.add(recorder);
+
+            long interval = (long) (spec.threads * 1e9 / spec.rate);
+            for (int i = 0; i < spec.threads; i++)
+            {
+                // stagger the threads so that their requests are spread out
+                long first = start + interval * i / spec.threads;
+                Thread t = new Thread(
+                    () -> drive(spec, recorder, first, interval, end),
+                    "nhaystack:load:" + spec.name + ':' + i);
+                t.setDaemon(true);
+                threads.add(t);
+            }
+        }
+
+        Sampler sampler = new Sampler(phase);
+        sampler.start();
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        sampler.interrupt();
+        sampler.join();
+
+        phase.elapsedNanos = System.nanoTime() - start;
+        phases.add(phase);
+        return phase;
+    }
+
+    private void drive(OpSpec spec, Recorder recorder, long first, long interval, long end)
+    {
+        HClient client = clients.get();
+        ClientOp op = spec.factory.get();
+        try
+        {
+            long due = first;
+            while (due < end)
+            {
+                long wait = due - System.nanoTime();
+                if (wait > 0)
+                    TimeUnit.NANOSECONDS.sleep(wait);
+
+                try
+                {
+                    op.run(client);
+                    recorder.record(System.nanoTime() - due, false);
+                }
+                catch (Exception e)
+                {
+                    recorder.record(System.nanoTime() - due, true);
+                }
+                due += interval;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            try
+            {
+                op.close(client);
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+      * Return a table of the results of every phase so far.
+      */
+    public String report()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : phases)
+            sb.append(phase.report()).append('\n');
+        return sb.toString();
+    }
+
+////////////////////////////////////////////////////////////////
+// Phase
+////////////////////////////////////////////////////////////////
+
+    public static final class Phase
+    {
+        Phase(String name)
+        {
+            this.name = name;
+        }
+
+        public List<Recorder> getRecorders() { return recorders; }
+        public long getPeakHeapUsed() { return peakHeapUsed; }
+        public int getPeakThreadCount() { return peakThreadCount; }
+
+        public String report()
+        {
+            double seconds = elapsedNanos / 1e9;
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US,
+                "phase %s: %.1f s, peak heap %d MB, peak threads %d%n",
+                name, seconds, peakHeapUsed >> 20, peakThreadCount));
+            sb.append(String.format(Locale.US, "  %-20s %10s %8s %10s %10s %10s %10s %10s%n",
+                "op", "req/s", "errors", "p50 ms", "p95 ms", "p99 ms", "max ms", "count"));
+            for (Recorder r : recorders)
+            {
+                long[] sorted = r.sorted();
+                sb.append(String.format(Locale.US, "  %-20s %10.1f %8d %10.2f %10.2f %10.2f %10.2f %10d%n",
+                    r.name, sorted.length / seconds, r.errors.get(),
+                    millis(sorted, 0.50), millis(sorted, 0.95), millis(sorted, 0.99),
+                    millis(sorted, 1.0), sorted.length));
+            }
+            return sb.toString();
+        }
+
+        private static double millis(long[] sorted, double quantile)
+        {
+            if (sorted.length == 0) return 0;
+            int i = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(i, 0)] / 1e6;
+        }
+
+        final String name;
+        final List<Recorder> recorders = new ArrayList<>();
+        volatile long peakHeapUsed;
+        volatile int peakThreadCount;
+        long elapsedNanos;
+    }
+
+////////////////////////////////////////////////////////////////
+// Recorder
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Records the latency of every request of one op.
+      */
+    public static final class Recorder
+    {
+        Recorder(String name)
+        {
+            this.name = name;
+        }
+
+        synchronized void record(long nanos, boolean error)
+        {
+            if (error) errors.incrementAndGet();
+
+            if (count == samples.length)
+                samples = Arrays.copyOf(samples, samples.length * 2);
+            samples[count++] = nanos;
+        }
+
+        /**
+          * Return the latencies in nanos, in ascending order.
+          */
+        public synchronized long[] sorted()
+        {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        public long getErrors() { return errors.get(); }
+
+        public final String name;
+        private final AtomicLong errors = new AtomicLong();
+        private long[] samples = new long[1024];
+        private int count;
+    }
+
+////////////////////////////////////////////////////////////////
+// Sampler
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Samples the heap usage and thread count of the JVM
+      * until it is interrupted.
+      */
+    private static final class Sampler extends Thread
+    {
+        Sampler(Phase phase)
+        {
+            super("nhaystack:load:sampler");
+            setDaemon(true);
+            this.phase = phase;
+        }
+
+        @Override
+        public void run()
+        {
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            while (!isInterrupted())
+            {
+                phase.peakHeapUsed = Math.max(phase.peakHeapUsed, memory.getHeapMemoryUsage().getUsed());
+                phase.peakThreadCount = Math.max(phase.peakThreadCount, threads.getThreadCount());
+                try
+                {
+                    Thread.sleep(SAMPLE_MILLIS);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+            }
+        }
+
+        private final Phase phase;
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final long SAMPLE_MILLIS = 100;
+
+    private final Supplier<HClient> clients;
+    private final List<Phase> phases = new ArrayList<>();
+}
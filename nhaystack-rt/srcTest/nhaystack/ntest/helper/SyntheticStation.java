@@ -0,0 +1,208 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.ntest.helper;
+
+import static nhaystack.ntest.helper.NHaystackTestUtil.AIR_ID;
+import static nhaystack.ntest.helper.NHaystackTestUtil.DISCHARGE_ID;
+import static nhaystack.ntest.helper.NHaystackTestUtil.SENSOR_ID;
+import static nhaystack.ntest.helper.NHaystackTestUtil.TEMP_ID;
+import static nhaystack.ntest.helper.NHaystackTestUtil.addChild;
+import static nhaystack.ntest.helper.NHaystackTestUtil.addEquipRefRelation;
+import static nhaystack.ntest.helper.NHaystackTestUtil.addFolder;
+import static nhaystack.ntest.helper.NHaystackTestUtil.addSiteRefRelation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.baja.control.BBooleanWritable;
+import javax.baja.control.BControlPoint;
+import javax.baja.control.BEnumWritable;
+import javax.baja.control.BNumericWritable;
+import javax.baja.history.BHistoryConfig;
+import javax.baja.history.BHistoryId;
+import javax.baja.history.BIHistory;
+import javax.baja.history.BNumericTrendRecord;
+import javax.baja.history.HistorySpaceConnection;
+import javax.baja.history.db.BHistoryDatabase;
+import javax.baja.status.BStatus;
+import javax.baja.status.BStatusNumeric;
+import javax.baja.sys.BAbsTime;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BEnumRange;
+import javax.baja.sys.BFacets;
+import javax.baja.sys.BMarker;
+import javax.baja.sys.Sys;
+import javax.baja.units.BUnit;
+import javax.baja.util.BFolder;
+import javax.baja.util.BTypeSpec;
+
+import nhaystack.site.BHEquip;
+import nhaystack.site.BHSite;
+
+/**
+  * SyntheticStation generates a site/equip/point hierarchy of a given
+  * size, for benchmarks and load tests.  The points are a mix of
+  * numeric, boolean and enum writables, and are tagged and related to
+  * their equips with Niagara tags and relations, the same way that
+  * a hand-tagged station would be.
+  * <p>
+  * The generated tree is always the same for the same parameters, so
+  * that runs can be compared with each other.
+  */
+public final class SyntheticStation
+{
+    public SyntheticStation(int numPoints)
+    {
+        this(numPoints, 25, 20);
+    }
+
+    public SyntheticStation(int numPoints, int equipsPerSite, int pointsPerEquip)
+    {
+        this.numPoints = numPoints;
+        this.equipsPerSite = equipsPerSite;
+        this.pointsPerEquip = pointsPerEquip;
+    }
+
+    /**
+      * Make the number of points that is given by the system property,
+      * or the default number if it is not set.
+      */
+    public static SyntheticStation fromSystemProperty(String name, int def)
+    {
+        return new SyntheticStation(Integer.getInteger(name, def));
+    }
+
+////////////////////////////////////////////////////////////////
+// components
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Add the hierarchy underneath a folder with the given name.
+      */
+    public BFolder build(String name, BComponent parent)
+    {
+        BFolder root = addFolder(name, parent);
+
+        int p = 0;
+        for (int s = 0; p < numPoints; s++)
+        {
+            BFolder siteFolder = addFolder("site" + s, root);
+            BHSite site = addChild("site", new BHSite(), siteFolder);
+            sites.add(site);
+
+            for (int e = 0; e < equipsPerSite && p < numPoints; e++)
+            {
+                BFolder equipFolder = addFolder("equip" + e, siteFolder);
+                BHEquip equip = addChild("equip", new BHEquip(), equipFolder);
+                addSiteRefRelation(equip, site);
+                equips.add(equip);
+
+                for (int i = 0; i < pointsPerEquip && p < numPoints; i++, p++)
+                {
+                    BControlPoint point = addPoint("point" + i, p, equipFolder);
+                    addEquipRefRelation(point, equip);
+                    points.add(point);
+                }
+            }
+        }
+
+        return root;
+    }
+
+    private static BControlPoint addPoint(String name, int n, BComponent parent)
+    {
+        switch (n % 10)
+        {
+            case 0: case 1: case 2:
+                BBooleanWritable bool = addChild(name, new BBooleanWritable(), parent);
+                bool.setFacets(BFacets.makeBoolean("on", "off"));
+                return bool;
+
+            case 3:
+                BEnumWritable en = addChild(name, new BEnumWritable(), parent);
+                en.setFacets(BFacets.makeEnum(ENUM_RANGE));
+                return en;
+
+            default:
+                BNumericWritable num = addChild(name, new BNumericWritable(), parent);
+                num.setFacets(BFacets.makeNumeric(BUnit.getUnit("fahrenheit"), 1));
+                num.tags().set(DISCHARGE_ID, BMarker.MARKER);
+                num.tags().set(AIR_ID, BMarker.MARKER);
+                num.tags().set(TEMP_ID, BMarker.MARKER);
+                num.tags().set(SENSOR_ID, BMarker.MARKER);
+                num.setFallback(new BStatusNumeric(n % 100));
+                return num;
+        }
+    }
+
+////////////////////////////////////////////////////////////////
+// histories
+////////////////////////////////////////////////////////////////
+
+    /**
+      * Create numeric histories in the history database, each with
+      * the given number of records at the given interval, ending now.
+      */
+    public List<BHistoryConfig> addHistories(
+        BHistoryDatabase db, int numHistories, int numRecords, long intervalMillis)
+    {
+        Random random = new Random(numHistories);
+        String station = Sys.getStation().getStationName();
+        long end = BAbsTime.now().getMillis();
+
+        List<BHistoryConfig> configs = new ArrayList<>(numHistories);
+        try (HistorySpaceConnection conn = db.getConnection(null))
+        {
+            for (int h = 0; h < numHistories; h++)
+            {
+                BHistoryConfig cfg = new BHistoryConfig(
+                    BHistoryId.make(station, "synthetic" + h),
+                    BTypeSpec.make(BNumericTrendRecord.TYPE));
+                cfg.setValueFacets(BFacets.makeNumeric(BUnit.getUnit("kilowatt hour"), 1));
+                conn.createHistory(cfg);
+
+                BIHistory history = conn.getHistory(cfg.getId());
+                double val = 0;
+                for (int r = 0; r < numRecords; r++)
+                {
+                    val += random.nextDouble();
+                    BNumericTrendRecord rec = new BNumericTrendRecord();
+                    rec.set(BAbsTime.make(end - (numRecords - r) * intervalMillis), val, BStatus.ok);
+                    conn.append(history, rec);
+                }
+                configs.add(history.getConfig());
+            }
+        }
+        return configs;
+    }
+
+////////////////////////////////////////////////////////////////
+// access
+////////////////////////////////////////////////////////////////
+
+    public int getNumPoints() { return numPoints; }
+    public List<BHSite> getSites() { return sites; }
+    public List<BHEquip> getEquips() { return equips; }
+    public List<BControlPoint> getPoints() { return points; }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final BEnumRange ENUM_RANGE =
+        BEnumRange.make(new String[] { "off", "low", "medium", "high" });
+
+    private final int numPoints;
+    private final int equipsPerSite;
+    private final int pointsPerEquip;
+
+    private final List<BHSite> sites = new ArrayList<>();
+    private final List<BHEquip> equips = new ArrayList<>();
+    private final List<BControlPoint> points = new ArrayList<>();
+}
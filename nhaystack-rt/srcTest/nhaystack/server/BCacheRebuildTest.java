@@ -0,0 +1,90 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import nhaystack.ntest.helper.SyntheticStation;
+import org.projecthaystack.HGrid;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+@NiagaraType
+@Test
+public class BCacheRebuildTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BCacheRebuildTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+        new SyntheticStation(60, 2, 10).build("synthetic", station);
+    }
+
+    @AfterMethod
+    public void resetThreads()
+    {
+        nhaystackService.setCacheRebuildThreads(0);
+    }
+
+    public void testParallelMatchesSequential()
+    {
+        BNHaystackStats stats = nhaystackService.getStats();
+
+        nhaystackService.setCacheRebuildThreads(1);
+        rebuildCache();
+        Assert.assertEquals(stats.getLastCacheRebuildThreads(), 1);
+        List<String> sequential = describeCache();
+        HGrid sequentialPoints = nhServer.readAll("point");
+
+        nhaystackService.setCacheRebuildThreads(4);
+        rebuildCache();
+        Assert.assertEquals(stats.getLastCacheRebuildThreads(), 4);
+        Assert.assertEquals(describeCache(), sequential);
+
+        HGrid parallelPoints = nhServer.readAll("point");
+        Assert.assertEquals(parallelPoints.numRows(), sequentialPoints.numRows());
+        for (int i = 0; i < parallelPoints.numRows(); i++)
+            Assert.assertEquals(parallelPoints.row(i).id(), sequentialPoints.row(i).id());
+
+        Assert.assertEquals(stats.getNumSites(), 3);
+        Assert.assertEquals(stats.getNumEquips(), 6);
+        Assert.assertTrue(stats.getNumPoints() >= 60);
+    }
+
+    /**
+      * Describe the sites, equips and equip points of the cache, in the
+      * order that the cache returns them.
+      */
+    private List<String> describeCache()
+    {
+        Cache cache = nhServer.getCache();
+        List<String> lines = new ArrayList<>();
+        for (BComponent site : cache.getAllSites())
+            lines.add("site " + site.getSlotPath());
+        for (BComponent equip : cache.getAllEquips())
+        {
+            lines.add("equip " + equip.getSlotPath());
+            for (BComponent point : cache.getEquipPoints(equip))
+                lines.add("  point " + point.getSlotPath());
+        }
+        return lines;
+    }
+}
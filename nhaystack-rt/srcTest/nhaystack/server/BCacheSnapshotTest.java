@@ -0,0 +1,90 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import java.io.File;
+import javax.baja.control.BNumericWritable;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+
+import nhaystack.BHDict;
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import nhaystack.ntest.helper.SyntheticStation;
+import org.projecthaystack.HDictBuilder;
+import org.projecthaystack.HRef;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+@NiagaraType
+@Test
+public class BCacheSnapshotTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BCacheSnapshotTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+        new SyntheticStation(10).build("synthetic", station);
+
+        // a point whose equipRef and siteRef point at nothing
+        dangling = new BNumericWritable();
+        dangling.add("haystack", BHDict.make(new HDictBuilder()
+            .add("point")
+            .add("equipRef", HRef.make("C.nowhere.equip"))
+            .add("siteRef", HRef.make("C.nowhere.site"))
+            .toDict()));
+        station.add("dangling", dangling);
+    }
+
+    @AfterMethod
+    public void disableSnapshot()
+    {
+        nhaystackService.setCacheSnapshotEnabled(false);
+    }
+
+    public void testDanglingEquipRef()
+    {
+        File file = new File(Sys.getStationHome(), "nhaystack/cache.dat");
+        file.delete();
+
+        nhaystackService.setCacheSnapshotEnabled(true);
+        rebuildCache();
+
+        Cache cache = nhServer.getCache();
+        Assert.assertTrue(cache.initialized());
+        Assert.assertFalse(cache.currentState().equipPoints.containsKey(null));
+        Assert.assertTrue(file.exists());
+
+        // the snapshot can be loaded again
+        Assert.assertTrue(cache.loadSnapshot(nhaystackService.getStats()));
+        HRef id = nhServer.getTagManager().makeComponentRef(dangling).getHRef();
+        Assert.assertNotNull(nhServer.readById(id));
+    }
+
+    public void testSaveOnStop()
+    {
+        File file = new File(Sys.getStationHome(), "nhaystack/cache.dat");
+        file.delete();
+
+        nhaystackService.setCacheSnapshotEnabled(true);
+        rebuildCache();
+        file.delete();
+
+        nhServer.getCache().saveSnapshot();
+        Assert.assertTrue(file.exists());
+    }
+
+    private BNumericWritable dangling;
+}
@@ -0,0 +1,108 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import javax.baja.control.BControlPoint;
+import javax.baja.control.BNumericWritable;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+import javax.baja.util.BFolder;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import nhaystack.ntest.helper.SyntheticStation;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HRef;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@NiagaraType
+@Test
+public class BComponentIndexTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BComponentIndexTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+        synthetic = new SyntheticStation(10);
+        synthetic.build("synthetic", station);
+        station.add("indexTest", new BFolder());
+    }
+
+    public void testBatchLookup()
+    {
+        BControlPoint a = synthetic.getPoints().get(0);
+        BControlPoint b = synthetic.getPoints().get(5);
+        HRef[] ids = new HRef[]
+        {
+            TagManager.makeSlotPathRef(a).getHRef(),
+            TagManager.makeSlotPathRef(b).getHRef(),
+            HRef.make("C.synthetic.missing"),
+        };
+
+        // twice, so that the second batch is answered from the index
+        for (int n = 0; n < 2; n++)
+        {
+            BComponent[] comps = nhServer.getTagManager().lookupComponents(ids);
+            Assert.assertEquals(comps.length, 3);
+            Assert.assertSame(comps[0], a);
+            Assert.assertSame(comps[1], b);
+            Assert.assertNull(comps[2]);
+        }
+
+        HGrid grid = nhServer.onReadByIds(ids);
+        Assert.assertEquals(grid.numRows(), 3);
+        Assert.assertTrue(grid.row(0).has("id"));
+        Assert.assertTrue(grid.row(1).has("id"));
+        Assert.assertTrue(grid.row(2).missing("id"));
+    }
+
+    public void testRenamedComponentIsResolvedAgain()
+    {
+        BFolder folder = (BFolder) Sys.getStation().get("indexTest");
+        BNumericWritable point = new BNumericWritable();
+        folder.add("before", point);
+        try
+        {
+            HRef before = TagManager.makeSlotPathRef(point).getHRef();
+            Assert.assertSame(nhServer.getTagManager().lookupComponent(before), point);
+
+            folder.rename(folder.getProperty("before"), "after");
+            Assert.assertNull(nhServer.getTagManager().lookupComponents(new HRef[] { before })[0]);
+
+            HRef after = TagManager.makeSlotPathRef(point).getHRef();
+            Assert.assertSame(nhServer.getTagManager().lookupComponent(after), point);
+        }
+        finally
+        {
+            folder.remove(point);
+        }
+    }
+
+    public void testRemovedComponentIsNotReturned()
+    {
+        BFolder folder = (BFolder) Sys.getStation().get("indexTest");
+        BNumericWritable point = new BNumericWritable();
+        folder.add("removed", point);
+
+        HRef id = TagManager.makeSlotPathRef(point).getHRef();
+        Assert.assertSame(nhServer.getTagManager().lookupComponent(id), point);
+
+        folder.remove(point);
+        Assert.assertNull(nhServer.getTagManager().lookupComponents(new HRef[] { id })[0]);
+    }
+
+    private SyntheticStation synthetic;
+}
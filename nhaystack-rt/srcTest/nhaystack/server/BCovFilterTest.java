@@ -0,0 +1,204 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import javax.baja.control.BControlPoint;
+import javax.baja.control.BNumericWritable;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.status.BStatus;
+import javax.baja.status.BStatusNumeric;
+import javax.baja.sys.BDouble;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+import javax.baja.tag.Id;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import nhaystack.ntest.helper.SyntheticStation;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HDictBuilder;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HRef;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@NiagaraType
+@Test
+public class BCovFilterTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BCovFilterTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+        synthetic = new SyntheticStation(10);
+        synthetic.build("synthetic", station);
+    }
+
+    public void testDeadband() throws Exception
+    {
+        BNumericWritable point = numericPoint(4);
+        point.setFallback(new BStatusNumeric(0));
+        NHWatch watch = openWatch(new HDictBuilder().add("covDeadband", 5).toDict(), point);
+        long stats = nhaystackService.getStats().getWatchCovSuppressed();
+        try
+        {
+            change(point, 2);
+            Assert.assertEquals(watch.pollChanges().numRows(), 0);
+
+            change(point, 6);
+            assertCurVal(watch.pollChanges(), 6);
+
+            // the deadband is from the last value that was reported
+            change(point, 9);
+            Assert.assertEquals(watch.pollChanges().numRows(), 0);
+
+            Assert.assertEquals(watch.covSuppressed(), 2);
+            Assert.assertEquals(nhaystackService.getStats().getWatchCovSuppressed(), stats + 2);
+        }
+        finally
+        {
+            watch.close();
+        }
+    }
+
+    public void testCovIncrementTag() throws Exception
+    {
+        BNumericWritable point = numericPoint(5);
+        point.setFallback(new BStatusNumeric(0));
+        point.tags().set(Id.newId("hs", "covIncrement"), BDouble.make(10));
+
+        // without any options, every change is reported
+        NHWatch watch = openWatch(HDict.EMPTY, point);
+        try
+        {
+            change(point, 5);
+            assertCurVal(watch.pollChanges(), 5);
+        }
+        finally
+        {
+            watch.close();
+        }
+
+        // the point's increment is used once the watch opts in
+        change(point, 0);
+        watch = openWatch(new HDictBuilder().add("covPointIncrement").toDict(), point);
+        try
+        {
+            change(point, 5);
+            Assert.assertEquals(watch.pollChanges().numRows(), 0);
+
+            change(point, 10);
+            assertCurVal(watch.pollChanges(), 10);
+        }
+        finally
+        {
+            watch.close();
+            point.tags().removeAll(Id.newId("hs", "covIncrement"));
+        }
+    }
+
+    public void testStatusOnly() throws Exception
+    {
+        BNumericWritable point = numericPoint(6);
+        point.setFallback(new BStatusNumeric(0));
+        NHWatch watch = openWatch(new HDictBuilder().add("covStatusOnly").toDict(), point);
+        try
+        {
+            change(point, 50);
+            Assert.assertEquals(watch.pollChanges().numRows(), 0);
+
+            point.setFallback(new BStatusNumeric(50, BStatus.fault));
+            Thread.sleep(SETTLE);
+            Assert.assertEquals(watch.pollChanges().numRows(), 1);
+        }
+        finally
+        {
+            watch.close();
+        }
+    }
+
+    public void testMinInterval() throws Exception
+    {
+        BNumericWritable point = numericPoint(7);
+        point.setFallback(new BStatusNumeric(0));
+        HDict options = new HDictBuilder().add("covMinInterval", HNum.make(2, "s")).toDict();
+        NHWatch watch = openWatch(options, point);
+        try
+        {
+            change(point, 1);
+            assertCurVal(watch.pollChanges(), 1);
+
+            // held back, and then replaced by the change after it
+            change(point, 2);
+            change(point, 3);
+            Assert.assertEquals(watch.pollChanges().numRows(), 0);
+
+            Thread.sleep(2000);
+            assertCurVal(watch.pollChanges(), 3);
+            Assert.assertEquals(watch.covSuppressed(), 1);
+        }
+        finally
+        {
+            watch.close();
+        }
+    }
+
+    public void testInvalidOptions()
+    {
+        try
+        {
+            CovFilter.make(new HDictBuilder().add("covDeadband", "5").toDict());
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+
+        Assert.assertSame(CovFilter.make(HDict.EMPTY), CovFilter.NONE);
+    }
+
+    private NHWatch openWatch(HDict options, BControlPoint point) throws Exception
+    {
+        Thread.sleep(SETTLE);
+
+        NHWatch watch = (NHWatch) nhServer.onWatchOpen("cov", HNum.make(1, "min"));
+        watch.setCovFilter(CovFilter.make(options));
+        HRef id = nhServer.getTagManager().makeComponentRef(point).getHRef();
+        Assert.assertEquals(watch.sub(new HRef[] { id }, true).numRows(), 1);
+        return watch;
+    }
+
+    private static void change(BNumericWritable point, double value) throws Exception
+    {
+        point.setFallback(new BStatusNumeric(value));
+        Thread.sleep(SETTLE);
+    }
+
+    private static void assertCurVal(HGrid grid, double expected)
+    {
+        Assert.assertEquals(grid.numRows(), 1);
+        Assert.assertEquals(((HNum) grid.row(0).get("curVal")).val, expected);
+    }
+
+    private BNumericWritable numericPoint(int index)
+    {
+        return (BNumericWritable) synthetic.getPoints().get(index);
+    }
+
+    // how long to wait for a change to reach the watch
+    private static final long SETTLE = 200;
+
+    private SyntheticStation synthetic;
+}
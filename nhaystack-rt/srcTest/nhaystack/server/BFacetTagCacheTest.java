@@ -0,0 +1,126 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import javax.baja.control.BBooleanWritable;
+import javax.baja.control.BEnumWritable;
+import javax.baja.control.BNumericWritable;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BEnumRange;
+import javax.baja.sys.BFacets;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+import javax.baja.units.BUnit;
+import javax.baja.util.BFolder;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import nhaystack.res.Resources;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HNum;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@NiagaraType
+@Test
+public class BFacetTagCacheTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BFacetTagCacheTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+
+        BFolder folder = new BFolder();
+        station.add("facetTest", folder);
+
+        BFacets facets = BFacets.makeNumeric(BUnit.getUnit("fahrenheit"), 1, 0, 100);
+        for (String name : new String[] { "numA", "numB" })
+        {
+            BNumericWritable num = new BNumericWritable();
+            num.setFacets(facets);
+            folder.add(name, num);
+        }
+
+        BBooleanWritable bool = new BBooleanWritable();
+        bool.setFacets(BFacets.makeBoolean("on", "off"));
+        folder.add("bool", bool);
+
+        BEnumWritable en = new BEnumWritable();
+        en.setFacets(BFacets.makeEnum(BEnumRange.make(new String[] { "low$20speed", "high" })));
+        folder.add("enum", en);
+    }
+
+    public void testSharedFacetTags()
+    {
+        BNumericWritable numA = (BNumericWritable) folder().get("numA");
+        BNumericWritable numB = (BNumericWritable) folder().get("numB");
+        HDict a = nhServer.getTagManager().createTags(numA);
+        HDict b = nhServer.getTagManager().createTags(numB);
+
+        Assert.assertEquals(a.getStr("unit"), Resources.fromBajaUnit(BUnit.getUnit("fahrenheit")).symbol);
+        Assert.assertEquals(a.get("minVal"), HNum.make(0));
+        Assert.assertEquals(a.get("maxVal"), HNum.make(100));
+        Assert.assertEquals(a.get("precision"), HNum.make(1));
+        Assert.assertEquals(b.getStr("unit"), a.getStr("unit"));
+
+        // points with the same actions share one serialized grid
+        Assert.assertNotNull(a.get("actions"));
+        Assert.assertSame(b.get("actions"), a.get("actions"));
+
+        // changing the facets of one point does not change the other
+        numB.setFacets(BFacets.makeNumeric(BUnit.getUnit("celsius"), 2));
+        try
+        {
+            b = nhServer.getTagManager().createTags(numB);
+            Assert.assertEquals(b.getStr("unit"), Resources.fromBajaUnit(BUnit.getUnit("celsius")).symbol);
+            Assert.assertEquals(b.get("precision"), HNum.make(2));
+            Assert.assertTrue(b.missing("minVal"));
+
+            a = nhServer.getTagManager().createTags(numA);
+            Assert.assertEquals(a.getStr("unit"), Resources.fromBajaUnit(BUnit.getUnit("fahrenheit")).symbol);
+        }
+        finally
+        {
+            numB.setFacets(numA.getFacets());
+        }
+    }
+
+    public void testEnumTags()
+    {
+        HDict bool = nhServer.getTagManager().createTags((BComponent) folder().get("bool"));
+        Assert.assertEquals(bool.getStr("enum"), "off,on");
+
+        boolean translate = nhaystackService.getTranslateEnums();
+        try
+        {
+            nhaystackService.setTranslateEnums(false);
+            HDict en = nhServer.getTagManager().createTags((BComponent) folder().get("enum"));
+            Assert.assertEquals(en.getStr("enum"), "low$20speed,high");
+
+            // the entry is remade when translateEnums changes
+            nhaystackService.setTranslateEnums(true);
+            en = nhServer.getTagManager().createTags((BComponent) folder().get("enum"));
+            Assert.assertEquals(en.getStr("enum"), "low speed,high");
+        }
+        finally
+        {
+            nhaystackService.setTranslateEnums(translate);
+        }
+    }
+
+    private static BFolder folder()
+    {
+        return (BFolder) Sys.getStation().get("facetTest");
+    }
+}
@@ -0,0 +1,206 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import javax.baja.history.BCapacity;
+import javax.baja.history.BFullPolicy;
+import javax.baja.history.BHistoryConfig;
+import javax.baja.history.BHistoryId;
+import javax.baja.history.BIHistory;
+import javax.baja.history.BNumericTrendRecord;
+import javax.baja.history.HistorySpaceConnection;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.status.BStatus;
+import javax.baja.sys.BAbsTime;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+import javax.baja.timezone.BTimeZone;
+import javax.baja.util.BTypeSpec;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import org.projecthaystack.HDateTime;
+import org.projecthaystack.HDateTimeRange;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HHisItem;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import com.tridium.testng.TestUtil;
+
+@NiagaraType
+@Test
+public class BHisRollupStoreTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BHisRollupStoreTest.class);
+
+    @AfterMethod
+    public void deleteHistory() throws Exception
+    {
+        nhaystackService.setHisRollupStoreEnabled(false);
+        try (HistorySpaceConnection conn = nhaystackService.getHistoryDb().getConnection(null))
+        {
+            if (conn.getHistory(historyId()) != null)
+                conn.deleteHistory(historyId());
+        }
+    }
+
+    public void testStoreMatchesRawRollup() throws Exception
+    {
+        HDict rec = createHistory();
+        HisRollupStore store = nhServer.getHisRollupStore();
+        store.clear();
+
+        HHisItem[] raw = rollup(rec);
+        Assert.assertEquals(raw.length, 2);
+
+        // the first aligned query builds the aggregates
+        nhaystackService.setHisRollupStoreEnabled(true);
+        assertSameItems(rollup(rec), raw);
+        Assert.assertEquals(store.size(), 1);
+
+        // and the next one is answered from them
+        assertSameItems(rollup(rec), raw);
+        Assert.assertEquals(store.size(), 1);
+    }
+
+    public void testUnalignedRangeIsNotStored() throws Exception
+    {
+        HDict rec = createHistory();
+        HisRollupStore store = nhServer.getHisRollupStore();
+        store.clear();
+        nhaystackService.setHisRollupStoreEnabled(true);
+
+        HDateTimeRange range = HDateTimeRange.make(
+            HDateTime.make(START + 30 * MIN, HTimeZone.UTC),
+            HDateTime.make(START + 2 * DAY, HTimeZone.UTC));
+        nhServer.onHisRollup(rec, range, HNum.make(1, "day"), "sum");
+        Assert.assertEquals(store.size(), 0);
+    }
+
+    public void testDeleteDropsAggregates() throws Exception
+    {
+        HDict rec = createHistory();
+        HisRollupStore store = nhServer.getHisRollupStore();
+        store.clear();
+        nhaystackService.setHisRollupStoreEnabled(true);
+
+        rollup(rec);
+        Assert.assertEquals(store.size(), 1);
+
+        try (HistorySpaceConnection conn = nhaystackService.getHistoryDb().getConnection(null))
+        {
+            conn.deleteHistory(historyId());
+        }
+        TestUtil.waitFor(5, () -> store.size() == 0, "Waiting for the aggregates to be dropped");
+    }
+
+    public void testOverwrittenRecordsAreDropped() throws Exception
+    {
+        // a rolling history which holds a day and a half of hourly records
+        BHistoryConfig cfg = new BHistoryConfig(historyId(), BTypeSpec.make(BNumericTrendRecord.TYPE));
+        cfg.setTimeZone(BTimeZone.UTC);
+        cfg.setCapacity(BCapacity.makeByRecordCount(36));
+        cfg.setFullPolicy(BFullPolicy.roll);
+        try (HistorySpaceConnection conn = nhaystackService.getHistoryDb().getConnection(null))
+        {
+            conn.createHistory(cfg);
+            append(conn, START, START + 36 * HOUR);
+        }
+        TestUtil.waitFor(5,
+            () -> nhServer.getHistoryIndex().visibleConfigs().stream().anyMatch(c -> c.getId().equals(historyId())),
+            "Waiting for the history to be indexed");
+        HDict rec = nhServer.readById(TagManager.makeHistoryRef(cfg));
+
+        HisRollupStore store = nhServer.getHisRollupStore();
+        store.clear();
+        nhaystackService.setHisRollupStoreEnabled(true);
+        rollup(rec);
+        Assert.assertEquals(store.size(), 1);
+
+        // the rest of the second day overwrites the first half of the first
+        try (HistorySpaceConnection conn = nhaystackService.getHistoryDb().getConnection(null))
+        {
+            append(conn, START + 36 * HOUR, START + 2 * DAY);
+        }
+
+        HHisItem[] stored = rollup(rec);
+        nhaystackService.setHisRollupStoreEnabled(false);
+        HHisItem[] raw = rollup(rec);
+        assertSameItems(stored, raw);
+    }
+
+    /**
+      * Create a history with a record of 1 every hour for two days,
+      * and return its record.
+      */
+    private HDict createHistory() throws Exception
+    {
+        BHistoryConfig cfg = new BHistoryConfig(historyId(), BTypeSpec.make(BNumericTrendRecord.TYPE));
+        cfg.setTimeZone(BTimeZone.UTC);
+        cfg.setCapacity(BCapacity.UNLIMITED);
+
+        try (HistorySpaceConnection conn = nhaystackService.getHistoryDb().getConnection(null))
+        {
+            if (conn.getHistory(historyId()) != null)
+                conn.deleteHistory(historyId());
+            conn.createHistory(cfg);
+
+            append(conn, START, START + 2 * DAY);
+        }
+
+        TestUtil.waitFor(5,
+            () -> nhServer.getHistoryIndex().visibleConfigs().stream().anyMatch(c -> c.getId().equals(historyId())),
+            "Waiting for the history to be indexed");
+        return nhServer.readById(TagManager.makeHistoryRef(cfg));
+    }
+
+    /**
+      * Append a record of 1 every hour from start until end.
+      */
+    private static void append(HistorySpaceConnection conn, long start, long end)
+    {
+        BIHistory history = conn.getHistory(historyId());
+        for (long ts = start; ts < end; ts += HOUR)
+            conn.append(history, new BNumericTrendRecord().set(BAbsTime.make(ts, BTimeZone.UTC), 1, BStatus.ok));
+    }
+
+    private HHisItem[] rollup(HDict rec)
+    {
+        HDateTimeRange range = HDateTimeRange.make(
+            HDateTime.make(START, HTimeZone.UTC),
+            HDateTime.make(START + 2 * DAY, HTimeZone.UTC));
+        return nhServer.onHisRollup(rec, range, HNum.make(1, "day"), "sum");
+    }
+
+    private static BHistoryId historyId()
+    {
+        return BHistoryId.make(Sys.getStation().getStationName(), "rollupStoreTest");
+    }
+
+    private static void assertSameItems(HHisItem[] actual, HHisItem[] expected)
+    {
+        Assert.assertEquals(actual.length, expected.length);
+        for (int i = 0; i < actual.length; i++)
+        {
+            Assert.assertEquals(actual[i].ts, expected[i].ts);
+            Assert.assertEquals(actual[i].val, expected[i].val);
+        }
+    }
+
+    private static final long MIN = 60L * 1000L;
+    private static final long HOUR = 60L * MIN;
+    private static final long DAY = 24L * HOUR;
+
+    // midnight on 01 Jan 2020 UTC
+    private static final long START = 1577836800000L;
+}
@@ -0,0 +1,126 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import org.projecthaystack.HBool;
+import org.projecthaystack.HDateTime;
+import org.projecthaystack.HHisItem;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HStr;
+import org.projecthaystack.HTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.*;
+import javax.baja.test.BTestNg;
+
+@NiagaraType
+@Test
+public class BHisRollupTest extends BTestNg
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BHisRollupTest.class);
+
+    private static final HTimeZone NY = HTimeZone.make("New_York");
+    private static final long MIN = 60L * 1000L;
+    private static final long HOUR = 60L * MIN;
+
+    private static long ts(String s)
+    {
+        return HDateTime.make(s).millis();
+    }
+
+    @Test
+    public void testFolds()
+    {
+        long start = ts("2020-01-01T00:00:00-05:00 New_York");
+        String[] folds = { "avg", "min", "max", "sum", "count", "first", "last" };
+        double[] expected = { 2.5, 1, 4, 10, 4, 1, 4 };
+
+        for (int i = 0; i < folds.length; i++)
+        {
+            HisRollup rollup = new HisRollup(HNum.make(1, "h"), folds[i], NY, false);
+            for (int j = 0; j < 4; j++)
+                rollup.add(start + j * 15 * MIN, HNum.make(j + 1, "kWh"));
+            rollup.add(start + HOUR, HNum.make(100, "kWh"));
+
+            HHisItem[] items = rollup.finish(start + 2 * HOUR);
+            Assert.assertEquals(items.length, 2, folds[i]);
+            Assert.assertEquals(items[0].ts.millis(), start);
+            Assert.assertEquals(((HNum) items[0].val).val, expected[i], folds[i]);
+            Assert.assertEquals(items[1].ts.millis(), start + HOUR);
+        }
+    }
+
+    @Test
+    public void testDailyBucketsUseHistoryTimeZone()
+    {
+        // 03:00 UTC is still the previous day in New York
+        HisRollup rollup = new HisRollup(HNum.make(1, "day"), "count", NY, false);
+        long t = ts("2020-01-02T03:00:00Z UTC");
+        rollup.add(t, HNum.make(1));
+
+        HHisItem[] items = rollup.finish(t);
+        Assert.assertEquals(items.length, 1);
+        Assert.assertEquals(items[0].ts.millis(), ts("2020-01-01T00:00:00-05:00 New_York"));
+        Assert.assertEquals(items[0].ts.tz, NY);
+    }
+
+    @Test
+    public void testDaylightSavingDay()
+    {
+        // 08 Mar 2020 is only 23 hours long in New York
+        HisRollup rollup = new HisRollup(HNum.make(1, "day"), "count", NY, false);
+        long midnight = ts("2020-03-08T00:00:00-05:00 New_York");
+        Assert.assertEquals(rollup.bucketEnd(rollup.bucketStart(midnight + HOUR)), midnight + 23 * HOUR);
+    }
+
+    @Test
+    public void testTimeWeightedAvg()
+    {
+        long start = ts("2020-01-01T00:00:00-05:00 New_York");
+
+        // linear: 0 at :00, 0 at :30 and 10 at :60 average 2.5
+        HisRollup linear = new HisRollup(HNum.make(1, "h"), "tavg", NY, false);
+        linear.add(start, HNum.make(0));
+        linear.add(start + 30 * MIN, HNum.make(0));
+        linear.add(start + HOUR, HNum.make(10));
+        HHisItem[] items = linear.finish(start + HOUR);
+        Assert.assertEquals(((HNum) items[0].val).val, 2.5);
+
+        // step: 0 for 45 minutes, then 10 for 15 minutes
+        HisRollup step = new HisRollup(HNum.make(1, "h"), "tavg", NY, true);
+        step.add(start, HNum.make(0));
+        step.add(start + 45 * MIN, HNum.make(10));
+        items = step.finish(start + HOUR);
+        Assert.assertEquals(((HNum) items[0].val).val, 2.5);
+
+        // booleans roll up to a duty cycle, and held values fill empty buckets
+        HisRollup bool = new HisRollup(HNum.make(1, "h"), "tavg", NY, true);
+        bool.add(start, HBool.TRUE);
+        bool.add(start + 90 * MIN, HBool.FALSE);
+        items = bool.finish(start + 2 * HOUR);
+        Assert.assertEquals(items.length, 2);
+        Assert.assertEquals(((HNum) items[0].val).val, 1.0);
+        Assert.assertEquals(((HNum) items[1].val).val, 0.5);
+    }
+
+    @Test
+    public void testInvalidArgs()
+    {
+        Assert.assertThrows(IllegalArgumentException.class, () -> new HisRollup(HNum.make(1, "h"), "median", NY, false));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new HisRollup(HNum.make(0, "h"), "avg", NY, false));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new HisRollup(HNum.make(1.5, "day"), "avg", NY, false));
+
+        HisRollup rollup = new HisRollup(HNum.make(1, "h"), "avg", NY, false);
+        Assert.assertThrows(IllegalArgumentException.class, () -> rollup.add(0, HStr.make("on")));
+    }
+}
@@ -0,0 +1,169 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import java.util.Optional;
+import javax.baja.control.BControlPoint;
+import javax.baja.control.BNumericWritable;
+import javax.baja.history.BHistoryId;
+import javax.baja.history.HistorySpaceConnection;
+import javax.baja.history.ext.BNumericCovHistoryExt;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+import javax.baja.util.BFolder;
+import javax.baja.util.BFormat;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import org.projecthaystack.HDateTime;
+import org.projecthaystack.HDateTimeRange;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import com.tridium.testng.TestUtil;
+
+@NiagaraType
+@Test
+public class BHistoryLinkTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BHistoryLinkTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+
+        BFolder folder = new BFolder();
+        station.add("linkTest", folder);
+
+        BNumericWritable point = new BNumericWritable();
+        folder.add("linked", point);
+        point.add("histExt", makeExt());
+        folder.add("unlinked", new BNumericWritable());
+    }
+
+    public void testLinksMadeByRebuild() throws Exception
+    {
+        BFolder folder = (BFolder) Sys.getStation().get("linkTest");
+        BControlPoint point = (BControlPoint) folder.get("linked");
+        BControlPoint unlinked = (BControlPoint) folder.get("unlinked");
+        BNumericCovHistoryExt ext = (BNumericCovHistoryExt) point.get("histExt");
+        BHistoryId id = ext.getHistoryConfig().getId();
+        TestUtil.waitFor(5, () -> historyExists(id), "Waiting for the history to be created");
+
+        rebuildCache();
+        Cache.State state = nhServer.getCache().currentState();
+
+        HistoryLink link = state.historyLinks.get(point);
+        Assert.assertNotNull(link);
+        Assert.assertSame(link.getHistoryExt(), ext);
+        Assert.assertEquals(state.historyPoints.get(id), Optional.of(point));
+        Assert.assertNull(state.historyLinks.get(unlinked).getHistoryExt());
+
+        SpaceManager spaceMgr = nhServer.getSpaceManager();
+        Assert.assertSame(spaceMgr.lookupHistoryExt(point), ext);
+        Assert.assertSame(spaceMgr.lookupPointFromHistory(ext.getHistoryConfig()), point);
+        Assert.assertSame(state.historyLinks.get(point), link);
+    }
+
+    public void testLinkRemadeWhenExtChanges() throws Exception
+    {
+        BFolder folder = (BFolder) Sys.getStation().get("linkTest");
+        BNumericWritable point = new BNumericWritable();
+        folder.add("changed", point);
+        SpaceManager spaceMgr = nhServer.getSpaceManager();
+        BHistoryId id = null;
+        try
+        {
+            Assert.assertNull(spaceMgr.lookupHistoryExt(point));
+
+            // an ext which has never been enabled has no history
+            BNumericCovHistoryExt ext = makeExt();
+            ext.setEnabled(false);
+            point.add("histExt", ext);
+            Assert.assertNull(spaceMgr.lookupHistoryExt(point));
+
+            // enabling it creates the history
+            ext.setEnabled(true);
+            id = ext.getHistoryConfig().getId();
+            TestUtil.waitFor(5, () -> spaceMgr.lookupHistoryExt(point) == ext, "Waiting for the history ext to be linked");
+
+            point.remove("histExt");
+            Assert.assertNull(spaceMgr.lookupHistoryExt(point));
+        }
+        finally
+        {
+            folder.remove(point);
+            if (id != null)
+            {
+                try (HistorySpaceConnection conn = nhaystackService.getHistoryDb().getConnection(null))
+                {
+                    if (conn.getHistory(id) != null)
+                        conn.deleteHistory(id);
+                }
+            }
+        }
+    }
+
+    public void testLinkDroppedWhenHistoryDeleted() throws Exception
+    {
+        BFolder folder = (BFolder) Sys.getStation().get("linkTest");
+        BNumericWritable point = new BNumericWritable();
+        folder.add("deleted", point);
+        SpaceManager spaceMgr = nhServer.getSpaceManager();
+        try
+        {
+            BNumericCovHistoryExt ext = makeExt();
+            point.add("histExt", ext);
+            BHistoryId id = ext.getHistoryConfig().getId();
+            TestUtil.waitFor(5, () -> spaceMgr.lookupHistoryExt(point) == ext, "Waiting for the history ext to be linked");
+
+            HDict rec = nhServer.getTagManager().createTags(point);
+            Assert.assertTrue(rec.has("his"));
+
+            // the ext stays enabled, but its history is gone
+            try (HistorySpaceConnection conn = nhaystackService.getHistoryDb().getConnection(null))
+            {
+                conn.deleteHistory(id);
+            }
+            TestUtil.waitFor(5, () -> spaceMgr.lookupHistoryExt(point) == null, "Waiting for the history link to be dropped");
+            Assert.assertTrue(nhServer.getTagManager().createTags(point).missing("his"));
+
+            long now = System.currentTimeMillis();
+            HDateTimeRange range = HDateTimeRange.make(
+                HDateTime.make(now - 60L * 60L * 1000L, HTimeZone.UTC),
+                HDateTime.make(now, HTimeZone.UTC));
+            Assert.assertEquals(nhServer.onHisRead(rec, range).length, 0);
+        }
+        finally
+        {
+            folder.remove(point);
+        }
+    }
+
+    private boolean historyExists(BHistoryId id)
+    {
+        try (HistorySpaceConnection conn = nhaystackService.getHistoryDb().getConnection(null))
+        {
+            return conn.getHistory(id) != null;
+        }
+    }
+
+    private static BNumericCovHistoryExt makeExt()
+    {
+        BNumericCovHistoryExt ext = new BNumericCovHistoryExt();
+        ext.setHistoryName(BFormat.make("%parent.name%"));
+        ext.setEnabled(true);
+        return ext;
+    }
+}
@@ -0,0 +1,147 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import javax.baja.control.BNumericWritable;
+import javax.baja.history.BHistoryConfig;
+import javax.baja.history.BHistoryId;
+import javax.baja.history.BNumericTrendRecord;
+import javax.baja.history.HistorySpaceConnection;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BFacets;
+import javax.baja.sys.BMarker;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+import javax.baja.tag.Id;
+import javax.baja.units.BUnit;
+import javax.baja.util.BFolder;
+import javax.baja.util.BTypeSpec;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import nhaystack.ntest.helper.SyntheticStation;
+import nhaystack.res.Resources;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HRef;
+import org.projecthaystack.HRow;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import com.tridium.testng.TestUtil;
+
+@NiagaraType
+@Test
+public class BNavCacheTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BNavCacheTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+        synthetic = new SyntheticStation(10).build("synthetic", station);
+    }
+
+    public void testSlotNav()
+    {
+        NavCache navCache = nhServer.getNav().navCache;
+        navCache.clear();
+
+        HGrid first = nhServer.nav("slot:/synthetic");
+        Assert.assertEquals(navCache.size(), 1);
+        Assert.assertEquals(nhServer.nav("slot:/synthetic").numRows(), first.numRows());
+        Assert.assertEquals(navCache.size(), 1);
+
+        // a new child is seen straight away
+        synthetic.add("added", new BNumericWritable());
+        try
+        {
+            Assert.assertEquals(nhServer.nav("slot:/synthetic").numRows(), first.numRows() + 1);
+        }
+        finally
+        {
+            synthetic.remove("added");
+        }
+    }
+
+    public void testTagEdits()
+    {
+        BNumericWritable point = new BNumericWritable();
+        synthetic.add("tagged", point);
+        try
+        {
+            Assert.assertTrue(findRow("slot:/synthetic", point).missing("ahu"));
+
+            // a Niagara tag
+            point.tags().set(Id.newId("hs:ahu"), BMarker.MARKER);
+            Assert.assertTrue(findRow("slot:/synthetic", point).has("ahu"));
+
+            // the facets
+            point.setFacets(BFacets.makeNumeric(BUnit.getUnit("celsius"), 1));
+            Assert.assertEquals(
+                findRow("slot:/synthetic", point).getStr("unit"),
+                Resources.fromBajaUnit(BUnit.getUnit("celsius")).symbol);
+        }
+        finally
+        {
+            synthetic.remove("tagged");
+        }
+    }
+
+    public void testHisNav() throws Exception
+    {
+        String stationName = Sys.getStation().getStationName();
+        BHistoryId kept = BHistoryId.make(stationName, "navCacheKept");
+        BHistoryId id = BHistoryId.make(stationName, "navCacheDeleted");
+        try (HistorySpaceConnection conn = nhaystackService.getHistoryDb().getConnection(null))
+        {
+            conn.createHistory(new BHistoryConfig(kept, BTypeSpec.make(BNumericTrendRecord.TYPE)));
+            conn.createHistory(new BHistoryConfig(id, BTypeSpec.make(BNumericTrendRecord.TYPE)));
+        }
+        TestUtil.waitFor(5,
+            () -> nhServer.getHistoryIndex().visibleConfigs().stream().anyMatch(c -> c.getId().equals(id)),
+            "Waiting for the history to be indexed");
+
+        // the rows of the history space are kept, even
+        // though its configs are not mounted components
+        String navId = "his:/" + stationName;
+        NavCache navCache = nhServer.getNav().navCache;
+        int rows = nhServer.nav(navId).numRows();
+        Assert.assertTrue(rows >= 2);
+        Assert.assertNotNull(navCache.get(navId, null, nhaystackService.getNavCacheLifetime().getMillis()));
+
+        // and are dropped when a history is deleted
+        try (HistorySpaceConnection conn = nhaystackService.getHistoryDb().getConnection(null))
+        {
+            conn.deleteHistory(id);
+        }
+        TestUtil.waitFor(5,
+            () -> navCache.get(navId, null, nhaystackService.getNavCacheLifetime().getMillis()) == null,
+            "Waiting for the his nav to be dropped");
+        Assert.assertEquals(nhServer.nav(navId).numRows(), rows - 1);
+    }
+
+    private HDict findRow(String navId, BComponent comp)
+    {
+        HRef id = TagManager.makeSlotPathRef(comp).getHRef();
+        HGrid grid = nhServer.nav(navId);
+        for (int i = 0; i < grid.numRows(); i++)
+        {
+            HRow row = grid.row(i);
+            if (id.equals(row.id()))
+                return row;
+        }
+        throw new AssertionError("No row for " + id);
+    }
+
+    private BFolder synthetic;
+}
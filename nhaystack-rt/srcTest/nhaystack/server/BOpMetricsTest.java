@@ -0,0 +1,115 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import org.projecthaystack.HDictBuilder;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HGridBuilder;
+import org.projecthaystack.HRow;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.*;
+import javax.baja.test.BTestNg;
+
+@NiagaraType
+@Test
+public class BOpMetricsTest extends BTestNg
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BOpMetricsTest.class);
+
+    @Test
+    public void testHistogramBuckets()
+    {
+        // small values are exact
+        for (int i = 0; i < 64; i++)
+            Assert.assertEquals(OpMetrics.Histogram.value(OpMetrics.Histogram.index(i)), i);
+
+        // larger values are within the width of a sub-bucket
+        long[] values = { 64, 100, 1000, 12345, 999999, 60L * 1000L * 1000L };
+        for (long v : values)
+        {
+            long bucket = OpMetrics.Histogram.value(OpMetrics.Histogram.index(v));
+            Assert.assertTrue(Math.abs(bucket - v) <= v / 32 + 1, v + " -> " + bucket);
+        }
+
+        // buckets are in ascending order
+        for (long v = 1; v < 1L << 30; v = v * 3 / 2 + 1)
+            Assert.assertTrue(OpMetrics.Histogram.index(v) >= OpMetrics.Histogram.index(v - 1));
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        OpMetrics.Histogram histogram = new OpMetrics.Histogram();
+        Assert.assertEquals(histogram.percentile(0.5), 0);
+
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i * 10L);
+
+        assertNear(histogram.percentile(0.50), 5000);
+        assertNear(histogram.percentile(0.95), 9500);
+        assertNear(histogram.percentile(0.99), 9900);
+        assertNear(histogram.percentile(1.00), 10000);
+    }
+
+    @Test
+    public void testMeters()
+    {
+        OpMetrics metrics = new OpMetrics();
+        metrics.meter("read").record(2000000L, false, 100);
+        metrics.meter("read").record(4000000L, true, 50);
+        metrics.meter("read").addRows(7);
+        metrics.meter("nav").record(1000000L, false, 10);
+
+        HGrid grid = metrics.toGrid();
+        Assert.assertEquals(grid.numRows(), 2);
+
+        HRow read = grid.row(1);
+        Assert.assertEquals(read.getStr("op"), "read");
+        Assert.assertEquals(read.getInt("requests"), 2);
+        Assert.assertEquals(read.getInt("errors"), 1);
+        Assert.assertEquals(read.getInt("bytesOut"), 150);
+        Assert.assertEquals(read.getInt("rows"), 7);
+        Assert.assertEquals(read.getDouble("max"), 4.0);
+
+        BNHaystackStats stats = new BNHaystackStats();
+        metrics.maybePublish(stats);
+        Assert.assertEquals(stats.getNumRequests(), 3);
+        Assert.assertEquals(stats.getNumRequestErrors(), 1);
+        Assert.assertEquals(stats.getRequestBytesOut(), 160);
+
+        metrics.reset(stats);
+        Assert.assertEquals(metrics.toGrid().numRows(), 0);
+        Assert.assertEquals(stats.getNumRequests(), 0);
+    }
+
+    @Test
+    public void testExtendedFunctionNames()
+    {
+        Assert.assertEquals(MeteredOp.functionName(functionGrid("brokenRefs")), "brokenRefs");
+
+        // made up names share one meter
+        Assert.assertEquals(MeteredOp.functionName(functionGrid("noSuchFunction")), "other");
+        Assert.assertEquals(MeteredOp.functionName(functionGrid("x" + System.nanoTime())), "other");
+    }
+
+    private static HGrid functionGrid(String function)
+    {
+        return HGridBuilder.dictToGrid(new HDictBuilder().add("function", function).toDict());
+    }
+
+    private static void assertNear(long actual, long expected)
+    {
+        Assert.assertTrue(Math.abs(actual - expected) <= expected / 32 + 1, actual + " != " + expected);
+    }
+}
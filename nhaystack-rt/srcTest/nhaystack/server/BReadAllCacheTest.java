@@ -0,0 +1,111 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import nhaystack.ntest.helper.SyntheticStation;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HRef;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@NiagaraType
+@Test
+public class BReadAllCacheTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BReadAllCacheTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+        new SyntheticStation(20).build("synthetic", station);
+    }
+
+    @BeforeMethod
+    public void clearCache()
+    {
+        nhaystackService.setReadAllCacheSize(100);
+        nhServer.getReadAllCache().invalidate();
+    }
+
+    public void testHitsAndMisses()
+    {
+        ReadAllCache cache = nhServer.getReadAllCache();
+        BNHaystackStats stats = nhaystackService.getStats();
+        long hits = stats.getReadAllCacheHits();
+        long misses = stats.getReadAllCacheMisses();
+
+        HGrid first = nhServer.readAll("point");
+        Assert.assertEquals(stats.getReadAllCacheMisses(), misses + 1);
+        Assert.assertEquals(cache.size(), 1);
+
+        HGrid second = nhServer.readAll("point");
+        Assert.assertEquals(stats.getReadAllCacheHits(), hits + 1);
+        Assert.assertEquals(second.numRows(), first.numRows());
+        Assert.assertEquals(second.numRows(), 20);
+
+        // edits discard the cache
+        cache.invalidate();
+        nhServer.readAll("point");
+        Assert.assertEquals(stats.getReadAllCacheMisses(), misses + 2);
+    }
+
+    public void testEditDuringScan()
+    {
+        ReadAllCache cache = nhServer.getReadAllCache();
+        HRef[] ids = new HRef[] { HRef.make("C.a") };
+
+        // tags are edited while the scan is running
+        int generation = nhServer.getCache().generation();
+        int editGeneration = cache.editGeneration();
+        cache.invalidate();
+        cache.put("point", 0, null, ids, generation, editGeneration);
+        Assert.assertEquals(cache.size(), 0);
+
+        // the Cache is rebuilt while the scan is running
+        generation = nhServer.getCache().generation();
+        editGeneration = cache.editGeneration();
+        rebuildCache();
+        cache.put("point", 0, null, ids, generation, editGeneration);
+        Assert.assertEquals(cache.size(), 0);
+
+        cache.put("point", 0, null, ids, nhServer.getCache().generation(), cache.editGeneration());
+        Assert.assertEquals(cache.size(), 1);
+    }
+
+    public void testVolatileTagsAreNotCached()
+    {
+        ReadAllCache cache = nhServer.getReadAllCache();
+        Assert.assertFalse(cache.isCacheable("point and curVal > 10"));
+        Assert.assertFalse(cache.isCacheable("writeLevel == 16"));
+        Assert.assertTrue(cache.isCacheable("point and curValue"));
+
+        nhServer.readAll("point and curVal > 10");
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    public void testDisabled()
+    {
+        // the cache is opt-in
+        Assert.assertEquals(new BNHaystackService().getReadAllCacheSize(), 0);
+
+        nhaystackService.setReadAllCacheSize(0);
+        nhServer.readAll("equip");
+        Assert.assertEquals(nhServer.getReadAllCache().size(), 0);
+    }
+}
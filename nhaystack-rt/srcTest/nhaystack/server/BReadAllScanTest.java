@@ -0,0 +1,85 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import nhaystack.ntest.helper.SyntheticStation;
+import org.projecthaystack.HGrid;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@NiagaraType
+@Test
+public class BReadAllScanTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BReadAllScanTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+        new SyntheticStation(200, 5, 10).build("synthetic", station);
+    }
+
+    @BeforeMethod
+    public void disableCache()
+    {
+        nhaystackService.setReadAllCacheSize(0);
+    }
+
+    @AfterMethod
+    public void resetThreads()
+    {
+        nhaystackService.setReadAllThreads(1);
+        nhaystackService.setReadAllCacheSize(0);
+    }
+
+    public void testSameOrderAsSerial()
+    {
+        String[] filters = { "point", "equip", "site or equip", "point and kind == \"Bool\"", "his" };
+        for (String filter : filters)
+        {
+            nhaystackService.setReadAllThreads(1);
+            HGrid serial = nhServer.readAll(filter);
+
+            nhaystackService.setReadAllThreads(4);
+            HGrid parallel = nhServer.readAll(filter);
+
+            assertSameIds(parallel, serial, filter);
+        }
+    }
+
+    public void testLimit()
+    {
+        nhaystackService.setReadAllThreads(1);
+        HGrid serial = nhServer.readAll("point", 7);
+
+        nhaystackService.setReadAllThreads(4);
+        HGrid parallel = nhServer.readAll("point", 7);
+
+        Assert.assertEquals(parallel.numRows(), 7);
+        assertSameIds(parallel, serial, "point");
+    }
+
+    private static void assertSameIds(HGrid actual, HGrid expected, String filter)
+    {
+        Assert.assertEquals(actual.numRows(), expected.numRows(), filter);
+        for (int i = 0; i < expected.numRows(); i++)
+            Assert.assertEquals(actual.row(i).id(), expected.row(i).id(), filter);
+    }
+}
@@ -0,0 +1,104 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import javax.baja.control.BNumericPoint;
+import javax.baja.naming.BOrd;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+
+import com.tridium.nd.BNiagaraStation;
+import com.tridium.nd.point.BNiagaraProxyExt;
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@NiagaraType
+@Test
+public class BRemotePointIndexTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BRemotePointIndexTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+
+        BNiagaraStation remote = new BNiagaraStation();
+        remote.setEnabled(false);
+        getNiagaraNetwork().add("remote", remote);
+        addProxyPoint("imported", "slot:/Remote/imported");
+    }
+
+    public void testIndexedByRebuild()
+    {
+        rebuildCache();
+        Cache cache = nhServer.getCache();
+        BNumericPoint point = (BNumericPoint) points().get("imported");
+
+        RemotePoint remote = cache.getRemotePoint(point);
+        Assert.assertNotNull(remote);
+        Assert.assertEquals(remote.getStationName(), "remote");
+        Assert.assertEquals(remote.getSlotPath().getBody(), "/Remote/imported");
+        Assert.assertSame(cache.getRemotePoint(point), remote);
+        Assert.assertSame(cache.getControlPoint(remote), point);
+    }
+
+    public void testRepointedAndRemovedPoints()
+    {
+        rebuildCache();
+        Cache cache = nhServer.getCache();
+
+        // a proxy point which is added after the rebuild is indexed
+        // the first time that its RemotePoint is asked for
+        BNumericPoint point = addProxyPoint("added", "slot:/Remote/added");
+        try
+        {
+            RemotePoint before = cache.getRemotePoint(point);
+            Assert.assertSame(cache.getControlPoint(before), point);
+
+            // re-pointing it at another remote slot drops the old entry
+            point.getProxyExt().set("pointId", BOrd.make("station:|slot:/Remote/moved"));
+            RemotePoint after = cache.getRemotePoint(point);
+            Assert.assertEquals(after.getSlotPath().getBody(), "/Remote/moved");
+            Assert.assertNull(cache.getControlPoint(before));
+            Assert.assertSame(cache.getControlPoint(after), point);
+
+            points().remove("added");
+            Assert.assertNull(cache.getControlPoint(after));
+        }
+        finally
+        {
+            if (point.isMounted())
+                points().remove("added");
+        }
+    }
+
+    private BNumericPoint addProxyPoint(String name, String pointId)
+    {
+        BNiagaraProxyExt ext = new BNiagaraProxyExt();
+        ext.set("pointId", BOrd.make("station:|" + pointId));
+
+        BNumericPoint point = new BNumericPoint();
+        point.setProxyExt(ext);
+        points().add(name, point);
+        return point;
+    }
+
+    private BComponent points()
+    {
+        BComponent remote = (BComponent) getNiagaraNetwork().get("remote");
+        return (BComponent) remote.get("points");
+    }
+}
@@ -0,0 +1,69 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import java.util.Map;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BBoolean;
+import javax.baja.sys.BDouble;
+import javax.baja.sys.BSimple;
+import javax.baja.sys.Clock;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import org.projecthaystack.HRef;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@NiagaraType
+@Test
+public class BScheduleWheelTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BScheduleWheelTest.class);
+
+    public void testSlotOf()
+    {
+        Assert.assertEquals(ScheduleWheel.slotOf(0L), 0L);
+        Assert.assertEquals(ScheduleWheel.slotOf(1L), 1000L);
+        Assert.assertEquals(ScheduleWheel.slotOf(1000L), 1000L);
+        Assert.assertEquals(ScheduleWheel.slotOf(1999L), 2000L);
+    }
+
+    public void testWritesDueTogetherShareASlot()
+    {
+        ScheduleWheel wheel = new ScheduleWheel(nhaystackService);
+        long due = ScheduleWheel.slotOf(Clock.millis() + 3600000L);
+        HRef a = HRef.make("a");
+        HRef b = HRef.make("b");
+        HRef c = HRef.make("c");
+
+        wheel.schedule(a, due - 500L, BBoolean.TRUE);
+        wheel.schedule(b, due, BDouble.make(72.0));
+        wheel.schedule(c, due + 1000L, BBoolean.FALSE);
+        Assert.assertEquals(wheel.numSlots(), 2);
+        Assert.assertEquals(wheel.numPending(), 3);
+
+        // rescheduling moves the write
+        wheel.schedule(c, due, BBoolean.FALSE);
+        Assert.assertEquals(wheel.numSlots(), 1);
+
+        wheel.cancel(b);
+        Map<HRef, BSimple> writes = wheel.take(due);
+        Assert.assertEquals(writes.size(), 2);
+        Assert.assertEquals(writes.get(a), BBoolean.TRUE);
+        Assert.assertEquals(writes.get(c), BBoolean.FALSE);
+
+        Assert.assertEquals(wheel.numSlots(), 0);
+        Assert.assertEquals(wheel.numPending(), 0);
+        Assert.assertTrue(wheel.take(due).isEmpty());
+    }
+}
@@ -0,0 +1,224 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import java.util.List;
+import javax.baja.control.BControlPoint;
+import javax.baja.history.BHistoryConfig;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.BComponent;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import nhaystack.ntest.helper.BenchmarkRunner;
+import nhaystack.ntest.helper.SyntheticStation;
+import org.projecthaystack.HDate;
+import org.projecthaystack.HGrid;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HRef;
+import org.projecthaystack.HWatch;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+  * Benchmarks of the server's hot paths over a synthetic station.
+  * <p>
+  * The benchmarks are skipped unless the "nhaystack.benchmark" system
+  * property is true.  The size of the station is set with the
+  * "nhaystack.benchmark.points", "nhaystack.benchmark.histories" and
+  * "nhaystack.benchmark.records" properties, and the iterations with
+  * the properties that are read by BenchmarkRunner.  The results are
+  * printed to standard out as ops/s, us/op and bytes allocated per op.
+  */
+@NiagaraType
+@Test(groups = {"benchmark"})
+public class BServerBenchmarkTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BServerBenchmarkTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+
+        if (ENABLED)
+            synthetic.build("synthetic", station);
+    }
+
+    @BeforeClass
+    public void setupBenchmarks()
+    {
+        if (!ENABLED)
+            throw new SkipException("set -Dnhaystack.benchmark=true to run the benchmarks");
+
+        histories = synthetic.addHistories(
+            nhaystackService.getHistoryDb(),
+            Integer.getInteger("nhaystack.benchmark.histories", 100),
+            Integer.getInteger("nhaystack.benchmark.records", 1000),
+            15L * 60L * 1000L);
+        rebuildCache();
+
+        List<BControlPoint> points = synthetic.getPoints();
+        pointRefs = new HRef[points.size()];
+        for (int i = 0; i < pointRefs.length; i++)
+            pointRefs[i] = nhServer.getTagManager().makeComponentRef(points.get(i)).getHRef();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void printReport()
+    {
+        if (ENABLED)
+            System.out.println("nhaystack benchmarks, " + synthetic.getNumPoints() + " points\n" + runner.report());
+    }
+
+////////////////////////////////////////////////////////////////
+// benchmarks
+////////////////////////////////////////////////////////////////
+
+    public void benchCreateComponentTags() throws Exception
+    {
+        TagManager tagMgr = nhServer.getTagManager();
+        runner.run("createComponentTags", () ->
+        {
+            for (BComponent point : synthetic.getPoints())
+                tagMgr.createComponentTags(point);
+            return synthetic.getPoints().size();
+        });
+    }
+
+    public void benchCreateComponentCovTags() throws Exception
+    {
+        TagManager tagMgr = nhServer.getTagManager();
+        runner.run("createComponentCovTags", () ->
+        {
+            for (BComponent point : synthetic.getPoints())
+                tagMgr.createComponentCovTags(point);
+            return synthetic.getPoints().size();
+        });
+    }
+
+    public void benchReadAll() throws Exception
+    {
+        for (String filter : FILTERS)
+        {
+            runner.run("readAll " + filter, () ->
+            {
+                nhServer.readAll(filter);
+                return 1;
+            });
+        }
+    }
+
+    public void benchCacheRebuild() throws Exception
+    {
+        runner.run("Cache.rebuild", () ->
+        {
+            nhServer.getCache().rebuild(nhaystackService.getStats());
+            return 1;
+        });
+    }
+
+    public void benchNav() throws Exception
+    {
+        runner.run("nav roots", () ->
+        {
+            nhServer.nav(null);
+            return 1;
+        });
+
+        HGrid roots = nhServer.nav(null);
+        runner.run("nav children", () ->
+        {
+            for (int i = 0; i < roots.numRows(); i++)
+            {
+                if (roots.row(i).has("navId"))
+                    nhServer.nav(roots.row(i).getStr("navId"));
+            }
+            return roots.numRows();
+        });
+    }
+
+    public void benchWatch() throws Exception
+    {
+        HWatch watch = nhServer.watchOpen("benchmark", HNum.make(1, "hr"));
+        try
+        {
+            runner.run("watchSub", () ->
+            {
+                watch.sub(pointRefs);
+                return 1;
+            });
+            runner.run("watchPollRefresh", () ->
+            {
+                watch.pollRefresh();
+                return 1;
+            });
+            runner.run("watchPollChanges", () ->
+            {
+                watch.pollChanges();
+                return 1;
+            });
+        }
+        finally
+        {
+            watch.close();
+        }
+    }
+
+    public void benchHisRead() throws Exception
+    {
+        HRef[] refs = new HRef[histories.size()];
+        for (int i = 0; i < refs.length; i++)
+            refs[i] = TagManager.makeHistoryRef(histories.get(i)).getHRef();
+
+        for (String range : RANGES)
+        {
+            runner.run("hisRead " + range, () ->
+            {
+                for (HRef ref : refs)
+                    nhServer.hisRead(ref, range);
+                return refs.length;
+            });
+        }
+    }
+
+////////////////////////////////////////////////////////////////
+// Attributes
+////////////////////////////////////////////////////////////////
+
+    private static final boolean ENABLED = Boolean.getBoolean("nhaystack.benchmark");
+
+    private static final String[] FILTERS = {
+        "point",
+        "equip",
+        "point and writable",
+        "point and kind == \"Number\"",
+        "temp and sensor",
+        "his",
+    };
+
+    private static final String[] RANGES = {
+        "today",
+        "yesterday",
+        HDate.today().minusDays(7) + "," + HDate.today(),
+    };
+
+    private final SyntheticStation synthetic =
+        SyntheticStation.fromSystemProperty("nhaystack.benchmark.points", 1000);
+    private final BenchmarkRunner runner = BenchmarkRunner.fromSystemProperties();
+
+    private List<BHistoryConfig> histories;
+    private HRef[] pointRefs;
+}
@@ -0,0 +1,83 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import org.projecthaystack.HGrid;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.*;
+import javax.baja.test.BTestNg;
+
+@NiagaraType
+@Test
+public class BSlowQueryLogTest extends BTestNg
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BSlowQueryLogTest.class);
+
+    @Test
+    public void testThreshold()
+    {
+        BNHaystackService service = new BNHaystackService();
+        service.setSlowQueryThreshold(BRelTime.make(100));
+        SlowQueryLog log = new SlowQueryLog(service);
+
+        Assert.assertFalse(log.isSlow(99L * 1000000L));
+        Assert.assertTrue(log.isSlow(100L * 1000000L));
+
+        service.setSlowQueryLogSize(0);
+        Assert.assertFalse(log.isSlow(100L * 1000000L));
+    }
+
+    @Test
+    public void testRingBuffer()
+    {
+        BNHaystackService service = new BNHaystackService();
+        service.setSlowQueryLogSize(3);
+        SlowQueryLog log = new SlowQueryLog(service);
+
+        for (int i = 0; i < 5; i++)
+            log.add(entry("f" + i));
+
+        // most recent first, oldest dropped
+        assertFilters(log.toGrid(), "f4", "f3", "f2");
+
+        // shrinking keeps the most recent
+        service.setSlowQueryLogSize(2);
+        log.add(entry("f5"));
+        assertFilters(log.toGrid(), "f5", "f4");
+
+        // growing keeps everything
+        service.setSlowQueryLogSize(4);
+        log.add(entry("f6"));
+        log.add(entry("f7"));
+        assertFilters(log.toGrid(), "f7", "f6", "f5", "f4");
+
+        log.clear();
+        Assert.assertEquals(log.toGrid().numRows(), 0);
+    }
+
+    private static SlowQueryLog.Entry entry(String filter)
+    {
+        return new SlowQueryLog.Entry("read", filter, null, 10, 1, 5, 1000000L, 2000000L, 3000000L);
+    }
+
+    private static void assertFilters(HGrid grid, String... filters)
+    {
+        Assert.assertEquals(grid.numRows(), filters.length);
+        for (int i = 0; i < filters.length; i++)
+        {
+            Assert.assertEquals(grid.row(i).getStr("filter"), filters[i]);
+            Assert.assertEquals(grid.row(i).getDouble("totalTime"), 3.0);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import javax.baja.control.BControlPoint;
+import javax.baja.control.BNumericWritable;
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.status.BStatusNumeric;
+import javax.baja.sys.BStation;
+import javax.baja.sys.Sys;
+import javax.baja.sys.Type;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import nhaystack.ntest.helper.BNHaystackStationTestBase;
+import nhaystack.ntest.helper.SyntheticStation;
+import org.projecthaystack.HDict;
+import org.projecthaystack.HNum;
+import org.projecthaystack.HRef;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import com.tridium.testng.TestUtil;
+
+@NiagaraType
+@Test
+public class BWatchStreamTest extends BNHaystackStationTestBase
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BWatchStreamTest.class);
+
+    @Override
+    protected void configureTestStation(BStation station, String stationName, int webPort, int foxPort) throws Exception
+    {
+        super.configureTestStation(station, stationName, webPort, foxPort);
+        synthetic = new SyntheticStation(10);
+        synthetic.build("synthetic", station);
+    }
+
+    public void testBatchesKeepLatestValue() throws Exception
+    {
+        BNumericWritable a = numericPoint(4);
+        BNumericWritable b = numericPoint(5);
+        NHWatch watch = openWatch(a, b);
+        try
+        {
+            // nothing has changed yet
+            Assert.assertEquals(watch.awaitChanges(0, 100).length, 0);
+
+            a.setFallback(new BStatusNumeric(1));
+            a.setFallback(new BStatusNumeric(2));
+            a.setFallback(new BStatusNumeric(3));
+            b.setFallback(new BStatusNumeric(10));
+
+            // one row for each point, with its latest value
+            HDict[] changes = watch.awaitChanges(500, 5000);
+            Assert.assertEquals(changes.length, 2);
+            for (HDict change : changes)
+            {
+                double expected = change.id().equals(idOf(a)) ? 3 : 10;
+                Assert.assertEquals(((HNum) change.get("curVal")).val, expected);
+            }
+
+            // the changes have been taken
+            Assert.assertEquals(watch.pollChanges().numRows(), 0);
+        }
+        finally
+        {
+            watch.close();
+        }
+    }
+
+    public void testClosedWatch() throws Exception
+    {
+        NHWatch watch = openWatch(numericPoint(4));
+        watch.close();
+        Assert.assertNull(watch.awaitChanges(0, 100));
+    }
+
+    public void testStreamLimit() throws Exception
+    {
+        nhaystackService.setWatchStreamLimit(1);
+        WatchStream stream = nhServer.getWatchStream();
+        NHWatch watch = openWatch(numericPoint(4));
+        Thread first = new Thread(() -> serve(stream, watch.id()));
+        try
+        {
+            first.start();
+            TestUtil.waitFor(5, () -> stream.openCount() == 1, "Waiting for the stream to open");
+
+            // another stream is refused while the first one is open
+            Assert.assertEquals(serve(stream, watch.id()), HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            Assert.assertEquals(stream.openCount(), 1);
+        }
+        finally
+        {
+            watch.close();
+            first.join(5000);
+            nhaystackService.setWatchStreamLimit(16);
+        }
+
+        // and the first one has ended along with its watch
+        Assert.assertEquals(stream.openCount(), 0);
+    }
+
+    public void testWriteEvent()
+    {
+        StringWriter str = new StringWriter();
+        PrintWriter out = new PrintWriter(str);
+        WatchStream.writeEvent(out, "cov", "ver:\"3.0\"\nid,curVal\n@C.a,1\n");
+        out.flush();
+
+        Assert.assertEquals(str.toString(),
+            "event: cov\n" +
+            "data: ver:\"3.0\"\n" +
+            "data: id,curVal\n" +
+            "data: @C.a,1\n" +
+            "\n");
+    }
+
+    /**
+      * Serve a stream of the watch, and return the status that it
+      * was refused with, or SC_OK.
+      */
+    private static int serve(WatchStream stream, String watchId)
+    {
+        int[] status = { HttpServletResponse.SC_OK };
+        PrintWriter out = new PrintWriter(new StringWriter());
+
+        HttpServletRequest req = (HttpServletRequest) Proxy.newProxyInstance(
+            HttpServletRequest.class.getClassLoader(),
+            new Class<?>[] { HttpServletRequest.class },
+            (proxy, method, args) ->
+                method.getName().equals("getParameter") && "watchId".equals(args[0]) ? watchId : null);
+
+        HttpServletResponse res = (HttpServletResponse) Proxy.newProxyInstance(
+            HttpServletResponse.class.getClassLoader(),
+            new Class<?>[] { HttpServletResponse.class },
+            (proxy, method, args) ->
+            {
+                if (method.getName().equals("sendError")) status[0] = (Integer) args[0];
+                return method.getName().equals("getWriter") ? out : null;
+            });
+
+        try
+        {
+            stream.serve(req, res);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        return status[0];
+    }
+
+    private NHWatch openWatch(BControlPoint... points)
+    {
+        HRef[] ids = new HRef[points.length];
+        for (int i = 0; i < points.length; i++)
+            ids[i] = idOf(points[i]);
+
+        NHWatch watch = (NHWatch) nhServer.onWatchOpen("stream", HNum.make(1, "min"));
+        Assert.assertEquals(watch.sub(ids, true).numRows(), points.length);
+        return watch;
+    }
+
+    private BNumericWritable numericPoint(int index)
+    {
+        List<BControlPoint> points = synthetic.getPoints();
+        return (BNumericWritable) points.get(index);
+    }
+
+    private HRef idOf(BControlPoint point)
+    {
+        return nhServer.getTagManager().makeComponentRef(point).getHRef();
+    }
+
+    private SyntheticStation synthetic;
+}
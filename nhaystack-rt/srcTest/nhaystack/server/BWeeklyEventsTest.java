@@ -0,0 +1,75 @@
+//
+// Copyright (c) 2012, J2 Innovations
+// Licensed under the Academic Free License version 3.0
+//
+// History:
+//   19 Oct 2026  Creation
+//
+
+package nhaystack.server;
+
+import org.projecthaystack.HBool;
+import org.projecthaystack.HDate;
+import org.projecthaystack.HDateTime;
+import org.projecthaystack.HHisItem;
+import org.projecthaystack.HTime;
+import org.projecthaystack.HTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.baja.nre.annotations.NiagaraType;
+import javax.baja.sys.*;
+import javax.baja.test.BTestNg;
+
+@NiagaraType
+@Test
+public class BWeeklyEventsTest extends BTestNg
+{
+    @Override
+    public Type getType() { return TYPE; }
+    public static final Type TYPE = Sys.loadType(BWeeklyEventsTest.class);
+
+    @Test
+    public void testNext()
+    {
+        // 19 Oct 2026 is a Monday; the items are from other weeks
+        WeeklyEvents events = WeeklyEvents.compile("", new HHisItem[] {
+            item(2026, 1, 5, 17, HBool.FALSE),
+            item(2026, 1, 5, 8, HBool.TRUE),
+            item(2026, 3, 2, 8, HBool.FALSE),
+        });
+        Assert.assertFalse(events.isEmpty());
+
+        assertNext(events, ts(2026, 10, 19, 7), ts(2026, 10, 19, 8), BBoolean.TRUE);
+        assertNext(events, ts(2026, 10, 19, 8), ts(2026, 10, 19, 17), BBoolean.FALSE);
+        assertNext(events, ts(2026, 10, 19, 18), ts(2026, 10, 26, 8), BBoolean.TRUE);
+        assertNext(events, ts(2026, 10, 24, 23), ts(2026, 10, 26, 8), BBoolean.TRUE);
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        WeeklyEvents events = WeeklyEvents.compile("", new HHisItem[0]);
+        Assert.assertTrue(events.isEmpty());
+        Assert.assertNull(events.next(System.currentTimeMillis()));
+    }
+
+    private static void assertNext(WeeklyEvents events, HDateTime now, HDateTime expected, BSimple value)
+    {
+        WeeklyEvents.Event next = events.next(now.millis());
+        Assert.assertEquals(next.getTimestamp().millis(), expected.millis());
+        Assert.assertEquals(next.getValue(), value);
+    }
+
+    private static HHisItem item(int year, int month, int day, int hour, HBool val)
+    {
+        return HHisItem.make(ts(year, month, day, hour), val);
+    }
+
+    private static HDateTime ts(int year, int month, int day, int hour)
+    {
+        return HDateTime.make(HDate.make(year, month, day), HTime.make(hour, 0), TZ);
+    }
+
+    private static final HTimeZone TZ = HTimeZone.make("New_York");
+}
@@ -244,7 +244,7 @@ public class BHDictEditorGroup extends BScrollPane implements NHaystackConst
         db.add(optional.getTags().getDict());
 
         this.tags = BHDict.make(db.toDict());
-        this.zinc = tags.getDict().toZinc();
+        this.zinc = tags.toZinc();
     }
 
     /**
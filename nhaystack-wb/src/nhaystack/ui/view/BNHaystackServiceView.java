@@ -31,6 +31,7 @@ import javax.baja.ui.BButton;
 import javax.baja.ui.BHyperlinkLabel;
 import javax.baja.ui.BLabel;
 import javax.baja.ui.BToggleButton;
+import javax.baja.ui.BDialog;
 import javax.baja.ui.Command;
 import javax.baja.ui.CommandArtifact;
 import javax.baja.ui.enums.BHalign;
@@ -38,6 +39,7 @@ import javax.baja.ui.pane.BBorderPane;
 import javax.baja.ui.pane.BEdgePane;
 import javax.baja.ui.pane.BGridPane;
 import javax.baja.ui.pane.BScrollPane;
+import javax.baja.ui.table.BTable;
 import javax.baja.ui.tree.BTree;
 import javax.baja.ui.tree.TreeModel;
 import javax.baja.ui.tree.TreeNode;
@@ -50,6 +52,7 @@ import nhaystack.res.Resources;
 import nhaystack.server.BNHaystackService;
 import nhaystack.site.BHEquip;
 import nhaystack.site.BHSite;
+import org.projecthaystack.HGrid;
 
 /**
   * BNHaystackServiceView is a view on BNHaystackService
@@ -103,10 +106,12 @@ public class BNHaystackServiceView extends BWbComponentView
         this.rebuildCache = new RebuildCacheCommand(this);
         this.initialize = new InitializeCommand(this);
         this.loadCustomTagDict = new LoadCustomTagDictionary(this);
+        this.slowQueries = new SlowQueriesCommand(this);
         BButton button = new BButton(loadSepTree);
         BButton buttonRebuild = new BButton(rebuildCache);
         BButton buttonInit = new BButton(initialize);
         BButton buttonLoadCustomTagDict = new BButton(loadCustomTagDict);
+        BButton buttonSlowQueries = new BButton(slowQueries);
 
         BBorderPane b4 = new BBorderPane(button);
         b4.setSize(10, 20);
@@ -128,6 +133,10 @@ public class BNHaystackServiceView extends BWbComponentView
         b8.setSize(10, 20);
         b8.setPadding(BInsets.make(0, 0, 2, 0));      
 
+        BBorderPane b10 = new BBorderPane(buttonSlowQueries);
+        b10.setSize(10, 20);
+        b10.setPadding(BInsets.make(0, 0, 2, 0));
+
         // BFileChooser fc = new BFileChooser(this,"Choose your own list");
         // We should be able to access to the file...or choose the file we want... actually just tell us what file it is
 
@@ -140,7 +149,7 @@ public class BNHaystackServiceView extends BWbComponentView
         b9.setPadding(BInsets.make(2, 2, 2, 2));
         b9.setMargin(BInsets.make(4, 4, 8, 4));
 
-        BGridPane gp = new BGridPane(5);
+        BGridPane gp = new BGridPane(6);
         gp.setColumnGap(5);
         gp.setUniformColumnWidth(false);
         gp.add(null,b4);
@@ -148,6 +157,7 @@ public class BNHaystackServiceView extends BWbComponentView
         gp.add(null,b6);
         gp.add(null,b7);
         gp.add(null,b8);
+        gp.add(null,b10);
         gp.setHalign(BHalign.make(2));
         gp.setColumnAlign(BHalign.make(2));
         BEdgePane e3 = new BEdgePane();
@@ -308,6 +318,39 @@ public class BNHaystackServiceView extends BWbComponentView
         final BNHaystackServiceView view;
     }
 
+    class SlowQueriesCommand extends Command
+    {
+        SlowQueriesCommand(BNHaystackServiceView view)
+        {
+            super(view, "");
+            this.view = view;
+        }
+
+        @Override
+        public String getLabel()
+        {
+            return LEX.getText("slowQueries");
+        }
+
+        @Override
+        public CommandArtifact doInvoke()
+        {
+            HGrid grid = service.fetchSlowQueries().getGrid();
+
+            BTable table = new BTable();
+            table.setModel(new BNHaystackQueryView.GridModel(grid));
+
+            BDialog.open(
+                view,
+                LEX.getText("slowQueries"),
+                new BBorderPane(table, 4, 4, 4, 4),
+                BDialog.OK);
+            return null;
+        }
+
+        final BNHaystackServiceView view;
+    }
+
     @Override
     public void stopped() throws Exception
     {
@@ -485,6 +528,7 @@ public class BNHaystackServiceView extends BWbComponentView
     private final RebuildCacheCommand rebuildCache;
     private final InitializeCommand initialize;
     private final LoadCustomTagDictionary loadCustomTagDict;
+    private final SlowQueriesCommand slowQueries;
     BToggleButton buttonToggleFormat = new BToggleButton(LEX.getText("haystackFormat"));
     
     String shared_folder = Sys.getNiagaraSharedUserHome().getPath().replace("\\", "/");